@@ -1,6 +1,7 @@
 package org.crowdware;
 
 import org.crowdware.config.Constants;
+import org.crowdware.config.CrowdwareProperties;
 import org.crowdware.config.JHipsterProperties;
 
 import org.slf4j.Logger;
@@ -8,6 +9,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.actuate.autoconfigure.*;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.elasticsearch.ElasticsearchDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.elasticsearch.ElasticsearchAutoConfiguration;
 import org.springframework.boot.autoconfigure.liquibase.LiquibaseProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.ComponentScan;
@@ -22,8 +25,9 @@ import java.util.Arrays;
 import java.util.Collection;
 
 @ComponentScan
-@EnableAutoConfiguration(exclude = { MetricFilterAutoConfiguration.class, MetricRepositoryAutoConfiguration.class })
-@EnableConfigurationProperties({ JHipsterProperties.class, LiquibaseProperties.class })
+@EnableAutoConfiguration(exclude = { MetricFilterAutoConfiguration.class, MetricRepositoryAutoConfiguration.class,
+    ElasticsearchAutoConfiguration.class, ElasticsearchDataAutoConfiguration.class })
+@EnableConfigurationProperties({ JHipsterProperties.class, CrowdwareProperties.class, LiquibaseProperties.class })
 public class CrowdwareApp {
 
     private static final Logger log = LoggerFactory.getLogger(CrowdwareApp.class);
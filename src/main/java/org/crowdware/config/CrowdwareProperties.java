@@ -0,0 +1,869 @@
+package org.crowdware.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Properties specific to crowdware.
+ *
+ * <p>
+ *     Properties are configured in the application.yml file.
+ * </p>
+ */
+@ConfigurationProperties(prefix = "crowdware", ignoreUnknownFields = false)
+public class CrowdwareProperties {
+
+    private final Dispatch dispatch = new Dispatch();
+
+    private final Lease lease = new Lease();
+
+    private final Bulk bulk = new Bulk();
+
+    private final Auction auction = new Auction();
+
+    private final Similarity similarity = new Similarity();
+
+    private final Ledger ledger = new Ledger();
+
+    private final Settlement settlement = new Settlement();
+
+    private final Rollup rollup = new Rollup();
+
+    private final Idempotency idempotency = new Idempotency();
+
+    private final Export export = new Export();
+
+    private final Fraud fraud = new Fraud();
+
+    private final Reconciliation reconciliation = new Reconciliation();
+
+    private final Leaderboard leaderboard = new Leaderboard();
+
+    private final Search search = new Search();
+
+    private final Suggest suggest = new Suggest();
+
+    private final Offers offers = new Offers();
+
+    public Dispatch getDispatch() {
+        return dispatch;
+    }
+
+    public Lease getLease() {
+        return lease;
+    }
+
+    public Bulk getBulk() {
+        return bulk;
+    }
+
+    public Auction getAuction() {
+        return auction;
+    }
+
+    public Similarity getSimilarity() {
+        return similarity;
+    }
+
+    public Ledger getLedger() {
+        return ledger;
+    }
+
+    public Settlement getSettlement() {
+        return settlement;
+    }
+
+    public Rollup getRollup() {
+        return rollup;
+    }
+
+    public Idempotency getIdempotency() {
+        return idempotency;
+    }
+
+    public Export getExport() {
+        return export;
+    }
+
+    public Fraud getFraud() {
+        return fraud;
+    }
+
+    public Reconciliation getReconciliation() {
+        return reconciliation;
+    }
+
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
+
+    public Search getSearch() {
+        return search;
+    }
+
+    public Suggest getSuggest() {
+        return suggest;
+    }
+
+    public Offers getOffers() {
+        return offers;
+    }
+
+    public static class Dispatch {
+
+        private int batchSize = 1000;
+
+        private long flushInterval = 100;
+
+        private int taskDurationInSeconds = 3600;
+
+        private int shards = 0;
+
+        private String partitioning = "user";
+
+        private long leaderLeaseDuration = 30000;
+
+        private long syncInterval = 10000;
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public long getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(long flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        public int getTaskDurationInSeconds() {
+            return taskDurationInSeconds;
+        }
+
+        public void setTaskDurationInSeconds(int taskDurationInSeconds) {
+            this.taskDurationInSeconds = taskDurationInSeconds;
+        }
+
+        public int getShards() {
+            return shards;
+        }
+
+        public void setShards(int shards) {
+            this.shards = shards;
+        }
+
+        public String getPartitioning() {
+            return partitioning;
+        }
+
+        public void setPartitioning(String partitioning) {
+            this.partitioning = partitioning;
+        }
+
+        public long getLeaderLeaseDuration() {
+            return leaderLeaseDuration;
+        }
+
+        public void setLeaderLeaseDuration(long leaderLeaseDuration) {
+            this.leaderLeaseDuration = leaderLeaseDuration;
+        }
+
+        public long getSyncInterval() {
+            return syncInterval;
+        }
+
+        public void setSyncInterval(long syncInterval) {
+            this.syncInterval = syncInterval;
+        }
+    }
+
+    public static class Lease {
+
+        private int durationInSeconds = 30;
+
+        private long tickDuration = 100;
+
+        private int wheelSize = 1024;
+
+        private int batchSize = 1000;
+
+        public int getDurationInSeconds() {
+            return durationInSeconds;
+        }
+
+        public void setDurationInSeconds(int durationInSeconds) {
+            this.durationInSeconds = durationInSeconds;
+        }
+
+        public long getTickDuration() {
+            return tickDuration;
+        }
+
+        public void setTickDuration(long tickDuration) {
+            this.tickDuration = tickDuration;
+        }
+
+        public int getWheelSize() {
+            return wheelSize;
+        }
+
+        public void setWheelSize(int wheelSize) {
+            this.wheelSize = wheelSize;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+    }
+
+    public static class Bulk {
+
+        private int chunkSize = 500;
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+    }
+
+    public static class Auction {
+
+        private int durationInSeconds = 60;
+
+        private long roundInterval = 1000;
+
+        private int batchSize = 1000;
+
+        public int getDurationInSeconds() {
+            return durationInSeconds;
+        }
+
+        public void setDurationInSeconds(int durationInSeconds) {
+            this.durationInSeconds = durationInSeconds;
+        }
+
+        public long getRoundInterval() {
+            return roundInterval;
+        }
+
+        public void setRoundInterval(long roundInterval) {
+            this.roundInterval = roundInterval;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+    }
+
+    public static class Similarity {
+
+        private int bands = 16;
+
+        private int rows = 4;
+
+        private int maxCandidates = 5000;
+
+        public int getBands() {
+            return bands;
+        }
+
+        public void setBands(int bands) {
+            this.bands = bands;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public void setRows(int rows) {
+            this.rows = rows;
+        }
+
+        public int getMaxCandidates() {
+            return maxCandidates;
+        }
+
+        public void setMaxCandidates(int maxCandidates) {
+            this.maxCandidates = maxCandidates;
+        }
+    }
+
+    public static class Ledger {
+
+        private String directory = "";
+
+        private int segmentCapacity = 1048576;
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public int getSegmentCapacity() {
+            return segmentCapacity;
+        }
+
+        public void setSegmentCapacity(int segmentCapacity) {
+            this.segmentCapacity = segmentCapacity;
+        }
+    }
+
+    public static class Settlement {
+
+        private int queueCapacity = 10000;
+
+        private int maxBatchSize = 500;
+
+        private long maxDelay = 5;
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        public void setMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+        }
+
+        public long getMaxDelay() {
+            return maxDelay;
+        }
+
+        public void setMaxDelay(long maxDelay) {
+            this.maxDelay = maxDelay;
+        }
+    }
+
+    public static class Rollup {
+
+        private long compactionInterval = 60000;
+
+        public long getCompactionInterval() {
+            return compactionInterval;
+        }
+
+        public void setCompactionInterval(long compactionInterval) {
+            this.compactionInterval = compactionInterval;
+        }
+    }
+
+    public static class Idempotency {
+
+        private long ttlInSeconds = 86400;
+
+        private int cacheSize = 10000;
+
+        private long expectedKeys = 1000000;
+
+        private double falsePositiveProbability = 0.01;
+
+        private long purgeInterval = 3600000;
+
+        public long getTtlInSeconds() {
+            return ttlInSeconds;
+        }
+
+        public void setTtlInSeconds(long ttlInSeconds) {
+            this.ttlInSeconds = ttlInSeconds;
+        }
+
+        public int getCacheSize() {
+            return cacheSize;
+        }
+
+        public void setCacheSize(int cacheSize) {
+            this.cacheSize = cacheSize;
+        }
+
+        public long getExpectedKeys() {
+            return expectedKeys;
+        }
+
+        public void setExpectedKeys(long expectedKeys) {
+            this.expectedKeys = expectedKeys;
+        }
+
+        public double getFalsePositiveProbability() {
+            return falsePositiveProbability;
+        }
+
+        public void setFalsePositiveProbability(double falsePositiveProbability) {
+            this.falsePositiveProbability = falsePositiveProbability;
+        }
+
+        public long getPurgeInterval() {
+            return purgeInterval;
+        }
+
+        public void setPurgeInterval(long purgeInterval) {
+            this.purgeInterval = purgeInterval;
+        }
+    }
+
+    public static class Export {
+
+        private int fetchSize = 1000;
+
+        public int getFetchSize() {
+            return fetchSize;
+        }
+
+        public void setFetchSize(int fetchSize) {
+            this.fetchSize = fetchSize;
+        }
+    }
+
+    public static class Fraud {
+
+        private long duplicateWindowInSeconds = 300;
+
+        private long expectedPayments = 1000000;
+
+        private double falsePositiveProbability = 0.001;
+
+        private long rateWindowInSeconds = 60;
+
+        private int rateBuckets = 12;
+
+        private int maxPaymentsPerWindow = 30;
+
+        private long sweepInterval = 60000;
+
+        public long getDuplicateWindowInSeconds() {
+            return duplicateWindowInSeconds;
+        }
+
+        public void setDuplicateWindowInSeconds(long duplicateWindowInSeconds) {
+            this.duplicateWindowInSeconds = duplicateWindowInSeconds;
+        }
+
+        public long getExpectedPayments() {
+            return expectedPayments;
+        }
+
+        public void setExpectedPayments(long expectedPayments) {
+            this.expectedPayments = expectedPayments;
+        }
+
+        public double getFalsePositiveProbability() {
+            return falsePositiveProbability;
+        }
+
+        public void setFalsePositiveProbability(double falsePositiveProbability) {
+            this.falsePositiveProbability = falsePositiveProbability;
+        }
+
+        public long getRateWindowInSeconds() {
+            return rateWindowInSeconds;
+        }
+
+        public void setRateWindowInSeconds(long rateWindowInSeconds) {
+            this.rateWindowInSeconds = rateWindowInSeconds;
+        }
+
+        public int getRateBuckets() {
+            return rateBuckets;
+        }
+
+        public void setRateBuckets(int rateBuckets) {
+            this.rateBuckets = rateBuckets;
+        }
+
+        public int getMaxPaymentsPerWindow() {
+            return maxPaymentsPerWindow;
+        }
+
+        public void setMaxPaymentsPerWindow(int maxPaymentsPerWindow) {
+            this.maxPaymentsPerWindow = maxPaymentsPerWindow;
+        }
+
+        public long getSweepInterval() {
+            return sweepInterval;
+        }
+
+        public void setSweepInterval(long sweepInterval) {
+            this.sweepInterval = sweepInterval;
+        }
+    }
+
+    public static class Reconciliation {
+
+        private String directory = "";
+
+        private String settlementFile = "";
+
+        private int partitions = 256;
+
+        private int parallelism = 0;
+
+        private String cron = "0 30 2 * * ?";
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public String getSettlementFile() {
+            return settlementFile;
+        }
+
+        public void setSettlementFile(String settlementFile) {
+            this.settlementFile = settlementFile;
+        }
+
+        public int getPartitions() {
+            return partitions;
+        }
+
+        public void setPartitions(int partitions) {
+            this.partitions = partitions;
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public String getCron() {
+            return cron;
+        }
+
+        public void setCron(String cron) {
+            this.cron = cron;
+        }
+    }
+
+    public static class Leaderboard {
+
+        private List<Integer> windowsInDays = new ArrayList<>(Collections.singletonList(30));
+
+        private long pushInterval = 1000;
+
+        private int maxLimit = 100;
+
+        public List<Integer> getWindowsInDays() {
+            return windowsInDays;
+        }
+
+        public void setWindowsInDays(List<Integer> windowsInDays) {
+            this.windowsInDays = windowsInDays;
+        }
+
+        public long getPushInterval() {
+            return pushInterval;
+        }
+
+        public void setPushInterval(long pushInterval) {
+            this.pushInterval = pushInterval;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+    }
+
+    public static class Search {
+
+        private long pollInterval = 500;
+
+        private int batchSize = 500;
+
+        private int maxAttempts = 10;
+
+        private long retryDelay = 1000;
+
+        private long maxRetryDelay = 300000;
+
+        private long leaseDuration = 60000;
+
+        private String backend = "elasticsearch";
+
+        private final Reindex reindex = new Reindex();
+
+        private final Lucene lucene = new Lucene();
+
+        private final Cursor cursor = new Cursor();
+
+        public long getPollInterval() {
+            return pollInterval;
+        }
+
+        public void setPollInterval(long pollInterval) {
+            this.pollInterval = pollInterval;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public long getRetryDelay() {
+            return retryDelay;
+        }
+
+        public void setRetryDelay(long retryDelay) {
+            this.retryDelay = retryDelay;
+        }
+
+        public long getMaxRetryDelay() {
+            return maxRetryDelay;
+        }
+
+        public void setMaxRetryDelay(long maxRetryDelay) {
+            this.maxRetryDelay = maxRetryDelay;
+        }
+
+        public long getLeaseDuration() {
+            return leaseDuration;
+        }
+
+        public void setLeaseDuration(long leaseDuration) {
+            this.leaseDuration = leaseDuration;
+        }
+
+        public String getBackend() {
+            return backend;
+        }
+
+        public void setBackend(String backend) {
+            this.backend = backend;
+        }
+
+        public Reindex getReindex() {
+            return reindex;
+        }
+
+        public Lucene getLucene() {
+            return lucene;
+        }
+
+        public Cursor getCursor() {
+            return cursor;
+        }
+
+        public static class Reindex {
+
+            private int parallelism = 0;
+
+            private int rangeSize = 10000;
+
+            private int bulkSize = 1000;
+
+            private int maxRetries = 5;
+
+            public int getParallelism() {
+                return parallelism;
+            }
+
+            public void setParallelism(int parallelism) {
+                this.parallelism = parallelism;
+            }
+
+            public int getRangeSize() {
+                return rangeSize;
+            }
+
+            public void setRangeSize(int rangeSize) {
+                this.rangeSize = rangeSize;
+            }
+
+            public int getBulkSize() {
+                return bulkSize;
+            }
+
+            public void setBulkSize(int bulkSize) {
+                this.bulkSize = bulkSize;
+            }
+
+            public int getMaxRetries() {
+                return maxRetries;
+            }
+
+            public void setMaxRetries(int maxRetries) {
+                this.maxRetries = maxRetries;
+            }
+        }
+
+        public static class Lucene {
+
+            private String directory;
+
+            private boolean reindexOnStartup = true;
+
+            private long refreshInterval = 1000;
+
+            private double ramBufferSizeMb = 64;
+
+            public String getDirectory() {
+                return directory;
+            }
+
+            public void setDirectory(String directory) {
+                this.directory = directory;
+            }
+
+            public boolean isReindexOnStartup() {
+                return reindexOnStartup;
+            }
+
+            public void setReindexOnStartup(boolean reindexOnStartup) {
+                this.reindexOnStartup = reindexOnStartup;
+            }
+
+            public long getRefreshInterval() {
+                return refreshInterval;
+            }
+
+            public void setRefreshInterval(long refreshInterval) {
+                this.refreshInterval = refreshInterval;
+            }
+
+            public double getRamBufferSizeMb() {
+                return ramBufferSizeMb;
+            }
+
+            public void setRamBufferSizeMb(double ramBufferSizeMb) {
+                this.ramBufferSizeMb = ramBufferSizeMb;
+            }
+        }
+
+        public static class Cursor {
+
+            private int pageSize = 20;
+
+            private int maxPageSize = 1000;
+
+            private int exportBatchSize = 1000;
+
+            public int getPageSize() {
+                return pageSize;
+            }
+
+            public void setPageSize(int pageSize) {
+                this.pageSize = pageSize;
+            }
+
+            public int getMaxPageSize() {
+                return maxPageSize;
+            }
+
+            public void setMaxPageSize(int maxPageSize) {
+                this.maxPageSize = maxPageSize;
+            }
+
+            public int getExportBatchSize() {
+                return exportBatchSize;
+            }
+
+            public void setExportBatchSize(int exportBatchSize) {
+                this.exportBatchSize = exportBatchSize;
+            }
+        }
+    }
+
+    public static class Suggest {
+
+        private long refreshInterval = 1000;
+
+        private long reloadInterval = 300000;
+
+        private int limit = 10;
+
+        private int maxLimit = 50;
+
+        public long getRefreshInterval() {
+            return refreshInterval;
+        }
+
+        public void setRefreshInterval(long refreshInterval) {
+            this.refreshInterval = refreshInterval;
+        }
+
+        public long getReloadInterval() {
+            return reloadInterval;
+        }
+
+        public void setReloadInterval(long reloadInterval) {
+            this.reloadInterval = reloadInterval;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        public void setLimit(int limit) {
+            this.limit = limit;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+    }
+
+    public static class Offers {
+
+        private int maxLimit = 100;
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+    }
+}
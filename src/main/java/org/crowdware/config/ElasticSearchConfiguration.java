@@ -4,8 +4,11 @@ import java.io.IOException;
 
 import org.elasticsearch.client.Client;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.elasticsearch.ElasticsearchAutoConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
 import org.springframework.data.elasticsearch.core.EntityMapper;
 import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
@@ -18,8 +21,23 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 public class ElasticSearchConfiguration {
 
     @Bean
-    public ElasticsearchTemplate elasticsearchTemplate(Client client, Jackson2ObjectMapperBuilder jackson2ObjectMapperBuilder) {
-        return new ElasticsearchTemplate(client, new CustomEntityMapper(jackson2ObjectMapperBuilder.createXmlMapper(false).build()));
+    public EntityMapper entityMapper(Jackson2ObjectMapperBuilder jackson2ObjectMapperBuilder) {
+        return new CustomEntityMapper(jackson2ObjectMapperBuilder.createXmlMapper(false).build());
+    }
+
+    /**
+     * The client of the Elasticsearch cluster, only started by the elasticsearch search backend. Its auto-configuration
+     * is excluded from {@link org.crowdware.CrowdwareApp} and imported here instead.
+     */
+    @Configuration
+    @ConditionalOnProperty(prefix = "crowdware.search", name = "backend", havingValue = "elasticsearch", matchIfMissing = true)
+    @Import(ElasticsearchAutoConfiguration.class)
+    public static class ElasticsearchClientConfiguration {
+
+        @Bean
+        public ElasticsearchTemplate elasticsearchTemplate(Client client, EntityMapper entityMapper) {
+            return new ElasticsearchTemplate(client, entityMapper);
+        }
     }
 
     public class CustomEntityMapper implements EntityMapper {
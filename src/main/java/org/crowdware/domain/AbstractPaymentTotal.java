@@ -0,0 +1,50 @@
+package org.crowdware.domain;
+
+import javax.persistence.Column;
+import javax.persistence.MappedSuperclass;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Base abstract class for the running totals of the payments of an account, maintained in the transaction of each
+ * payment write.
+ */
+@MappedSuperclass
+public abstract class AbstractPaymentTotal implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Column(name = "total", precision=19, scale=2, nullable = false)
+    private BigDecimal total = BigDecimal.ZERO;
+
+    @Column(name = "payments", nullable = false)
+    private long payments;
+
+    @Column(name = "last_payment")
+    private LocalDate lastPayment;
+
+    public BigDecimal getTotal() {
+        return total;
+    }
+
+    public void setTotal(BigDecimal total) {
+        this.total = total;
+    }
+
+    public long getPayments() {
+        return payments;
+    }
+
+    public void setPayments(long payments) {
+        this.payments = payments;
+    }
+
+    public LocalDate getLastPayment() {
+        return lastPayment;
+    }
+
+    public void setLastPayment(LocalDate lastPayment) {
+        this.lastPayment = lastPayment;
+    }
+}
@@ -0,0 +1,89 @@
+package org.crowdware.domain;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+import java.util.Objects;
+
+/**
+ * A ClusterLock: a named row locked for update by the scheduled work which must not run on several nodes at once.
+ * <p>
+ * The rows are created by the Liquibase changelogs. Work which runs in short transactions only locks its row. Work
+ * which runs for as long as a node is up, like the job dispatch, leases its row instead: the {@link #owner} node
+ * holds it until {@link #leaseUntil}, and renews it before then.
+ */
+@Entity
+@Table(name = "cluster_lock")
+public class ClusterLock implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String PAYMENT_ROLLUP_COMPACTION = "payment-rollup-compaction";
+
+    public static final String JOB_DISPATCH = "job-dispatch";
+
+    public static final String SEARCH_OUTBOX = "search-outbox";
+
+    @Id
+    @Column(name = "name", length = 50)
+    private String name;
+
+    @Column(name = "owner", length = 36)
+    private String owner;
+
+    @Column(name = "lease_until")
+    private ZonedDateTime leaseUntil;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public ZonedDateTime getLeaseUntil() {
+        return leaseUntil;
+    }
+
+    public void setLeaseUntil(ZonedDateTime leaseUntil) {
+        this.leaseUntil = leaseUntil;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ClusterLock clusterLock = (ClusterLock) o;
+        if(clusterLock.name == null || name == null) {
+            return false;
+        }
+        return Objects.equals(name, clusterLock.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(name);
+    }
+
+    @Override
+    public String toString() {
+        return "ClusterLock{" +
+            "name=" + name +
+            ", owner='" + owner + "'" +
+            ", leaseUntil='" + leaseUntil + "'" +
+            '}';
+    }
+}
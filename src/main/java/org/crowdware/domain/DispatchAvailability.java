@@ -0,0 +1,105 @@
+package org.crowdware.domain;
+
+import javax.persistence.*;
+import javax.validation.constraints.*;
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+import java.util.Objects;
+
+/**
+ * A DispatchAvailability: free slots of an App, announced to a node which does not dispatch.
+ * <p>
+ * The dispatching node moves the rows into its queue, and deletes them, see
+ * {@link org.crowdware.service.dispatch.JobDispatcher}.
+ */
+@Entity
+@Table(name = "dispatch_availability")
+public class DispatchAvailability implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private Long id;
+
+    @NotNull
+    @ManyToOne(optional = false)
+    private App app;
+
+    @Column(name = "slots", nullable = false)
+    private int slots;
+
+    @NotNull
+    @Column(name = "created_date", nullable = false)
+    private ZonedDateTime createdDate;
+
+    public DispatchAvailability() {
+    }
+
+    public DispatchAvailability(App app, int slots, ZonedDateTime createdDate) {
+        this.app = app;
+        this.slots = slots;
+        this.createdDate = createdDate;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public App getApp() {
+        return app;
+    }
+
+    public void setApp(App app) {
+        this.app = app;
+    }
+
+    public int getSlots() {
+        return slots;
+    }
+
+    public void setSlots(int slots) {
+        this.slots = slots;
+    }
+
+    public ZonedDateTime getCreatedDate() {
+        return createdDate;
+    }
+
+    public void setCreatedDate(ZonedDateTime createdDate) {
+        this.createdDate = createdDate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        DispatchAvailability dispatchAvailability = (DispatchAvailability) o;
+        if(dispatchAvailability.id == null || id == null) {
+            return false;
+        }
+        return Objects.equals(id, dispatchAvailability.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(id);
+    }
+
+    @Override
+    public String toString() {
+        return "DispatchAvailability{" +
+            "id=" + id +
+            ", slots='" + slots + "'" +
+            ", createdDate='" + createdDate + "'" +
+            '}';
+    }
+}
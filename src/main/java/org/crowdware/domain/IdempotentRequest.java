@@ -0,0 +1,127 @@
+package org.crowdware.domain;
+
+import javax.persistence.*;
+import javax.validation.constraints.*;
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+import java.util.Objects;
+
+/**
+ * An IdempotentRequest: the stored response of a request sent with an Idempotency-Key header, returned again when
+ * the request is retried.
+ * <p>
+ * The request is identified by the SHA-256 of its endpoint, of the current user and of the key, so every row has the
+ * same small key whatever the client sends.
+ * <p>
+ * The row is inserted with a {@link #PENDING} status before the request is executed, in the transaction of its
+ * writes, and completed with the response in that same transaction: the primary key is what keeps two nodes from
+ * executing the same request, and a row is never committed without its response.
+ */
+@Entity
+@Table(name = "idempotent_request")
+public class IdempotentRequest implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int PENDING = 0;
+
+    @Id
+    @Column(name = "request_key", length = 64)
+    private String requestKey;
+
+    @Column(name = "request_hash", length = 64)
+    private String requestHash;
+
+    @Column(name = "status", nullable = false)
+    private int status;
+
+    @Column(name = "location")
+    private String location;
+
+    @Lob
+    @Column(name = "body")
+    private String body;
+
+    @NotNull
+    @Column(name = "created_date", nullable = false)
+    private ZonedDateTime createdDate;
+
+    public String getRequestKey() {
+        return requestKey;
+    }
+
+    public void setRequestKey(String requestKey) {
+        this.requestKey = requestKey;
+    }
+
+    public String getRequestHash() {
+        return requestHash;
+    }
+
+    public void setRequestHash(String requestHash) {
+        this.requestHash = requestHash;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+
+    public ZonedDateTime getCreatedDate() {
+        return createdDate;
+    }
+
+    public void setCreatedDate(ZonedDateTime createdDate) {
+        this.createdDate = createdDate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        IdempotentRequest idempotentRequest = (IdempotentRequest) o;
+        if(idempotentRequest.requestKey == null || requestKey == null) {
+            return false;
+        }
+        return Objects.equals(requestKey, idempotentRequest.requestKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(requestKey);
+    }
+
+    @Override
+    public String toString() {
+        return "IdempotentRequest{" +
+            "requestKey=" + requestKey +
+            ", requestHash='" + requestHash + "'" +
+            ", status='" + status + "'" +
+            ", location='" + location + "'" +
+            ", createdDate='" + createdDate + "'" +
+            '}';
+    }
+}
@@ -3,11 +3,11 @@ package org.crowdware.domain;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Type;
 import org.springframework.data.elasticsearch.annotations.Document;
 
 import javax.persistence.*;
 import java.io.Serializable;
-import java.math.BigDecimal;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.Objects;
@@ -28,7 +28,8 @@ public class Job implements Serializable {
     private Long id;
 
     @Column(name = "offer", precision=10, scale=2)
-    private BigDecimal offer;
+    @Type(type = "org.crowdware.domain.util.MoneyType")
+    private Money offer;
 
     @ManyToOne
     private User user;
@@ -46,11 +47,11 @@ public class Job implements Serializable {
         this.id = id;
     }
 
-    public BigDecimal getOffer() {
+    public Money getOffer() {
         return offer;
     }
 
-    public void setOffer(BigDecimal offer) {
+    public void setOffer(Money offer) {
         this.offer = offer;
     }
 
@@ -0,0 +1,63 @@
+package org.crowdware.domain;
+
+import javax.persistence.*;
+import java.util.Objects;
+
+/**
+ * The running totals of the payments made for a Job.
+ */
+@Entity
+@Table(name = "job_payout")
+public class JobPayout extends AbstractPaymentTotal {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "job_id")
+    private Long jobId;
+
+    public JobPayout() {
+    }
+
+    public JobPayout(Long jobId) {
+        this.jobId = jobId;
+    }
+
+    public Long getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(Long jobId) {
+        this.jobId = jobId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        JobPayout jobPayout = (JobPayout) o;
+        if(jobPayout.jobId == null || jobId == null) {
+            return false;
+        }
+        return Objects.equals(jobId, jobPayout.jobId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(jobId);
+    }
+
+    @Override
+    public String toString() {
+        return "JobPayout{" +
+            "jobId=" + jobId +
+            ", total='" + getTotal() + "'" +
+            ", payments='" + getPayments() + "'" +
+            ", lastPayment='" + getLastPayment() + "'" +
+            '}';
+    }
+}
@@ -0,0 +1,196 @@
+package org.crowdware.domain;
+
+import org.crowdware.domain.util.MoneyDeserializer;
+import org.crowdware.domain.util.MoneySerializer;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * An amount of money, as a fixed-point number of minor units (cents).
+ * <p>
+ * Amounts are stored with a scale of 2 like the amount columns, so the whole value is a single {@code long}:
+ * comparing, summing and hashing amounts is primitive arithmetic, and parsing or formatting them does not go
+ * through {@link BigDecimal}. Arithmetic throws an {@link ArithmeticException} on overflow instead of wrapping.
+ * <p>
+ * Money is mapped by {@link org.crowdware.domain.util.MoneyType} in the entities, and is written in JSON as a plain
+ * number with two decimals.
+ */
+@JsonSerialize(using = MoneySerializer.class)
+@JsonDeserialize(using = MoneyDeserializer.class)
+public final class Money implements Comparable<Money>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of decimals of an amount.
+     */
+    public static final int SCALE = 2;
+
+    public static final Money ZERO = new Money(0L);
+
+    private final long minorUnits;
+
+    private Money(long minorUnits) {
+        this.minorUnits = minorUnits;
+    }
+
+    /**
+     * @param minorUnits the amount in cents
+     * @return the amount
+     */
+    public static Money ofMinorUnits(long minorUnits) {
+        return minorUnits == 0L ? ZERO : new Money(minorUnits);
+    }
+
+    /**
+     * Convert an exact decimal amount.
+     *
+     * @param amount the amount, with at most 2 significant decimals
+     * @return the amount
+     * @throws ArithmeticException if the amount has more decimals or does not fit
+     */
+    public static Money of(BigDecimal amount) {
+        return of(amount, RoundingMode.UNNECESSARY);
+    }
+
+    /**
+     * Convert a decimal amount, rounding it to cents.
+     *
+     * @param amount the amount
+     * @param rounding how to round the decimals beyond cents
+     * @return the amount
+     * @throws ArithmeticException if the amount does not fit
+     */
+    public static Money of(BigDecimal amount, RoundingMode rounding) {
+        return ofMinorUnits(amount.setScale(SCALE, rounding).unscaledValue().longValueExact());
+    }
+
+    /**
+     * Parse an amount like "-12.5" or "12.50", without going through {@link BigDecimal} unless it has an exponent.
+     *
+     * @param amount the amount, with at most 2 significant decimals
+     * @return the amount
+     * @throws NumberFormatException if the text is not a number
+     * @throws ArithmeticException if the amount has more decimals or does not fit
+     */
+    public static Money parse(CharSequence amount) {
+        int length = amount.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (amount.charAt(0) == '-' || amount.charAt(0) == '+')) {
+            negative = amount.charAt(0) == '-';
+            i++;
+        }
+        long units = 0L;
+        int decimals = -1;
+        boolean digits = false;
+        for (; i < length; i++) {
+            char c = amount.charAt(i);
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (c < '0' || c > '9') {
+                // exponents, and malformed amounts for the exception
+                return of(new BigDecimal(amount.toString()));
+            } else if (decimals >= SCALE) {
+                if (c != '0') {
+                    throw new ArithmeticException("An amount has at most " + SCALE + " decimals: " + amount);
+                }
+                digits = true;
+            } else {
+                units = Math.addExact(Math.multiplyExact(units, 10L), c - '0');
+                digits = true;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            }
+        }
+        if (!digits) {
+            throw new NumberFormatException("Not an amount: \"" + amount + "\"");
+        }
+        for (int decimal = Math.max(decimals, 0); decimal < SCALE; decimal++) {
+            units = Math.multiplyExact(units, 10L);
+        }
+        return ofMinorUnits(negative ? -units : units);
+    }
+
+    /**
+     * @return the amount in cents
+     */
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public Money plus(Money other) {
+        return ofMinorUnits(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money minus(Money other) {
+        return ofMinorUnits(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public Money negate() {
+        return ofMinorUnits(Math.negateExact(minorUnits));
+    }
+
+    public int signum() {
+        return Long.signum(minorUnits);
+    }
+
+    /**
+     * @return the amount as a decimal of scale 2
+     */
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return minorUnits == ((Money) o).minorUnits;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minorUnits);
+    }
+
+    /**
+     * @return the amount with exactly 2 decimals, like "-12.50"
+     */
+    @Override
+    public String toString() {
+        // a sign, the 19 digits of a long and the decimal point
+        char[] chars = new char[21];
+        int position = chars.length;
+        // digits are taken from the non-positive value, which also holds Long.MIN_VALUE
+        long value = minorUnits > 0 ? -minorUnits : minorUnits;
+        int digits = 0;
+        do {
+            if (digits == SCALE) {
+                chars[--position] = '.';
+            }
+            chars[--position] = (char) ('0' - value % 10);
+            value /= 10;
+            digits++;
+        } while (value != 0 || digits <= SCALE);
+        if (minorUnits < 0) {
+            chars[--position] = '-';
+        }
+        return new String(chars, position, chars.length - position);
+    }
+}
@@ -2,11 +2,13 @@ package org.crowdware.domain;
 
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.Type;
 import org.springframework.data.elasticsearch.annotations.Document;
 
 import javax.persistence.*;
 import java.io.Serializable;
-import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.Objects;
 
@@ -22,11 +24,19 @@ public class Payment implements Serializable {
     private static final long serialVersionUID = 1L;
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(generator = "paymentSequenceGenerator")
+    @GenericGenerator(name = "paymentSequenceGenerator", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator",
+        parameters = {
+            @Parameter(name = "sequence_name", value = "payment_sequence"),
+            @Parameter(name = "initial_value", value = "1000"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled")
+        })
     private Long id;
 
     @Column(name = "amount", precision=10, scale=2)
-    private BigDecimal amount;
+    @Type(type = "org.crowdware.domain.util.MoneyType")
+    private Money amount;
 
     @Column(name = "time")
     private LocalDate time;
@@ -45,11 +55,11 @@ public class Payment implements Serializable {
         this.id = id;
     }
 
-    public BigDecimal getAmount() {
+    public Money getAmount() {
         return amount;
     }
 
-    public void setAmount(BigDecimal amount) {
+    public void setAmount(Money amount) {
         this.amount = amount;
     }
 
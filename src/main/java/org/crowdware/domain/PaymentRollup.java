@@ -0,0 +1,167 @@
+package org.crowdware.domain;
+
+import org.crowdware.domain.enumeration.RollupGranularity;
+
+import javax.persistence.*;
+import javax.validation.constraints.*;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * A PaymentRollup: the sum and the count of the payments of a user for a job over a day, a week or a month.
+ * <p>
+ * Payments without user or without job are counted under {@link #NONE}.
+ */
+@Entity
+@Table(name = "payment_rollup",
+    uniqueConstraints = @UniqueConstraint(columnNames = {"granularity", "period_start", "user_id", "job_id"}))
+public class PaymentRollup implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final long NONE = 0L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private Long id;
+
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    @Column(name = "granularity", length = 5, nullable = false)
+    private RollupGranularity granularity;
+
+    @NotNull
+    @Column(name = "period_start", nullable = false)
+    private LocalDate periodStart;
+
+    @Column(name = "user_id", nullable = false)
+    private long userId;
+
+    @Column(name = "job_id", nullable = false)
+    private long jobId;
+
+    @NotNull
+    @Column(name = "total", precision=19, scale=2, nullable = false)
+    private BigDecimal total = BigDecimal.ZERO;
+
+    @Column(name = "payments", nullable = false)
+    private long payments;
+
+    /**
+     * Whether the weeks and the months have been rolled up since this day last changed, only used by days.
+     */
+    @Column(name = "compacted", nullable = false)
+    private boolean compacted;
+
+    public PaymentRollup() {
+    }
+
+    public PaymentRollup(RollupGranularity granularity, LocalDate periodStart, long userId, long jobId,
+                         BigDecimal total, long payments) {
+        this.granularity = granularity;
+        this.periodStart = periodStart;
+        this.userId = userId;
+        this.jobId = jobId;
+        this.total = total;
+        this.payments = payments;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public RollupGranularity getGranularity() {
+        return granularity;
+    }
+
+    public void setGranularity(RollupGranularity granularity) {
+        this.granularity = granularity;
+    }
+
+    public LocalDate getPeriodStart() {
+        return periodStart;
+    }
+
+    public void setPeriodStart(LocalDate periodStart) {
+        this.periodStart = periodStart;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(long userId) {
+        this.userId = userId;
+    }
+
+    public long getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(long jobId) {
+        this.jobId = jobId;
+    }
+
+    public BigDecimal getTotal() {
+        return total;
+    }
+
+    public void setTotal(BigDecimal total) {
+        this.total = total;
+    }
+
+    public long getPayments() {
+        return payments;
+    }
+
+    public void setPayments(long payments) {
+        this.payments = payments;
+    }
+
+    public boolean isCompacted() {
+        return compacted;
+    }
+
+    public void setCompacted(boolean compacted) {
+        this.compacted = compacted;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        PaymentRollup paymentRollup = (PaymentRollup) o;
+        if(paymentRollup.id == null || id == null) {
+            return false;
+        }
+        return Objects.equals(id, paymentRollup.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(id);
+    }
+
+    @Override
+    public String toString() {
+        return "PaymentRollup{" +
+            "id=" + id +
+            ", granularity='" + granularity + "'" +
+            ", periodStart='" + periodStart + "'" +
+            ", userId='" + userId + "'" +
+            ", jobId='" + jobId + "'" +
+            ", total='" + total + "'" +
+            ", payments='" + payments + "'" +
+            '}';
+    }
+}
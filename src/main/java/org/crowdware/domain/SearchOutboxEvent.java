@@ -0,0 +1,180 @@
+package org.crowdware.domain;
+
+import org.crowdware.domain.enumeration.SearchEntityType;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import javax.persistence.*;
+import javax.validation.constraints.*;
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+import java.util.Objects;
+
+/**
+ * A SearchOutboxEvent: an entity written in the database whose Elasticsearch document must be updated.
+ * <p>
+ * Events are inserted in the transaction of the write, so they are committed or rolled back with it, and are
+ * deleted once the document is indexed, see {@link org.crowdware.service.search.SearchIndexer}. An event only
+ * names the entity: the document is always built from the state of the entity when the event is indexed, and
+ * deleted if the entity no longer exists.
+ * <p>
+ * A node indexing an event first claims it, setting its claim id and pushing its next attempt to the end of its
+ * lease, so no other node reads it until the lease expires.
+ */
+@Entity
+@Table(name = "search_outbox_event")
+public class SearchOutboxEvent implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(generator = "searchOutboxEventSequenceGenerator")
+    @GenericGenerator(name = "searchOutboxEventSequenceGenerator", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator",
+        parameters = {
+            @Parameter(name = "sequence_name", value = "search_outbox_event_sequence"),
+            @Parameter(name = "initial_value", value = "1000"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled")
+        })
+    private Long id;
+
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    @Column(name = "entity_type", nullable = false)
+    private SearchEntityType entityType;
+
+    @NotNull
+    @Column(name = "entity_id", nullable = false)
+    private Long entityId;
+
+    @NotNull
+    @Column(name = "created_date", nullable = false)
+    private ZonedDateTime createdDate;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @NotNull
+    @Column(name = "next_attempt", nullable = false)
+    private ZonedDateTime nextAttempt;
+
+    @Column(name = "last_error")
+    private String lastError;
+
+    @Column(name = "claim_id", length = 36)
+    private String claimId;
+
+    public SearchOutboxEvent() {
+    }
+
+    public SearchOutboxEvent(SearchEntityType entityType, Long entityId, ZonedDateTime createdDate) {
+        this.entityType = entityType;
+        this.entityId = entityId;
+        this.createdDate = createdDate;
+        this.nextAttempt = createdDate;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public SearchEntityType getEntityType() {
+        return entityType;
+    }
+
+    public void setEntityType(SearchEntityType entityType) {
+        this.entityType = entityType;
+    }
+
+    public Long getEntityId() {
+        return entityId;
+    }
+
+    public void setEntityId(Long entityId) {
+        this.entityId = entityId;
+    }
+
+    public ZonedDateTime getCreatedDate() {
+        return createdDate;
+    }
+
+    public void setCreatedDate(ZonedDateTime createdDate) {
+        this.createdDate = createdDate;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public ZonedDateTime getNextAttempt() {
+        return nextAttempt;
+    }
+
+    public void setNextAttempt(ZonedDateTime nextAttempt) {
+        this.nextAttempt = nextAttempt;
+    }
+
+    /**
+     * @return the error of the last failed attempt, if any
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    /**
+     * @return the id of the batch which last claimed the event, if any
+     */
+    public String getClaimId() {
+        return claimId;
+    }
+
+    public void setClaimId(String claimId) {
+        this.claimId = claimId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        SearchOutboxEvent searchOutboxEvent = (SearchOutboxEvent) o;
+        if(searchOutboxEvent.id == null || id == null) {
+            return false;
+        }
+        return Objects.equals(id, searchOutboxEvent.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(id);
+    }
+
+    @Override
+    public String toString() {
+        return "SearchOutboxEvent{" +
+            "id=" + id +
+            ", entityType='" + entityType + "'" +
+            ", entityId='" + entityId + "'" +
+            ", createdDate='" + createdDate + "'" +
+            ", attempts='" + attempts + "'" +
+            ", nextAttempt='" + nextAttempt + "'" +
+            ", lastError='" + lastError + "'" +
+            ", claimId='" + claimId + "'" +
+            '}';
+    }
+}
@@ -1,7 +1,10 @@
 package org.crowdware.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import org.springframework.data.elasticsearch.annotations.Document;
 
 import javax.persistence.*;
@@ -22,7 +25,14 @@ public class Task implements Serializable {
     private static final long serialVersionUID = 1L;
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(generator = "taskSequenceGenerator")
+    @GenericGenerator(name = "taskSequenceGenerator", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator",
+        parameters = {
+            @Parameter(name = "sequence_name", value = "task_sequence"),
+            @Parameter(name = "initial_value", value = "1000"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled")
+        })
     private Long id;
 
     @Column(name = "app")
@@ -43,6 +53,14 @@ public class Task implements Serializable {
     @ManyToOne
     private App app_con;
 
+    /**
+     * Whether the task was created by the JobDispatcher, and is leased to its app until its end. It is set once, when
+     * the task is created.
+     */
+    @JsonIgnore
+    @Column(name = "leased", nullable = false, updatable = false)
+    private boolean leased;
+
     public Long getId() {
         return id;
     }
@@ -91,6 +109,14 @@ public class Task implements Serializable {
         this.app_con = app;
     }
 
+    public boolean isLeased() {
+        return leased;
+    }
+
+    public void setLeased(boolean leased) {
+        this.leased = leased;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
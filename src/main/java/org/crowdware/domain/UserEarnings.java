@@ -0,0 +1,63 @@
+package org.crowdware.domain;
+
+import javax.persistence.*;
+import java.util.Objects;
+
+/**
+ * The running totals of the payments received by a User.
+ */
+@Entity
+@Table(name = "user_earnings")
+public class UserEarnings extends AbstractPaymentTotal {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    public UserEarnings() {
+    }
+
+    public UserEarnings(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        UserEarnings userEarnings = (UserEarnings) o;
+        if(userEarnings.userId == null || userId == null) {
+            return false;
+        }
+        return Objects.equals(userId, userEarnings.userId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(userId);
+    }
+
+    @Override
+    public String toString() {
+        return "UserEarnings{" +
+            "userId=" + userId +
+            ", total='" + getTotal() + "'" +
+            ", payments='" + getPayments() + "'" +
+            ", lastPayment='" + getLastPayment() + "'" +
+            '}';
+    }
+}
@@ -0,0 +1,62 @@
+package org.crowdware.domain.enumeration;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * The RollupGranularity enumeration: the length of the periods of a PaymentRollup.
+ */
+public enum RollupGranularity {
+
+    DAY {
+        @Override
+        public LocalDate start(LocalDate date) {
+            return date;
+        }
+
+        @Override
+        public LocalDate next(LocalDate start) {
+            return start.plusDays(1);
+        }
+    },
+
+    /**
+     * ISO weeks, starting on Monday.
+     */
+    WEEK {
+        @Override
+        public LocalDate start(LocalDate date) {
+            return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        }
+
+        @Override
+        public LocalDate next(LocalDate start) {
+            return start.plusWeeks(1);
+        }
+    },
+
+    MONTH {
+        @Override
+        public LocalDate start(LocalDate date) {
+            return date.withDayOfMonth(1);
+        }
+
+        @Override
+        public LocalDate next(LocalDate start) {
+            return start.plusMonths(1);
+        }
+    };
+
+    /**
+     * @param date a date
+     * @return the first day of the period of the date
+     */
+    public abstract LocalDate start(LocalDate date);
+
+    /**
+     * @param start the first day of a period
+     * @return the first day of the following period
+     */
+    public abstract LocalDate next(LocalDate start);
+}
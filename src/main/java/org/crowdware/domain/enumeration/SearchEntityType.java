@@ -0,0 +1,37 @@
+package org.crowdware.domain.enumeration;
+
+import org.crowdware.domain.App;
+import org.crowdware.domain.CrowdApp;
+import org.crowdware.domain.Job;
+import org.crowdware.domain.JobAttribute;
+import org.crowdware.domain.Payment;
+import org.crowdware.domain.Task;
+import org.crowdware.domain.User;
+
+/**
+ * The SearchEntityType enumeration: the entities indexed in Elasticsearch, see
+ * {@link org.crowdware.domain.SearchOutboxEvent}.
+ */
+public enum SearchEntityType {
+
+    APP(App.class),
+    CROWD_APP(CrowdApp.class),
+    JOB(Job.class),
+    JOB_ATTRIBUTE(JobAttribute.class),
+    PAYMENT(Payment.class),
+    TASK(Task.class),
+    USER(User.class);
+
+    private final Class<?> entityClass;
+
+    SearchEntityType(Class<?> entityClass) {
+        this.entityClass = entityClass;
+    }
+
+    /**
+     * @return the entity class, annotated with the Elasticsearch document of the entity
+     */
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+}
@@ -0,0 +1,48 @@
+package org.crowdware.domain.util;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+
+import org.crowdware.domain.Money;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+/**
+ * Custom Jackson deserializer reading a Money amount from a JSON number or string.
+ * <p>
+ * Decimal numbers are parsed from the characters of the parser, never through a double, so 0.1 is exactly 10 cents.
+ */
+public class MoneyDeserializer extends JsonDeserializer<Money> {
+
+    @Override
+    public Money deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        switch (parser.getCurrentToken()) {
+            case VALUE_NUMBER_INT:
+                try {
+                    return Money.ofMinorUnits(Math.multiplyExact(parser.getLongValue(), 100L));
+                } catch (ArithmeticException | IOException e) {
+                    throw context.weirdNumberException(parser.getNumberValue(), Money.class, "Amount out of range");
+                }
+            case VALUE_NUMBER_FLOAT:
+                try {
+                    return Money.parse(CharBuffer.wrap(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength()));
+                } catch (ArithmeticException e) {
+                    throw context.weirdNumberException(parser.getNumberValue(), Money.class, e.getMessage());
+                }
+            case VALUE_STRING:
+                String string = parser.getText().trim();
+                if (string.length() == 0) {
+                    return null;
+                }
+                try {
+                    return Money.parse(string);
+                } catch (ArithmeticException | NumberFormatException e) {
+                    throw context.weirdStringException(string, Money.class, e.getMessage());
+                }
+        }
+        throw context.wrongTokenException(parser, JsonToken.VALUE_NUMBER_FLOAT, "Expected number or string.");
+    }
+}
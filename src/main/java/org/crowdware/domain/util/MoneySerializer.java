@@ -0,0 +1,20 @@
+package org.crowdware.domain.util;
+
+import java.io.IOException;
+
+import org.crowdware.domain.Money;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+/**
+ * Custom Jackson serializer writing a Money amount as a JSON number with two decimals, like 12.50.
+ */
+public class MoneySerializer extends JsonSerializer<Money> {
+
+    @Override
+    public void serialize(Money value, JsonGenerator generator, SerializerProvider serializerProvider) throws IOException {
+        generator.writeNumber(value.toString());
+    }
+}
@@ -0,0 +1,85 @@
+package org.crowdware.domain.util;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Objects;
+
+import org.crowdware.domain.Money;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.usertype.UserType;
+
+/**
+ * Hibernate user type mapping a {@link Money} attribute to a decimal column of scale 2.
+ * <p>
+ * The columns keep their decimal type, so SQL sums and reports are unchanged; the conversion to cents happens once
+ * per row read or written.
+ */
+public class MoneyType implements UserType {
+
+    private static final int[] SQL_TYPES = {Types.NUMERIC};
+
+    @Override
+    public int[] sqlTypes() {
+        return SQL_TYPES;
+    }
+
+    @Override
+    public Class returnedClass() {
+        return Money.class;
+    }
+
+    @Override
+    public boolean equals(Object x, Object y) {
+        return Objects.equals(x, y);
+    }
+
+    @Override
+    public int hashCode(Object x) {
+        return Objects.hashCode(x);
+    }
+
+    @Override
+    public Object nullSafeGet(ResultSet rs, String[] names, SessionImplementor session, Object owner) throws SQLException {
+        BigDecimal value = rs.getBigDecimal(names[0]);
+        return value == null ? null : Money.of(value);
+    }
+
+    @Override
+    public void nullSafeSet(PreparedStatement st, Object value, int index, SessionImplementor session) throws SQLException {
+        if (value == null) {
+            st.setNull(index, Types.NUMERIC);
+        } else {
+            st.setBigDecimal(index, ((Money) value).toBigDecimal());
+        }
+    }
+
+    @Override
+    public Object deepCopy(Object value) {
+        // Money is immutable
+        return value;
+    }
+
+    @Override
+    public boolean isMutable() {
+        return false;
+    }
+
+    @Override
+    public Serializable disassemble(Object value) {
+        return (Serializable) value;
+    }
+
+    @Override
+    public Object assemble(Serializable cached, Object owner) {
+        return cached;
+    }
+
+    @Override
+    public Object replace(Object original, Object target, Object owner) {
+        return original;
+    }
+}
@@ -14,4 +14,7 @@ public interface AppRepository extends JpaRepository<App,Long> {
     @Query("select app from App app where app.user_app.login = ?#{principal.username}")
     List<App> findByUser_appIsCurrentUser();
 
+    @Query("select app.id, app.name from App app")
+    List<Object[]> findAllNames();
+
 }
@@ -0,0 +1,33 @@
+package org.crowdware.repository;
+
+import org.crowdware.domain.ClusterLock;
+
+import org.springframework.data.jpa.repository.*;
+
+import javax.persistence.LockModeType;
+import java.time.ZonedDateTime;
+
+/**
+ * Spring Data JPA repository for the ClusterLock entity.
+ */
+public interface ClusterLockRepository extends JpaRepository<ClusterLock,String> {
+
+    /**
+     * Lock a named row until the end of the current transaction, waiting for the node holding it.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select clusterLock from ClusterLock clusterLock where clusterLock.name = ?1")
+    ClusterLock findOneForUpdate(String name);
+
+    /**
+     * Lease a named row to a node, unless another node holds an unexpired lease on it. The owner renews its lease the
+     * same way.
+     *
+     * @return 1 if the node now holds the lease, else 0
+     */
+    @Modifying
+    @Query("update ClusterLock clusterLock set clusterLock.owner = ?2, clusterLock.leaseUntil = ?4 " +
+        "where clusterLock.name = ?1 and (clusterLock.owner = ?2 or clusterLock.leaseUntil is null or clusterLock.leaseUntil < ?3)")
+    int lease(String name, String owner, ZonedDateTime now, ZonedDateTime leaseUntil);
+
+}
@@ -14,4 +14,7 @@ public interface CrowdAppRepository extends JpaRepository<CrowdApp,Long> {
     @Query("select crowdApp from CrowdApp crowdApp where crowdApp.user.login = ?#{principal.username}")
     List<CrowdApp> findByUserIsCurrentUser();
 
+    @Query("select crowdApp.id, crowdApp.name from CrowdApp crowdApp")
+    List<Object[]> findAllNames();
+
 }
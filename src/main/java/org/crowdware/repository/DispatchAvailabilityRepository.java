@@ -0,0 +1,24 @@
+package org.crowdware.repository;
+
+import org.crowdware.domain.DispatchAvailability;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.*;
+
+import javax.persistence.LockModeType;
+import java.util.List;
+
+/**
+ * Spring Data JPA repository for the DispatchAvailability entity.
+ */
+public interface DispatchAvailabilityRepository extends JpaRepository<DispatchAvailability,Long> {
+
+    /**
+     * Lock the oldest announcements until the end of the current transaction, so that they are moved to a single
+     * queue even while the dispatch lease changes hands.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select availability from DispatchAvailability availability order by availability.id")
+    List<DispatchAvailability> findOldestForUpdate(Pageable pageable);
+
+}
@@ -0,0 +1,41 @@
+package org.crowdware.repository;
+
+import org.crowdware.domain.IdempotentRequest;
+
+import org.springframework.data.jpa.repository.*;
+
+import java.sql.Timestamp;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+/**
+ * Spring Data JPA repository for the IdempotentRequest entity.
+ */
+public interface IdempotentRequestRepository extends JpaRepository<IdempotentRequest,String> {
+
+    @Query("select request.requestKey from IdempotentRequest request where request.createdDate > ?1")
+    List<String> findKeysCreatedAfter(ZonedDateTime time);
+
+    @Modifying
+    @Query("delete from IdempotentRequest request where request.createdDate <= ?1")
+    int deleteCreatedBefore(ZonedDateTime time);
+
+    @Modifying
+    @Query("delete from IdempotentRequest request where request.requestKey = ?1 and request.createdDate <= ?2")
+    int deleteExpired(String requestKey, ZonedDateTime time);
+
+    /**
+     * Insert a pending row, failing on the primary key if the request key is already taken. Unlike save(), which
+     * merges, this never overwrites a row committed by another node meanwhile.
+     */
+    @Modifying
+    @Query(value = "insert into idempotent_request (request_key, request_hash, status, created_date) " +
+        "values (?1, ?2, " + IdempotentRequest.PENDING + ", ?3)", nativeQuery = true)
+    int insertPending(String requestKey, String requestHash, Timestamp createdDate);
+
+    @Modifying
+    @Query("update IdempotentRequest request set request.status = ?2, request.location = ?3, request.body = ?4 " +
+        "where request.requestKey = ?1")
+    int complete(String requestKey, int status, String location, String body);
+
+}
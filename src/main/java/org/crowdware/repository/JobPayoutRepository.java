@@ -0,0 +1,37 @@
+package org.crowdware.repository;
+
+import org.crowdware.domain.JobPayout;
+
+import org.springframework.data.jpa.repository.*;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Spring Data JPA repository for the JobPayout entity.
+ */
+public interface JobPayoutRepository extends JpaRepository<JobPayout,Long> {
+
+    /**
+     * Lock the totals of jobs, in the order of their ids so that concurrent writers cannot deadlock.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select total from JobPayout total where total.jobId in ?1 order by total.jobId")
+    List<JobPayout> findAllForUpdate(Collection<Long> ids);
+
+    @Query("select total.jobId from JobPayout total where total.jobId in ?1")
+    List<Long> findExistingIds(Collection<Long> ids);
+
+    /**
+     * Create the zero totals of one of the jobs, in a transaction of its own: a concurrent creation fails it on the
+     * primary key instead of the payment write.
+     */
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query(value = "insert into job_payout (job_id, total, payments) values (?1, 0, 0)", nativeQuery = true)
+    int insertEmpty(Long id);
+
+}
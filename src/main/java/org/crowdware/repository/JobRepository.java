@@ -14,4 +14,10 @@ public interface JobRepository extends JpaRepository<Job,Long> {
     @Query("select job from Job job where job.user.login = ?#{principal.username}")
     List<Job> findByUserIsCurrentUser();
 
+    @Query("select job from Job job where job.id not in (select task.job from Task task) order by job.id")
+    List<Job> findUnassigned();
+
+    @Query("select job.id from Job job")
+    List<Long> findAllIds();
+
 }
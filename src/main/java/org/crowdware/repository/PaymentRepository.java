@@ -4,6 +4,9 @@ import org.crowdware.domain.Payment;
 
 import org.springframework.data.jpa.repository.*;
 
+import javax.persistence.LockModeType;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -14,4 +17,18 @@ public interface PaymentRepository extends JpaRepository<Payment,Long> {
     @Query("select payment from Payment payment where payment.user.login = ?#{principal.username}")
     List<Payment> findByUserIsCurrentUser();
 
+    @Query("select max(payment.time) from Payment payment where payment.user.id = ?1")
+    LocalDate findLastTimeByUser(Long userId);
+
+    @Query("select max(payment.time) from Payment payment where payment.job.id = ?1")
+    LocalDate findLastTimeByJob(Long jobId);
+
+    /**
+     * Lock the payments until the end of the current transaction, waiting for the writes holding them. The rows are
+     * locked by ascending id, so two writers of the same payments cannot deadlock.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select payment from Payment payment where payment.id in ?1 order by payment.id")
+    List<Payment> findAllForUpdate(Collection<Long> ids);
+
 }
@@ -0,0 +1,72 @@
+package org.crowdware.repository;
+
+import org.crowdware.domain.PaymentRollup;
+import org.crowdware.domain.enumeration.RollupGranularity;
+
+import org.springframework.data.jpa.repository.*;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.LockModeType;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Spring Data JPA repository for the PaymentRollup entity.
+ * <p>
+ * Rows are always locked in the order of their period, user and job, so that concurrent writers cannot deadlock.
+ */
+public interface PaymentRollupRepository extends JpaRepository<PaymentRollup,Long> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select rollup from PaymentRollup rollup where rollup.granularity = ?1 and rollup.periodStart in ?2 " +
+        "and rollup.userId in ?3 and rollup.jobId in ?4 order by rollup.periodStart, rollup.userId, rollup.jobId")
+    List<PaymentRollup> findAllForUpdate(RollupGranularity granularity, Collection<LocalDate> periodStarts,
+                                         Collection<Long> userIds, Collection<Long> jobIds);
+
+    @Query("select rollup.periodStart, rollup.userId, rollup.jobId from PaymentRollup rollup where rollup.granularity = ?1 " +
+        "and rollup.periodStart in ?2 and rollup.userId in ?3 and rollup.jobId in ?4")
+    List<Object[]> findExistingKeys(RollupGranularity granularity, Collection<LocalDate> periodStarts,
+                                    Collection<Long> userIds, Collection<Long> jobIds);
+
+    /**
+     * Create an empty day rollup, in a transaction of its own: a concurrent creation fails it on
+     * ux_payment_rollup_period instead of the payment write.
+     */
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query(value = "insert into payment_rollup (granularity, period_start, user_id, job_id, total, payments, compacted) " +
+        "values ('DAY', ?1, ?2, ?3, 0, 0, false)", nativeQuery = true)
+    int insertEmptyDay(Date periodStart, long userId, long jobId);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select rollup from PaymentRollup rollup where rollup.granularity = ?1 and rollup.compacted = false " +
+        "order by rollup.periodStart, rollup.userId, rollup.jobId")
+    List<PaymentRollup> findUncompactedForUpdate(RollupGranularity granularity);
+
+    @Query("select rollup from PaymentRollup rollup where rollup.granularity = ?1 and rollup.periodStart between ?2 and ?3 " +
+        "order by rollup.periodStart, rollup.userId, rollup.jobId")
+    List<PaymentRollup> findAllByPeriod(RollupGranularity granularity, LocalDate from, LocalDate to);
+
+    @Query("select new org.crowdware.domain.PaymentRollup(rollup.granularity, rollup.periodStart, 0L, 0L, sum(rollup.total), sum(rollup.payments)) " +
+        "from PaymentRollup rollup where rollup.granularity = ?1 and rollup.periodStart between ?2 and ?3 " +
+        "group by rollup.granularity, rollup.periodStart order by rollup.periodStart")
+    List<PaymentRollup> sumByPeriod(RollupGranularity granularity, LocalDate from, LocalDate to);
+
+    @Query("select new org.crowdware.domain.PaymentRollup(rollup.granularity, rollup.periodStart, rollup.userId, 0L, sum(rollup.total), sum(rollup.payments)) " +
+        "from PaymentRollup rollup where rollup.granularity = ?1 and rollup.periodStart between ?2 and ?3 " +
+        "group by rollup.granularity, rollup.periodStart, rollup.userId order by rollup.periodStart, rollup.userId")
+    List<PaymentRollup> sumByPeriodAndUser(RollupGranularity granularity, LocalDate from, LocalDate to);
+
+    @Query("select new org.crowdware.domain.PaymentRollup(rollup.granularity, rollup.periodStart, 0L, rollup.jobId, sum(rollup.total), sum(rollup.payments)) " +
+        "from PaymentRollup rollup where rollup.granularity = ?1 and rollup.periodStart between ?2 and ?3 " +
+        "group by rollup.granularity, rollup.periodStart, rollup.jobId order by rollup.periodStart, rollup.jobId")
+    List<PaymentRollup> sumByPeriodAndJob(RollupGranularity granularity, LocalDate from, LocalDate to);
+
+    @Modifying
+    @Query("delete from PaymentRollup rollup where rollup.granularity = ?1 and rollup.periodStart = ?2")
+    int deleteByPeriod(RollupGranularity granularity, LocalDate periodStart);
+
+}
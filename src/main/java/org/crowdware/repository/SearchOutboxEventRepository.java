@@ -0,0 +1,43 @@
+package org.crowdware.repository;
+
+import org.crowdware.domain.SearchOutboxEvent;
+import org.crowdware.domain.enumeration.SearchEntityType;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.*;
+
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Spring Data JPA repository for the SearchOutboxEvent entity.
+ */
+public interface SearchOutboxEventRepository extends JpaRepository<SearchOutboxEvent,Long> {
+
+    @Query("select event from SearchOutboxEvent event where event.attempts < ?1 and event.nextAttempt <= ?2 order by event.id")
+    List<SearchOutboxEvent> findDue(int maxAttempts, ZonedDateTime now, Pageable pageable);
+
+    /**
+     * Find which of the entities of a type have events leased to a node, which may still be indexing them.
+     */
+    @Query("select distinct event.entityId from SearchOutboxEvent event " +
+        "where event.entityType = ?1 and event.entityId in ?2 and event.claimId is not null and event.nextAttempt > ?3")
+    List<Long> findLeasedEntityIds(SearchEntityType entityType, Collection<Long> entityIds, ZonedDateTime now);
+
+    /**
+     * Lease all the due events of the entities of a type.
+     */
+    @Modifying
+    @Query("update SearchOutboxEvent event set event.claimId = ?3, event.nextAttempt = ?5 " +
+        "where event.entityType = ?1 and event.entityId in ?2 and event.attempts < ?6 and event.nextAttempt <= ?4")
+    int claim(SearchEntityType entityType, Collection<Long> entityIds, String claimId, ZonedDateTime now,
+              ZonedDateTime leaseEnd, int maxAttempts);
+
+    @Query("select event from SearchOutboxEvent event where event.claimId = ?1 order by event.id")
+    List<SearchOutboxEvent> findAllByClaimId(String claimId);
+
+    @Query("select count(event) from SearchOutboxEvent event where event.attempts < ?1")
+    long countPending(int maxAttempts);
+
+}
@@ -4,6 +4,8 @@ import org.crowdware.domain.Task;
 
 import org.springframework.data.jpa.repository.*;
 
+import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -11,4 +13,14 @@ import java.util.List;
  */
 public interface TaskRepository extends JpaRepository<Task,Long> {
 
+    List<Task> findByLeasedTrueAndEndAfter(ZonedDateTime time);
+
+    @Query("select task.app, count(task) from Task task where task.app is not null group by task.app")
+    List<Object[]> countByApp();
+
+    @Query("select distinct task.job from Task task where task.job in ?1")
+    List<Long> findAssignedJobs(Collection<Long> jobs);
+
+    long countByJob(Long job);
+
 }
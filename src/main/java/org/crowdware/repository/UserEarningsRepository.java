@@ -0,0 +1,37 @@
+package org.crowdware.repository;
+
+import org.crowdware.domain.UserEarnings;
+
+import org.springframework.data.jpa.repository.*;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Spring Data JPA repository for the UserEarnings entity.
+ */
+public interface UserEarningsRepository extends JpaRepository<UserEarnings,Long> {
+
+    /**
+     * Lock the totals of users, in the order of their ids so that concurrent writers cannot deadlock.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select total from UserEarnings total where total.userId in ?1 order by total.userId")
+    List<UserEarnings> findAllForUpdate(Collection<Long> ids);
+
+    @Query("select total.userId from UserEarnings total where total.userId in ?1")
+    List<Long> findExistingIds(Collection<Long> ids);
+
+    /**
+     * Create the zero totals of one of the users, in a transaction of its own: a concurrent creation fails it on the
+     * primary key instead of the payment write.
+     */
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query(value = "insert into user_earnings (user_id, total, payments) values (?1, 0, 0)", nativeQuery = true)
+    int insertEmpty(Long id);
+
+}
@@ -1,10 +0,0 @@
-package org.crowdware.repository.search;
-
-import org.crowdware.domain.Job;
-import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
-
-/**
- * Spring Data ElasticSearch repository for the Job entity.
- */
-public interface JobSearchRepository extends ElasticsearchRepository<Job, Long> {
-}
@@ -1,10 +0,0 @@
-package org.crowdware.repository.search;
-
-import org.crowdware.domain.Payment;
-import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
-
-/**
- * Spring Data ElasticSearch repository for the Payment entity.
- */
-public interface PaymentSearchRepository extends ElasticsearchRepository<Payment, Long> {
-}
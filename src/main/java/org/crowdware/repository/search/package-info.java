@@ -1,4 +0,0 @@
-/**
- * Spring Data ElasticSearch repositories.
- */
-package org.crowdware.repository.search;
@@ -1,8 +1,16 @@
 package org.crowdware.service;
 
 import org.crowdware.domain.App;
+import org.crowdware.domain.enumeration.SearchEntityType;
 import org.crowdware.repository.AppRepository;
-import org.crowdware.repository.search.AppSearchRepository;
+import org.crowdware.security.AuthoritiesConstants;
+import org.crowdware.security.SecurityUtils;
+import org.crowdware.service.index.AppNameIndex;
+import org.crowdware.service.search.CursorPage;
+import org.crowdware.service.search.CursorSearchService;
+import org.crowdware.service.search.SearchBackend;
+import org.crowdware.service.search.SearchCursor;
+import org.crowdware.service.search.SearchOutboxService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
@@ -12,10 +20,6 @@ import org.springframework.stereotype.Service;
 
 import javax.inject.Inject;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
-
-import static org.elasticsearch.index.query.QueryBuilders.*;
 
 /**
  * Service Implementation for managing App.
@@ -30,7 +34,16 @@ public class AppService {
     private AppRepository appRepository;
     
     @Inject
-    private AppSearchRepository appSearchRepository;
+    private SearchBackend searchBackend;
+
+    @Inject
+    private CursorSearchService cursorSearchService;
+
+    @Inject
+    private SearchOutboxService searchOutboxService;
+
+    @Inject
+    private AppNameIndex appNameIndex;
     
     /**
      * Save a app.
@@ -41,7 +54,8 @@ public class AppService {
     public App save(App app) {
         log.debug("Request to save App : {}", app);
         App result = appRepository.save(app);
-        appSearchRepository.save(result);
+        searchOutboxService.enqueue(SearchEntityType.APP, result.getId());
+        appNameIndex.putApp(result);
         return result;
     }
 
@@ -71,6 +85,21 @@ public class AppService {
         return app;
     }
 
+    /**
+     *  Check whether the current user may act for an app, such as bidding or taking tasks for it: only its owner and
+     *  the admins can.
+     *
+     *  @param app the app
+     *  @return true if the current user owns the app or is an admin
+     */
+    public boolean isManagedByCurrentUser(App app) {
+        if (SecurityUtils.isCurrentUserInRole(AuthoritiesConstants.ADMIN)) {
+            return true;
+        }
+        String login = SecurityUtils.getCurrentUserLogin();
+        return login != null && app.getUser_app() != null && login.equals(app.getUser_app().getLogin());
+    }
+
     /**
      *  Delete the  app by id.
      *  
@@ -79,7 +108,8 @@ public class AppService {
     public void delete(Long id) {
         log.debug("Request to delete App : {}", id);
         appRepository.delete(id);
-        appSearchRepository.delete(id);
+        searchOutboxService.enqueue(SearchEntityType.APP, id);
+        appNameIndex.removeApp(id);
     }
 
     /**
@@ -91,6 +121,20 @@ public class AppService {
     @Transactional(readOnly = true)
     public Page<App> search(String query, Pageable pageable) {
         log.debug("Request to search for a page of Apps for query {}", query);
-        return appSearchRepository.search(queryStringQuery(query), pageable);
+        return searchBackend.search(App.class, query, pageable);
+    }
+
+    /**
+     * Search for a slice of the app corresponding to the query, after a cursor.
+     *
+     *  @param query the query of the search
+     *  @param cursor the cursor of the slice
+     *  @param size the maximum number of entities, the default one if null
+     *  @return the slice of entities, by ascending id
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<App> search(String query, SearchCursor cursor, Integer size) {
+        log.debug("Request to search for a slice of Apps for query {}", query);
+        return cursorSearchService.search(App.class, query, cursor, size);
     }
 }
@@ -0,0 +1,74 @@
+package org.crowdware.service;
+
+import org.crowdware.domain.Payment;
+import org.crowdware.domain.Task;
+import org.crowdware.domain.enumeration.SearchEntityType;
+import org.crowdware.repository.TaskRepository;
+import org.crowdware.service.auction.BidBook;
+import org.crowdware.service.search.SearchOutboxService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.inject.Inject;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Service Implementation for the settlement of Job auctions.
+ */
+@Service
+@Transactional
+public class AuctionService {
+
+    private final Logger log = LoggerFactory.getLogger(AuctionService.class);
+
+    @Inject
+    private TaskRepository taskRepository;
+
+    @Inject
+    private SearchOutboxService searchOutboxService;
+
+    @Inject
+    private PaymentService paymentService;
+
+    /**
+     * Create the Task and the Payment of every winning bid of a round in a single transaction.
+     * <p>
+     * Task and payment ids come from pooled sequences, so both kinds of rows are inserted in JDBC batches.
+     *
+     * @param books the closed books of the round, each with a winner
+     * @param start the start of the tasks
+     * @param end the end of the tasks
+     * @return the persisted tasks, in the order of the books
+     */
+    public List<Task> settle(List<BidBook> books, ZonedDateTime start, ZonedDateTime end) {
+        log.debug("Request to settle {} auctions", books.size());
+        List<Task> tasks = new ArrayList<>(books.size());
+        List<Payment> payments = new ArrayList<>(books.size());
+        for (BidBook book : books) {
+            BidBook.Bid winner = book.close();
+            Task task = new Task();
+            task.setJob(book.getJob().getId());
+            task.setApp(winner.getApp().getId());
+            task.setApp_con(winner.getApp());
+            task.setStart(start);
+            task.setEnd(end);
+            tasks.add(task);
+
+            Payment payment = new Payment();
+            payment.setAmount(winner.getAmount());
+            payment.setTime(start.toLocalDate());
+            payment.setJob(book.getJob());
+            payment.setUser(winner.getApp().getUser_app());
+            payments.add(payment);
+        }
+        List<Task> result = taskRepository.save(tasks);
+        paymentService.saveAll(payments);
+        searchOutboxService.enqueue(SearchEntityType.TASK, result.stream().map(Task::getId).collect(Collectors.toList()));
+        return result;
+    }
+}
@@ -1,8 +1,14 @@
 package org.crowdware.service;
 
 import org.crowdware.domain.CrowdApp;
+import org.crowdware.domain.enumeration.SearchEntityType;
 import org.crowdware.repository.CrowdAppRepository;
-import org.crowdware.repository.search.CrowdAppSearchRepository;
+import org.crowdware.service.index.AppNameIndex;
+import org.crowdware.service.search.CursorPage;
+import org.crowdware.service.search.CursorSearchService;
+import org.crowdware.service.search.SearchBackend;
+import org.crowdware.service.search.SearchCursor;
+import org.crowdware.service.search.SearchOutboxService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
@@ -12,10 +18,6 @@ import org.springframework.stereotype.Service;
 
 import javax.inject.Inject;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
-
-import static org.elasticsearch.index.query.QueryBuilders.*;
 
 /**
  * Service Implementation for managing CrowdApp.
@@ -30,7 +32,16 @@ public class CrowdAppService {
     private CrowdAppRepository crowdAppRepository;
     
     @Inject
-    private CrowdAppSearchRepository crowdAppSearchRepository;
+    private SearchBackend searchBackend;
+
+    @Inject
+    private CursorSearchService cursorSearchService;
+
+    @Inject
+    private SearchOutboxService searchOutboxService;
+
+    @Inject
+    private AppNameIndex appNameIndex;
     
     /**
      * Save a crowdApp.
@@ -41,7 +52,8 @@ public class CrowdAppService {
     public CrowdApp save(CrowdApp crowdApp) {
         log.debug("Request to save CrowdApp : {}", crowdApp);
         CrowdApp result = crowdAppRepository.save(crowdApp);
-        crowdAppSearchRepository.save(result);
+        searchOutboxService.enqueue(SearchEntityType.CROWD_APP, result.getId());
+        appNameIndex.putCrowdApp(result);
         return result;
     }
 
@@ -79,7 +91,8 @@ public class CrowdAppService {
     public void delete(Long id) {
         log.debug("Request to delete CrowdApp : {}", id);
         crowdAppRepository.delete(id);
-        crowdAppSearchRepository.delete(id);
+        searchOutboxService.enqueue(SearchEntityType.CROWD_APP, id);
+        appNameIndex.removeCrowdApp(id);
     }
 
     /**
@@ -91,6 +104,20 @@ public class CrowdAppService {
     @Transactional(readOnly = true)
     public Page<CrowdApp> search(String query, Pageable pageable) {
         log.debug("Request to search for a page of CrowdApps for query {}", query);
-        return crowdAppSearchRepository.search(queryStringQuery(query), pageable);
+        return searchBackend.search(CrowdApp.class, query, pageable);
+    }
+
+    /**
+     * Search for a slice of the crowdApp corresponding to the query, after a cursor.
+     *
+     *  @param query the query of the search
+     *  @param cursor the cursor of the slice
+     *  @param size the maximum number of entities, the default one if null
+     *  @return the slice of entities, by ascending id
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<CrowdApp> search(String query, SearchCursor cursor, Integer size) {
+        log.debug("Request to search for a slice of CrowdApps for query {}", query);
+        return cursorSearchService.search(CrowdApp.class, query, cursor, size);
     }
 }
@@ -1,8 +1,18 @@
 package org.crowdware.service;
 
 import org.crowdware.domain.Job;
+import org.crowdware.domain.enumeration.SearchEntityType;
 import org.crowdware.repository.JobRepository;
-import org.crowdware.repository.search.JobSearchRepository;
+import org.crowdware.repository.TaskRepository;
+import org.crowdware.service.auction.AuctionHouse;
+import org.crowdware.service.dispatch.JobDispatcher;
+import org.crowdware.service.index.JobAttributeIndex;
+import org.crowdware.service.index.JobOfferBook;
+import org.crowdware.service.search.CursorPage;
+import org.crowdware.service.search.CursorSearchService;
+import org.crowdware.service.search.SearchBackend;
+import org.crowdware.service.search.SearchCursor;
+import org.crowdware.service.search.SearchOutboxService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
@@ -11,11 +21,14 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.stereotype.Service;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
-import static org.elasticsearch.index.query.QueryBuilders.*;
+import static org.crowdware.service.util.TransactionUtil.afterCommit;
 
 /**
  * Service Implementation for managing Job.
@@ -28,23 +41,87 @@ public class JobService {
     
     @Inject
     private JobRepository jobRepository;
+
+    @Inject
+    private TaskRepository taskRepository;
     
     @Inject
-    private JobSearchRepository jobSearchRepository;
+    private SearchBackend searchBackend;
+
+    @Inject
+    private CursorSearchService cursorSearchService;
+
+    @Inject
+    private SearchOutboxService searchOutboxService;
+
+    @Inject
+    private JobDispatcher jobDispatcher;
+
+    @Inject
+    private JobOfferBook jobOfferBook;
+
+    @Inject
+    private JobAttributeIndex jobAttributeIndex;
+
+    @Inject
+    private AuctionHouse auctionHouse;
     
     /**
      * Save a job.
+     * <p>
+     * The dispatcher and the in-memory indices follow the job once the transaction commits.
      * 
      * @param job the entity to save
      * @return the persisted entity
      */
     public Job save(Job job) {
         log.debug("Request to save Job : {}", job);
+        boolean open = job.getId() == null || taskRepository.countByJob(job.getId()) == 0;
         Job result = jobRepository.save(job);
-        jobSearchRepository.save(result);
+        searchOutboxService.enqueue(SearchEntityType.JOB, result.getId());
+        afterCommit(() -> {
+            jobAttributeIndex.addJob(result.getId());
+            if (open) {
+                jobDispatcher.submit(result);
+                jobOfferBook.put(result);
+            }
+        });
         return result;
     }
 
+    /**
+     * Take a job out of the dispatch and the offers, once a task assigns it. The dispatcher and the in-memory indices
+     * follow the job once the transaction commits.
+     *
+     * @param id the id of the assigned job
+     */
+    public void assign(Long id) {
+        log.debug("Request to take assigned Job : {} out of the dispatch", id);
+        afterCommit(() -> {
+            jobDispatcher.cancel(id);
+            auctionHouse.cancel(id);
+            jobOfferBook.remove(id);
+        });
+    }
+
+    /**
+     * Dispatch and offer a job again if it has no task left, for instance once its task is deleted. The dispatcher
+     * and the in-memory indices follow the job once the transaction commits.
+     *
+     * @param id the id of the job
+     */
+    public void reopen(Long id) {
+        Job job = jobRepository.findOne(id);
+        if (job == null || taskRepository.countByJob(id) > 0) {
+            return;
+        }
+        log.debug("Request to dispatch unassigned Job : {} again", id);
+        afterCommit(() -> {
+            jobDispatcher.submit(job);
+            jobOfferBook.put(job);
+        });
+    }
+
     /**
      *  Get all the jobs.
      *  
@@ -71,6 +148,26 @@ public class JobService {
         return job;
     }
 
+    /**
+     *  Get the jobs with the given ids, in the order of the ids.
+     *
+     *  @param ids the ids of the entities
+     *  @return the list of entities, without the ids that do not exist
+     */
+    @Transactional(readOnly = true)
+    public List<Job> findAll(List<Long> ids) {
+        log.debug("Request to get Jobs : {}", ids);
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Job> jobsById = jobRepository.findAll(ids).stream()
+            .collect(Collectors.toMap(Job::getId, Function.identity()));
+        return ids.stream()
+            .map(jobsById::get)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+    }
+
     /**
      *  Delete the  job by id.
      *  
@@ -79,7 +176,13 @@ public class JobService {
     public void delete(Long id) {
         log.debug("Request to delete Job : {}", id);
         jobRepository.delete(id);
-        jobSearchRepository.delete(id);
+        searchOutboxService.enqueue(SearchEntityType.JOB, id);
+        afterCommit(() -> {
+            jobDispatcher.cancel(id);
+            auctionHouse.cancel(id);
+            jobOfferBook.remove(id);
+            jobAttributeIndex.removeJob(id);
+        });
     }
 
     /**
@@ -91,6 +194,20 @@ public class JobService {
     @Transactional(readOnly = true)
     public Page<Job> search(String query, Pageable pageable) {
         log.debug("Request to search for a page of Jobs for query {}", query);
-        return jobSearchRepository.search(queryStringQuery(query), pageable);
+        return searchBackend.search(Job.class, query, pageable);
+    }
+
+    /**
+     * Search for a slice of the job corresponding to the query, after a cursor.
+     *
+     *  @param query the query of the search
+     *  @param cursor the cursor of the slice
+     *  @param size the maximum number of entities, the default one if null
+     *  @return the slice of entities, by ascending id
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<Job> search(String query, SearchCursor cursor, Integer size) {
+        log.debug("Request to search for a slice of Jobs for query {}", query);
+        return cursorSearchService.search(Job.class, query, cursor, size);
     }
 }
@@ -0,0 +1,179 @@
+package org.crowdware.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvFactory;
+import com.fasterxml.jackson.dataformat.csv.CsvGenerator;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import org.crowdware.config.CrowdwareProperties;
+import org.crowdware.domain.Money;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+
+/**
+ * Service Implementation exporting the payments as CSV or as newline-delimited JSON.
+ * <p>
+ * Payments are read as plain columns through a forward-only cursor, so no entity is loaded in the persistence
+ * context, and each row is written to the output by a Jackson streaming generator as soon as it is read. The
+ * memory used by an export does not depend on its number of rows, as long as the JDBC driver honours the fetch size,
+ * see {@code crowdware.export.fetchSize}.
+ */
+@Service
+public class PaymentExportService {
+
+    private final Logger log = LoggerFactory.getLogger(PaymentExportService.class);
+
+    private static final CsvFactory CSV_FACTORY = new CsvFactory();
+
+    private static final CsvSchema CSV_SCHEMA = CsvSchema.builder()
+        .addColumn("id", CsvSchema.ColumnType.NUMBER)
+        .addColumn("amount", CsvSchema.ColumnType.NUMBER)
+        .addColumn("time", CsvSchema.ColumnType.STRING)
+        .addColumn("jobId", CsvSchema.ColumnType.NUMBER)
+        .addColumn("userId", CsvSchema.ColumnType.NUMBER)
+        .build()
+        .withHeader();
+
+    /**
+     * The formats of an export.
+     */
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Inject
+    private ObjectMapper objectMapper;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
+
+    /**
+     * Write the payments of a period, in the order of their ids.
+     *
+     * @param format the format of the export
+     * @param from the first day of the period, inclusive, or null for no lower bound
+     * @param to the last day of the period, inclusive, or null for no upper bound
+     * @param out the output, flushed but left open
+     * @return the number of exported payments
+     * @throws IOException if the output cannot be written
+     */
+    @Transactional(readOnly = true)
+    public long export(Format format, LocalDate from, LocalDate to, OutputStream out) throws IOException {
+        log.debug("Request to export the Payments from {} to {} as {}", from, to, format);
+        StringBuilder hql = new StringBuilder("select payment.id, payment.amount, payment.time, job.id, user.id " +
+            "from Payment payment left join payment.job job left join payment.user user where 1 = 1");
+        if (from != null) {
+            hql.append(" and payment.time >= :from");
+        }
+        if (to != null) {
+            hql.append(" and payment.time <= :to");
+        }
+        hql.append(" order by payment.id");
+        Query query = entityManager.unwrap(Session.class).createQuery(hql.toString())
+            .setFetchSize(crowdwareProperties.getExport().getFetchSize())
+            .setReadOnly(true);
+        if (from != null) {
+            query.setParameter("from", from);
+        }
+        if (to != null) {
+            query.setParameter("to", to);
+        }
+
+        long rows = 0;
+        JsonGenerator generator = createGenerator(format, out);
+        ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            while (results.next()) {
+                writeRow(generator, format, results.get());
+                rows++;
+            }
+        } finally {
+            results.close();
+            generator.close();
+        }
+        log.debug("Exported {} Payments", rows);
+        return rows;
+    }
+
+    private JsonGenerator createGenerator(Format format, OutputStream out) throws IOException {
+        JsonGenerator generator;
+        if (format == Format.CSV) {
+            CsvGenerator csvGenerator = CSV_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+            csvGenerator.setSchema(CSV_SCHEMA);
+            generator = csvGenerator;
+        } else {
+            generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+            // each payment ends with its own newline instead of being separated by a space
+            generator.setRootValueSeparator(null);
+        }
+        // the output belongs to the caller
+        return generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    private static void writeRow(JsonGenerator generator, Format format, Object[] row) throws IOException {
+        generator.writeStartObject();
+        writeNumberField(generator, "id", (Long) row[0]);
+        generator.writeFieldName("amount");
+        if (row[1] == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(((Money) row[1]).toString());
+        }
+        generator.writeFieldName("time");
+        if (row[2] == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(((LocalDate) row[2]).toString());
+        }
+        writeNumberField(generator, "jobId", (Long) row[3]);
+        writeNumberField(generator, "userId", (Long) row[4]);
+        generator.writeEndObject();
+        if (format == Format.NDJSON) {
+            generator.writeRaw('\n');
+        }
+    }
+
+    private static void writeNumberField(JsonGenerator generator, String name, Long value) throws IOException {
+        generator.writeFieldName(name);
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value);
+        }
+    }
+}
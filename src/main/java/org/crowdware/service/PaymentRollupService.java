@@ -0,0 +1,257 @@
+package org.crowdware.service;
+
+import org.crowdware.domain.ClusterLock;
+import org.crowdware.domain.Money;
+import org.crowdware.domain.PaymentRollup;
+import org.crowdware.domain.enumeration.RollupGranularity;
+import org.crowdware.repository.ClusterLockRepository;
+import org.crowdware.repository.PaymentRollupRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.inject.Inject;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Service Implementation maintaining the day, week and month rollups of the payments, per user and job.
+ * <p>
+ * Day rollups are updated by deltas in the transaction of the payment writes, see {@link PaymentService}. Changed
+ * days are left uncompacted, and the scheduled {@link #compact()} recomputes the weeks and the months they belong to
+ * from the day rollups, so week and month reports lag the payments by at most
+ * {@code crowdware.rollup.compactionInterval}. Reports never read the payments themselves. Deltas and compactions are
+ * summed in cents, and only converted to decimals once per written row.
+ * <p>
+ * A locking read does not lock missing rows, so the first delta of a day rollup creates it beforehand, in a
+ * transaction of its own which tolerates a concurrent creation. Compactions replace whole weeks and months, and hold
+ * the {@link ClusterLock#PAYMENT_ROLLUP_COMPACTION} lock so that a single node compacts at a time.
+ * <p>
+ * Payments without a date are not rolled up.
+ */
+@Service
+@Transactional
+public class PaymentRollupService {
+
+    private final Logger log = LoggerFactory.getLogger(PaymentRollupService.class);
+
+    @Inject
+    private PaymentRollupRepository paymentRollupRepository;
+
+    @Inject
+    private ClusterLockRepository clusterLockRepository;
+
+    /**
+     * Update the day rollups with the payments written in the current transaction.
+     *
+     * @param removed the previous state of the updated and deleted payments
+     * @param added the new state of the created and updated payments
+     */
+    public void update(Collection<PaymentSnapshot> removed, Collection<PaymentSnapshot> added) {
+        Map<Key, Delta> deltas = new TreeMap<>();
+        removed.stream().filter(snapshot -> snapshot.getTime() != null)
+            .forEach(snapshot -> deltas.computeIfAbsent(Key.of(snapshot), key -> new Delta()).add(-snapshot.getAmountInCents(), -1));
+        added.stream().filter(snapshot -> snapshot.getTime() != null)
+            .forEach(snapshot -> deltas.computeIfAbsent(Key.of(snapshot), key -> new Delta()).add(snapshot.getAmountInCents(), 1));
+        deltas.values().removeIf(Delta::isEmpty);
+        if (deltas.isEmpty()) {
+            return;
+        }
+        log.debug("Request to update {} day rollups", deltas.size());
+        Set<LocalDate> days = new TreeSet<>();
+        Set<Long> userIds = new TreeSet<>();
+        Set<Long> jobIds = new TreeSet<>();
+        deltas.keySet().forEach(key -> {
+            days.add(key.periodStart);
+            userIds.add(key.userId);
+            jobIds.add(key.jobId);
+        });
+        createMissingDays(deltas.keySet(), paymentRollupRepository.findExistingKeys(RollupGranularity.DAY, days, userIds, jobIds));
+        Map<Key, PaymentRollup> rollups = new HashMap<>();
+        paymentRollupRepository.findAllForUpdate(RollupGranularity.DAY, days, userIds, jobIds)
+            .forEach(rollup -> rollups.put(Key.of(rollup), rollup));
+        List<PaymentRollup> changed = new ArrayList<>(deltas.size());
+        deltas.forEach((key, delta) -> {
+            PaymentRollup rollup = rollups.computeIfAbsent(key, Key::newDay);
+            rollup.setTotal(rollup.getTotal().add(BigDecimal.valueOf(delta.totalInCents, Money.SCALE)));
+            rollup.setPayments(rollup.getPayments() + delta.payments);
+            rollup.setCompacted(false);
+            changed.add(rollup);
+        });
+        paymentRollupRepository.save(changed);
+    }
+
+    /**
+     * Recompute the weeks and the months of the days changed since the last compaction.
+     * <p>
+     * This is scheduled to run every {@code crowdware.rollup.compactionInterval} milliseconds.
+     */
+    @Scheduled(fixedDelayString = "${crowdware.rollup.compactionInterval:60000}")
+    public void compact() {
+        clusterLockRepository.findOneForUpdate(ClusterLock.PAYMENT_ROLLUP_COMPACTION);
+        List<PaymentRollup> days = paymentRollupRepository.findUncompactedForUpdate(RollupGranularity.DAY);
+        if (days.isEmpty()) {
+            return;
+        }
+        Set<LocalDate> weeks = new TreeSet<>();
+        Set<LocalDate> months = new TreeSet<>();
+        for (PaymentRollup day : days) {
+            weeks.add(RollupGranularity.WEEK.start(day.getPeriodStart()));
+            months.add(RollupGranularity.MONTH.start(day.getPeriodStart()));
+            day.setCompacted(true);
+        }
+        log.debug("Compacting {} days into {} weeks and {} months", days.size(), weeks.size(), months.size());
+        weeks.forEach(week -> rollUp(RollupGranularity.WEEK, week));
+        months.forEach(month -> rollUp(RollupGranularity.MONTH, month));
+        paymentRollupRepository.save(days);
+    }
+
+    /**
+     * Get the rollups of a period.
+     *
+     * @param granularity the granularity of the rollups
+     * @param from the first day of the period, rolled back to the start of its week or month
+     * @param to the last day of the period
+     * @param byUser whether to keep the users apart, or to sum them
+     * @param byJob whether to keep the jobs apart, or to sum them
+     * @return the rollups, in the order of their periods, with {@link PaymentRollup#NONE} as the user or the job
+     * of the sums
+     */
+    @Transactional(readOnly = true)
+    public List<PaymentRollup> findRollups(RollupGranularity granularity, LocalDate from, LocalDate to,
+                                           boolean byUser, boolean byJob) {
+        log.debug("Request to get the {} rollups from {} to {}", granularity, from, to);
+        LocalDate start = granularity.start(from);
+        if (byUser && byJob) {
+            return paymentRollupRepository.findAllByPeriod(granularity, start, to);
+        } else if (byUser) {
+            return paymentRollupRepository.sumByPeriodAndUser(granularity, start, to);
+        } else if (byJob) {
+            return paymentRollupRepository.sumByPeriodAndJob(granularity, start, to);
+        }
+        return paymentRollupRepository.sumByPeriod(granularity, start, to);
+    }
+
+    /**
+     * Create the day rollups which do not exist yet. This runs before the day rollups are locked, so the transactions
+     * creating them never wait for the current one.
+     */
+    private void createMissingDays(Set<Key> keys, List<Object[]> existing) {
+        Set<Key> missing = new TreeSet<>(keys);
+        existing.forEach(row -> missing.remove(new Key((LocalDate) row[0], (Long) row[1], (Long) row[2])));
+        for (Key key : missing) {
+            try {
+                paymentRollupRepository.insertEmptyDay(Date.valueOf(key.periodStart), key.userId, key.jobId);
+            } catch (DataIntegrityViolationException e) {
+                log.debug("The day rollup of {} was created concurrently", key.periodStart);
+            }
+        }
+    }
+
+    private void rollUp(RollupGranularity granularity, LocalDate periodStart) {
+        Map<Key, Delta> sums = new TreeMap<>();
+        for (PaymentRollup day : paymentRollupRepository.findAllByPeriod(RollupGranularity.DAY, periodStart,
+                granularity.next(periodStart).minusDays(1))) {
+            sums.computeIfAbsent(new Key(periodStart, day.getUserId(), day.getJobId()), key -> new Delta())
+                .add(Money.of(day.getTotal()).getMinorUnits(), day.getPayments());
+        }
+        List<PaymentRollup> rollups = new ArrayList<>(sums.size());
+        sums.forEach((key, sum) -> {
+            if (!sum.isEmpty()) {
+                PaymentRollup rollup = new PaymentRollup(granularity, periodStart, key.userId, key.jobId,
+                    BigDecimal.valueOf(sum.totalInCents, Money.SCALE), sum.payments);
+                rollup.setCompacted(true);
+                rollups.add(rollup);
+            }
+        });
+        paymentRollupRepository.deleteByPeriod(granularity, periodStart);
+        paymentRollupRepository.save(rollups);
+    }
+
+    /**
+     * The day, user and job of a day rollup, ordered like the rows are locked.
+     */
+    private static final class Key implements Comparable<Key> {
+
+        private final LocalDate periodStart;
+
+        private final long userId;
+
+        private final long jobId;
+
+        private Key(LocalDate periodStart, long userId, long jobId) {
+            this.periodStart = periodStart;
+            this.userId = userId;
+            this.jobId = jobId;
+        }
+
+        private static Key of(PaymentSnapshot snapshot) {
+            return new Key(snapshot.getTime(),
+                snapshot.getUserId() != null ? snapshot.getUserId() : PaymentRollup.NONE,
+                snapshot.getJobId() != null ? snapshot.getJobId() : PaymentRollup.NONE);
+        }
+
+        private static Key of(PaymentRollup rollup) {
+            return new Key(rollup.getPeriodStart(), rollup.getUserId(), rollup.getJobId());
+        }
+
+        private PaymentRollup newDay() {
+            return new PaymentRollup(RollupGranularity.DAY, periodStart, userId, jobId, BigDecimal.ZERO, 0L);
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int result = periodStart.compareTo(other.periodStart);
+            if (result == 0) {
+                result = Long.compare(userId, other.userId);
+            }
+            return result != 0 ? result : Long.compare(jobId, other.jobId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return userId == key.userId && jobId == key.jobId && periodStart.equals(key.periodStart);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(periodStart, userId, jobId);
+        }
+    }
+
+    private static final class Delta {
+
+        private long totalInCents;
+
+        private long payments;
+
+        private void add(long amountInCents, long count) {
+            totalInCents = Math.addExact(totalInCents, amountInCents);
+            payments += count;
+        }
+
+        private boolean isEmpty() {
+            return payments == 0 && totalInCents == 0;
+        }
+    }
+}
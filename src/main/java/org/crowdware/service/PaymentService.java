@@ -0,0 +1,165 @@
+package org.crowdware.service;
+
+import org.crowdware.domain.Payment;
+import org.crowdware.domain.enumeration.SearchEntityType;
+import org.crowdware.repository.PaymentRepository;
+import org.crowdware.service.leaderboard.LeaderboardService;
+import org.crowdware.service.ledger.LedgerService;
+import org.crowdware.service.search.CursorPage;
+import org.crowdware.service.search.CursorSearchService;
+import org.crowdware.service.search.SearchCursor;
+import org.crowdware.service.search.SearchOutboxService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.inject.Inject;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Service Implementation for managing Payment.
+ * <p>
+ * Every write is recorded in the running totals of the user and the job of the payment, see
+ * {@link PaymentTotalsService}, and in the day rollups, see {@link PaymentRollupService}. It is appended to the payment
+ * ledger just before it commits, and fails if the ledger cannot be written, see {@link LedgerService}. Once committed,
+ * it is applied to the leaderboards, see {@link LeaderboardService}, and indexed in Elasticsearch, see
+ * {@link SearchOutboxService}.
+ */
+@Service
+@Transactional
+public class PaymentService {
+
+    private final Logger log = LoggerFactory.getLogger(PaymentService.class);
+
+    @Inject
+    private PaymentRepository paymentRepository;
+
+    @Inject
+    private CursorSearchService cursorSearchService;
+
+    @Inject
+    private SearchOutboxService searchOutboxService;
+
+    @Inject
+    private LedgerService ledgerService;
+
+    @Inject
+    private PaymentTotalsService paymentTotalsService;
+
+    @Inject
+    private PaymentRollupService paymentRollupService;
+
+    @Inject
+    private LeaderboardService leaderboardService;
+
+    /**
+     * Save a payment.
+     *
+     * @param payment the entity to save
+     * @return the persisted entity
+     */
+    public Payment save(Payment payment) {
+        log.debug("Request to save Payment : {}", payment);
+        return saveAll(Collections.singletonList(payment)).get(0);
+    }
+
+    /**
+     * Save payments in a single transaction, and record them in the ledger with a single append.
+     * <p>
+     * Payment ids come from a pooled sequence, so Hibernate can group the inserts in JDBC batches.
+     *
+     * @param payments the entities to save
+     * @return the persisted entities, in the same order
+     */
+    public List<Payment> saveAll(List<Payment> payments) {
+        log.debug("Request to save {} Payments", payments.size());
+        List<PaymentSnapshot> previous = findPrevious(payments);
+        List<Payment> result = paymentRepository.save(payments);
+        paymentRepository.flush();
+        List<PaymentSnapshot> current = result.stream().map(PaymentSnapshot::of).collect(Collectors.toList());
+        paymentTotalsService.update(previous, current);
+        paymentRollupService.update(previous, current);
+        leaderboardService.update(previous, current);
+        ledgerService.record(previous, result);
+        searchOutboxService.enqueue(SearchEntityType.PAYMENT, result.stream().map(Payment::getId).collect(Collectors.toList()));
+        return result;
+    }
+
+    /**
+     *  Get all the payments.
+     *
+     *  @return the list of entities
+     */
+    @Transactional(readOnly = true)
+    public List<Payment> findAll() {
+        log.debug("Request to get all Payments");
+        return paymentRepository.findAll();
+    }
+
+    /**
+     *  Get one payment by id.
+     *
+     *  @param id the id of the entity
+     *  @return the entity
+     */
+    @Transactional(readOnly = true)
+    public Payment findOne(Long id) {
+        log.debug("Request to get Payment : {}", id);
+        return paymentRepository.findOne(id);
+    }
+
+    /**
+     *  Delete the payment by id.
+     *
+     *  @param id the id of the entity
+     *  @return false if there is no such payment
+     */
+    public boolean delete(Long id) {
+        log.debug("Request to delete Payment : {}", id);
+        List<Payment> locked = paymentRepository.findAllForUpdate(Collections.singletonList(id));
+        if (locked.isEmpty()) {
+            return false;
+        }
+        Payment payment = locked.get(0);
+        paymentRepository.delete(payment);
+        paymentRepository.flush();
+        List<PaymentSnapshot> previous = Collections.singletonList(PaymentSnapshot.of(payment));
+        paymentTotalsService.update(previous, Collections.emptyList());
+        paymentRollupService.update(previous, Collections.emptyList());
+        leaderboardService.update(previous, Collections.emptyList());
+        ledgerService.reverse(previous);
+        searchOutboxService.enqueue(SearchEntityType.PAYMENT, id);
+        return true;
+    }
+
+    /**
+     * Get the stored state of the payments about to be updated, before the new state is merged into them. The rows
+     * stay locked until the transaction ends, so a concurrent write of the same payment waits and then reads the state
+     * this one leaves, and the totals, rollups and leaderboard apply each change once.
+     */
+    private List<PaymentSnapshot> findPrevious(List<Payment> payments) {
+        List<Long> ids = payments.stream().map(Payment::getId).filter(Objects::nonNull).collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return paymentRepository.findAllForUpdate(ids).stream().map(PaymentSnapshot::of).collect(Collectors.toList());
+    }
+
+    /**
+     * Search for a slice of the payments corresponding to the query, after a cursor.
+     *
+     *  @param query the query of the search
+     *  @param cursor the cursor of the slice
+     *  @param size the maximum number of entities, the default one if null
+     *  @return the slice of entities, by ascending id
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<Payment> search(String query, SearchCursor cursor, Integer size) {
+        log.debug("Request to search for a slice of Payments for query {}", query);
+        return cursorSearchService.search(Payment.class, query, cursor, size);
+    }
+}
@@ -0,0 +1,73 @@
+package org.crowdware.service;
+
+import org.crowdware.domain.Payment;
+
+import java.time.LocalDate;
+
+/**
+ * The state of a Payment which counts in the payment aggregates, taken before and after each payment write.
+ */
+public final class PaymentSnapshot {
+
+    private final Long paymentId;
+
+    private final Long userId;
+
+    private final Long jobId;
+
+    private final long amountInCents;
+
+    private final LocalDate time;
+
+    private PaymentSnapshot(Long paymentId, Long userId, Long jobId, long amountInCents, LocalDate time) {
+        this.paymentId = paymentId;
+        this.userId = userId;
+        this.jobId = jobId;
+        this.amountInCents = amountInCents;
+        this.time = time;
+    }
+
+    public static PaymentSnapshot of(Payment payment) {
+        return new PaymentSnapshot(
+            payment.getId(),
+            payment.getUser() != null ? payment.getUser().getId() : null,
+            payment.getJob() != null ? payment.getJob().getId() : null,
+            payment.getAmount() != null ? payment.getAmount().getMinorUnits() : 0L,
+            payment.getTime());
+    }
+
+    /**
+     * @return the id of the payment
+     */
+    public Long getPaymentId() {
+        return paymentId;
+    }
+
+    /**
+     * @return the id of the paid user, or null
+     */
+    public Long getUserId() {
+        return userId;
+    }
+
+    /**
+     * @return the id of the paying job, or null
+     */
+    public Long getJobId() {
+        return jobId;
+    }
+
+    /**
+     * @return the amount in cents, zero when the payment has none
+     */
+    public long getAmountInCents() {
+        return amountInCents;
+    }
+
+    /**
+     * @return the date, or null
+     */
+    public LocalDate getTime() {
+        return time;
+    }
+}
@@ -0,0 +1,197 @@
+package org.crowdware.service;
+
+import org.crowdware.domain.AbstractPaymentTotal;
+import org.crowdware.domain.JobPayout;
+import org.crowdware.domain.Money;
+import org.crowdware.domain.UserEarnings;
+import org.crowdware.repository.JobPayoutRepository;
+import org.crowdware.repository.PaymentRepository;
+import org.crowdware.repository.UserEarningsRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.inject.Inject;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Service Implementation maintaining the running totals of the payments of each User and each Job.
+ * <p>
+ * Totals are updated by deltas in the transaction of the payment writes, see {@link PaymentService}, so reading them
+ * is a primary key lookup instead of a sum over every payment. The changes of a transaction are first summed per
+ * account, in cents, then each touched row is locked and written once, users before jobs and in the order of their
+ * ids. A locking read does not lock missing rows, so the first totals of an account are created beforehand, each in
+ * a transaction of its own which tolerates a concurrent creation, and are then locked like the others.
+ */
+@Service
+@Transactional
+public class PaymentTotalsService {
+
+    private final Logger log = LoggerFactory.getLogger(PaymentTotalsService.class);
+
+    @Inject
+    private UserEarningsRepository userEarningsRepository;
+
+    @Inject
+    private JobPayoutRepository jobPayoutRepository;
+
+    @Inject
+    private PaymentRepository paymentRepository;
+
+    /**
+     * Update the totals with the payments written in the current transaction. Must be called once the writes are
+     * flushed.
+     *
+     * @param removed the previous state of the updated and deleted payments
+     * @param added the new state of the created and updated payments
+     */
+    public void update(Collection<PaymentSnapshot> removed, Collection<PaymentSnapshot> added) {
+        Map<Long, Delta> byUser = new TreeMap<>();
+        Map<Long, Delta> byJob = new TreeMap<>();
+        for (PaymentSnapshot snapshot : removed) {
+            delta(byUser, snapshot.getUserId()).remove(snapshot);
+            delta(byJob, snapshot.getJobId()).remove(snapshot);
+        }
+        for (PaymentSnapshot snapshot : added) {
+            delta(byUser, snapshot.getUserId()).add(snapshot);
+            delta(byJob, snapshot.getJobId()).add(snapshot);
+        }
+        log.debug("Request to update the payment totals of {} users and {} jobs", byUser.size(), byJob.size());
+        updateUsers(byUser);
+        updateJobs(byJob);
+    }
+
+    /**
+     * Get the totals of the payments received by a user.
+     *
+     * @param userId the id of the user
+     * @return the totals, zero if the user has no payment
+     */
+    @Transactional(readOnly = true)
+    public UserEarnings getUserEarnings(Long userId) {
+        UserEarnings earnings = userEarningsRepository.findOne(userId);
+        return earnings != null ? earnings : new UserEarnings(userId);
+    }
+
+    /**
+     * Get the totals of the payments made for a job.
+     *
+     * @param jobId the id of the job
+     * @return the totals, zero if the job has no payment
+     */
+    @Transactional(readOnly = true)
+    public JobPayout getJobPayout(Long jobId) {
+        JobPayout payout = jobPayoutRepository.findOne(jobId);
+        return payout != null ? payout : new JobPayout(jobId);
+    }
+
+    private void updateUsers(Map<Long, Delta> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        createMissing(deltas.keySet(), userEarningsRepository.findExistingIds(deltas.keySet()), userEarningsRepository::insertEmpty);
+        Map<Long, UserEarnings> totals = new HashMap<>();
+        userEarningsRepository.findAllForUpdate(deltas.keySet()).forEach(total -> totals.put(total.getUserId(), total));
+        List<UserEarnings> changed = new ArrayList<>(deltas.size());
+        deltas.forEach((userId, delta) -> {
+            UserEarnings total = totals.computeIfAbsent(userId, UserEarnings::new);
+            delta.applyTo(total, () -> paymentRepository.findLastTimeByUser(userId));
+            changed.add(total);
+        });
+        userEarningsRepository.save(changed);
+    }
+
+    private void updateJobs(Map<Long, Delta> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        createMissing(deltas.keySet(), jobPayoutRepository.findExistingIds(deltas.keySet()), jobPayoutRepository::insertEmpty);
+        Map<Long, JobPayout> totals = new HashMap<>();
+        jobPayoutRepository.findAllForUpdate(deltas.keySet()).forEach(total -> totals.put(total.getJobId(), total));
+        List<JobPayout> changed = new ArrayList<>(deltas.size());
+        deltas.forEach((jobId, delta) -> {
+            JobPayout total = totals.computeIfAbsent(jobId, JobPayout::new);
+            delta.applyTo(total, () -> paymentRepository.findLastTimeByJob(jobId));
+            changed.add(total);
+        });
+        jobPayoutRepository.save(changed);
+    }
+
+    /**
+     * Create the totals which do not exist yet. This runs before the rows of their table are locked, so the
+     * transactions creating them never wait for the current one.
+     */
+    private void createMissing(Set<Long> ids, List<Long> existing, Consumer<Long> insert) {
+        Set<Long> missing = new TreeSet<>(ids);
+        missing.removeAll(existing);
+        for (Long id : missing) {
+            try {
+                insert.accept(id);
+            } catch (DataIntegrityViolationException e) {
+                log.debug("The payment totals of {} were created concurrently", id);
+            }
+        }
+    }
+
+    private static Delta delta(Map<Long, Delta> deltas, Long id) {
+        // payments without user or job are not counted on that side
+        return id == null ? new Delta() : deltas.computeIfAbsent(id, key -> new Delta());
+    }
+
+    private static final class Delta {
+
+        private long amountInCents;
+
+        private long count;
+
+        private LocalDate lastAdded;
+
+        private LocalDate lastRemoved;
+
+        private void add(PaymentSnapshot snapshot) {
+            amountInCents = Math.addExact(amountInCents, snapshot.getAmountInCents());
+            count++;
+            lastAdded = max(lastAdded, snapshot.getTime());
+        }
+
+        private void remove(PaymentSnapshot snapshot) {
+            amountInCents = Math.subtractExact(amountInCents, snapshot.getAmountInCents());
+            count--;
+            lastRemoved = max(lastRemoved, snapshot.getTime());
+        }
+
+        private void applyTo(AbstractPaymentTotal total, Supplier<LocalDate> lastTime) {
+            total.setTotal(total.getTotal().add(BigDecimal.valueOf(amountInCents, Money.SCALE)));
+            total.setPayments(total.getPayments() + count);
+            if (total.getPayments() == 0) {
+                total.setLastPayment(null);
+            } else if (lastRemoved != null
+                && (total.getLastPayment() == null || !lastRemoved.isBefore(total.getLastPayment()))) {
+                // the latest payment may be gone, only the payments themselves know the previous one
+                total.setLastPayment(lastTime.get());
+            } else {
+                total.setLastPayment(max(total.getLastPayment(), lastAdded));
+            }
+        }
+
+        private static LocalDate max(LocalDate a, LocalDate b) {
+            if (a == null) {
+                return b;
+            }
+            return b == null || a.isAfter(b) ? a : b;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.crowdware.service;
+
+import org.crowdware.domain.Job;
+import org.crowdware.domain.Task;
+import org.crowdware.domain.enumeration.SearchEntityType;
+import org.crowdware.repository.JobRepository;
+import org.crowdware.repository.TaskRepository;
+import org.crowdware.service.search.SearchOutboxService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.inject.Inject;
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Service Implementation for the bulk operations on Task.
+ */
+@Service
+@Transactional
+public class TaskService {
+
+    private final Logger log = LoggerFactory.getLogger(TaskService.class);
+
+    @Inject
+    private TaskRepository taskRepository;
+
+    @Inject
+    private JobRepository jobRepository;
+
+    @Inject
+    private SearchOutboxService searchOutboxService;
+
+    /**
+     * Save a chunk of tasks in a single transaction, and queue them for indexing.
+     * <p>
+     * Task ids come from a pooled sequence, so Hibernate can group the inserts in JDBC batches when the chunk is
+     * flushed.
+     *
+     * @param tasks the new tasks
+     * @return the persisted tasks, in the same order
+     */
+    public List<Task> saveAll(List<Task> tasks) {
+        log.debug("Request to save {} Tasks", tasks.size());
+        List<Task> result = taskRepository.save(tasks);
+        taskRepository.flush();
+        searchOutboxService.enqueue(SearchEntityType.TASK, result.stream().map(Task::getId).collect(Collectors.toList()));
+        return result;
+    }
+
+    /**
+     * Delete tasks with a single statement, and queue them for removal from the index.
+     *
+     * @param tasks the persisted tasks
+     */
+    public void deleteAll(List<Task> tasks) {
+        log.debug("Request to delete {} Tasks", tasks.size());
+        taskRepository.deleteInBatch(tasks);
+        searchOutboxService.enqueue(SearchEntityType.TASK, tasks.stream().map(Task::getId).collect(Collectors.toList()));
+    }
+
+    /**
+     * Delete the dispatched tasks whose lease expired, and read their jobs in the same transaction.
+     * <p>
+     * Only the tasks leased by the JobDispatcher and which have not ended are deleted: a task past its end is done,
+     * and was not abandoned by its app.
+     *
+     * @param ids the ids of the tasks whose lease expired
+     * @return the jobs of the deleted tasks by task id, in the order of the ids, with a null job if it was deleted
+     */
+    public Map<Long, Job> reclaim(List<Long> ids) {
+        log.debug("Request to reclaim {} Tasks", ids.size());
+        ZonedDateTime now = ZonedDateTime.now();
+        List<Task> tasks = taskRepository.findAll(ids).stream()
+            .filter(task -> task.isLeased() && task.getEnd().isAfter(now))
+            .collect(Collectors.toList());
+        Map<Long, Job> reclaimed = new LinkedHashMap<>();
+        if (tasks.isEmpty()) {
+            return reclaimed;
+        }
+        deleteAll(tasks);
+        List<Long> jobIds = tasks.stream()
+            .map(Task::getJob)
+            .filter(Objects::nonNull)
+            .distinct()
+            .collect(Collectors.toList());
+        Map<Long, Job> jobs = jobRepository.findAll(jobIds).stream()
+            .collect(Collectors.toMap(Job::getId, Function.identity()));
+        tasks.forEach(task -> reclaimed.put(task.getId(), jobs.get(task.getJob())));
+        return reclaimed;
+    }
+}
@@ -3,11 +3,12 @@ package org.crowdware.service;
 import org.crowdware.domain.Authority;
 import org.crowdware.domain.PersistentToken;
 import org.crowdware.domain.User;
+import org.crowdware.domain.enumeration.SearchEntityType;
 import org.crowdware.repository.AuthorityRepository;
 import org.crowdware.repository.PersistentTokenRepository;
 import org.crowdware.repository.UserRepository;
-import org.crowdware.repository.search.UserSearchRepository;
 import org.crowdware.security.SecurityUtils;
+import org.crowdware.service.search.SearchOutboxService;
 import org.crowdware.service.util.RandomUtil;
 import org.crowdware.web.rest.dto.ManagedUserDTO;
 import java.time.ZonedDateTime;
@@ -40,7 +41,7 @@ public class UserService {
     private UserRepository userRepository;
 
     @Inject
-    private UserSearchRepository userSearchRepository;
+    private SearchOutboxService searchOutboxService;
 
 
     @Inject
@@ -57,7 +58,7 @@ public class UserService {
                 user.setActivated(true);
                 user.setActivationKey(null);
                 userRepository.save(user);
-                userSearchRepository.save(user);
+                searchOutboxService.enqueue(SearchEntityType.USER, user.getId());
                 log.debug("Activated user: {}", user);
                 return user;
             });
@@ -112,7 +113,7 @@ public class UserService {
         authorities.add(authority);
         newUser.setAuthorities(authorities);
         userRepository.save(newUser);
-        userSearchRepository.save(newUser);
+        searchOutboxService.enqueue(SearchEntityType.USER, newUser.getId());
         log.debug("Created Information for User: {}", newUser);
         return newUser;
     }
@@ -141,7 +142,7 @@ public class UserService {
         user.setResetDate(ZonedDateTime.now());
         user.setActivated(true);
         userRepository.save(user);
-        userSearchRepository.save(user);
+        searchOutboxService.enqueue(SearchEntityType.USER, user.getId());
         log.debug("Created Information for User: {}", user);
         return user;
     }
@@ -153,7 +154,7 @@ public class UserService {
             u.setEmail(email);
             u.setLangKey(langKey);
             userRepository.save(u);
-            userSearchRepository.save(u);
+            searchOutboxService.enqueue(SearchEntityType.USER, u.getId());
             log.debug("Changed Information for User: {}", u);
         });
     }
@@ -161,7 +162,7 @@ public class UserService {
     public void deleteUserInformation(String login) {
         userRepository.findOneByLogin(login).ifPresent(u -> {
             userRepository.delete(u);
-            userSearchRepository.delete(u);
+            searchOutboxService.enqueue(SearchEntityType.USER, u.getId());
             log.debug("Deleted User: {}", u);
         });
     }
@@ -228,7 +229,7 @@ public class UserService {
         for (User user : users) {
             log.debug("Deleting not activated user {}", user.getLogin());
             userRepository.delete(user);
-            userSearchRepository.delete(user);
+            searchOutboxService.enqueue(SearchEntityType.USER, user.getId());
         }
     }
 }
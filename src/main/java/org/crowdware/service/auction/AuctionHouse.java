@@ -0,0 +1,221 @@
+package org.crowdware.service.auction;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.crowdware.config.CrowdwareProperties;
+import org.crowdware.domain.App;
+import org.crowdware.domain.Job;
+import org.crowdware.domain.Money;
+import org.crowdware.domain.Task;
+import org.crowdware.service.AuctionService;
+import org.crowdware.service.dispatch.JobDispatcher;
+import org.crowdware.service.dispatch.TaskLeaseService;
+import org.crowdware.service.index.JobOfferBook;
+import org.crowdware.service.index.TaskIntervalIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Runs sealed-bid auctions on Jobs, as an alternative to the fixed price dispatch of the {@link JobDispatcher}.
+ * <p>
+ * An auctioned job leaves the dispatch queue, and its bids are collected in memory in its own {@link BidBook}, so
+ * bidding on one job never contends with bidding on another one. Auctions are not settled one request at a time:
+ * a scheduled round closes every auction whose bidding ended, and writes the Tasks and the Payments of all the winners
+ * in batched transactions. An auction without bids returns its job to the dispatch queue.
+ * <p>
+ * Books are not persisted, the auctions still open when the application stops are lost and their jobs are dispatched
+ * again at the next startup. Jobs are only auctioned on the node which dispatches them, as only its queue holds them.
+ */
+@Service
+public class AuctionHouse {
+
+    private final Logger log = LoggerFactory.getLogger(AuctionHouse.class);
+
+    private final ConcurrentHashMap<Long, BidBook> books = new ConcurrentHashMap<>();
+
+    @Inject
+    private AuctionService auctionService;
+
+    @Inject
+    private JobDispatcher jobDispatcher;
+
+    @Inject
+    private JobOfferBook jobOfferBook;
+
+    @Inject
+    private TaskIntervalIndex taskIntervalIndex;
+
+    @Inject
+    private TaskLeaseService taskLeaseService;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private Meter bids;
+
+    private Meter settlements;
+
+    private Timer rounds;
+
+    @PostConstruct
+    public void init() {
+        bids = metricRegistry.meter(MetricRegistry.name(AuctionHouse.class, "bids"));
+        settlements = metricRegistry.meter(MetricRegistry.name(AuctionHouse.class, "settlements"));
+        rounds = metricRegistry.timer(MetricRegistry.name(AuctionHouse.class, "rounds"));
+        metricRegistry.register(MetricRegistry.name(AuctionHouse.class, "open-auctions"), (Gauge<Integer>) books::size);
+    }
+
+    /**
+     * Put an open job up for auction.
+     *
+     * @param job the persisted job
+     * @param duration how long bids are accepted
+     * @return the book of the auction, or null if the job is not waiting for an App
+     */
+    public BidBook open(Job job, Duration duration) {
+        if (!jobDispatcher.withhold(job.getId())) {
+            return null;
+        }
+        BidBook book = new BidBook(job, System.currentTimeMillis() + duration.toMillis());
+        books.put(job.getId(), book);
+        jobOfferBook.remove(job.getId());
+        log.debug("Opened the auction of Job {} until {}", job.getId(), book.getClosesAt());
+        return book;
+    }
+
+    /**
+     * Submit or replace the bid of an App on a job.
+     *
+     * @param jobId the id of the auctioned job
+     * @param app the bidding app
+     * @param amount the amount the app asks to be paid for the job
+     * @return the outcome of the submission
+     */
+    public BidBook.Outcome bid(Long jobId, App app, Money amount) {
+        BidBook book = books.get(jobId);
+        if (book == null) {
+            return BidBook.Outcome.NO_AUCTION;
+        }
+        BidBook.Outcome outcome = book.submit(app, amount, System.currentTimeMillis());
+        if (outcome == BidBook.Outcome.ACCEPTED) {
+            bids.mark();
+        }
+        return outcome;
+    }
+
+    /**
+     * Get the book of the running auction of a job.
+     *
+     * @param jobId the id of the job
+     * @return the book, or null if the job is not auctioned
+     */
+    public BidBook getBook(Long jobId) {
+        return books.get(jobId);
+    }
+
+    /**
+     * Drop the auction of a job, and its bids.
+     *
+     * @param jobId the id of the job
+     */
+    public void cancel(Long jobId) {
+        books.remove(jobId);
+        jobDispatcher.release(jobId);
+    }
+
+    /**
+     * Settle the auctions whose bidding ended.
+     */
+    @Scheduled(fixedDelayString = "${crowdware.auction.roundInterval:1000}")
+    public void settleRound() {
+        settle(System.currentTimeMillis());
+    }
+
+    /**
+     * Settle the auctions whose bidding ended at a given time, in batches.
+     *
+     * @param now the current time, in milliseconds since the epoch
+     * @return the number of settled auctions, with or without a winner
+     */
+    public int settle(long now) {
+        List<BidBook> due = books.values().stream()
+            .filter(book -> book.getClosesAt() <= now)
+            .sorted(Comparator.comparingLong(BidBook::getClosesAt))
+            .collect(Collectors.toList());
+        if (due.isEmpty()) {
+            return 0;
+        }
+        int batchSize = crowdwareProperties.getAuction().getBatchSize();
+        int settled = 0;
+        Timer.Context context = rounds.time();
+        try {
+            for (int from = 0; from < due.size(); from += batchSize) {
+                settled += settleBatch(due.subList(from, Math.min(from + batchSize, due.size())));
+            }
+        } finally {
+            context.stop();
+        }
+        log.debug("Settled {} of {} due auctions", settled, due.size());
+        return settled;
+    }
+
+    public int getOpenAuctions() {
+        return books.size();
+    }
+
+    private int settleBatch(List<BidBook> batch) {
+        List<BidBook> sold = new ArrayList<>(batch.size());
+        List<BidBook> unsold = new ArrayList<>();
+        for (BidBook book : batch) {
+            if (book.close() != null) {
+                sold.add(book);
+            } else {
+                unsold.add(book);
+            }
+        }
+        for (BidBook book : unsold) {
+            if (books.remove(book.getJob().getId(), book)) {
+                jobDispatcher.release(book.getJob().getId());
+                jobDispatcher.submit(book.getJob());
+                jobOfferBook.put(book.getJob());
+            }
+        }
+        if (sold.isEmpty()) {
+            return unsold.size();
+        }
+        ZonedDateTime start = ZonedDateTime.now();
+        ZonedDateTime end = start.plusSeconds(crowdwareProperties.getDispatch().getTaskDurationInSeconds());
+        try {
+            List<Task> tasks = auctionService.settle(sold, start, end);
+            sold.forEach(book -> {
+                books.remove(book.getJob().getId(), book);
+                jobDispatcher.release(book.getJob().getId());
+            });
+            tasks.forEach(taskIntervalIndex::index);
+            tasks.forEach(taskLeaseService::grant);
+            settlements.mark(tasks.size());
+            return unsold.size() + tasks.size();
+        } catch (RuntimeException e) {
+            // the books stay closed with the same winners, the next round retries them
+            log.error("Could not settle {} auctions, retrying at the next round", sold.size(), e);
+            return unsold.size();
+        }
+    }
+}
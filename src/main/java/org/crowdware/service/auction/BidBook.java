@@ -0,0 +1,159 @@
+package org.crowdware.service.auction;
+
+import org.crowdware.domain.App;
+import org.crowdware.domain.Job;
+import org.crowdware.domain.Money;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The sealed bids of the auction of one Job.
+ * <p>
+ * Every App has at most one bid, a new bid replaces the previous one. Bids are not compared when they are submitted:
+ * submitting is a single put in a concurrent map, under the shared side of a read-write lock, so concurrent bidders
+ * on a popular job do not wait on each other. The exclusive side is only taken once, to close the book, which
+ * guarantees that no bid is accepted after the winner was chosen.
+ * <p>
+ * The lowest bid wins, the earliest one on a tie, and the winner is paid its own bid. A bid above the offer of the
+ * job, when it has one, is rejected.
+ */
+public class BidBook {
+
+    /**
+     * The outcome of a bid submission.
+     */
+    public enum Outcome {
+        ACCEPTED, NO_AUCTION, CLOSED, ABOVE_RESERVE
+    }
+
+    private final Job job;
+
+    private final long closesAt;
+
+    private final ConcurrentHashMap<Long, Bid> bids = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private boolean closed;
+
+    private Bid winner;
+
+    /**
+     * Create the book of an auction.
+     *
+     * @param job the auctioned job
+     * @param closesAt the time at which bidding ends, in milliseconds since the epoch
+     */
+    public BidBook(Job job, long closesAt) {
+        this.job = job;
+        this.closesAt = closesAt;
+    }
+
+    public Job getJob() {
+        return job;
+    }
+
+    public long getClosesAt() {
+        return closesAt;
+    }
+
+    /**
+     * Get the number of bidders.
+     *
+     * @return the number of bids
+     */
+    public int size() {
+        return bids.size();
+    }
+
+    /**
+     * Submit or replace the bid of an App.
+     *
+     * @param app the bidding app
+     * @param amount the amount the app asks to be paid for the job
+     * @param now the current time, in milliseconds since the epoch
+     * @return the outcome of the submission
+     */
+    public Outcome submit(App app, Money amount, long now) {
+        Money reserve = job.getOffer();
+        if (reserve != null && amount.compareTo(reserve) > 0) {
+            return Outcome.ABOVE_RESERVE;
+        }
+        if (now >= closesAt) {
+            return Outcome.CLOSED;
+        }
+        Lock read = lock.readLock();
+        // the exclusive lock is only ever taken to close the book
+        if (!read.tryLock()) {
+            return Outcome.CLOSED;
+        }
+        try {
+            if (closed) {
+                return Outcome.CLOSED;
+            }
+            bids.put(app.getId(), new Bid(app, amount, sequence.incrementAndGet()));
+            return Outcome.ACCEPTED;
+        } finally {
+            read.unlock();
+        }
+    }
+
+    /**
+     * Stop accepting bids and choose the winner. Closing a closed book returns the same winner.
+     *
+     * @return the winning bid, or null if there is no bid
+     */
+    public Bid close() {
+        Lock write = lock.writeLock();
+        write.lock();
+        try {
+            if (!closed) {
+                closed = true;
+                for (Bid bid : bids.values()) {
+                    if (winner == null || bid.beats(winner)) {
+                        winner = bid;
+                    }
+                }
+            }
+            return winner;
+        } finally {
+            write.unlock();
+        }
+    }
+
+    /**
+     * A sealed bid.
+     */
+    public static final class Bid {
+
+        private final App app;
+
+        private final Money amount;
+
+        private final long sequence;
+
+        private Bid(App app, Money amount, long sequence) {
+            this.app = app;
+            this.amount = amount;
+            this.sequence = sequence;
+        }
+
+        public App getApp() {
+            return app;
+        }
+
+        public Money getAmount() {
+            return amount;
+        }
+
+        private boolean beats(Bid other) {
+            int cmp = amount.compareTo(other.amount);
+            return cmp < 0 || cmp == 0 && sequence < other.sequence;
+        }
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Sealed-bid auctions of Jobs.
+ */
+package org.crowdware.service.auction;
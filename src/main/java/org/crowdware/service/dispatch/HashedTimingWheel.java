@@ -0,0 +1,199 @@
+package org.crowdware.service.dispatch;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A hashed timing wheel of deadlines, in the spirit of Varghese and Lauck.
+ * <p>
+ * Time is cut in ticks of a fixed duration, and each timeout sits in the bucket of its deadline tick, modulo the
+ * wheel size. Scheduling is O(1), and {@link #expire(long, int)} only visits the buckets of the ticks that elapsed
+ * since its last call, never the whole set of timeouts. A timeout fires at most one tick after its deadline.
+ * <p>
+ * Extending a timeout does not touch the wheel: it only moves the deadline forward, and the timeout is moved to its
+ * new bucket lazily, when its old bucket comes up. This keeps extensions lock-free, so they can be called at a high
+ * rate from many threads. Scheduling and expiring are synchronized.
+ *
+ * @param <T> the type of the items carried by the timeouts
+ */
+public class HashedTimingWheel<T> {
+
+    private static final long DEAD = Long.MIN_VALUE;
+
+    private final long tickDuration;
+
+    private final int mask;
+
+    private final ArrayDeque<Timeout<T>>[] buckets;
+
+    private long nextTick;
+
+    private int size;
+
+    /**
+     * Create an empty wheel.
+     *
+     * @param tickDuration the duration of a tick, in the same unit as the deadlines
+     * @param wheelSize the number of buckets, rounded up to a power of two
+     * @param now the current time
+     */
+    @SuppressWarnings("unchecked")
+    public HashedTimingWheel(long tickDuration, int wheelSize, long now) {
+        if (tickDuration <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("The tick duration and the wheel size must be positive");
+        }
+        int normalizedSize = Integer.highestOneBit(wheelSize);
+        if (normalizedSize < wheelSize) {
+            normalizedSize <<= 1;
+        }
+        this.tickDuration = tickDuration;
+        this.mask = normalizedSize - 1;
+        this.buckets = new ArrayDeque[normalizedSize];
+        for (int i = 0; i < normalizedSize; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+        this.nextTick = now / tickDuration;
+    }
+
+    /**
+     * Schedule a new timeout.
+     *
+     * @param item the item to return when the timeout expires
+     * @param deadline the time at which the timeout expires
+     * @return the timeout, to extend or cancel it
+     */
+    public synchronized Timeout<T> schedule(T item, long deadline) {
+        Timeout<T> timeout = new Timeout<>(item, deadline);
+        place(timeout, deadline);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Expire the timeouts whose deadline tick is over.
+     * <p>
+     * When more than {@code limit} timeouts are due, the remaining ones are returned by the next calls.
+     *
+     * @param now the current time
+     * @param limit the maximum number of timeouts to expire
+     * @return the items of the expired timeouts
+     */
+    public synchronized List<T> expire(long now, int limit) {
+        List<T> expired = new ArrayList<>();
+        long lastTick = now / tickDuration - 1;
+        while (nextTick <= lastTick && expired.size() < limit) {
+            int index = (int) (nextTick & mask);
+            ArrayDeque<Timeout<T>> bucket = buckets[index];
+            buckets[index] = new ArrayDeque<>();
+            Timeout<T> timeout;
+            while ((timeout = bucket.poll()) != null) {
+                if (expired.size() == limit) {
+                    buckets[index].add(timeout);
+                    continue;
+                }
+                long deadline = timeout.deadline.get();
+                if (deadline == DEAD) {
+                    size--;
+                } else if (deadline / tickDuration > nextTick) {
+                    place(timeout, deadline);
+                } else if (timeout.deadline.compareAndSet(deadline, DEAD)) {
+                    size--;
+                    expired.add(timeout.item);
+                } else {
+                    // Extended or cancelled concurrently, have another look at it with the next tick
+                    buckets[(int) ((nextTick + 1) & mask)].add(timeout);
+                }
+            }
+            if (expired.size() < limit || buckets[index].isEmpty()) {
+                nextTick++;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Get the number of timeouts in the wheel, including the cancelled ones which were not yet swept.
+     *
+     * @return the number of timeouts
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private void place(Timeout<T> timeout, long deadline) {
+        long tick = Math.max(deadline / tickDuration, nextTick);
+        buckets[(int) (tick & mask)].add(timeout);
+    }
+
+    /**
+     * A scheduled deadline, which can be extended or cancelled until it expires.
+     *
+     * @param <T> the type of the item
+     */
+    public static final class Timeout<T> {
+
+        private final T item;
+
+        private final AtomicLong deadline;
+
+        private Timeout(T item, long deadline) {
+            this.item = item;
+            this.deadline = new AtomicLong(deadline);
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        /**
+         * Get the deadline of the timeout.
+         *
+         * @return the deadline, or {@link Long#MIN_VALUE} once the timeout expired or was cancelled
+         */
+        public long getDeadline() {
+            return deadline.get();
+        }
+
+        public boolean isAlive() {
+            return deadline.get() != DEAD;
+        }
+
+        /**
+         * Push the deadline back. An earlier deadline is ignored.
+         *
+         * @param newDeadline the new deadline
+         * @return false if the timeout already expired or was cancelled
+         */
+        public boolean extend(long newDeadline) {
+            long current;
+            do {
+                current = deadline.get();
+                if (current == DEAD) {
+                    return false;
+                }
+                if (newDeadline <= current) {
+                    return true;
+                }
+            } while (!deadline.compareAndSet(current, newDeadline));
+            return true;
+        }
+
+        /**
+         * Cancel the timeout, it is swept from the wheel when its bucket comes up.
+         *
+         * @return false if the timeout already expired or was cancelled
+         */
+        public boolean cancel() {
+            long current;
+            do {
+                current = deadline.get();
+                if (current == DEAD) {
+                    return false;
+                }
+            } while (!deadline.compareAndSet(current, DEAD));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,545 @@
+package org.crowdware.service.dispatch;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.crowdware.config.CrowdwareProperties;
+import org.crowdware.domain.App;
+import org.crowdware.domain.ClusterLock;
+import org.crowdware.domain.DispatchAvailability;
+import org.crowdware.domain.Job;
+import org.crowdware.domain.Task;
+import org.crowdware.repository.ClusterLockRepository;
+import org.crowdware.repository.DispatchAvailabilityRepository;
+import org.crowdware.repository.JobRepository;
+import org.crowdware.repository.TaskRepository;
+import org.crowdware.service.TaskService;
+import org.crowdware.service.index.JobOfferBook;
+import org.crowdware.service.index.TaskIntervalIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Assigns open Jobs to available Apps, and creates the matching Tasks.
+ * <p>
+ * Unassigned jobs and the free slots announced through {@link #addAvailability(App, int)} wait in a
+ * {@link ShardedJobQueue}. Each shard is drained by its own worker thread, which matches jobs to slots in memory,
+ * steals jobs from the other shards when it runs out, and writes the resulting Tasks in batches, so there is no
+ * database round-trip per decision and assignment throughput grows with the number of cores. The partitioning of jobs
+ * and slots across the shards is configured with {@code crowdware.dispatch.partitioning}.
+ * <p>
+ * Dispatched tasks are leased to their apps through the {@link TaskLeaseService}. When a lease expires before the end
+ * of its task, the task is deleted and its job goes back to the queue, see {@link #reclaimExpiredLeases()}.
+ * <p>
+ * A single node dispatches: the one holding the {@link ClusterLock#JOB_DISPATCH} lease, renewed every
+ * {@code crowdware.dispatch.syncInterval} milliseconds for {@code crowdware.dispatch.leaderLeaseDuration}
+ * milliseconds, so the clocks of the nodes must be synchronized. The other nodes keep no queue: the slots announced
+ * to them are stored as {@link DispatchAvailability} rows, and the dispatching node reloads the unassigned jobs and
+ * moves those rows into its queue at each renewal. A task is never created for a job which already has one, even if
+ * it was created on another node since the job was queued. A node which takes the lease over starts from the
+ * unassigned jobs, the slots held by the previous node are lost and must be announced again.
+ */
+@Service
+public class JobDispatcher implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final Logger log = LoggerFactory.getLogger(JobDispatcher.class);
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final ReadWriteLock syncLock = new ReentrantReadWriteLock();
+
+    private final Set<Long> withheld = ConcurrentHashMap.newKeySet();
+
+    private volatile ShardedJobQueue queue;
+
+    private int shardCount;
+
+    private JobPartitioner partitioner;
+
+    private volatile long leaseEnd;
+
+    private volatile Thread[] workers;
+
+    private volatile boolean running;
+
+    @Inject
+    private JobRepository jobRepository;
+
+    @Inject
+    private TaskRepository taskRepository;
+
+    @Inject
+    private ClusterLockRepository clusterLockRepository;
+
+    @Inject
+    private DispatchAvailabilityRepository dispatchAvailabilityRepository;
+
+    @Inject
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    @Inject
+    private TaskService taskService;
+
+    @Inject
+    private TaskIntervalIndex taskIntervalIndex;
+
+    @Inject
+    private JobOfferBook jobOfferBook;
+
+    @Inject
+    private TaskLeaseService taskLeaseService;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private Meter assignments;
+
+    private Timer flushes;
+
+    private Meter reclaims;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        CrowdwareProperties.Dispatch dispatch = crowdwareProperties.getDispatch();
+        int shards = dispatch.getShards() > 0 ? dispatch.getShards() : Runtime.getRuntime().availableProcessors();
+        shardCount = shards;
+        partitioner = JobPartitioner.Strategy.valueOf(dispatch.getPartitioning().toUpperCase(Locale.ENGLISH));
+        queue = new ShardedJobQueue(shards, partitioner);
+
+        assignments = metricRegistry.meter(MetricRegistry.name(JobDispatcher.class, "assignments"));
+        flushes = metricRegistry.timer(MetricRegistry.name(JobDispatcher.class, "flushes"));
+        reclaims = metricRegistry.meter(MetricRegistry.name(JobDispatcher.class, "reclaims"));
+        metricRegistry.register(MetricRegistry.name(JobDispatcher.class, "queue-depth"), (Gauge<Integer>) this::getQueueDepth);
+        metricRegistry.register(MetricRegistry.name(JobDispatcher.class, "available-slots"), (Gauge<Integer>) this::getAvailableSlots);
+        for (int i = 0; i < shards; i++) {
+            int index = i;
+            String shard = "shard-" + index;
+            metricRegistry.register(MetricRegistry.name(JobDispatcher.class, shard, "depth"), (Gauge<Integer>) () -> queue.getDepth(index));
+            metricRegistry.register(MetricRegistry.name(JobDispatcher.class, shard, "available-slots"), (Gauge<Integer>) () -> queue.getSlots(index));
+            metricRegistry.register(MetricRegistry.name(JobDispatcher.class, shard, "steals"), (Gauge<Long>) () -> queue.getSteals(index));
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        startWorkers();
+        synchronize();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        Thread[] current = workers;
+        if (current != null) {
+            for (Thread worker : current) {
+                LockSupport.unpark(worker);
+            }
+        }
+    }
+
+    /**
+     * Renew the dispatch lease, or take it if it expired, then reload the unassigned jobs and the slots announced to
+     * the other nodes. A node which cannot renew its lease stops dispatching.
+     * <p>
+     * This is scheduled to run every {@code crowdware.dispatch.syncInterval} milliseconds.
+     */
+    @Scheduled(fixedDelayString = "${crowdware.dispatch.syncInterval:10000}", initialDelayString = "${crowdware.dispatch.syncInterval:10000}")
+    public void synchronize() {
+        boolean wasLeader = isLeader();
+        if (!renewLease()) {
+            if (wasLeader || leaseEnd != 0L) {
+                stepDown();
+            }
+            return;
+        }
+        if (wasLeader) {
+            synchronizeJobs(queue);
+        } else {
+            takeOver();
+        }
+        moveAvailability();
+    }
+
+    /**
+     * @return true if this node holds the dispatch lease
+     */
+    public boolean isLeader() {
+        return System.currentTimeMillis() < leaseEnd;
+    }
+
+    /**
+     * Queue an open job, or update its priority if it is already queued. Only the dispatching node queues jobs, the
+     * others leave them to its next synchronization.
+     *
+     * @param job the persisted job
+     */
+    public void submit(Job job) {
+        if (isLeader() && !withheld.contains(job.getId())) {
+            wakeUp(queue.submit(job));
+        }
+    }
+
+    /**
+     * Take a queued job out of the dispatch until it is {@link #release(Long) released}, for instance to auction it.
+     *
+     * @param id the id of the job
+     * @return true if the job was queued, and is now withheld
+     */
+    public boolean withhold(Long id) {
+        syncLock.readLock().lock();
+        try {
+            if (!queue.cancel(id)) {
+                return false;
+            }
+            withheld.add(id);
+            return true;
+        } finally {
+            syncLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Let a withheld job be dispatched again, once it is submitted or reloaded.
+     *
+     * @param id the id of the job
+     */
+    public void release(Long id) {
+        withheld.remove(id);
+    }
+
+    /**
+     * Remove a job from the queue. A job which is being dispatched is cancelled too, and the task created for it is
+     * withdrawn.
+     *
+     * @param id the id of the job
+     * @return true if the job was queued or being dispatched
+     */
+    public boolean cancel(Long id) {
+        return queue.cancel(id);
+    }
+
+    /**
+     * Announce that an App can take more tasks. A node which does not dispatch stores the slots for the dispatching
+     * node.
+     *
+     * @param app the available app
+     * @param slots the number of tasks the app can take
+     */
+    public void addAvailability(App app, int slots) {
+        if (isLeader()) {
+            wakeUp(queue.addSlots(app, slots));
+        } else {
+            transactionTemplate.execute(status -> dispatchAvailabilityRepository.save(new DispatchAvailability(app, slots, ZonedDateTime.now())));
+        }
+    }
+
+    /**
+     * Match the jobs of a shard to available apps, and persist the resulting tasks in batches.
+     *
+     * @param shard the index of the shard
+     * @return the number of matched jobs
+     */
+    public int dispatch(int shard) {
+        int batchSize = crowdwareProperties.getDispatch().getBatchSize();
+        int dispatched = 0;
+        List<ShardedJobQueue.Match> batch;
+        do {
+            ShardedJobQueue current = queue;
+            batch = current.poll(shard, batchSize);
+            if (!batch.isEmpty()) {
+                persist(current, shard, batch);
+                dispatched += batch.size();
+            }
+        } while (batch.size() == batchSize && isLeader());
+        return dispatched;
+    }
+
+    /**
+     * Return the jobs of the tasks whose lease expired to the queue, in batches.
+     */
+    @Scheduled(fixedDelayString = "${crowdware.lease.tickDuration:100}")
+    public void reclaimExpiredLeases() {
+        int batchSize = crowdwareProperties.getLease().getBatchSize();
+        List<Long> expired;
+        do {
+            expired = taskLeaseService.expire(batchSize);
+            if (!expired.isEmpty()) {
+                reclaim(expired);
+            }
+        } while (expired.size() == batchSize);
+    }
+
+    public int getQueueDepth() {
+        return queue.getDepth();
+    }
+
+    public int getAvailableSlots() {
+        return queue.getSlots();
+    }
+
+    public long getAssignmentCount() {
+        return assignments.getCount();
+    }
+
+    public double getAssignmentRate() {
+        return assignments.getOneMinuteRate();
+    }
+
+    private synchronized void startWorkers() {
+        if (workers != null) {
+            return;
+        }
+        running = true;
+        Thread[] started = new Thread[queue.getShardCount()];
+        for (int i = 0; i < started.length; i++) {
+            int shard = i;
+            started[i] = new Thread(() -> work(shard), "crowdware-dispatch-" + shard);
+            started[i].setDaemon(true);
+        }
+        workers = started;
+        for (Thread worker : started) {
+            worker.start();
+        }
+        log.debug("Started {} dispatch workers", started.length);
+    }
+
+    private void work(int shard) {
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(crowdwareProperties.getDispatch().getFlushInterval());
+        while (running) {
+            try {
+                if (!isLeader() || dispatch(shard) == 0) {
+                    LockSupport.parkNanos(this, idleNanos);
+                }
+            } catch (RuntimeException e) {
+                log.error("Dispatch worker of shard {} failed, retrying", shard, e);
+                LockSupport.parkNanos(this, idleNanos);
+            }
+        }
+    }
+
+    private void wakeUp(int shard) {
+        Thread[] current = workers;
+        if (current != null) {
+            LockSupport.unpark(current[shard]);
+        }
+    }
+
+    private void persist(ShardedJobQueue queue, int shard, List<ShardedJobQueue.Match> batch) {
+        // a synchronization must not read the jobs of this batch as unassigned and queue them again
+        syncLock.readLock().lock();
+        try {
+            persistLocked(queue, shard, batch);
+        } finally {
+            syncLock.readLock().unlock();
+        }
+    }
+
+    private void persistLocked(ShardedJobQueue queue, int shard, List<ShardedJobQueue.Match> batch) {
+        if (!isLeader()) {
+            queue.requeue(shard, batch);
+            return;
+        }
+        ZonedDateTime start = ZonedDateTime.now();
+        ZonedDateTime end = start.plusSeconds(crowdwareProperties.getDispatch().getTaskDurationInSeconds());
+        List<Task> tasks = new ArrayList<>(batch.size());
+        // jobs given a task on another node since they were queued, their matches are cancelled and their slots freed
+        Set<Long> assigned = new HashSet<>(taskRepository.findAssignedJobs(
+            batch.stream().map(ShardedJobQueue.Match::getJobId).collect(Collectors.toList())));
+        for (ShardedJobQueue.Match match : batch) {
+            if (assigned.contains(match.getJobId())) {
+                queue.cancel(match.getJobId());
+                continue;
+            }
+            Task task = new Task();
+            task.setJob(match.getJobId());
+            task.setApp(match.getApp().getId());
+            task.setApp_con(match.getApp());
+            task.setStart(start);
+            task.setEnd(end);
+            task.setLeased(true);
+            tasks.add(task);
+        }
+        Timer.Context context = flushes.time();
+        List<Task> result;
+        try {
+            result = taskService.saveAll(tasks);
+        } catch (RuntimeException e) {
+            log.error("Could not persist {} dispatched Tasks, returning their Jobs to the queue", batch.size(), e);
+            queue.requeue(shard, batch);
+            return;
+        } finally {
+            context.stop();
+        }
+        List<ShardedJobQueue.Match> cancelled = queue.complete(shard, batch);
+        if (!cancelled.isEmpty()) {
+            result = withdraw(result, cancelled);
+        }
+        assigned.forEach(jobOfferBook::remove);
+        result.forEach(taskIntervalIndex::index);
+        result.forEach(task -> jobOfferBook.remove(task.getJob()));
+        result.forEach(taskLeaseService::grant);
+        assignments.mark(result.size());
+        log.debug("Dispatched {} Tasks from shard {}", result.size(), shard);
+    }
+
+    private boolean renewLease() {
+        long leaseDuration = crowdwareProperties.getDispatch().getLeaderLeaseDuration();
+        long start = System.currentTimeMillis();
+        ZonedDateTime now = ZonedDateTime.now();
+        try {
+            Integer leased = transactionTemplate.execute(status -> clusterLockRepository.lease(ClusterLock.JOB_DISPATCH,
+                nodeId, now, now.plus(Duration.ofMillis(leaseDuration))));
+            if (leased == null || leased == 0) {
+                return false;
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not renew the job dispatch lease: {}", e.getMessage());
+            return false;
+        }
+        // counted from before the renewal, so this node stops before another one can take the lease
+        leaseEnd = start + leaseDuration;
+        return true;
+    }
+
+    private void takeOver() {
+        ShardedJobQueue fresh = new ShardedJobQueue(shardCount, partitioner);
+        synchronizeJobs(fresh);
+        queue = fresh;
+        for (int i = 0; i < shardCount; i++) {
+            wakeUp(i);
+        }
+        log.info("This node now dispatches the Jobs, {} unassigned Jobs queued", fresh.getDepth());
+    }
+
+    private void stepDown() {
+        leaseEnd = 0L;
+        queue = new ShardedJobQueue(shardCount, partitioner);
+        withheld.clear();
+        log.warn("This node lost the job dispatch lease, and stopped dispatching");
+    }
+
+    /**
+     * Queue the unassigned jobs, updating the priority of the queued ones, and drop the queued jobs which got a task
+     * or were deleted on another node.
+     */
+    private void synchronizeJobs(ShardedJobQueue target) {
+        syncLock.writeLock().lock();
+        try {
+            List<Job> jobs = jobRepository.findUnassigned();
+            Set<Long> unassigned = new HashSet<>();
+            long lastId = 0L;
+            for (Job job : jobs) {
+                unassigned.add(job.getId());
+                lastId = Math.max(lastId, job.getId());
+                if (!withheld.contains(job.getId())) {
+                    wakeUp(target.submit(job));
+                }
+            }
+            int dropped = 0;
+            for (Long id : target.getQueuedIds()) {
+                // a job queued since the read may be missing from it
+                if (id <= lastId && !unassigned.contains(id) && target.cancel(id)) {
+                    dropped++;
+                }
+            }
+            log.debug("Synchronized the dispatch queue with {} unassigned Jobs, {} dropped", jobs.size(), dropped);
+        } finally {
+            syncLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Move the slots announced to the other nodes into the queue.
+     */
+    private void moveAvailability() {
+        int batchSize = crowdwareProperties.getDispatch().getBatchSize();
+        List<DispatchAvailability> moved;
+        do {
+            moved = transactionTemplate.execute(status -> {
+                List<DispatchAvailability> announced = dispatchAvailabilityRepository.findOldestForUpdate(new PageRequest(0, batchSize));
+                dispatchAvailabilityRepository.deleteInBatch(announced);
+                return announced;
+            });
+            ShardedJobQueue current = queue;
+            for (DispatchAvailability availability : moved) {
+                wakeUp(current.addSlots(availability.getApp(), availability.getSlots()));
+            }
+        } while (moved.size() == batchSize);
+    }
+
+    /**
+     * Delete the tasks of the jobs cancelled while they were dispatched.
+     *
+     * @return the other tasks
+     */
+    private List<Task> withdraw(List<Task> tasks, List<ShardedJobQueue.Match> cancelled) {
+        Set<Long> jobIds = cancelled.stream().map(ShardedJobQueue.Match::getJobId).collect(Collectors.toSet());
+        Map<Boolean, List<Task>> byCancellation = tasks.stream()
+            .collect(Collectors.partitioningBy(task -> jobIds.contains(task.getJob())));
+        List<Task> withdrawn = byCancellation.get(true);
+        try {
+            taskService.deleteAll(withdrawn);
+            log.debug("Withdrew {} dispatched Tasks whose Job was cancelled", withdrawn.size());
+        } catch (RuntimeException e) {
+            log.error("Could not withdraw {} dispatched Tasks whose Job was cancelled", withdrawn.size(), e);
+        }
+        return byCancellation.get(false);
+    }
+
+    private void reclaim(List<Long> taskIds) {
+        try {
+            // the in-memory structures only change once the tasks are deleted and their jobs read
+            Map<Long, Job> reclaimed = taskService.reclaim(taskIds);
+            if (reclaimed.isEmpty()) {
+                return;
+            }
+            reclaimed.keySet().forEach(taskIntervalIndex::remove);
+            Set<Job> jobs = reclaimed.values().stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+            for (Job job : jobs) {
+                submit(job);
+                jobOfferBook.put(job);
+            }
+            reclaims.mark(reclaimed.size());
+            log.debug("Reclaimed {} Tasks with an expired lease, {} Jobs returned to the queue", reclaimed.size(), jobs.size());
+        } catch (RuntimeException e) {
+            log.error("Could not reclaim {} Tasks with an expired lease", taskIds.size(), e);
+        }
+    }
+}
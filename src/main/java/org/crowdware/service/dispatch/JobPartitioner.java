@@ -0,0 +1,54 @@
+package org.crowdware.service.dispatch;
+
+import org.crowdware.domain.App;
+import org.crowdware.domain.Job;
+
+/**
+ * Decides which shard of the {@link ShardedJobQueue} owns a Job or the slots of an App.
+ * <p>
+ * Jobs and slots with the same key land on the same shard, and are matched by its worker without any stealing.
+ */
+public interface JobPartitioner {
+
+    long keyOf(Job job);
+
+    long keyOf(App app);
+
+    /**
+     * The built-in partitioning strategies.
+     */
+    enum Strategy implements JobPartitioner {
+
+        /**
+         * Jobs are spread by owner, and apps by the user who published them, so that the jobs of a user stay ordered
+         * within a single shard.
+         */
+        USER {
+            @Override
+            public long keyOf(Job job) {
+                return job.getUser() != null && job.getUser().getId() != null ? job.getUser().getId() : job.getId();
+            }
+
+            @Override
+            public long keyOf(App app) {
+                return app.getUser_app() != null && app.getUser_app().getId() != null ? app.getUser_app().getId() : app.getId();
+            }
+        },
+
+        /**
+         * Apps are spread by id, so that the slots of an app are always handed out by the same worker, and jobs are
+         * spread evenly by id.
+         */
+        APP {
+            @Override
+            public long keyOf(Job job) {
+                return job.getId();
+            }
+
+            @Override
+            public long keyOf(App app) {
+                return app.getId();
+            }
+        }
+    }
+}
@@ -0,0 +1,436 @@
+package org.crowdware.service.dispatch;
+
+import org.crowdware.domain.App;
+import org.crowdware.domain.Job;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A queue of open Jobs and free App slots, split in shards which are each drained by their own worker.
+ * <p>
+ * A {@link JobPartitioner} decides which shard owns a job or the slots of an app. Each shard keeps its jobs in a
+ * priority queue, highest offer first then oldest first, and is guarded by its own lock, so the workers only contend
+ * when one of them steals. A worker with free slots but no local jobs steals up to half of the jobs of the deepest
+ * shard, best offers first. No thread ever holds two shard locks, so stealing cannot deadlock.
+ * <p>
+ * A polled job stays owned by the queue until its match is either {@link #complete(int, List) completed} once its task
+ * is persisted, or {@link #requeue(int, List) requeued}. A job cancelled in the meantime is reported by
+ * {@link #complete(int, List)}, so that the task created for it can be withdrawn.
+ */
+public class ShardedJobQueue {
+
+    private static final Comparator<QueuedJob> PRIORITY = Comparator
+        .comparingLong((QueuedJob queued) -> queued.offerInCents).reversed()
+        .thenComparingLong(queued -> queued.sequence);
+
+    private final Shard[] shards;
+
+    private final JobPartitioner partitioner;
+
+    private final Map<Long, Shard> shardByJob = new ConcurrentHashMap<>();
+
+    private final Map<Long, QueuedJob> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    public ShardedJobQueue(int shardCount, JobPartitioner partitioner) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("At least one shard is needed, got " + shardCount);
+        }
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+        }
+        this.partitioner = partitioner;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Queue an open job, or update its priority in place if it is already queued.
+     *
+     * @param job the persisted job
+     * @return the index of the shard holding the job
+     */
+    public int submit(Job job) {
+        long offerInCents = job.getOffer() != null ? job.getOffer().getMinorUnits() : 0L;
+        QueuedJob claimed = inFlight.get(job.getId());
+        if (claimed != null) {
+            synchronized (claimed) {
+                if (!claimed.settled && !claimed.cancelled) {
+                    // the job is being dispatched, it is queued again by requeue() if its task cannot be persisted
+                    return shardOf(partitioner.keyOf(job));
+                }
+            }
+        }
+        while (true) {
+            Shard shard = shardByJob.get(job.getId());
+            if (shard == null) {
+                shard = shards[shardOf(partitioner.keyOf(job))];
+            }
+            shard.lock.lock();
+            try {
+                Shard current = shardByJob.get(job.getId());
+                if (current != null && current != shard) {
+                    continue;
+                }
+                QueuedJob previous = shard.queuedById.get(job.getId());
+                if (previous != null && previous.offerInCents == offerInCents) {
+                    // same priority, so the queue is left as is
+                    return shard.index;
+                }
+                long jobSequence = sequence.getAndIncrement();
+                if (previous != null) {
+                    previous.cancelled = true;
+                    jobSequence = previous.sequence;
+                }
+                shard.enqueue(new QueuedJob(job.getId(), offerInCents, jobSequence));
+                shardByJob.put(job.getId(), shard);
+                return shard.index;
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+    }
+
+    public boolean isQueued(Long id) {
+        return shardByJob.containsKey(id);
+    }
+
+    /**
+     * @return the ids of the queued jobs, without the jobs being dispatched
+     */
+    public List<Long> getQueuedIds() {
+        return new ArrayList<>(shardByJob.keySet());
+    }
+
+    /**
+     * Remove a job from the queue. A job which is being dispatched is cancelled too: its match is reported by
+     * {@link #complete(int, List)} instead of being kept.
+     *
+     * @param id the id of the job
+     * @return true if the job was queued or being dispatched
+     */
+    public boolean cancel(Long id) {
+        while (true) {
+            Shard shard = shardByJob.get(id);
+            if (shard != null) {
+                shard.lock.lock();
+                try {
+                    QueuedJob queued = shard.queuedById.remove(id);
+                    if (queued != null) {
+                        queued.cancelled = true;
+                        shard.depth = shard.queuedById.size();
+                        shardByJob.remove(id, shard);
+                        return true;
+                    }
+                } finally {
+                    shard.lock.unlock();
+                }
+            }
+            QueuedJob claimed = inFlight.get(id);
+            if (claimed != null) {
+                synchronized (claimed) {
+                    if (!claimed.settled) {
+                        boolean cancelled = !claimed.cancelled;
+                        claimed.cancelled = true;
+                        return cancelled;
+                    }
+                }
+            }
+            // a job is always in one of the two maps until its match completes, look again if it was requeued
+            if (!shardByJob.containsKey(id)) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Add free slots of an app.
+     *
+     * @param app the available app
+     * @param slots the number of tasks the app can take
+     * @return the index of the shard holding the slots
+     */
+    public int addSlots(App app, int slots) {
+        Shard shard = shards[shardOf(partitioner.keyOf(app))];
+        shard.lock.lock();
+        try {
+            for (int i = 0; i < slots; i++) {
+                shard.slots.addLast(app);
+            }
+            shard.slotCount = shard.slots.size();
+            return shard.index;
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Match the jobs of a shard with its slots, stealing jobs from the deepest shard once the local ones run out.
+     *
+     * @param index the index of the shard
+     * @param limit the maximum number of matches
+     * @return the matches, which are no longer queued but stay owned by the queue until they are completed or
+     * requeued
+     */
+    public List<Match> poll(int index, int limit) {
+        Shard shard = shards[index];
+        List<Match> matches = new ArrayList<>();
+        int freeSlots;
+        shard.lock.lock();
+        try {
+            QueuedJob queued;
+            while (matches.size() < limit && !shard.slots.isEmpty() && (queued = shard.poll()) != null) {
+                matches.add(new Match(queued, shard.slots.pollFirst()));
+            }
+            shard.slotCount = shard.slots.size();
+            freeSlots = shard.slotCount;
+        } finally {
+            shard.lock.unlock();
+        }
+        int wanted = Math.min(freeSlots, limit - matches.size());
+        if (wanted > 0) {
+            List<QueuedJob> stolen = steal(shard, wanted);
+            if (!stolen.isEmpty()) {
+                shard.lock.lock();
+                try {
+                    for (QueuedJob queued : stolen) {
+                        if (!shard.slots.isEmpty()) {
+                            matches.add(new Match(queued, shard.slots.pollFirst()));
+                        } else {
+                            restore(shard, queued);
+                        }
+                    }
+                    shard.slotCount = shard.slots.size();
+                } finally {
+                    shard.lock.unlock();
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Give back matches which could not be persisted: their jobs are queued again and their slots freed.
+     *
+     * @param index the index of the shard which polled the matches
+     * @param matches the matches
+     */
+    public void requeue(int index, List<Match> matches) {
+        Shard shard = shards[index];
+        shard.lock.lock();
+        try {
+            for (Match match : matches) {
+                restore(shard, match.queued);
+                shard.slots.addFirst(match.app);
+            }
+            shard.slotCount = shard.slots.size();
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Release matches whose tasks were persisted.
+     *
+     * @param index the index of the shard which polled the matches
+     * @param matches the matches
+     * @return the matches whose job was cancelled while they were dispatched, their slots are freed
+     */
+    public List<Match> complete(int index, List<Match> matches) {
+        List<Match> cancelled = new ArrayList<>();
+        for (Match match : matches) {
+            synchronized (match.queued) {
+                match.queued.settled = true;
+                if (match.queued.cancelled) {
+                    cancelled.add(match);
+                }
+            }
+            inFlight.remove(match.queued.jobId, match.queued);
+        }
+        if (!cancelled.isEmpty()) {
+            Shard shard = shards[index];
+            shard.lock.lock();
+            try {
+                cancelled.forEach(match -> shard.slots.addFirst(match.app));
+                shard.slotCount = shard.slots.size();
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return cancelled;
+    }
+
+    public int getDepth() {
+        return shardByJob.size();
+    }
+
+    public int getDepth(int index) {
+        return shards[index].depth;
+    }
+
+    public int getSlots() {
+        int slots = 0;
+        for (Shard shard : shards) {
+            slots += shard.slotCount;
+        }
+        return slots;
+    }
+
+    public int getSlots(int index) {
+        return shards[index].slotCount;
+    }
+
+    /**
+     * Get the number of jobs stolen by the worker of a shard.
+     *
+     * @param index the index of the shard
+     * @return the number of stolen jobs
+     */
+    public long getSteals(int index) {
+        return shards[index].steals.get();
+    }
+
+    private List<QueuedJob> steal(Shard thief, int wanted) {
+        Shard victim = null;
+        for (Shard shard : shards) {
+            if (shard != thief && shard.depth > 0 && (victim == null || shard.depth > victim.depth)) {
+                victim = shard;
+            }
+        }
+        List<QueuedJob> stolen = new ArrayList<>();
+        if (victim == null) {
+            return stolen;
+        }
+        victim.lock.lock();
+        try {
+            int count = Math.min(wanted, (victim.queuedById.size() + 1) / 2);
+            QueuedJob queued;
+            while (stolen.size() < count && (queued = victim.poll()) != null) {
+                stolen.add(queued);
+            }
+        } finally {
+            victim.lock.unlock();
+        }
+        thief.steals.addAndGet(stolen.size());
+        return stolen;
+    }
+
+    /**
+     * Queue an in-flight job again in a shard, unless it was cancelled or submitted again meanwhile. The caller holds
+     * the lock of the shard.
+     */
+    private void restore(Shard shard, QueuedJob queued) {
+        synchronized (queued) {
+            queued.settled = true;
+            if (!queued.cancelled && !shardByJob.containsKey(queued.jobId)) {
+                shard.enqueue(new QueuedJob(queued.jobId, queued.offerInCents, queued.sequence));
+                shardByJob.put(queued.jobId, shard);
+            }
+        }
+        inFlight.remove(queued.jobId, queued);
+    }
+
+    private int shardOf(long key) {
+        return Math.floorMod(Long.hashCode(key) * 0x9E3779B9, shards.length);
+    }
+
+    /**
+     * A job matched with a slot of an app.
+     */
+    public static final class Match {
+
+        private final QueuedJob queued;
+
+        private final App app;
+
+        private Match(QueuedJob queued, App app) {
+            this.queued = queued;
+            this.app = app;
+        }
+
+        public Long getJobId() {
+            return queued.jobId;
+        }
+
+        public App getApp() {
+            return app;
+        }
+    }
+
+    private final class Shard {
+
+        private final int index;
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final PriorityQueue<QueuedJob> queue = new PriorityQueue<>(PRIORITY);
+
+        private final Map<Long, QueuedJob> queuedById = new HashMap<>();
+
+        private final Deque<App> slots = new ArrayDeque<>();
+
+        private final AtomicLong steals = new AtomicLong();
+
+        private volatile int depth;
+
+        private volatile int slotCount;
+
+        private Shard(int index) {
+            this.index = index;
+        }
+
+        private void enqueue(QueuedJob queued) {
+            queue.add(queued);
+            queuedById.put(queued.jobId, queued);
+            depth = queuedById.size();
+        }
+
+        private QueuedJob poll() {
+            QueuedJob queued;
+            while ((queued = queue.poll()) != null) {
+                if (!queued.cancelled) {
+                    // the job is in flight before it leaves the shard, so that cancel() always finds it
+                    inFlight.put(queued.jobId, queued);
+                    queuedById.remove(queued.jobId);
+                    shardByJob.remove(queued.jobId, this);
+                    depth = queuedById.size();
+                    return queued;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class QueuedJob {
+
+        private final long jobId;
+
+        private final long offerInCents;
+
+        private final long sequence;
+
+        private boolean cancelled;
+
+        private boolean settled;
+
+        private QueuedJob(long jobId, long offerInCents, long sequence) {
+            this.jobId = jobId;
+            this.offerInCents = offerInCents;
+            this.sequence = sequence;
+        }
+    }
+}
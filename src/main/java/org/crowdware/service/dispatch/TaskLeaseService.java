@@ -0,0 +1,164 @@
+package org.crowdware.service.dispatch;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.crowdware.config.CrowdwareProperties;
+import org.crowdware.domain.Task;
+import org.crowdware.repository.TaskRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Leases of the dispatched Tasks to their Apps.
+ * <p>
+ * A dispatched task is leased to its app, which must send heartbeats to keep it. Lease deadlines live in a
+ * {@link HashedTimingWheel}, so a heartbeat is a map lookup and a compare-and-set, and detecting the silent apps never
+ * scans the task table. Only the tasks created by the JobDispatcher are leased, see {@link Task#isLeased()}: the
+ * leases of those running when the application starts are granted again, so their apps get a full lease duration to
+ * resume their heartbeats.
+ * <p>
+ * A lease never outlives the end of its task: its deadline is capped by the end, and it is released when the task
+ * is updated with an end in the past. Expired leases are collected by the JobDispatcher, which returns the jobs of the
+ * tasks which have not ended to the dispatch pool.
+ */
+@Service
+public class TaskLeaseService implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final Logger log = LoggerFactory.getLogger(TaskLeaseService.class);
+
+    private final Map<Long, HashedTimingWheel.Timeout<Long>> leases = new ConcurrentHashMap<>();
+
+    private final Map<Long, Long> ends = new ConcurrentHashMap<>();
+
+    private HashedTimingWheel<Long> wheel;
+
+    @Inject
+    private TaskRepository taskRepository;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private Meter heartbeats;
+
+    private Meter expirations;
+
+    @PostConstruct
+    public void init() {
+        CrowdwareProperties.Lease lease = crowdwareProperties.getLease();
+        wheel = new HashedTimingWheel<>(lease.getTickDuration(), lease.getWheelSize(), System.currentTimeMillis());
+        heartbeats = metricRegistry.meter(MetricRegistry.name(TaskLeaseService.class, "heartbeats"));
+        expirations = metricRegistry.meter(MetricRegistry.name(TaskLeaseService.class, "expirations"));
+        metricRegistry.register(MetricRegistry.name(TaskLeaseService.class, "active-leases"), (Gauge<Integer>) this::getActiveLeases);
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        List<Task> tasks = taskRepository.findByLeasedTrueAndEndAfter(ZonedDateTime.now());
+        tasks.stream()
+            .filter(task -> task.getApp() != null)
+            .forEach(this::grant);
+        log.debug("Granted {} leases to running Tasks", leases.size());
+    }
+
+    /**
+     * Lease a dispatched task to its app, for the configured lease duration or until its end.
+     *
+     * @param task the persisted task, nothing is leased if it already ended
+     */
+    public void grant(Task task) {
+        long now = System.currentTimeMillis();
+        long end = task.getEnd().toInstant().toEpochMilli();
+        if (end <= now) {
+            release(task.getId());
+            return;
+        }
+        ends.put(task.getId(), end);
+        long deadline = Math.min(end, now + crowdwareProperties.getLease().getDurationInSeconds() * 1000L);
+        HashedTimingWheel.Timeout<Long> previous = leases.put(task.getId(), wheel.schedule(task.getId(), deadline));
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * Follow an update of a task: its lease is released if it ended, else it lasts until its new end.
+     *
+     * @param task the persisted task
+     */
+    public void update(Task task) {
+        if (!leases.containsKey(task.getId())) {
+            return;
+        }
+        long end = task.getEnd().toInstant().toEpochMilli();
+        if (end <= System.currentTimeMillis()) {
+            release(task.getId());
+        } else {
+            ends.put(task.getId(), end);
+        }
+    }
+
+    /**
+     * Renew the lease of a task for the configured lease duration, without going past its end.
+     *
+     * @param id the id of the task
+     * @return false if the task has no lease, or if its lease already expired
+     */
+    public boolean heartbeat(Long id) {
+        HashedTimingWheel.Timeout<Long> lease = leases.get(id);
+        Long end = ends.get(id);
+        if (lease == null || end == null) {
+            return false;
+        }
+        heartbeats.mark();
+        long now = System.currentTimeMillis();
+        return lease.extend(Math.min(end, now + crowdwareProperties.getLease().getDurationInSeconds() * 1000L));
+    }
+
+    /**
+     * Drop the lease of a task, because it was completed or deleted.
+     *
+     * @param id the id of the task
+     */
+    public void release(Long id) {
+        HashedTimingWheel.Timeout<Long> lease = leases.remove(id);
+        ends.remove(id);
+        if (lease != null) {
+            lease.cancel();
+        }
+    }
+
+    /**
+     * Collect a batch of expired leases.
+     *
+     * @param limit the maximum number of leases
+     * @return the ids of the tasks whose lease expired
+     */
+    public List<Long> expire(int limit) {
+        List<Long> expired = wheel.expire(System.currentTimeMillis(), limit);
+        for (Long id : expired) {
+            if (leases.computeIfPresent(id, (key, lease) -> lease.isAlive() ? lease : null) == null) {
+                ends.remove(id);
+            }
+        }
+        expirations.mark(expired.size());
+        return expired;
+    }
+
+    public int getActiveLeases() {
+        return leases.size();
+    }
+}
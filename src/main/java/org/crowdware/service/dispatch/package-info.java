@@ -0,0 +1,4 @@
+/**
+ * Assignment of open Jobs to Apps.
+ */
+package org.crowdware.service.dispatch;
@@ -0,0 +1,99 @@
+package org.crowdware.service.fraud;
+
+import org.crowdware.domain.Money;
+
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * A suspicious Payment, as published by {@link PaymentFraudService}.
+ */
+public final class PaymentAlert {
+
+    /**
+     * Why a payment is suspicious.
+     */
+    public enum Reason {
+        /**
+         * A payment of the same amount to the same user for the same job was recently created.
+         */
+        DUPLICATE,
+        /**
+         * The user received more payments than allowed in the rate window.
+         */
+        RATE
+    }
+
+    private final Long paymentId;
+
+    private final Long userId;
+
+    private final Long jobId;
+
+    private final Money amount;
+
+    private final Set<Reason> reasons;
+
+    private final int paymentsInWindow;
+
+    private final ZonedDateTime time;
+
+    public PaymentAlert(Long paymentId, Long userId, Long jobId, Money amount, EnumSet<Reason> reasons,
+                        int paymentsInWindow, ZonedDateTime time) {
+        this.paymentId = paymentId;
+        this.userId = userId;
+        this.jobId = jobId;
+        this.amount = amount;
+        this.reasons = Collections.unmodifiableSet(reasons);
+        this.paymentsInWindow = paymentsInWindow;
+        this.time = time;
+    }
+
+    public Long getPaymentId() {
+        return paymentId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public Long getJobId() {
+        return jobId;
+    }
+
+    public Money getAmount() {
+        return amount;
+    }
+
+    public Set<Reason> getReasons() {
+        return reasons;
+    }
+
+    /**
+     * @return the number of payments to the user in the rate window, this one included
+     */
+    public int getPaymentsInWindow() {
+        return paymentsInWindow;
+    }
+
+    /**
+     * @return when the payment was flagged
+     */
+    public ZonedDateTime getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return "PaymentAlert{" +
+            "paymentId=" + paymentId +
+            ", userId=" + userId +
+            ", jobId=" + jobId +
+            ", amount=" + amount +
+            ", reasons=" + reasons +
+            ", paymentsInWindow=" + paymentsInWindow +
+            '}';
+    }
+}
@@ -0,0 +1,143 @@
+package org.crowdware.service.fraud;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.crowdware.config.CrowdwareProperties;
+import org.crowdware.domain.Payment;
+import org.crowdware.service.index.RotatingBloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.time.ZonedDateTime;
+import java.util.EnumSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Flags suspicious new Payments, and publishes them on {@value #TOPIC}.
+ * <p>
+ * A payment is checked in memory, in a few hundred nanoseconds, so the check runs inline with its creation:
+ * <ul>
+ *     <li>a payment to the same user for the same job and of the same amount as a payment of the last
+ *     {@code crowdware.fraud.duplicateWindowInSeconds} is a duplicate. Recent payments are remembered by a
+ *     {@link RotatingBloomFilter}, so a payment may rarely be flagged without a real duplicate, but a duplicate is
+ *     never missed;</li>
+ *     <li>a payment beyond {@code crowdware.fraud.maxPaymentsPerWindow} to the same user in the last
+ *     {@code crowdware.fraud.rateWindowInSeconds} exceeds the rate. Each user has a {@link SlidingWindowCounter},
+ *     dropped once the user is idle for a whole window.</li>
+ * </ul>
+ * Only the alerts are sent to the message broker, from the task executor.
+ */
+@Service
+public class PaymentFraudService {
+
+    public static final String TOPIC = "/topic/payment-alerts";
+
+    private final Logger log = LoggerFactory.getLogger(PaymentFraudService.class);
+
+    private final ConcurrentMap<Long, SlidingWindowCounter> rateCounters = new ConcurrentHashMap<>();
+
+    private RotatingBloomFilter recentPayments;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
+
+    @Inject
+    private SimpMessageSendingOperations messagingTemplate;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    @Inject
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    private Meter duplicates;
+
+    private Meter rateExceeded;
+
+    @PostConstruct
+    public void init() {
+        CrowdwareProperties.Fraud fraud = crowdwareProperties.getFraud();
+        recentPayments = new RotatingBloomFilter(fraud.getExpectedPayments(), fraud.getFalsePositiveProbability(),
+            fraud.getDuplicateWindowInSeconds() * 1000, System.currentTimeMillis());
+        duplicates = metricRegistry.meter(MetricRegistry.name(PaymentFraudService.class, "duplicates"));
+        rateExceeded = metricRegistry.meter(MetricRegistry.name(PaymentFraudService.class, "rate-exceeded"));
+        metricRegistry.register(MetricRegistry.name(PaymentFraudService.class, "rate-counters"),
+            (Gauge<Integer>) rateCounters::size);
+    }
+
+    /**
+     * Check a new payment, and publish an alert if it is suspicious.
+     *
+     * @param payment the persisted payment
+     * @return the alert, or null if the payment is not suspicious
+     */
+    public PaymentAlert check(Payment payment) {
+        Long userId = payment.getUser() != null ? payment.getUser().getId() : null;
+        if (userId == null) {
+            return null;
+        }
+        Long jobId = payment.getJob() != null ? payment.getJob().getId() : null;
+        CrowdwareProperties.Fraud fraud = crowdwareProperties.getFraud();
+        long now = System.currentTimeMillis();
+        EnumSet<PaymentAlert.Reason> reasons = EnumSet.noneOf(PaymentAlert.Reason.class);
+
+        if (jobId != null && payment.getAmount() != null
+            && recentPayments.checkAndPut(hash(userId, jobId, payment.getAmount().getMinorUnits()), now)) {
+            duplicates.mark();
+            reasons.add(PaymentAlert.Reason.DUPLICATE);
+        }
+        int paymentsInWindow = rateCounters
+            .computeIfAbsent(userId, id -> new SlidingWindowCounter(fraud.getRateWindowInSeconds() * 1000, fraud.getRateBuckets()))
+            .increment(now);
+        if (paymentsInWindow > fraud.getMaxPaymentsPerWindow()) {
+            rateExceeded.mark();
+            reasons.add(PaymentAlert.Reason.RATE);
+        }
+        if (reasons.isEmpty()) {
+            return null;
+        }
+
+        PaymentAlert alert = new PaymentAlert(payment.getId(), userId, jobId, payment.getAmount(), reasons,
+            paymentsInWindow, ZonedDateTime.now());
+        taskExecutor.execute(() -> publish(alert));
+        return alert;
+    }
+
+    /**
+     * Drop the rate counters of the users without payment in the last rate window.
+     * <p>
+     * This is scheduled to run every {@code crowdware.fraud.sweepInterval} milliseconds.
+     */
+    @Scheduled(fixedDelayString = "${crowdware.fraud.sweepInterval:60000}")
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        int before = rateCounters.size();
+        rateCounters.values().removeIf(counter -> counter.isIdle(now));
+        log.debug("Dropped {} idle payment rate counters", before - rateCounters.size());
+    }
+
+    private void publish(PaymentAlert alert) {
+        log.info("Suspicious payment: {}", alert);
+        try {
+            messagingTemplate.convertAndSend(TOPIC, alert);
+        } catch (RuntimeException e) {
+            log.warn("Could not publish the alert of payment {}: {}", alert.getPaymentId(), e.getMessage());
+        }
+    }
+
+    private static long hash(long userId, long jobId, long amountInCents) {
+        long hash = userId * 0x9e3779b97f4a7c15L;
+        hash = (hash ^ jobId) * 0xc2b2ae3d27d4eb4fL;
+        return (hash ^ amountInCents) * 0x165667b19e3779f9L;
+    }
+}
@@ -0,0 +1,84 @@
+package org.crowdware.service.fraud;
+
+import java.util.Arrays;
+
+/**
+ * Counts the events of a sliding time window.
+ * <p>
+ * The window is split in buckets, kept in a ring: an event increments the bucket of its time, and the count of the
+ * window is the sum of the buckets of its last {@code buckets} intervals, the current one included. The window thus
+ * slides by whole buckets, and the oldest bucket may still count events up to one bucket older than the window.
+ * <p>
+ * This class is thread-safe, its methods are synchronized: a counter is expected to belong to a single user, so
+ * they are rarely contended.
+ */
+public class SlidingWindowCounter {
+
+    private final long bucketDuration;
+
+    private final long[] intervals;
+
+    private final int[] counts;
+
+    private long lastInterval = Long.MIN_VALUE;
+
+    /**
+     * Create a counter without events.
+     *
+     * @param window the duration of the window, in milliseconds
+     * @param buckets the number of buckets of the window
+     */
+    public SlidingWindowCounter(long window, int buckets) {
+        if (buckets < 1 || window < buckets) {
+            throw new IllegalArgumentException("A window must have at least one bucket of one millisecond");
+        }
+        this.bucketDuration = window / buckets;
+        this.intervals = new long[buckets];
+        this.counts = new int[buckets];
+        Arrays.fill(intervals, Long.MIN_VALUE);
+    }
+
+    /**
+     * Count an event.
+     *
+     * @param now the time of the event, in milliseconds
+     * @return the number of events in the window ending now, this one included
+     */
+    public synchronized int increment(long now) {
+        long interval = now / bucketDuration;
+        int slot = (int) Math.floorMod(interval, (long) counts.length);
+        if (intervals[slot] != interval) {
+            intervals[slot] = interval;
+            counts[slot] = 0;
+        }
+        counts[slot]++;
+        lastInterval = Math.max(lastInterval, interval);
+        return sum(interval);
+    }
+
+    /**
+     * @param now the end of the window, in milliseconds
+     * @return the number of events in the window
+     */
+    public synchronized int count(long now) {
+        return sum(now / bucketDuration);
+    }
+
+    /**
+     * @param now the current time, in milliseconds
+     * @return true if no event was counted in the window ending now, so the counter can be dropped
+     */
+    public synchronized boolean isIdle(long now) {
+        return lastInterval <= now / bucketDuration - counts.length;
+    }
+
+    private int sum(long interval) {
+        int sum = 0;
+        for (int slot = 0; slot < counts.length; slot++) {
+            if (intervals[slot] <= interval && intervals[slot] > interval - counts.length) {
+                sum += counts[slot];
+            }
+        }
+        return sum;
+    }
+}
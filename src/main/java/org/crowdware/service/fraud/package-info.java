@@ -0,0 +1,4 @@
+/**
+ * Detection of suspicious payments.
+ */
+package org.crowdware.service.fraud;
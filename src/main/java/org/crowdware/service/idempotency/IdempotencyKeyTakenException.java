@@ -0,0 +1,14 @@
+package org.crowdware.service.idempotency;
+
+/**
+ * Thrown when the row of an idempotent request cannot be inserted because another execution of the same request
+ * holds or committed it. It rolls the transaction of the execution back.
+ */
+class IdempotencyKeyTakenException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    IdempotencyKeyTakenException(String requestKey, Throwable cause) {
+        super("The idempotent request " + requestKey + " is already claimed", cause);
+    }
+}
@@ -0,0 +1,451 @@
+package org.crowdware.service.idempotency;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.crowdware.config.CrowdwareProperties;
+import org.crowdware.domain.IdempotentRequest;
+import org.crowdware.repository.IdempotentRequestRepository;
+import org.crowdware.security.SecurityUtils;
+import org.crowdware.service.index.BloomFilter;
+import org.crowdware.web.rest.util.HeaderUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Executes requests sent with an {@value #HEADER} header at most once, and returns the stored response of the first
+ * execution to their retries.
+ * <p>
+ * A request is claimed by inserting its row in the idempotent_request table, in the transaction of its writes and
+ * before them, and the row is completed with the response in that same transaction. The primary key of the table
+ * decides between concurrent executions on any node: the second insert waits for the first transaction, then fails
+ * once it commits and the stored response is returned, or goes on if it rolled back. A request is never executed
+ * twice, and a response is never lost once its writes are committed. Only successful responses are stored: a failed
+ * request is rolled back with its row, and can be retried with the same key.
+ * <p>
+ * The rows are kept for {@code crowdware.idempotency.ttlInSeconds}, and the most recent responses in a bounded
+ * in-memory cache. A Bloom filter holds the keys this node has seen, and only serves as a negative cache: a key it
+ * has never seen is claimed without reading the table first. A key stored by another node is caught by the primary
+ * key instead. Keys cannot be removed from a Bloom filter, so the filter is made of two generations, each covering
+ * one time-to-live, and the oldest one is dropped once all its keys have expired.
+ * <p>
+ * Each row holds the SHA-256 of the request body: a key reused for a different request gets a 422 (Unprocessable
+ * Entity) instead of the response of the first one.
+ */
+@Service
+public class IdempotencyService implements ApplicationListener<ApplicationReadyEvent> {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+
+    private Map<String, IdempotentRequest> recent;
+
+    private volatile Generation current;
+
+    private volatile Generation previous;
+
+    private volatile boolean loaded;
+
+    private TransactionTemplate transactionTemplate;
+
+    @Inject
+    private IdempotentRequestRepository idempotentRequestRepository;
+
+    @Inject
+    private ObjectMapper objectMapper;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    @Inject
+    private PlatformTransactionManager transactionManager;
+
+    private Meter replays;
+
+    private Meter conflicts;
+
+    private Meter mismatches;
+
+    private Meter lookups;
+
+    @PostConstruct
+    public void init() {
+        int cacheSize = crowdwareProperties.getIdempotency().getCacheSize();
+        recent = Collections.synchronizedMap(new LinkedHashMap<String, IdempotentRequest>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, IdempotentRequest> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        current = newGeneration();
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        replays = metricRegistry.meter(MetricRegistry.name(IdempotencyService.class, "replays"));
+        conflicts = metricRegistry.meter(MetricRegistry.name(IdempotencyService.class, "conflicts"));
+        mismatches = metricRegistry.meter(MetricRegistry.name(IdempotencyService.class, "mismatches"));
+        lookups = metricRegistry.meter(MetricRegistry.name(IdempotencyService.class, "lookups"));
+    }
+
+    /**
+     * Fill the Bloom filter with the unexpired keys of the table. Until then, every key is looked up.
+     */
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        Generation generation = current;
+        idempotentRequestRepository.findKeysCreatedAfter(ZonedDateTime.now().minusSeconds(getTtl()))
+            .forEach(requestKey -> generation.filter.put(hash(requestKey)));
+        loaded = true;
+    }
+
+    /**
+     * Execute a request at most once per key. The request is executed in a new transaction, or in the current one,
+     * with its claim and its stored response.
+     *
+     * @param entityName the entity of the endpoint, for the alert headers
+     * @param endpoint the method and the path of the endpoint
+     * @param key the value of the {@value #HEADER} header, or null to always execute the request
+     * @param request the body of the request
+     * @param type the type of the response body
+     * @param action the execution of the request
+     * @param <T> the type of the response body
+     * @return the response of the execution, or the stored response of a previous execution
+     */
+    public <T> ResponseEntity<T> execute(String entityName, String endpoint, String key, Object request,
+                                         Class<T> type, Supplier<ResponseEntity<T>> action) {
+        if (key == null) {
+            return action.get();
+        }
+        if (!isValid(key)) {
+            return invalidKey(entityName);
+        }
+        Claim claim = newClaim(endpoint, key, request);
+        IdempotentRequest stored = findStored(claim);
+        if (stored != null) {
+            return replay(entityName, claim, stored, type);
+        }
+        try {
+            return transactionTemplate.execute(status -> {
+                claim(claim);
+                ResponseEntity<T> response = action.get();
+                if (response.getStatusCode().is2xxSuccessful()) {
+                    complete(claim, response.getStatusCode(), response.getHeaders().getLocation(), response.getBody());
+                } else {
+                    status.setRollbackOnly();
+                }
+                return response;
+            });
+        } catch (IdempotencyKeyTakenException e) {
+            return resolve(entityName, claim, type);
+        }
+    }
+
+    /**
+     * Execute a request at most once per key, when its writes are made by another thread.
+     * <p>
+     * The action gets the claim of the request, or null if it has no key, and must pass it to
+     * {@link #claim(Claim)} before its writes and to {@link #complete(Claim, HttpStatus, URI, Object)} after them, in
+     * the same transaction.
+     *
+     * @see #execute(String, String, String, Object, Class, Supplier)
+     */
+    public <T> CompletableFuture<ResponseEntity<T>> executeAsync(String entityName, String endpoint, String key,
+                                                                 Object request, Class<T> type,
+                                                                 Function<Claim, CompletableFuture<ResponseEntity<T>>> action) {
+        if (key == null) {
+            return action.apply(null);
+        }
+        if (!isValid(key)) {
+            return CompletableFuture.completedFuture(invalidKey(entityName));
+        }
+        Claim claim = newClaim(endpoint, key, request);
+        IdempotentRequest stored = findStored(claim);
+        if (stored != null) {
+            return CompletableFuture.completedFuture(replay(entityName, claim, stored, type));
+        }
+        return action.apply(claim).handle((response, error) -> {
+            if (error == null) {
+                return response;
+            }
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof IdempotencyKeyTakenException) {
+                return resolve(entityName, claim, type);
+            }
+            throw new CompletionException(cause);
+        });
+    }
+
+    /**
+     * Insert the pending row of a request, before its writes. This must run in their transaction, which the insert
+     * rolls back if another execution of the request holds or committed the row.
+     *
+     * @param claim the claim of the request
+     */
+    public void claim(Claim claim) {
+        if (claim.expired) {
+            idempotentRequestRepository.deleteExpired(claim.requestKey, ZonedDateTime.now().minusSeconds(getTtl()));
+        }
+        try {
+            idempotentRequestRepository.insertPending(claim.requestKey, claim.requestHash,
+                Timestamp.from(claim.createdDate.toInstant()));
+        } catch (DataIntegrityViolationException | ConcurrencyFailureException e) {
+            throw new IdempotencyKeyTakenException(claim.requestKey, e);
+        }
+        // a rolled back claim leaves a false positive in the filter, which only costs a lookup
+        current.filter.put(hash(claim.requestKey));
+    }
+
+    /**
+     * Store the response of a request, in the transaction of its writes.
+     *
+     * @param claim the claim of the request
+     * @param status the status of the successful response
+     * @param location the location of the response, or null
+     * @param body the body of the response, or null
+     */
+    public void complete(Claim claim, HttpStatus status, URI location, Object body) {
+        IdempotentRequest stored = new IdempotentRequest();
+        stored.setRequestKey(claim.requestKey);
+        stored.setRequestHash(claim.requestHash);
+        stored.setStatus(status.value());
+        stored.setLocation(location != null ? location.toString() : null);
+        try {
+            stored.setBody(body != null ? objectMapper.writeValueAsString(body) : null);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not store the response of idempotent request " + claim.requestKey, e);
+        }
+        stored.setCreatedDate(claim.createdDate);
+        idempotentRequestRepository.complete(stored.getRequestKey(), stored.getStatus(), stored.getLocation(),
+            stored.getBody());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    recent.put(stored.getRequestKey(), stored);
+                }
+            });
+        }
+    }
+
+    /**
+     * Delete the expired responses, and drop the generation of the Bloom filter whose keys have all expired.
+     * <p>
+     * This is scheduled to run every {@code crowdware.idempotency.purgeInterval} milliseconds.
+     */
+    @Scheduled(fixedDelayString = "${crowdware.idempotency.purgeInterval:3600000}")
+    @Transactional
+    public void purge() {
+        ZonedDateTime now = ZonedDateTime.now();
+        int deleted = idempotentRequestRepository.deleteCreatedBefore(now.minusSeconds(getTtl()));
+        log.debug("Purged {} expired idempotent requests", deleted);
+        if (!current.start.plusSeconds(getTtl()).isAfter(now)) {
+            previous = current;
+            current = newGeneration();
+        }
+    }
+
+    private Claim newClaim(String endpoint, String key, Object request) {
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(request);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not hash the body of idempotent request " + key, e);
+        }
+        String login = SecurityUtils.getCurrentUserLogin();
+        return new Claim(sha256(endpoint.getBytes(StandardCharsets.UTF_8), new byte[]{0},
+            login != null ? login.getBytes(StandardCharsets.UTF_8) : new byte[0], new byte[]{0},
+            key.getBytes(StandardCharsets.UTF_8)), sha256(body));
+    }
+
+    /**
+     * Find the unexpired row of a request, in the cache or in the table unless the Bloom filter never saw its key.
+     * An expired row is deleted by the claim of the request.
+     */
+    private IdempotentRequest findStored(Claim claim) {
+        IdempotentRequest stored = recent.get(claim.requestKey);
+        if (stored == null && mightBeStored(claim.requestKey)) {
+            lookups.mark();
+            stored = idempotentRequestRepository.findOne(claim.requestKey);
+        }
+        if (stored != null && isExpired(stored)) {
+            recent.remove(claim.requestKey);
+            claim.expired = true;
+            return null;
+        }
+        return stored;
+    }
+
+    /**
+     * Answer a request whose claim failed: the other execution committed its response, or still holds the row after
+     * the lock timeout of the database.
+     */
+    private <T> ResponseEntity<T> resolve(String entityName, Claim claim, Class<T> type) {
+        lookups.mark();
+        IdempotentRequest stored = idempotentRequestRepository.findOne(claim.requestKey);
+        if (stored == null) {
+            conflicts.mark();
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .headers(HeaderUtil.createFailureAlert(entityName, "requestinprogress",
+                    "A request with the same Idempotency-Key is in progress"))
+                .body(null);
+        }
+        return replay(entityName, claim, stored, type);
+    }
+
+    private boolean mightBeStored(String requestKey) {
+        if (!loaded) {
+            return true;
+        }
+        long hash = hash(requestKey);
+        Generation older = previous;
+        return current.filter.mightContain(hash) || (older != null && older.filter.mightContain(hash));
+    }
+
+    private <T> ResponseEntity<T> replay(String entityName, Claim claim, IdempotentRequest stored, Class<T> type) {
+        if (stored.getRequestHash() != null && !stored.getRequestHash().equals(claim.requestHash)) {
+            mismatches.mark();
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                .headers(HeaderUtil.createFailureAlert(entityName, "idempotencykeyreused",
+                    "The Idempotency-Key was already used for a different request"))
+                .body(null);
+        }
+        if (stored.getStatus() == IdempotentRequest.PENDING) {
+            // only seen by a retry within the transaction of the first execution
+            conflicts.mark();
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .headers(HeaderUtil.createFailureAlert(entityName, "requestinprogress",
+                    "A request with the same Idempotency-Key is in progress"))
+                .body(null);
+        }
+        replays.mark();
+        HttpHeaders headers = new HttpHeaders();
+        if (stored.getLocation() != null) {
+            headers.setLocation(URI.create(stored.getLocation()));
+        }
+        try {
+            T body = stored.getBody() != null ? objectMapper.readValue(stored.getBody(), type) : null;
+            return new ResponseEntity<>(body, headers, HttpStatus.valueOf(stored.getStatus()));
+        } catch (IOException e) {
+            throw new IllegalStateException("Invalid stored response for idempotent request " + stored.getRequestKey(), e);
+        }
+    }
+
+    private static boolean isValid(String key) {
+        return !key.isEmpty() && key.length() <= MAX_KEY_LENGTH;
+    }
+
+    private static <T> ResponseEntity<T> invalidKey(String entityName) {
+        return ResponseEntity.badRequest()
+            .headers(HeaderUtil.createFailureAlert(entityName, "invalididempotencykey",
+                "The Idempotency-Key must have between 1 and " + MAX_KEY_LENGTH + " characters"))
+            .body(null);
+    }
+
+    private boolean isExpired(IdempotentRequest stored) {
+        return stored.getCreatedDate().plusSeconds(getTtl()).isBefore(ZonedDateTime.now());
+    }
+
+    private long getTtl() {
+        return crowdwareProperties.getIdempotency().getTtlInSeconds();
+    }
+
+    private Generation newGeneration() {
+        CrowdwareProperties.Idempotency idempotency = crowdwareProperties.getIdempotency();
+        return new Generation(ZonedDateTime.now(),
+            new BloomFilter(idempotency.getExpectedKeys(), idempotency.getFalsePositiveProbability()));
+    }
+
+    /**
+     * The hexadecimal SHA-256 of the parts.
+     */
+    private static String sha256(byte[]... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (byte[] part : parts) {
+                digest.update(part);
+            }
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The first 64 bits of a request key, already uniformly distributed.
+     */
+    private static long hash(String requestKey) {
+        return Long.parseUnsignedLong(requestKey.substring(0, 16), 16);
+    }
+
+    /**
+     * A request to execute at most once: the SHA-256 of its endpoint, of the current user and of its key, and the
+     * SHA-256 of its body.
+     */
+    public static final class Claim {
+
+        private final String requestKey;
+
+        private final String requestHash;
+
+        private final ZonedDateTime createdDate = ZonedDateTime.now();
+
+        private boolean expired;
+
+        private Claim(String requestKey, String requestHash) {
+            this.requestKey = requestKey;
+            this.requestHash = requestHash;
+        }
+    }
+
+    private static final class Generation {
+
+        private final ZonedDateTime start;
+
+        private final BloomFilter filter;
+
+        private Generation(ZonedDateTime start, BloomFilter filter) {
+            this.start = start;
+            this.filter = filter;
+        }
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Idempotent execution of retried requests.
+ */
+package org.crowdware.service.idempotency;
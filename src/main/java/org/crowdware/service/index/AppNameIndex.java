@@ -0,0 +1,184 @@
+package org.crowdware.service.index;
+
+import org.crowdware.domain.App;
+import org.crowdware.domain.CrowdApp;
+import org.crowdware.repository.AppRepository;
+import org.crowdware.repository.CrowdAppRepository;
+import org.crowdware.repository.TaskRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * In-memory typeahead of the App and CrowdApp names, completing a prefix with the most popular names.
+ * <p>
+ * The names are served from an immutable {@link CompletionTrie}, so a completion takes a few microseconds and never
+ * waits for a write. Names are matched case-insensitively, and the popularity of a name is the number of apps and
+ * crowd apps carrying it plus the number of tasks of these apps.
+ * <p>
+ * The names are loaded once the application is ready, then kept in sync by the App and CrowdApp write paths, which
+ * only update a dictionary: a new trie is built from it in the background every
+ * {@code crowdware.suggest.refreshInterval} milliseconds when it changed, and replaces the previous one at once. The
+ * task counts have no write path here, they are refreshed by a full reload every
+ * {@code crowdware.suggest.reloadInterval} milliseconds.
+ */
+@Service
+public class AppNameIndex implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final Logger log = LoggerFactory.getLogger(AppNameIndex.class);
+
+    private Map<Long, String> appNames = new HashMap<>();
+
+    private Map<Long, String> crowdAppNames = new HashMap<>();
+
+    private Map<Long, Long> taskCounts = new HashMap<>();
+
+    private boolean stale;
+
+    private volatile CompletionTrie trie = CompletionTrie.empty();
+
+    private final Object refreshLock = new Object();
+
+    @Inject
+    private AppRepository appRepository;
+
+    @Inject
+    private CrowdAppRepository crowdAppRepository;
+
+    @Inject
+    private TaskRepository taskRepository;
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        reload();
+    }
+
+    /**
+     * Reload all the names and their popularity from the database, and build a new trie from them.
+     * <p>
+     * This is scheduled to run every {@code crowdware.suggest.reloadInterval} milliseconds.
+     */
+    @Scheduled(initialDelayString = "${crowdware.suggest.reloadInterval:300000}",
+        fixedDelayString = "${crowdware.suggest.reloadInterval:300000}")
+    public void reload() {
+        Map<Long, String> apps = toNames(appRepository.findAllNames());
+        Map<Long, String> crowdApps = toNames(crowdAppRepository.findAllNames());
+        Map<Long, Long> counts = new HashMap<>();
+        for (Object[] row : taskRepository.countByApp()) {
+            counts.put((Long) row[0], (Long) row[1]);
+        }
+        synchronized (this) {
+            appNames = apps;
+            crowdAppNames = crowdApps;
+            taskCounts = counts;
+            stale = true;
+        }
+        refresh();
+        log.debug("Indexed the names of {} Apps and {} CrowdApps", apps.size(), crowdApps.size());
+    }
+
+    /**
+     * Build a new trie if the names changed since the previous one.
+     * <p>
+     * This is scheduled to run every {@code crowdware.suggest.refreshInterval} milliseconds.
+     */
+    @Scheduled(fixedDelayString = "${crowdware.suggest.refreshInterval:1000}")
+    public void refresh() {
+        // a refresh must not replace the trie of a later one
+        synchronized (refreshLock) {
+            CompletionTrie.Builder builder = new CompletionTrie.Builder();
+            synchronized (this) {
+                if (!stale) {
+                    return;
+                }
+                stale = false;
+                appNames.forEach((id, name) -> builder.add(normalize(name), name, 1 + taskCounts.getOrDefault(id, 0L)));
+                crowdAppNames.forEach((id, name) -> builder.add(normalize(name), name, 1));
+            }
+            trie = builder.build();
+        }
+    }
+
+    /**
+     * Add or replace the name of a saved app.
+     *
+     * @param app the persisted app
+     */
+    public synchronized void putApp(App app) {
+        put(appNames, app.getId(), app.getName());
+    }
+
+    /**
+     * Remove the name of a deleted app.
+     *
+     * @param id the id of the app
+     */
+    public synchronized void removeApp(Long id) {
+        stale |= appNames.remove(id) != null;
+        stale |= taskCounts.remove(id) != null;
+    }
+
+    /**
+     * Add or replace the name of a saved crowd app.
+     *
+     * @param crowdApp the persisted crowd app
+     */
+    public synchronized void putCrowdApp(CrowdApp crowdApp) {
+        put(crowdAppNames, crowdApp.getId(), crowdApp.getName());
+    }
+
+    /**
+     * Remove the name of a deleted crowd app.
+     *
+     * @param id the id of the crowd app
+     */
+    public synchronized void removeCrowdApp(Long id) {
+        stale |= crowdAppNames.remove(id) != null;
+    }
+
+    /**
+     * Complete a prefix with the most popular App and CrowdApp names.
+     *
+     * @param prefix the prefix, case-insensitive
+     * @param limit the maximum number of completions
+     * @return the completions, most popular first
+     */
+    public List<CompletionTrie.Completion> suggest(String prefix, int limit) {
+        return trie.complete(normalize(prefix), limit);
+    }
+
+    private void put(Map<Long, String> names, Long id, String name) {
+        if (name == null) {
+            stale |= names.remove(id) != null;
+        } else if (!name.equals(names.put(id, name))) {
+            stale = true;
+        }
+    }
+
+    private static Map<Long, String> toNames(List<Object[]> rows) {
+        Map<Long, String> names = new HashMap<>();
+        for (Object[] row : rows) {
+            if (row[1] != null) {
+                names.put((Long) row[0], (String) row[1]);
+            }
+        }
+        return names;
+    }
+
+    private static String normalize(String text) {
+        int start = 0;
+        while (start < text.length() && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        return text.substring(start).toLowerCase(Locale.ROOT);
+    }
+}
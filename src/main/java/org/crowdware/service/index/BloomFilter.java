@@ -0,0 +1,95 @@
+package org.crowdware.service.index;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter of 64 bits hashes: a set which can answer "maybe present" for a hash it never saw, with a bounded
+ * probability, but never "absent" for a hash it saw.
+ * <p>
+ * Each hash sets {@code hashFunctions} bits, derived from it by double hashing. The filter is sized for an expected
+ * number of hashes and a false positive probability; beyond that number, the false positive probability grows.
+ * <p>
+ * This class is thread-safe: bits are set with atomic operations, so concurrent additions and lookups need no lock.
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray words;
+
+    private final long bits;
+
+    private final int hashFunctions;
+
+    /**
+     * Create an empty filter.
+     *
+     * @param expectedHashes the number of hashes the filter is sized for
+     * @param falsePositiveProbability the probability of a false positive once the filter holds its expected number
+     * of hashes, between 0 and 1 exclusive
+     */
+    public BloomFilter(long expectedHashes, double falsePositiveProbability) {
+        if (expectedHashes < 1) {
+            throw new IllegalArgumentException("The expected number of hashes must be positive");
+        }
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException("The false positive probability must be between 0 and 1");
+        }
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-expectedHashes * Math.log(falsePositiveProbability) / (ln2 * ln2));
+        int length = (int) Math.min(Integer.MAX_VALUE, (optimalBits + 63) / 64);
+        this.words = new AtomicLongArray(length);
+        this.bits = (long) length * 64;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bits / expectedHashes * ln2));
+    }
+
+    /**
+     * Add a hash.
+     *
+     * @param hash the hash, expected to be well distributed over its 64 bits
+     */
+    public void put(long hash) {
+        long h1 = mix(hash);
+        long h2 = mix(h1 ^ 0x9e3779b97f4a7c15L) | 1L;
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long word = words.get(index);
+            while ((word & mask) == 0 && !words.compareAndSet(index, word, word | mask)) {
+                word = words.get(index);
+            }
+        }
+    }
+
+    /**
+     * @param hash the hash
+     * @return false if the hash was never added, true if it may have been
+     */
+    public boolean mightContain(long hash) {
+        long h1 = mix(hash);
+        long h2 = mix(h1 ^ 0x9e3779b97f4a7c15L) | 1L;
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getHashFunctions() {
+        return hashFunctions;
+    }
+
+    public long getBits() {
+        return bits;
+    }
+
+    /**
+     * The finalizer of SplitMix64, a bijection spreading every input bit over the whole output.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,326 @@
+package org.crowdware.service.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * An immutable, weighted completion trie answering "the top K keys starting with a prefix" in time bounded by the
+ * length of the prefix and K, and independent of the number of keys.
+ * <p>
+ * The trie is compressed: chains of nodes with a single child are merged in one node whose edge label holds several
+ * characters, so it has at most twice as many nodes as keys. Nodes are numbered in depth-first order with their
+ * children sorted by label, which is the lexicographic order of the keys, and are stored in flat arrays rather than
+ * objects. Each node records the highest weight below it: a lookup walks down to the node of the prefix, then
+ * expands its subtree best-first, the heaviest node first, and stops after K keys without visiting the lighter
+ * branches.
+ * <p>
+ * Keys are matched exactly, callers normalize them (for instance to lower case) and keep the original text of each
+ * key as its completion. A new trie is built for each change of the keys, see {@link Builder}. Being immutable, this
+ * class is thread-safe.
+ */
+public class CompletionTrie {
+
+    private static final CompletionTrie EMPTY = new Builder().build();
+
+    private static final Comparator<Candidate> BEST_FIRST = Comparator
+        .comparingLong((Candidate candidate) -> -candidate.weight)
+        .thenComparingInt(candidate -> candidate.node)
+        .thenComparing(candidate -> !candidate.complete);
+
+    private final char[] labels;
+
+    private final int[] labelStarts;
+
+    private final int[] labelEnds;
+
+    private final int[] childStarts;
+
+    private final int[] childEnds;
+
+    private final int[] children;
+
+    private final long[] maxWeights;
+
+    private final int[] entries;
+
+    private final String[] texts;
+
+    private final long[] weights;
+
+    private CompletionTrie(Builder builder) {
+        String[] keys = builder.entries.keySet().toArray(new String[builder.entries.size()]);
+        Arrays.sort(keys);
+        int maxNodes = 2 * keys.length + 1;
+        labelStarts = new int[maxNodes];
+        labelEnds = new int[maxNodes];
+        childStarts = new int[maxNodes];
+        childEnds = new int[maxNodes];
+        maxWeights = new long[maxNodes];
+        entries = new int[maxNodes];
+        texts = new String[keys.length];
+        weights = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            Entry entry = builder.entries.get(keys[i]);
+            texts[i] = entry.text;
+            weights[i] = entry.weight;
+        }
+        Layout layout = new Layout(keys, maxNodes);
+        layout.node(0, keys.length, 0, 0, 0);
+        labels = layout.labels.toString().toCharArray();
+        children = Arrays.copyOf(layout.children, layout.childCount);
+    }
+
+    public static CompletionTrie empty() {
+        return EMPTY;
+    }
+
+    public int size() {
+        return texts.length;
+    }
+
+    /**
+     * Find the heaviest keys starting with a prefix.
+     *
+     * @param prefix the prefix, which matches every key if empty
+     * @param limit the maximum number of completions
+     * @return the completions, heaviest first, then in the order of their keys
+     */
+    public List<Completion> complete(CharSequence prefix, int limit) {
+        List<Completion> completions = new ArrayList<>();
+        int node = find(prefix);
+        if (node < 0 || limit <= 0) {
+            return completions;
+        }
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(BEST_FIRST);
+        candidates.add(new Candidate(node, maxWeights[node], false));
+        while (!candidates.isEmpty() && completions.size() < limit) {
+            Candidate candidate = candidates.poll();
+            if (candidate.complete) {
+                int entry = entries[candidate.node];
+                completions.add(new Completion(texts[entry], weights[entry]));
+                continue;
+            }
+            int entry = entries[candidate.node];
+            if (entry >= 0) {
+                candidates.add(new Candidate(candidate.node, weights[entry], true));
+            }
+            for (int i = childStarts[candidate.node]; i < childEnds[candidate.node]; i++) {
+                candidates.add(new Candidate(children[i], maxWeights[children[i]], false));
+            }
+        }
+        return completions;
+    }
+
+    /**
+     * @return the node whose subtree holds the keys starting with the prefix, or -1 if there is none
+     */
+    private int find(CharSequence prefix) {
+        if (texts.length == 0) {
+            return -1;
+        }
+        int node = 0;
+        int matched = 0;
+        while (matched < prefix.length()) {
+            node = findChild(node, prefix.charAt(matched));
+            if (node < 0) {
+                return -1;
+            }
+            for (int i = labelStarts[node]; i < labelEnds[node] && matched < prefix.length(); i++, matched++) {
+                if (labels[i] != prefix.charAt(matched)) {
+                    return -1;
+                }
+            }
+        }
+        return node;
+    }
+
+    private int findChild(int node, char c) {
+        int low = childStarts[node];
+        int high = childEnds[node] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char first = labels[labelStarts[children[middle]]];
+            if (first < c) {
+                low = middle + 1;
+            } else if (first > c) {
+                high = middle - 1;
+            } else {
+                return children[middle];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Lays the nodes of the sorted keys out in the arrays of the trie, in depth-first order.
+     */
+    private class Layout {
+
+        private final String[] keys;
+
+        private final StringBuilder labels = new StringBuilder();
+
+        private int[] children;
+
+        private int childCount;
+
+        private int nodeCount;
+
+        Layout(String[] keys, int maxNodes) {
+            this.keys = keys;
+            this.children = new int[maxNodes];
+        }
+
+        /**
+         * Lay out the node of the keys {@code [from, to)}, which share their first {@code depth} characters.
+         *
+         * @return the node
+         */
+        int node(int from, int to, int depth, int labelStart, int labelEnd) {
+            int node = nodeCount++;
+            labelStarts[node] = labelStart;
+            labelEnds[node] = labelEnd;
+            entries[node] = -1;
+            long maxWeight = Long.MIN_VALUE;
+            int first = from;
+            if (first < to && keys[first].length() == depth) {
+                entries[node] = first;
+                maxWeight = weights[first];
+                first++;
+            }
+            List<Integer> nodeChildren = new ArrayList<>();
+            while (first < to) {
+                char c = keys[first].charAt(depth);
+                int last = first + 1;
+                while (last < to && keys[last].charAt(depth) == c) {
+                    last++;
+                }
+                int childDepth = commonPrefixLength(keys[first], keys[last - 1], depth + 1);
+                int childLabelStart = labels.length();
+                labels.append(keys[first], depth, childDepth);
+                int child = node(first, last, childDepth, childLabelStart, labels.length());
+                maxWeight = Math.max(maxWeight, maxWeights[child]);
+                nodeChildren.add(child);
+                first = last;
+            }
+            childStarts[node] = childCount;
+            for (int child : nodeChildren) {
+                children[childCount++] = child;
+            }
+            childEnds[node] = childCount;
+            maxWeights[node] = maxWeight;
+            return node;
+        }
+
+        private int commonPrefixLength(String a, String b, int from) {
+            int length = from;
+            while (length < a.length() && length < b.length() && a.charAt(length) == b.charAt(length)) {
+                length++;
+            }
+            return length;
+        }
+    }
+
+    /**
+     * Collects the keys of a new trie.
+     * <p>
+     * This class is not thread-safe.
+     */
+    public static class Builder {
+
+        private final Map<String, Entry> entries = new HashMap<>();
+
+        /**
+         * Add a key. The weights of a key added several times are summed, and its completion is the text of its
+         * heaviest addition.
+         *
+         * @param key the normalized key
+         * @param text the completion of the key
+         * @param weight the weight of the key, heavier keys are completed first
+         * @return this builder
+         */
+        public Builder add(String key, String text, long weight) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                entries.put(key, new Entry(text, weight));
+            } else {
+                if (weight > entry.heaviest) {
+                    entry.text = text;
+                    entry.heaviest = weight;
+                }
+                entry.weight += weight;
+            }
+            return this;
+        }
+
+        public CompletionTrie build() {
+            return new CompletionTrie(this);
+        }
+    }
+
+    private static class Entry {
+
+        private String text;
+
+        private long heaviest;
+
+        private long weight;
+
+        Entry(String text, long weight) {
+            this.text = text;
+            this.heaviest = weight;
+            this.weight = weight;
+        }
+    }
+
+    private static class Candidate {
+
+        private final int node;
+
+        private final long weight;
+
+        private final boolean complete;
+
+        Candidate(int node, long weight, boolean complete) {
+            this.node = node;
+            this.weight = weight;
+            this.complete = complete;
+        }
+    }
+
+    /**
+     * A completion of a prefix, with the weight of its key.
+     */
+    public static class Completion {
+
+        private final String text;
+
+        private final long weight;
+
+        public Completion(String text, long weight) {
+            this.text = text;
+            this.weight = weight;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+
+        @Override
+        public String toString() {
+            return "Completion{" +
+                "text='" + text + "'" +
+                ", weight=" + weight +
+                '}';
+        }
+    }
+}
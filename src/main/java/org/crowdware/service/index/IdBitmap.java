@@ -0,0 +1,464 @@
+package org.crowdware.service.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compressed bitmap of entity ids, in the spirit of Roaring bitmaps.
+ * <p>
+ * An id is split into a high key ({@code id >> 16}) and a 16 bits low part. Each key owns a container holding the
+ * low parts: a sorted array while it has at most {@value #ARRAY_MAX_SIZE} values, or a plain 65536 bits bitmap when
+ * it is denser. Set operations merge the sorted keys and then work container by container, which keeps them both
+ * compact and fast.
+ * <p>
+ * This class is not thread-safe, callers are expected to guard it.
+ */
+public class IdBitmap {
+
+    static final int ARRAY_MAX_SIZE = 4096;
+
+    private long[] keys = new long[4];
+
+    private Container[] containers = new Container[4];
+
+    private int size;
+
+    public void add(long id) {
+        long key = id >> 16;
+        char low = (char) id;
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index >= 0) {
+            containers[index] = containers[index].add(low);
+        } else {
+            insertAt(-index - 1, key, new ArrayContainer().add(low));
+        }
+    }
+
+    public void remove(long id) {
+        int index = Arrays.binarySearch(keys, 0, size, id >> 16);
+        if (index >= 0) {
+            Container container = containers[index].remove((char) id);
+            if (container.cardinality() == 0) {
+                removeAt(index);
+            } else {
+                containers[index] = container;
+            }
+        }
+    }
+
+    public boolean contains(long id) {
+        int index = Arrays.binarySearch(keys, 0, size, id >> 16);
+        return index >= 0 && containers[index].contains((char) id);
+    }
+
+    public long cardinality() {
+        long cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the ids of the bitmap.
+     *
+     * @param offset the number of ids to skip
+     * @param limit the maximum number of ids to return
+     * @return the ids, in ascending order
+     */
+    public List<Long> toList(long offset, int limit) {
+        List<Long> result = new ArrayList<>(Math.min(limit, 1024));
+        long skipped = 0;
+        for (int i = 0; i < size && result.size() < limit; i++) {
+            int cardinality = containers[i].cardinality();
+            if (skipped + cardinality <= offset) {
+                skipped += cardinality;
+                continue;
+            }
+            long high = keys[i] << 16;
+            int[] values = containers[i].values();
+            for (int j = (int) (offset - skipped); j < values.length && result.size() < limit; j++) {
+                result.add(high | values[j]);
+            }
+            skipped = offset;
+        }
+        return result;
+    }
+
+    public IdBitmap copy() {
+        IdBitmap copy = new IdBitmap();
+        copy.keys = Arrays.copyOf(keys, Math.max(size, 4));
+        copy.containers = new Container[copy.keys.length];
+        for (int i = 0; i < size; i++) {
+            copy.containers[i] = containers[i].copy();
+        }
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Compute the intersection of two bitmaps.
+     *
+     * @param a the first bitmap
+     * @param b the second bitmap
+     * @return a new bitmap with the ids present in both
+     */
+    public static IdBitmap and(IdBitmap a, IdBitmap b) {
+        IdBitmap result = new IdBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (a.keys[i] > b.keys[j]) {
+                j++;
+            } else {
+                result.append(a.keys[i], a.containers[i].and(b.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compute the union of two bitmaps.
+     *
+     * @param a the first bitmap
+     * @param b the second bitmap
+     * @return a new bitmap with the ids present in either
+     */
+    public static IdBitmap or(IdBitmap a, IdBitmap b) {
+        IdBitmap result = new IdBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size || j < b.size) {
+            if (j == b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+                result.append(a.keys[i], a.containers[i].copy());
+                i++;
+            } else if (i == a.size || a.keys[i] > b.keys[j]) {
+                result.append(b.keys[j], b.containers[j].copy());
+                j++;
+            } else {
+                result.append(a.keys[i], a.containers[i].or(b.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compute the difference of two bitmaps.
+     *
+     * @param a the bitmap to subtract from
+     * @param b the bitmap to subtract
+     * @return a new bitmap with the ids of a which are not in b
+     */
+    public static IdBitmap andNot(IdBitmap a, IdBitmap b) {
+        IdBitmap result = new IdBitmap();
+        int j = 0;
+        for (int i = 0; i < a.size; i++) {
+            while (j < b.size && b.keys[j] < a.keys[i]) {
+                j++;
+            }
+            if (j < b.size && b.keys[j] == a.keys[i]) {
+                result.append(a.keys[i], a.containers[i].andNot(b.containers[j]));
+            } else {
+                result.append(a.keys[i], a.containers[i].copy());
+            }
+        }
+        return result;
+    }
+
+    private void append(long key, Container container) {
+        if (container.cardinality() > 0) {
+            insertAt(size, key, container);
+        }
+    }
+
+    private void insertAt(int index, long key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    private void removeAt(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+        size--;
+        containers[size] = null;
+    }
+
+    private abstract static class Container {
+
+        abstract Container add(char value);
+
+        abstract Container remove(char value);
+
+        abstract boolean contains(char value);
+
+        abstract int cardinality();
+
+        abstract int[] values();
+
+        abstract Container copy();
+
+        abstract BitmapContainer toBitmap();
+
+        Container and(Container other) {
+            if (this instanceof ArrayContainer) {
+                return ((ArrayContainer) this).filter(other, true);
+            }
+            if (other instanceof ArrayContainer) {
+                return ((ArrayContainer) other).filter(this, true);
+            }
+            return ((BitmapContainer) this).combine((BitmapContainer) other, Operation.AND);
+        }
+
+        Container or(Container other) {
+            if (this instanceof ArrayContainer && other instanceof ArrayContainer
+                && cardinality() + other.cardinality() <= ARRAY_MAX_SIZE) {
+                return ((ArrayContainer) this).union((ArrayContainer) other);
+            }
+            return toBitmap().combine(other.toBitmap(), Operation.OR);
+        }
+
+        Container andNot(Container other) {
+            if (this instanceof ArrayContainer) {
+                return ((ArrayContainer) this).filter(other, false);
+            }
+            return ((BitmapContainer) this).combine(other.toBitmap(), Operation.AND_NOT);
+        }
+    }
+
+    private enum Operation {
+        AND, OR, AND_NOT
+    }
+
+    private static final class ArrayContainer extends Container {
+
+        private char[] content;
+
+        private int cardinality;
+
+        private ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        private ArrayContainer(char[] content, int cardinality) {
+            this.content = content;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+            int index = Arrays.binarySearch(content, 0, cardinality, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_MAX_SIZE) {
+                return toBitmap().add(value);
+            }
+            index = -index - 1;
+            if (cardinality == content.length) {
+                content = Arrays.copyOf(content, Math.min(cardinality * 2, ARRAY_MAX_SIZE));
+            }
+            System.arraycopy(content, index, content, index + 1, cardinality - index);
+            content[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            int index = Arrays.binarySearch(content, 0, cardinality, value);
+            if (index >= 0) {
+                System.arraycopy(content, index + 1, content, index, cardinality - index - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(content, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int[] values() {
+            int[] values = new int[cardinality];
+            for (int i = 0; i < cardinality; i++) {
+                values[i] = content[i];
+            }
+            return values;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(content, Math.max(cardinality, 4)), cardinality);
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.set(content[i]);
+            }
+            return bitmap;
+        }
+
+        /**
+         * Keep the values which are, or are not, in another container.
+         */
+        private ArrayContainer filter(Container other, boolean keepContained) {
+            char[] result = new char[Math.max(cardinality, 4)];
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (other.contains(content[i]) == keepContained) {
+                    result[count++] = content[i];
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        private ArrayContainer union(ArrayContainer other) {
+            char[] result = new char[Math.max(cardinality + other.cardinality, 4)];
+            int i = 0;
+            int j = 0;
+            int count = 0;
+            while (i < cardinality || j < other.cardinality) {
+                if (j == other.cardinality || (i < cardinality && content[i] < other.content[j])) {
+                    result[count++] = content[i++];
+                } else if (i == cardinality || content[i] > other.content[j]) {
+                    result[count++] = other.content[j++];
+                } else {
+                    result[count++] = content[i++];
+                    j++;
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+
+        private final long[] words;
+
+        private int cardinality;
+
+        private BitmapContainer() {
+            this(new long[1024], 0);
+        }
+
+        private BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        private void set(char value) {
+            long before = words[value >>> 6];
+            long after = before | (1L << value);
+            words[value >>> 6] = after;
+            if (before != after) {
+                cardinality++;
+            }
+        }
+
+        @Override
+        Container add(char value) {
+            set(value);
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            long before = words[value >>> 6];
+            long after = before & ~(1L << value);
+            words[value >>> 6] = after;
+            if (before != after) {
+                cardinality--;
+            }
+            return cardinality > ARRAY_MAX_SIZE ? this : toArray();
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int[] values() {
+            int[] values = new int[cardinality];
+            int count = 0;
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[count++] = (i << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            return values;
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            return this;
+        }
+
+        private Container toArray() {
+            int[] values = values();
+            char[] content = new char[Math.max(values.length, 4)];
+            for (int i = 0; i < values.length; i++) {
+                content[i] = (char) values[i];
+            }
+            return new ArrayContainer(content, values.length);
+        }
+
+        private Container combine(BitmapContainer other, Operation operation) {
+            long[] result = new long[words.length];
+            int count = 0;
+            for (int i = 0; i < words.length; i++) {
+                switch (operation) {
+                    case AND:
+                        result[i] = words[i] & other.words[i];
+                        break;
+                    case OR:
+                        result[i] = words[i] | other.words[i];
+                        break;
+                    default:
+                        result[i] = words[i] & ~other.words[i];
+                }
+                count += Long.bitCount(result[i]);
+            }
+            BitmapContainer bitmap = new BitmapContainer(result, count);
+            return count > ARRAY_MAX_SIZE ? bitmap : bitmap.toArray();
+        }
+    }
+}
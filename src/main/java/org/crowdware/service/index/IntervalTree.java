@@ -0,0 +1,212 @@
+package org.crowdware.service.index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * An augmented interval tree over half-open {@code [start, end)} intervals, each one tagged with an entity id.
+ * <p>
+ * The tree is a treap ordered on {@code (start, id)} in which every node also carries the greatest end of its
+ * subtree, so point and overlap queries can skip whole subtrees and answer in O(log n + k).
+ * <p>
+ * This class is not thread-safe, callers are expected to guard it.
+ */
+public class IntervalTree {
+
+    private final Map<Long, Node> nodesById = new HashMap<>();
+
+    private Node root;
+
+    /**
+     * Add an interval, replacing the previous interval of the same id if there is one.
+     *
+     * @param id the id of the entity owning the interval
+     * @param start the inclusive start of the interval
+     * @param end the exclusive end of the interval
+     */
+    public void put(long id, long start, long end) {
+        remove(id);
+        Node node = new Node(id, start, end, ThreadLocalRandom.current().nextInt());
+        root = insert(root, node);
+        nodesById.put(id, node);
+    }
+
+    /**
+     * Remove the interval of an id.
+     *
+     * @param id the id of the entity owning the interval
+     * @return true if an interval was removed
+     */
+    public boolean remove(long id) {
+        Node node = nodesById.remove(id);
+        if (node == null) {
+            return false;
+        }
+        root = delete(root, node);
+        return true;
+    }
+
+    public void clear() {
+        nodesById.clear();
+        root = null;
+    }
+
+    public int size() {
+        return nodesById.size();
+    }
+
+    /**
+     * Find the intervals containing a point, that is {@code start <= point < end}.
+     *
+     * @param point the point to look up
+     * @return the ids of the matching intervals, ordered by start
+     */
+    public List<Long> findContaining(long point) {
+        if (point == Long.MAX_VALUE) {
+            return new ArrayList<>();
+        }
+        return findOverlapping(point, point + 1);
+    }
+
+    /**
+     * Find the intervals overlapping {@code [from, to)}, that is {@code start < to && end > from}.
+     *
+     * @param from the inclusive start of the range
+     * @param to the exclusive end of the range
+     * @return the ids of the matching intervals, ordered by start
+     */
+    public List<Long> findOverlapping(long from, long to) {
+        List<Long> result = new ArrayList<>();
+        if (from < to) {
+            collect(root, from, to, result);
+        }
+        return result;
+    }
+
+    private static void collect(Node node, long from, long to, List<Long> result) {
+        if (node == null || node.maxEnd <= from) {
+            return;
+        }
+        collect(node.left, from, to, result);
+        if (node.start < to) {
+            if (node.end > from) {
+                result.add(node.id);
+            }
+            collect(node.right, from, to, result);
+        }
+    }
+
+    private static Node insert(Node node, Node inserted) {
+        if (node == null) {
+            return inserted;
+        }
+        if (compare(inserted, node) < 0) {
+            node.left = insert(node.left, inserted);
+            if (node.left.priority > node.priority) {
+                return rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, inserted);
+            if (node.right.priority > node.priority) {
+                return rotateLeft(node);
+            }
+        }
+        node.update();
+        return node;
+    }
+
+    private static Node delete(Node node, Node deleted) {
+        if (node == null) {
+            return null;
+        }
+        if (node == deleted) {
+            return merge(node.left, node.right);
+        }
+        if (compare(deleted, node) < 0) {
+            node.left = delete(node.left, deleted);
+        } else {
+            node.right = delete(node.right, deleted);
+        }
+        node.update();
+        return node;
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        node.update();
+        pivot.update();
+        return pivot;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        node.update();
+        pivot.update();
+        return pivot;
+    }
+
+    private static int compare(Node a, Node b) {
+        int result = Long.compare(a.start, b.start);
+        return result != 0 ? result : Long.compare(a.id, b.id);
+    }
+
+    private static final class Node {
+
+        private final long id;
+
+        private final long start;
+
+        private final long end;
+
+        private final int priority;
+
+        private long maxEnd;
+
+        private Node left;
+
+        private Node right;
+
+        private Node(long id, long start, long end, int priority) {
+            this.id = id;
+            this.start = start;
+            this.end = end;
+            this.priority = priority;
+            this.maxEnd = end;
+        }
+
+        private void update() {
+            long max = end;
+            if (left != null && left.maxEnd > max) {
+                max = left.maxEnd;
+            }
+            if (right != null && right.maxEnd > max) {
+                max = right.maxEnd;
+            }
+            maxEnd = max;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package org.crowdware.service.index;
+
+import org.crowdware.config.CrowdwareProperties;
+import org.crowdware.domain.JobAttribute;
+import org.crowdware.repository.JobAttributeRepository;
+import org.crowdware.repository.JobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Inverted index from JobAttribute (name, value) pairs to the ids of the Jobs carrying them.
+ * <p>
+ * Each pair owns a compressed {@link IdBitmap} of job ids, so filters combining many attributes are answered with a
+ * few bitmap intersections and unions instead of self-joins on the job_attribute table.
+ * <p>
+ * The set of terms of each job is also summarized in a {@link MinHashIndex}, which finds the jobs with the most
+ * similar attributes without comparing a job to every other one. A job's signature is recomputed whenever one of its
+ * terms is added or removed.
+ * <p>
+ * The index is loaded once the application is ready, then kept in sync by the JobAttribute and Job write paths.
+ */
+@Service
+public class JobAttributeIndex implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final Logger log = LoggerFactory.getLogger(JobAttributeIndex.class);
+
+    private final Map<Term, IdBitmap> postings = new HashMap<>();
+
+    private final Map<Long, Posting> postingByAttributeId = new HashMap<>();
+
+    private final Map<Posting, Integer> attributeCounts = new HashMap<>();
+
+    private final IdBitmap allJobs = new IdBitmap();
+
+    private final Map<Long, Set<Term>> termsByJob = new HashMap<>();
+
+    private final Set<Long> staleJobs = new HashSet<>();
+
+    private MinHashIndex similarJobs;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Inject
+    private JobRepository jobRepository;
+
+    @Inject
+    private JobAttributeRepository jobAttributeRepository;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
+
+    @PostConstruct
+    public void init() {
+        CrowdwareProperties.Similarity similarity = crowdwareProperties.getSimilarity();
+        similarJobs = new MinHashIndex(similarity.getBands(), similarity.getRows());
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        rebuild();
+    }
+
+    /**
+     * Reload the whole index from the database.
+     */
+    public void rebuild() {
+        List<Long> jobIds = jobRepository.findAllIds();
+        List<JobAttribute> jobAttributes = jobAttributeRepository.findAll();
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            postingByAttributeId.clear();
+            attributeCounts.clear();
+            termsByJob.clear();
+            similarJobs.clear();
+            jobIds.forEach(this::addJobId);
+            jobAttributes.forEach(this::index);
+            refreshSignatures();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Indexed {} JobAttributes of {} Jobs", jobAttributes.size(), jobIds.size());
+    }
+
+    /**
+     * Add or replace the posting of a saved job attribute.
+     *
+     * @param jobAttribute the persisted job attribute
+     */
+    public void put(JobAttribute jobAttribute) {
+        lock.writeLock().lock();
+        try {
+            index(jobAttribute);
+            refreshSignatures();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the posting of a deleted job attribute.
+     *
+     * @param id the id of the job attribute
+     */
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            unindex(id);
+            refreshSignatures();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Register a new job, so that it can match negative filters.
+     *
+     * @param id the id of the job
+     */
+    public void addJob(Long id) {
+        lock.writeLock().lock();
+        try {
+            addJobId(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forget a deleted job.
+     *
+     * @param id the id of the job
+     */
+    public void removeJob(Long id) {
+        lock.writeLock().lock();
+        try {
+            allJobs.remove(id);
+            postings.values().forEach(bitmap -> bitmap.remove(id));
+            termsByJob.remove(id);
+            similarJobs.remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find the jobs matching a combination of attribute terms.
+     *
+     * @param all the terms a job must all carry
+     * @param any the terms a job must carry at least one of, ignored when empty
+     * @param none the terms a job must not carry
+     * @return a new bitmap of the matching job ids
+     */
+    public IdBitmap filter(List<Term> all, List<Term> any, List<Term> none) {
+        lock.readLock().lock();
+        try {
+            IdBitmap result = null;
+            for (Term term : all) {
+                IdBitmap bitmap = postingOf(term);
+                result = result == null ? bitmap.copy() : IdBitmap.and(result, bitmap);
+                if (result.isEmpty()) {
+                    return result;
+                }
+            }
+            if (!any.isEmpty()) {
+                IdBitmap union = new IdBitmap();
+                for (Term term : any) {
+                    union = IdBitmap.or(union, postingOf(term));
+                }
+                result = result == null ? union : IdBitmap.and(result, union);
+            }
+            if (result == null) {
+                result = allJobs.copy();
+            }
+            for (Term term : none) {
+                result = IdBitmap.andNot(result, postingOf(term));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the jobs whose attributes are the most similar to the attributes of a job.
+     *
+     * @param jobId the id of the job
+     * @param limit the maximum number of jobs to return
+     * @return the similar jobs with their estimated Jaccard similarity, most similar first
+     */
+    public List<MinHashIndex.Match> findSimilar(Long jobId, int limit) {
+        lock.readLock().lock();
+        try {
+            return similarJobs.similar(jobId, limit, crowdwareProperties.getSimilarity().getMaxCandidates());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the jobs whose attributes are the most similar to a set of terms, such as the skills of a worker.
+     *
+     * @param terms the terms
+     * @param limit the maximum number of jobs to return
+     * @return the similar jobs with their estimated Jaccard similarity, most similar first
+     */
+    public List<MinHashIndex.Match> findSimilar(List<Term> terms, int limit) {
+        List<String> features = terms.stream().distinct().map(Term::toString).collect(Collectors.toList());
+        lock.readLock().lock();
+        try {
+            return similarJobs.similar(features, limit, crowdwareProperties.getSimilarity().getMaxCandidates());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private IdBitmap postingOf(Term term) {
+        IdBitmap bitmap = postings.get(term);
+        return bitmap != null ? bitmap : new IdBitmap();
+    }
+
+    private void addJobId(Long id) {
+        if (id != null) {
+            allJobs.add(id);
+        }
+    }
+
+    private void index(JobAttribute jobAttribute) {
+        if (jobAttribute.getId() == null) {
+            return;
+        }
+        unindex(jobAttribute.getId());
+        if (jobAttribute.getJob() == null || jobAttribute.getJob().getId() == null) {
+            return;
+        }
+        Posting posting = new Posting(new Term(jobAttribute.getName(), jobAttribute.getValue()), jobAttribute.getJob().getId());
+        postingByAttributeId.put(jobAttribute.getId(), posting);
+        if (attributeCounts.merge(posting, 1, Integer::sum) == 1) {
+            termsByJob.computeIfAbsent(posting.jobId, jobId -> new HashSet<>()).add(posting.term);
+            staleJobs.add(posting.jobId);
+        }
+        postings.computeIfAbsent(posting.term, term -> new IdBitmap()).add(posting.jobId);
+        allJobs.add(posting.jobId);
+    }
+
+    private void unindex(Long id) {
+        Posting posting = postingByAttributeId.remove(id);
+        if (posting == null) {
+            return;
+        }
+        Integer remaining = attributeCounts.merge(posting, -1, Integer::sum);
+        if (remaining != null && remaining > 0) {
+            return;
+        }
+        attributeCounts.remove(posting);
+        Set<Term> terms = termsByJob.get(posting.jobId);
+        if (terms != null) {
+            terms.remove(posting.term);
+            if (terms.isEmpty()) {
+                termsByJob.remove(posting.jobId);
+            }
+            staleJobs.add(posting.jobId);
+        }
+        IdBitmap bitmap = postings.get(posting.term);
+        if (bitmap != null) {
+            bitmap.remove(posting.jobId);
+            if (bitmap.isEmpty()) {
+                postings.remove(posting.term);
+            }
+        }
+    }
+
+    private void refreshSignatures() {
+        for (Long jobId : staleJobs) {
+            Set<Term> terms = termsByJob.get(jobId);
+            if (terms == null) {
+                similarJobs.remove(jobId);
+            } else {
+                similarJobs.put(jobId, terms.stream().map(Term::toString).collect(Collectors.toList()));
+            }
+        }
+        staleJobs.clear();
+    }
+
+    /**
+     * A (name, value) pair of a JobAttribute. A missing value matches the empty string.
+     */
+    public static final class Term {
+
+        private final String name;
+
+        private final String value;
+
+        public Term(String name, String value) {
+            this.name = name;
+            this.value = value != null ? value : "";
+        }
+
+        /**
+         * Parse a term written as {@code name:value}.
+         *
+         * @param term the term
+         * @return the parsed term
+         * @throws IllegalArgumentException if the term has no ':' separator
+         */
+        public static Term parse(String term) {
+            int separator = term.indexOf(':');
+            if (separator < 1) {
+                throw new IllegalArgumentException("A term must be written as name:value, got " + term);
+            }
+            return new Term(term.substring(0, separator), term.substring(separator + 1));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Term term = (Term) o;
+            return Objects.equals(name, term.name) && Objects.equals(value, term.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, value);
+        }
+
+        @Override
+        public String toString() {
+            return name + ":" + value;
+        }
+    }
+
+    private static final class Posting {
+
+        private final Term term;
+
+        private final long jobId;
+
+        private Posting(Term term, long jobId) {
+            this.term = term;
+            this.jobId = jobId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Posting posting = (Posting) o;
+            return jobId == posting.jobId && term.equals(posting.term);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * term.hashCode() + Long.hashCode(jobId);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.crowdware.service.index;
+
+import org.crowdware.domain.Job;
+import org.crowdware.domain.Money;
+import org.crowdware.repository.JobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Service;
+
+import javax.inject.Inject;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory order book of the open Jobs, keyed on their offer.
+ * <p>
+ * The book is loaded from the unassigned jobs once the application is ready, then updated by JobService and by
+ * the JobDispatcher when a job gets assigned, so "best paying jobs" queries never hit the database.
+ */
+@Service
+public class JobOfferBook implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final Logger log = LoggerFactory.getLogger(JobOfferBook.class);
+
+    private final PriceLevelBook book = new PriceLevelBook();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Inject
+    private JobRepository jobRepository;
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        rebuild();
+    }
+
+    /**
+     * Reload the whole book from the unassigned jobs.
+     */
+    public void rebuild() {
+        List<Job> jobs = jobRepository.findUnassigned();
+        lock.writeLock().lock();
+        try {
+            book.clear();
+            jobs.forEach(this::index);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Loaded {} open Jobs in the offer book", book.size());
+    }
+
+    /**
+     * Add an open job to the book, or move it to its new offer level.
+     *
+     * @param job the persisted job
+     */
+    public void put(Job job) {
+        lock.writeLock().lock();
+        try {
+            index(job);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a job from the book, because it was assigned or deleted.
+     *
+     * @param id the id of the job
+     */
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            book.remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get the ids of the best paying open jobs.
+     *
+     * @param limit the maximum number of ids
+     * @return the ids, highest offer first, then oldest first
+     */
+    public List<Long> top(int limit) {
+        lock.readLock().lock();
+        try {
+            return book.top(limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the ids of the open jobs with an offer between two bounds, both inclusive.
+     *
+     * @param min the lowest offer, or null for no lower bound
+     * @param max the highest offer, or null for no upper bound
+     * @param limit the maximum number of ids
+     * @return the ids, highest offer first, then oldest first
+     */
+    public List<Long> range(BigDecimal min, BigDecimal max, int limit) {
+        // offers are whole cents, so the bounds are rounded inwards
+        Money lowest = min != null ? Money.of(min, RoundingMode.CEILING) : null;
+        Money highest = max != null ? Money.of(max, RoundingMode.FLOOR) : null;
+        lock.readLock().lock();
+        try {
+            return book.range(lowest, highest, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Count the open jobs offering strictly more than a price.
+     *
+     * @param price the price
+     * @return the number of jobs
+     */
+    public long countAbove(BigDecimal price) {
+        // an offer in whole cents is above the price if it is above its floor
+        Money floor = Money.of(price, RoundingMode.FLOOR);
+        lock.readLock().lock();
+        try {
+            return book.countAbove(floor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void index(Job job) {
+        if (job.getId() == null) {
+            return;
+        }
+        if (job.getOffer() == null) {
+            book.remove(job.getId());
+        } else {
+            book.put(job.getId(), job.getOffer());
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package org.crowdware.service.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * A locality-sensitive hashing index of sets, finding the sets most similar to a given one without comparing it to
+ * every other set.
+ * <p>
+ * Each set is summarized by a MinHash signature: for each of {@code bands * rows} hash functions, the smallest hash
+ * of its features. Two signatures agree on a position with a probability equal to the Jaccard similarity of their
+ * sets. The signature is cut in bands of {@code rows} positions, and each band is hashed to a bucket, so two sets
+ * land in a common bucket with a high probability when they are similar, and a low one otherwise. A query only scores
+ * the sets sharing a bucket with it, by comparing their signatures.
+ * <p>
+ * This class is not thread-safe, callers are expected to guard it.
+ */
+public class MinHashIndex {
+
+    private static final long SEED = 0x5DEECE66DL;
+
+    private final int bands;
+
+    private final int rows;
+
+    private final long[] seeds;
+
+    private final Map<Long, int[]> signatures = new HashMap<>();
+
+    private final Map<Long, IdBitmap> buckets = new HashMap<>();
+
+    /**
+     * Create an empty index.
+     *
+     * @param bands the number of bands of a signature
+     * @param rows the number of positions of a band
+     */
+    public MinHashIndex(int bands, int rows) {
+        if (bands < 1 || rows < 1) {
+            throw new IllegalArgumentException("The number of bands and rows must be positive");
+        }
+        this.bands = bands;
+        this.rows = rows;
+        this.seeds = new long[bands * rows];
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Add or replace the features of a set. A set without features is removed.
+     *
+     * @param id the id of the set
+     * @param features the features of the set
+     */
+    public void put(long id, Collection<String> features) {
+        remove(id);
+        if (features.isEmpty()) {
+            return;
+        }
+        int[] signature = signatureOf(features);
+        signatures.put(id, signature);
+        for (int band = 0; band < bands; band++) {
+            buckets.computeIfAbsent(bucketOf(signature, band), key -> new IdBitmap()).add(id);
+        }
+    }
+
+    /**
+     * Remove a set.
+     *
+     * @param id the id of the set
+     */
+    public void remove(long id) {
+        int[] signature = signatures.remove(id);
+        if (signature == null) {
+            return;
+        }
+        for (int band = 0; band < bands; band++) {
+            long key = bucketOf(signature, band);
+            IdBitmap bucket = buckets.get(key);
+            if (bucket != null) {
+                bucket.remove(id);
+                if (bucket.isEmpty()) {
+                    buckets.remove(key);
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        signatures.clear();
+        buckets.clear();
+    }
+
+    public int size() {
+        return signatures.size();
+    }
+
+    /**
+     * Find the sets most similar to an indexed set.
+     *
+     * @param id the id of the indexed set
+     * @param limit the maximum number of sets to return
+     * @param maxCandidates the maximum number of sets to score
+     * @return the similar sets, most similar first, without the set itself
+     */
+    public List<Match> similar(long id, int limit, int maxCandidates) {
+        int[] signature = signatures.get(id);
+        if (signature == null) {
+            return new ArrayList<>();
+        }
+        return similar(signature, id, limit, maxCandidates);
+    }
+
+    /**
+     * Find the indexed sets most similar to a set of features.
+     *
+     * @param features the features
+     * @param limit the maximum number of sets to return
+     * @param maxCandidates the maximum number of sets to score
+     * @return the similar sets, most similar first
+     */
+    public List<Match> similar(Collection<String> features, int limit, int maxCandidates) {
+        if (features.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return similar(signatureOf(features), null, limit, maxCandidates);
+    }
+
+    private List<Match> similar(int[] signature, Long self, int limit, int maxCandidates) {
+        Set<Long> candidates = new HashSet<>();
+        for (int band = 0; band < bands && candidates.size() < maxCandidates; band++) {
+            IdBitmap bucket = buckets.get(bucketOf(signature, band));
+            if (bucket != null) {
+                candidates.addAll(bucket.toList(0, maxCandidates - candidates.size() + 1));
+            }
+        }
+        candidates.remove(self);
+        List<Match> matches = new ArrayList<>(candidates.size());
+        for (Long candidate : candidates) {
+            matches.add(new Match(candidate, similarity(signature, signatures.get(candidate))));
+        }
+        matches.sort((a, b) -> a.similarity != b.similarity
+            ? Double.compare(b.similarity, a.similarity)
+            : Long.compare(a.id, b.id));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    private int[] signatureOf(Collection<String> features) {
+        int[] signature = new int[seeds.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (String feature : features) {
+            long hash = hash(feature);
+            for (int i = 0; i < seeds.length; i++) {
+                int value = (int) mix(hash ^ seeds[i]);
+                if (value < signature[i]) {
+                    signature[i] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    private long bucketOf(int[] signature, int band) {
+        long key = mix(band + 1L);
+        for (int i = band * rows; i < (band + 1) * rows; i++) {
+            key = mix(key ^ signature[i]);
+        }
+        return key;
+    }
+
+    private static double similarity(int[] a, int[] b) {
+        int equal = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / a.length;
+    }
+
+    /**
+     * 64 bits FNV-1a hash of a string.
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * The finalizer of SplitMix64, a bijection spreading every input bit over the whole output.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * An indexed set, with its estimated Jaccard similarity to the query.
+     */
+    public static final class Match {
+
+        private final long id;
+
+        private final double similarity;
+
+        private Match(long id, double similarity) {
+            this.id = id;
+            this.similarity = similarity;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public double getSimilarity() {
+            return similarity;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.crowdware.service.index;
+
+import org.crowdware.domain.Money;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A price-level book of entity ids.
+ * <p>
+ * Ids are grouped by price in a sorted map of levels, highest price first, and each level keeps its ids in
+ * insertion order, so ties are served first in, first out. Prices are compared as cents, and counting the ids above
+ * a price only walks the levels, not the ids.
+ * <p>
+ * This class is not thread-safe, callers are expected to guard it.
+ */
+public class PriceLevelBook {
+
+    private final NavigableMap<Money, LinkedHashSet<Long>> levels = new TreeMap<>(Collections.reverseOrder());
+
+    private final Map<Long, Money> priceById = new HashMap<>();
+
+    /**
+     * Add an id at a price, moving it to the back of its new level if it was already in the book.
+     *
+     * @param id the entity id
+     * @param price the price, must not be null
+     */
+    public void put(long id, Money price) {
+        Money previous = priceById.get(id);
+        if (previous != null && previous.equals(price)) {
+            return;
+        }
+        remove(id);
+        levels.computeIfAbsent(price, level -> new LinkedHashSet<>()).add(id);
+        priceById.put(id, price);
+    }
+
+    /**
+     * Remove an id from the book.
+     *
+     * @param id the entity id
+     * @return true if the id was in the book
+     */
+    public boolean remove(long id) {
+        Money price = priceById.remove(id);
+        if (price == null) {
+            return false;
+        }
+        LinkedHashSet<Long> level = levels.get(price);
+        level.remove(id);
+        if (level.isEmpty()) {
+            levels.remove(price);
+        }
+        return true;
+    }
+
+    public boolean contains(long id) {
+        return priceById.containsKey(id);
+    }
+
+    public void clear() {
+        levels.clear();
+        priceById.clear();
+    }
+
+    public int size() {
+        return priceById.size();
+    }
+
+    /**
+     * Get the ids with the highest prices.
+     *
+     * @param limit the maximum number of ids to return
+     * @return the ids, highest price first, then first in first out
+     */
+    public List<Long> top(int limit) {
+        return collect(levels, limit);
+    }
+
+    /**
+     * Get the ids priced between two bounds, both inclusive.
+     *
+     * @param min the lowest price, or null for no lower bound
+     * @param max the highest price, or null for no upper bound
+     * @param limit the maximum number of ids to return
+     * @return the ids, highest price first, then first in first out
+     */
+    public List<Long> range(Money min, Money max, int limit) {
+        if (min != null && max != null && min.compareTo(max) > 0) {
+            return new ArrayList<>();
+        }
+        NavigableMap<Money, LinkedHashSet<Long>> range = levels;
+        if (max != null) {
+            range = range.tailMap(max, true);
+        }
+        if (min != null) {
+            range = range.headMap(min, true);
+        }
+        return collect(range, limit);
+    }
+
+    /**
+     * Count the ids priced strictly above a price.
+     *
+     * @param price the price
+     * @return the number of ids
+     */
+    public long countAbove(Money price) {
+        long count = 0;
+        for (LinkedHashSet<Long> level : levels.headMap(price, false).values()) {
+            count += level.size();
+        }
+        return count;
+    }
+
+    private static List<Long> collect(NavigableMap<Money, LinkedHashSet<Long>> range, int limit) {
+        List<Long> result = new ArrayList<>();
+        for (LinkedHashSet<Long> level : range.values()) {
+            for (Long id : level) {
+                if (result.size() >= limit) {
+                    return result;
+                }
+                result.add(id);
+            }
+        }
+        return result;
+    }
+}
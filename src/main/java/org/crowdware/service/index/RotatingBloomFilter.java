@@ -0,0 +1,107 @@
+package org.crowdware.service.index;
+
+/**
+ * A {@link BloomFilter} which forgets its hashes: a hash is remembered for at least one period and at most two.
+ * <p>
+ * Hashes are added to the current generation of the filter, and lookups also read the previous one. Once the current
+ * generation is one period old, it becomes the previous one and an empty generation starts; hashes of the generation
+ * it replaces are forgotten. Each generation is sized for the hashes expected in one period.
+ * <p>
+ * This class is thread-safe: lookups and additions need no lock, only the rotation of the generations is guarded.
+ */
+public class RotatingBloomFilter {
+
+    private final long expectedHashesPerPeriod;
+
+    private final double falsePositiveProbability;
+
+    private final long period;
+
+    private volatile Generation current;
+
+    private volatile BloomFilter previous;
+
+    /**
+     * Create an empty filter.
+     *
+     * @param expectedHashesPerPeriod the number of hashes added in one period, each generation is sized for it
+     * @param falsePositiveProbability the probability of a false positive of one generation once it holds its
+     * expected number of hashes
+     * @param period the period, in milliseconds
+     * @param now the current time, in milliseconds
+     */
+    public RotatingBloomFilter(long expectedHashesPerPeriod, double falsePositiveProbability, long period, long now) {
+        if (period < 1) {
+            throw new IllegalArgumentException("The period must be positive");
+        }
+        this.expectedHashesPerPeriod = expectedHashesPerPeriod;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.period = period;
+        this.current = new Generation(now, new BloomFilter(expectedHashesPerPeriod, falsePositiveProbability));
+    }
+
+    /**
+     * Add a hash.
+     *
+     * @param hash the hash, expected to be well distributed over its 64 bits
+     * @param now the current time, in milliseconds
+     */
+    public void put(long hash, long now) {
+        rotate(now).filter.put(hash);
+    }
+
+    /**
+     * @param hash the hash
+     * @param now the current time, in milliseconds
+     * @return false if the hash was not added in the last period, true if it may have been in the last two
+     */
+    public boolean mightContain(long hash, long now) {
+        Generation generation = rotate(now);
+        BloomFilter older = previous;
+        return generation.filter.mightContain(hash) || (older != null && older.mightContain(hash));
+    }
+
+    /**
+     * Add a hash, and tell whether it was already there.
+     *
+     * @param hash the hash, expected to be well distributed over its 64 bits
+     * @param now the current time, in milliseconds
+     * @return false if the hash was not added in the last period, true if it may have been in the last two
+     */
+    public boolean checkAndPut(long hash, long now) {
+        Generation generation = rotate(now);
+        BloomFilter older = previous;
+        boolean seen = generation.filter.mightContain(hash) || (older != null && older.mightContain(hash));
+        generation.filter.put(hash);
+        return seen;
+    }
+
+    private Generation rotate(long now) {
+        Generation generation = current;
+        if (now - generation.start < period) {
+            return generation;
+        }
+        synchronized (this) {
+            generation = current;
+            if (now - generation.start >= period) {
+                // a generation older than two periods holds nothing worth keeping
+                previous = now - generation.start < 2 * period ? generation.filter : null;
+                generation = new Generation(now, new BloomFilter(expectedHashesPerPeriod, falsePositiveProbability));
+                current = generation;
+            }
+            return generation;
+        }
+    }
+
+    private static final class Generation {
+
+        private final long start;
+
+        private final BloomFilter filter;
+
+        private Generation(long start, BloomFilter filter) {
+            this.start = start;
+            this.filter = filter;
+        }
+    }
+}
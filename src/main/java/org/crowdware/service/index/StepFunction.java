@@ -0,0 +1,282 @@
+package org.crowdware.service.index;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * An integer step function of time, built from the deltas of a sweep line.
+ * <p>
+ * The function is stored as its change points: each point carries the delta applied at its time, so an interval
+ * {@code [start, end)} is added with {@code +1} at start and {@code -1} at end. The points live in a treap ordered on
+ * time, in which every node also carries the sum of the deltas of its subtree and their greatest prefix sum. The value
+ * at a time and the peak value over a window are then both answered in O(log n), without walking the points.
+ * <p>
+ * This class is not thread-safe, callers are expected to guard it. Queries do not modify the treap, so concurrent
+ * readers are safe.
+ */
+public class StepFunction {
+
+    private static final Aggregate EMPTY = new Aggregate(0L, 0L);
+
+    private Node root;
+
+    private int size;
+
+    /**
+     * Change the function by a delta from a time on.
+     *
+     * @param time the time at which the delta applies
+     * @param delta the delta
+     */
+    public void add(long time, long delta) {
+        if (delta != 0) {
+            root = add(root, time, delta);
+        }
+    }
+
+    /**
+     * Add one to the function over {@code [start, end)}.
+     *
+     * @param start the inclusive start of the interval
+     * @param end the exclusive end of the interval
+     */
+    public void addInterval(long start, long end) {
+        if (start < end) {
+            add(start, 1L);
+            add(end, -1L);
+        }
+    }
+
+    /**
+     * Remove one from the function over {@code [start, end)}, undoing {@link #addInterval(long, long)}.
+     *
+     * @param start the inclusive start of the interval
+     * @param end the exclusive end of the interval
+     */
+    public void removeInterval(long start, long end) {
+        if (start < end) {
+            add(start, -1L);
+            add(end, 1L);
+        }
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * Get the number of change points.
+     *
+     * @return the number of change points
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the value of the function at a time, that is the sum of the deltas up to it included.
+     *
+     * @param time the time
+     * @return the value
+     */
+    public long valueAt(long time) {
+        return upTo(root, time).sum;
+    }
+
+    /**
+     * Get the greatest value of the function over {@code [from, to)}.
+     *
+     * @param from the inclusive start of the window
+     * @param to the exclusive end of the window, must be greater than from
+     * @return the peak value
+     */
+    public long peak(long from, long to) {
+        long value = valueAt(from);
+        if (to - from < 2) {
+            return value;
+        }
+        return value + between(root, from + 1, to - 1).maxPrefix;
+    }
+
+    /**
+     * Get the peak value of each step of a window.
+     *
+     * @param from the inclusive start of the window
+     * @param to the exclusive end of the window
+     * @param step the duration of a step, the last step is cut at the end of the window
+     * @return the peak value of each step
+     */
+    public long[] peaks(long from, long to, long step) {
+        if (from >= to || step <= 0) {
+            return new long[0];
+        }
+        int count = (int) ((to - from + step - 1) / step);
+        long[] peaks = new long[count];
+        for (int i = 0; i < count; i++) {
+            long start = from + i * step;
+            peaks[i] = peak(start, Math.min(start + step, to));
+        }
+        return peaks;
+    }
+
+    private Node add(Node node, long time, long delta) {
+        if (node == null) {
+            size++;
+            return new Node(time, delta, ThreadLocalRandom.current().nextInt());
+        }
+        if (time == node.time) {
+            node.delta += delta;
+            if (node.delta == 0) {
+                size--;
+                return merge(node.left, node.right);
+            }
+        } else if (time < node.time) {
+            node.left = add(node.left, time, delta);
+            if (node.left != null && node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = add(node.right, time, delta);
+            if (node.right != null && node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        node.update();
+        return node;
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        node.update();
+        left.right = node;
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        node.update();
+        right.left = node;
+        return right;
+    }
+
+    /**
+     * Aggregate the deltas with {@code lo <= time <= hi}.
+     */
+    private static Aggregate between(Node node, long lo, long hi) {
+        while (node != null && (node.time < lo || node.time > hi)) {
+            node = node.time < lo ? node.right : node.left;
+        }
+        if (node == null) {
+            return EMPTY;
+        }
+        return from(node.left, lo).then(node.delta).then(upTo(node.right, hi));
+    }
+
+    /**
+     * Aggregate the deltas with {@code time >= lo}.
+     */
+    private static Aggregate from(Node node, long lo) {
+        if (node == null) {
+            return EMPTY;
+        }
+        if (node.time < lo) {
+            return from(node.right, lo);
+        }
+        return from(node.left, lo).then(node.delta).then(Aggregate.of(node.right));
+    }
+
+    /**
+     * Aggregate the deltas with {@code time <= hi}.
+     */
+    private static Aggregate upTo(Node node, long hi) {
+        if (node == null) {
+            return EMPTY;
+        }
+        if (node.time > hi) {
+            return upTo(node.left, hi);
+        }
+        return Aggregate.of(node.left).then(node.delta).then(upTo(node.right, hi));
+    }
+
+    /**
+     * The sum of a run of deltas, and the greatest of its prefix sums, the empty prefix included.
+     */
+    private static final class Aggregate {
+
+        private final long sum;
+
+        private final long maxPrefix;
+
+        private Aggregate(long sum, long maxPrefix) {
+            this.sum = sum;
+            this.maxPrefix = maxPrefix;
+        }
+
+        private static Aggregate of(Node node) {
+            return node == null ? EMPTY : new Aggregate(node.sum, node.maxPrefix);
+        }
+
+        private Aggregate then(long delta) {
+            return new Aggregate(sum + delta, Math.max(maxPrefix, sum + delta));
+        }
+
+        private Aggregate then(Aggregate next) {
+            return new Aggregate(sum + next.sum, Math.max(maxPrefix, sum + next.maxPrefix));
+        }
+    }
+
+    private static final class Node {
+
+        private final long time;
+
+        private final int priority;
+
+        private long delta;
+
+        private long sum;
+
+        private long maxPrefix;
+
+        private Node left;
+
+        private Node right;
+
+        private Node(long time, long delta, int priority) {
+            this.time = time;
+            this.delta = delta;
+            this.priority = priority;
+            update();
+        }
+
+        private void update() {
+            long leftSum = left != null ? left.sum : 0L;
+            long leftMax = left != null ? left.maxPrefix : 0L;
+            long max = Math.max(leftMax, leftSum + delta);
+            long total = leftSum + delta;
+            if (right != null) {
+                max = Math.max(max, total + right.maxPrefix);
+                total += right.sum;
+            }
+            sum = total;
+            maxPrefix = max;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package org.crowdware.service.index;
+
+import org.crowdware.domain.Task;
+import org.crowdware.repository.TaskRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Service;
+
+import javax.inject.Inject;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of the Task start/end windows.
+ * <p>
+ * The index is loaded from the database once the application is ready, and then kept in sync by the Task write
+ * paths, so "active at" and "overlapping" lookups never need to scan the task table.
+ * <p>
+ * The same windows also feed a {@link StepFunction} per App, counting its concurrently running tasks over time, so
+ * capacity planning queries are answered from memory as well.
+ */
+@Service
+public class TaskIntervalIndex implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final Logger log = LoggerFactory.getLogger(TaskIntervalIndex.class);
+
+    private final IntervalTree tree = new IntervalTree();
+
+    private final Map<Long, Window> windowsById = new HashMap<>();
+
+    private final Map<Long, StepFunction> concurrencyByApp = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Inject
+    private TaskRepository taskRepository;
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        rebuild();
+    }
+
+    /**
+     * Reload the whole index from the database.
+     */
+    public void rebuild() {
+        List<Task> tasks = taskRepository.findAll();
+        lock.writeLock().lock();
+        try {
+            tree.clear();
+            windowsById.clear();
+            concurrencyByApp.clear();
+            tasks.forEach(this::put);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Indexed {} Task intervals", tasks.size());
+    }
+
+    /**
+     * Add or replace the interval of a saved task.
+     *
+     * @param task the persisted task
+     */
+    public void index(Task task) {
+        lock.writeLock().lock();
+        try {
+            put(task);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the interval of a deleted task.
+     *
+     * @param id the id of the task
+     */
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            tree.remove(id);
+            unwindow(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get the ids of the tasks active at the given time, that is with {@code start <= at < end}.
+     *
+     * @param at the point in time
+     * @return the ids of the active tasks, ordered by start
+     */
+    public List<Long> findActiveAt(ZonedDateTime at) {
+        lock.readLock().lock();
+        try {
+            return tree.findContaining(toMillis(at));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the ids of the tasks overlapping the {@code [from, to)} window.
+     *
+     * @param from the inclusive start of the window
+     * @param to the exclusive end of the window
+     * @return the ids of the overlapping tasks, ordered by start
+     */
+    public List<Long> findOverlapping(ZonedDateTime from, ZonedDateTime to) {
+        lock.readLock().lock();
+        try {
+            return tree.findOverlapping(toMillis(from), toMillis(to));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the peak number of tasks an app runs concurrently, for each step of the {@code [from, to)} window.
+     *
+     * @param appId the id of the app
+     * @param from the inclusive start of the window
+     * @param to the exclusive end of the window
+     * @param step the duration of a step, the last step is cut at the end of the window
+     * @return the peak concurrency of each step
+     */
+    public long[] findPeakConcurrency(Long appId, ZonedDateTime from, ZonedDateTime to, Duration step) {
+        lock.readLock().lock();
+        try {
+            StepFunction concurrency = concurrencyByApp.get(appId);
+            if (concurrency == null) {
+                concurrency = new StepFunction();
+            }
+            return concurrency.peaks(toMillis(from), toMillis(to), step.toMillis());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return tree.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void put(Task task) {
+        if (task.getId() == null || task.getStart() == null || task.getEnd() == null) {
+            return;
+        }
+        long start = toMillis(task.getStart());
+        long end = toMillis(task.getEnd());
+        tree.put(task.getId(), start, end);
+        unwindow(task.getId());
+        Long appId = task.getApp_con() != null ? task.getApp_con().getId() : task.getApp();
+        if (appId != null) {
+            windowsById.put(task.getId(), new Window(appId, start, end));
+            concurrencyByApp.computeIfAbsent(appId, key -> new StepFunction()).addInterval(start, end);
+        }
+    }
+
+    private void unwindow(Long id) {
+        Window window = windowsById.remove(id);
+        if (window == null) {
+            return;
+        }
+        StepFunction concurrency = concurrencyByApp.get(window.appId);
+        concurrency.removeInterval(window.start, window.end);
+        if (concurrency.isEmpty()) {
+            concurrencyByApp.remove(window.appId);
+        }
+    }
+
+    private static long toMillis(ZonedDateTime dateTime) {
+        return dateTime.toInstant().toEpochMilli();
+    }
+
+    private static final class Window {
+
+        private final long appId;
+
+        private final long start;
+
+        private final long end;
+
+        private Window(long appId, long start, long end) {
+            this.appId = appId;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * In-memory indexes kept in sync with the entity write paths.
+ */
+package org.crowdware.service.index;
@@ -0,0 +1,101 @@
+package org.crowdware.service.leaderboard;
+
+import org.crowdware.domain.Money;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Scores of users in cents, sorted by score.
+ * <p>
+ * Entries live in a concurrent skip list ordered by score, highest first, then by user id, so reading the top of the
+ * board walks its first entries without sorting, and a score change moves a single entry in logarithmic time. Users
+ * whose score falls to zero leave the board.
+ * <p>
+ * This class is thread-safe: changes of the same user are serialized by the map of the scores, and changes of other
+ * users run concurrently. While its score changes, a user may be missing from a concurrent read of the top.
+ */
+public class Leaderboard {
+
+    private static final Comparator<Entry> ORDER = Comparator.comparingLong((Entry entry) -> entry.score).reversed()
+        .thenComparingLong(entry -> entry.userId);
+
+    private final NavigableSet<Entry> entries = new ConcurrentSkipListSet<>(ORDER);
+
+    private final Map<Long, Entry> entriesByUser = new ConcurrentHashMap<>();
+
+    /**
+     * Add to the score of a user.
+     *
+     * @param userId the user id
+     * @param delta the amount to add, negative to subtract
+     * @return the new score of the user
+     */
+    public long add(long userId, long delta) {
+        Entry entry = entriesByUser.compute(userId, (id, previous) -> {
+            long score = Math.addExact(previous != null ? previous.score : 0L, delta);
+            if (previous != null) {
+                entries.remove(previous);
+            }
+            if (score == 0) {
+                return null;
+            }
+            Entry next = new Entry(id, score);
+            entries.add(next);
+            return next;
+        });
+        return entry != null ? entry.score : 0L;
+    }
+
+    /**
+     * @param userId the user id
+     * @return the score of the user, zero if not on the board
+     */
+    public long getScore(long userId) {
+        Entry entry = entriesByUser.get(userId);
+        return entry != null ? entry.score : 0L;
+    }
+
+    /**
+     * Get the users with the highest scores.
+     *
+     * @param limit the maximum number of users to return
+     * @return the standings, highest score first, without login
+     */
+    public List<LeaderboardStanding> top(int limit) {
+        List<LeaderboardStanding> result = new ArrayList<>(Math.min(limit, entriesByUser.size()));
+        for (Entry entry : entries) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(new LeaderboardStanding(result.size() + 1, entry.userId, Money.ofMinorUnits(entry.score)));
+        }
+        return result;
+    }
+
+    public int size() {
+        return entriesByUser.size();
+    }
+
+    public void clear() {
+        entriesByUser.clear();
+        entries.clear();
+    }
+
+    private static final class Entry {
+
+        private final long userId;
+
+        private final long score;
+
+        private Entry(long userId, long score) {
+            this.userId = userId;
+            this.score = score;
+        }
+    }
+}
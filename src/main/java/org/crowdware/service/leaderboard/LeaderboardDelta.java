@@ -0,0 +1,37 @@
+package org.crowdware.service.leaderboard;
+
+import java.util.List;
+
+/**
+ * The users whose score changed on a leaderboard since the previous delta, as pushed by {@link LeaderboardService}.
+ */
+public class LeaderboardDelta {
+
+    private final String window;
+
+    private final List<LeaderboardStanding> standings;
+
+    public LeaderboardDelta(String window, List<LeaderboardStanding> standings) {
+        this.window = window;
+        this.standings = standings;
+    }
+
+    public String getWindow() {
+        return window;
+    }
+
+    /**
+     * @return the new scores of the changed users, a zero score removing the user from the board
+     */
+    public List<LeaderboardStanding> getStandings() {
+        return standings;
+    }
+
+    @Override
+    public String toString() {
+        return "LeaderboardDelta{" +
+            "window='" + window + "'" +
+            ", standings=" + standings +
+            '}';
+    }
+}
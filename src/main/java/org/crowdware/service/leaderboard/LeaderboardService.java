@@ -0,0 +1,349 @@
+package org.crowdware.service.leaderboard;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.crowdware.config.CrowdwareProperties;
+import org.crowdware.domain.Money;
+import org.crowdware.domain.PaymentRollup;
+import org.crowdware.domain.User;
+import org.crowdware.domain.enumeration.RollupGranularity;
+import org.crowdware.repository.PaymentRollupRepository;
+import org.crowdware.repository.UserEarningsRepository;
+import org.crowdware.repository.UserRepository;
+import org.crowdware.service.PaymentSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Live leaderboards of the users by total of their payments: one of all time, named {@value #ALL_TIME}, and one per
+ * window of {@code crowdware.leaderboard.windowsInDays}, named after its length, such as {@code 30d}. A window of
+ * n days holds the payments dated after n days ago.
+ * <p>
+ * Boards are {@link Leaderboard}s held in memory, built once the application is ready from the running totals of
+ * the users and from the day rollups, then updated by the deltas of each committed payment write, see
+ * {@link org.crowdware.service.PaymentService}. Reading a board never queries the database for scores. The totals of
+ * each user per day of the longest window are kept to take the days leaving a window off its board at midnight.
+ * <p>
+ * A payment write holds a commit gate from just before its transaction commits until its deltas are applied, and
+ * loading the boards closes the gate while it reads the totals. A write is therefore either committed before the
+ * load reads it, its deltas applied to the boards the load then replaces, or committed after the load, its deltas
+ * applied to the loaded boards: it is never counted twice.
+ * <p>
+ * Changed users are pushed every {@code crowdware.leaderboard.pushInterval} milliseconds on {@value #TOPIC}, one
+ * {@link LeaderboardDelta} per changed board.
+ */
+@Service
+public class LeaderboardService implements ApplicationListener<ApplicationReadyEvent> {
+
+    public static final String TOPIC = "/topic/leaderboard";
+
+    public static final String ALL_TIME = "all";
+
+    private static final LocalDate END_OF_TIME = LocalDate.of(9999, 12, 31);
+
+    private final Logger log = LoggerFactory.getLogger(LeaderboardService.class);
+
+    private final Map<String, Leaderboard> boards = new LinkedHashMap<>();
+
+    private final Map<String, Integer> windows = new LinkedHashMap<>();
+
+    private final Map<String, Set<Long>> changedUsers = new LinkedHashMap<>();
+
+    private final ConcurrentNavigableMap<LocalDate, ConcurrentMap<Long, Long>> dailyScores = new ConcurrentSkipListMap<>();
+
+    private final ConcurrentMap<Long, String> logins = new ConcurrentHashMap<>();
+
+    /**
+     * Payment deltas take the read lock, as boards are thread-safe; loading the boards and rolling the days take the
+     * write lock.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Payment transactions take the read lock from before their commit until their deltas are applied, loading the
+     * boards takes the write lock.
+     */
+    private final ReadWriteLock commitGate = new ReentrantReadWriteLock();
+
+    private volatile LocalDate today = LocalDate.now();
+
+    private int longestWindow;
+
+    @Inject
+    private UserEarningsRepository userEarningsRepository;
+
+    @Inject
+    private PaymentRollupRepository paymentRollupRepository;
+
+    @Inject
+    private UserRepository userRepository;
+
+    @Inject
+    private SimpMessageSendingOperations messagingTemplate;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    @PostConstruct
+    public void init() {
+        addBoard(ALL_TIME, null);
+        for (Integer days : crowdwareProperties.getLeaderboard().getWindowsInDays()) {
+            if (days == null || days < 1) {
+                throw new IllegalArgumentException("crowdware.leaderboard.windowsInDays must be positive");
+            }
+            addBoard(days + "d", days);
+            longestWindow = Math.max(longestWindow, days);
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        load();
+    }
+
+    /**
+     * Build the boards from the running totals of the users and from the day rollups.
+     * <p>
+     * Payment transactions of this node wait for the end of the load to commit.
+     */
+    public void load() {
+        commitGate.writeLock().lock();
+        lock.writeLock().lock();
+        try {
+            LocalDate now = LocalDate.now();
+            boards.values().forEach(Leaderboard::clear);
+            dailyScores.clear();
+            today = now;
+            Leaderboard allTime = boards.get(ALL_TIME);
+            userEarningsRepository.findAll()
+                .forEach(earnings -> allTime.add(earnings.getUserId(), Money.of(earnings.getTotal()).getMinorUnits()));
+            if (longestWindow > 0) {
+                paymentRollupRepository.findAllByPeriod(RollupGranularity.DAY, now.minusDays(longestWindow - 1), END_OF_TIME)
+                    .stream()
+                    .filter(rollup -> rollup.getUserId() != PaymentRollup.NONE)
+                    .forEach(rollup -> addToWindows(rollup.getUserId(), rollup.getPeriodStart(),
+                        Money.of(rollup.getTotal()).getMinorUnits()));
+            }
+            changedUsers.values().forEach(Set::clear);
+            log.debug("Loaded the leaderboards of {} users", allTime.size());
+        } finally {
+            lock.writeLock().unlock();
+            commitGate.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Update the boards with the payments written in the current transaction, once it commits.
+     *
+     * @param removed the previous state of the updated and deleted payments
+     * @param added the new state of the created and updated payments
+     */
+    public void update(Collection<PaymentSnapshot> removed, Collection<PaymentSnapshot> added) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(removed, added);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            private boolean gated;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                // a load must not read the totals between the commit and the deltas
+                commitGate.readLock().lock();
+                gated = true;
+            }
+
+            @Override
+            public void afterCommit() {
+                // the payments are committed, a failure here must not fail their write, or it would be retried
+                try {
+                    apply(removed, added);
+                } catch (RuntimeException e) {
+                    log.error("Could not apply {} committed Payment changes to the leaderboards", removed.size() + added.size(), e);
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (gated) {
+                    gated = false;
+                    commitGate.readLock().unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * Get the top of a board.
+     *
+     * @param window the name of the board
+     * @param limit the maximum number of users
+     * @return the standings, highest score first, or null if there is no such board
+     */
+    public List<LeaderboardStanding> getTop(String window, int limit) {
+        Leaderboard board = boards.get(window);
+        if (board == null) {
+            return null;
+        }
+        List<LeaderboardStanding> standings = board.top(limit);
+        resolveLogins(standings);
+        return standings;
+    }
+
+    /**
+     * @return the names of the boards
+     */
+    public Set<String> getWindows() {
+        return boards.keySet();
+    }
+
+    /**
+     * Take the days which left their windows off the boards.
+     * <p>
+     * This is scheduled to run at midnight, and payment deltas also roll the days when they are the first of a day.
+     */
+    @Scheduled(cron = "0 0 0 * * ?")
+    public void roll() {
+        roll(LocalDate.now());
+    }
+
+    /**
+     * Push the new scores of the users changed since the previous push.
+     * <p>
+     * This is scheduled to run every {@code crowdware.leaderboard.pushInterval} milliseconds.
+     */
+    @Scheduled(fixedDelayString = "${crowdware.leaderboard.pushInterval:1000}")
+    public void push() {
+        changedUsers.forEach((window, users) -> {
+            Leaderboard board = boards.get(window);
+            List<LeaderboardStanding> standings = new ArrayList<>();
+            for (Iterator<Long> iterator = users.iterator(); iterator.hasNext(); ) {
+                Long userId = iterator.next();
+                iterator.remove();
+                standings.add(new LeaderboardStanding(null, userId, Money.ofMinorUnits(board.getScore(userId))));
+            }
+            if (standings.isEmpty()) {
+                return;
+            }
+            resolveLogins(standings);
+            try {
+                messagingTemplate.convertAndSend(TOPIC, new LeaderboardDelta(window, standings));
+            } catch (RuntimeException e) {
+                log.warn("Could not push the {} leaderboard delta: {}", window, e.getMessage());
+            }
+        });
+    }
+
+    private void addBoard(String window, Integer days) {
+        Leaderboard board = new Leaderboard();
+        boards.put(window, board);
+        changedUsers.put(window, ConcurrentHashMap.newKeySet());
+        if (days != null) {
+            windows.put(window, days);
+        }
+        metricRegistry.register(MetricRegistry.name(LeaderboardService.class, window, "users"), (Gauge<Integer>) board::size);
+    }
+
+    private void apply(Collection<PaymentSnapshot> removed, Collection<PaymentSnapshot> added) {
+        roll(LocalDate.now());
+        lock.readLock().lock();
+        try {
+            removed.forEach(snapshot -> apply(snapshot, -snapshot.getAmountInCents()));
+            added.forEach(snapshot -> apply(snapshot, snapshot.getAmountInCents()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void apply(PaymentSnapshot snapshot, long delta) {
+        if (snapshot.getUserId() == null || delta == 0) {
+            return;
+        }
+        boards.get(ALL_TIME).add(snapshot.getUserId(), delta);
+        changedUsers.get(ALL_TIME).add(snapshot.getUserId());
+        if (snapshot.getTime() != null) {
+            addToWindows(snapshot.getUserId(), snapshot.getTime(), delta);
+        }
+    }
+
+    private void addToWindows(long userId, LocalDate time, long delta) {
+        LocalDate current = today;
+        if (windows.isEmpty() || !time.isAfter(current.minusDays(longestWindow))) {
+            return;
+        }
+        dailyScores.computeIfAbsent(time, day -> new ConcurrentHashMap<>()).merge(userId, delta, Long::sum);
+        windows.forEach((window, days) -> {
+            if (time.isAfter(current.minusDays(days))) {
+                boards.get(window).add(userId, delta);
+                changedUsers.get(window).add(userId);
+            }
+        });
+    }
+
+    private void roll(LocalDate now) {
+        if (!now.isAfter(today)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            while (today.isBefore(now)) {
+                LocalDate next = today.plusDays(1);
+                windows.forEach((window, days) -> {
+                    Map<Long, Long> expired = dailyScores.get(next.minusDays(days));
+                    if (expired != null) {
+                        Leaderboard board = boards.get(window);
+                        expired.forEach((userId, score) -> board.add(userId, -score));
+                        changedUsers.get(window).addAll(expired.keySet());
+                    }
+                });
+                today = next;
+            }
+            dailyScores.headMap(today.minusDays(longestWindow), true).clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void resolveLogins(List<LeaderboardStanding> standings) {
+        List<Long> unknown = new ArrayList<>();
+        for (LeaderboardStanding standing : standings) {
+            if (!logins.containsKey(standing.getUserId())) {
+                unknown.add(standing.getUserId());
+            }
+        }
+        if (!unknown.isEmpty()) {
+            for (User user : userRepository.findAll(unknown)) {
+                logins.put(user.getId(), user.getLogin());
+            }
+        }
+        standings.forEach(standing -> standing.setLogin(logins.get(standing.getUserId())));
+    }
+}
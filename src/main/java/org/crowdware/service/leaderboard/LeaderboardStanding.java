@@ -0,0 +1,59 @@
+package org.crowdware.service.leaderboard;
+
+import org.crowdware.domain.Money;
+
+/**
+ * The score of a user on a leaderboard.
+ */
+public class LeaderboardStanding {
+
+    private final Integer rank;
+
+    private final long userId;
+
+    private String login;
+
+    private final Money score;
+
+    public LeaderboardStanding(Integer rank, long userId, Money score) {
+        this.rank = rank;
+        this.userId = userId;
+        this.score = score;
+    }
+
+    /**
+     * @return the rank, starting at 1, or null in the deltas pushed to the clients, which sort the board themselves
+     */
+    public Integer getRank() {
+        return rank;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public void setLogin(String login) {
+        this.login = login;
+    }
+
+    /**
+     * @return the total of the payments of the user in the window of the board, zero once the user left the board
+     */
+    public Money getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return "LeaderboardStanding{" +
+            "rank=" + rank +
+            ", userId=" + userId +
+            ", login='" + login + "'" +
+            ", score=" + score +
+            '}';
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Live leaderboards of the users by payments.
+ */
+package org.crowdware.service.leaderboard;
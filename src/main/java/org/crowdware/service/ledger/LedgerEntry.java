@@ -0,0 +1,203 @@
+package org.crowdware.service.ledger;
+
+import org.crowdware.domain.Money;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.zip.CRC32;
+
+/**
+ * An immutable entry of the payment ledger.
+ * <p>
+ * Every entry is a balanced double-entry transfer: the amount is debited from the account of a Job, the payer, and
+ * credited to the account of a User, the payee, so the two legs always sum to zero. A payment is never changed in
+ * place, it is corrected with a {@link Kind#REVERSAL} of its previous entry followed by a new entry.
+ * <p>
+ * An entry is stored as a fixed size record of {@value #SIZE} bytes, ending with the CRC32 of the bytes before it.
+ * Missing accounts are stored as {@value #NONE}, and a missing date as {@link #NO_DATE}.
+ */
+public final class LedgerEntry {
+
+    public static final int SIZE = 64;
+
+    public static final long NONE = 0L;
+
+    public static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final int CRC_OFFSET = SIZE - 4;
+
+    /**
+     * The kind of an entry.
+     */
+    public enum Kind {
+        /** A new payment, or the new state of a corrected payment. */
+        PAYMENT,
+        /** The cancellation of the previous entry of a payment, with a negated amount. */
+        REVERSAL,
+        /** A payment which existed before the ledger, imported at startup. */
+        OPENING
+    }
+
+    private final long sequence;
+
+    private final long timestamp;
+
+    private final Kind kind;
+
+    private final long paymentId;
+
+    private final long jobId;
+
+    private final long userId;
+
+    private final long amountInCents;
+
+    private final long epochDay;
+
+    public LedgerEntry(long sequence, long timestamp, Kind kind, long paymentId, long jobId, long userId,
+                       long amountInCents, long epochDay) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.kind = kind;
+        this.paymentId = paymentId;
+        this.jobId = jobId;
+        this.userId = userId;
+        this.amountInCents = amountInCents;
+        this.epochDay = epochDay;
+    }
+
+    /**
+     * Convert an amount to cents.
+     *
+     * @param amount the amount, or null
+     * @return the amount in cents, 0 for null
+     */
+    public static long toCents(Money amount) {
+        return amount == null ? 0L : amount.getMinorUnits();
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public long getPaymentId() {
+        return paymentId;
+    }
+
+    /**
+     * Get the debited account.
+     *
+     * @return the id of the paying job, or {@link #NONE}
+     */
+    public long getJobId() {
+        return jobId;
+    }
+
+    /**
+     * Get the credited account.
+     *
+     * @return the id of the paid user, or {@link #NONE}
+     */
+    public long getUserId() {
+        return userId;
+    }
+
+    public long getAmountInCents() {
+        return amountInCents;
+    }
+
+    public Money getAmount() {
+        return Money.ofMinorUnits(amountInCents);
+    }
+
+    public long getEpochDay() {
+        return epochDay;
+    }
+
+    /**
+     * Get the date of the payment.
+     *
+     * @return the date, or null if the payment has none
+     */
+    public LocalDate getDate() {
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    /**
+     * Convert a date to the stored day number.
+     *
+     * @param date the date, or null
+     * @return the epoch day of the date, or {@link #NO_DATE}
+     */
+    public static long toEpochDay(LocalDate date) {
+        return date == null ? NO_DATE : date.toEpochDay();
+    }
+
+    /**
+     * Write the record of the entry at an absolute position of a buffer.
+     *
+     * @param buffer the buffer
+     * @param position the position of the record
+     */
+    void write(ByteBuffer buffer, int position) {
+        buffer.putLong(position, sequence);
+        buffer.putLong(position + 8, timestamp);
+        buffer.putLong(position + 16, paymentId);
+        buffer.putLong(position + 24, jobId);
+        buffer.putLong(position + 32, userId);
+        buffer.putLong(position + 40, amountInCents);
+        buffer.putLong(position + 48, epochDay);
+        buffer.put(position + 56, (byte) kind.ordinal());
+        buffer.putInt(position + CRC_OFFSET, checksum(buffer, position));
+    }
+
+    /**
+     * Read the record at an absolute position of a buffer.
+     *
+     * @param buffer the buffer
+     * @param position the position of the record
+     * @return the entry, or null if the record is empty or its checksum does not match
+     */
+    static LedgerEntry read(ByteBuffer buffer, int position) {
+        long sequence = buffer.getLong(position);
+        int crc = buffer.getInt(position + CRC_OFFSET);
+        if (sequence == 0L || crc != checksum(buffer, position)) {
+            return null;
+        }
+        int kind = buffer.get(position + 56);
+        if (kind < 0 || kind >= Kind.values().length) {
+            return null;
+        }
+        return new LedgerEntry(sequence, buffer.getLong(position + 8), Kind.values()[kind],
+            buffer.getLong(position + 16), buffer.getLong(position + 24), buffer.getLong(position + 32),
+            buffer.getLong(position + 40), buffer.getLong(position + 48));
+    }
+
+    private static int checksum(ByteBuffer buffer, int position) {
+        ByteBuffer record = buffer.duplicate();
+        record.limit(position + CRC_OFFSET).position(position);
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public String toString() {
+        return "LedgerEntry{" +
+            "sequence=" + sequence +
+            ", kind=" + kind +
+            ", paymentId=" + paymentId +
+            ", jobId=" + jobId +
+            ", userId=" + userId +
+            ", amountInCents=" + amountInCents +
+            '}';
+    }
+}
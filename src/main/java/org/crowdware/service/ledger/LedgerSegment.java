@@ -0,0 +1,269 @@
+package org.crowdware.service.ledger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * One memory-mapped file of the payment ledger, holding a fixed number of {@link LedgerEntry} records.
+ * <p>
+ * The file starts with a header of {@value #HEADER_SIZE} bytes, followed by the records in sequence order. Appending
+ * writes a record in the mapped pages and never seeks, so the ledger is written sequentially. When a segment is
+ * opened, its records are scanned and checked: the scan stops at the first empty or corrupted record, which is where
+ * the next record goes. The segment keeps the slots of its records by user and by job, so the history of an account
+ * is read without scanning the whole segment.
+ * <p>
+ * This class is not thread-safe, callers are expected to guard it.
+ */
+public class LedgerSegment implements Closeable {
+
+    static final int HEADER_SIZE = 64;
+
+    private static final long MAGIC = 0x43574C4544474552L;
+
+    private static final int VERSION = 1;
+
+    private final Path path;
+
+    private final long baseSequence;
+
+    private final int capacity;
+
+    private final RandomAccessFile file;
+
+    private final MappedByteBuffer buffer;
+
+    private final Map<Long, Slots> slotsByUser = new HashMap<>();
+
+    private final Map<Long, Slots> slotsByJob = new HashMap<>();
+
+    private int size;
+
+    private boolean corrupted;
+
+    private LedgerSegment(Path path, long baseSequence, int capacity, RandomAccessFile file, MappedByteBuffer buffer) {
+        this.path = path;
+        this.baseSequence = baseSequence;
+        this.capacity = capacity;
+        this.file = file;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Create a new empty segment file.
+     *
+     * @param path the path of the file, which must not exist
+     * @param baseSequence the sequence of the first entry of the segment
+     * @param capacity the number of records of the segment
+     * @return the segment
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public static LedgerSegment create(Path path, long baseSequence, int capacity) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+        try {
+            long length = HEADER_SIZE + (long) capacity * LedgerEntry.SIZE;
+            file.setLength(length);
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            buffer.putLong(0, MAGIC);
+            buffer.putInt(8, VERSION);
+            buffer.putInt(12, capacity);
+            buffer.putLong(16, baseSequence);
+            buffer.force();
+            return new LedgerSegment(path, baseSequence, capacity, file, buffer);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open an existing segment file, and scan its records.
+     *
+     * @param path the path of the file
+     * @return the segment
+     * @throws IOException if the file cannot be read or mapped, or if it is not a ledger segment
+     */
+    public static LedgerSegment open(Path path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+        try {
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+            if (file.length() < HEADER_SIZE || buffer.getLong(0) != MAGIC || buffer.getInt(8) != VERSION) {
+                throw new IOException("Not a ledger segment: " + path);
+            }
+            int capacity = buffer.getInt(12);
+            if (file.length() != HEADER_SIZE + (long) capacity * LedgerEntry.SIZE) {
+                throw new IOException("Truncated ledger segment: " + path);
+            }
+            LedgerSegment segment = new LedgerSegment(path, buffer.getLong(16), capacity, file, buffer);
+            segment.scan();
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private void scan() {
+        while (size < capacity) {
+            LedgerEntry entry = LedgerEntry.read(buffer, positionOf(size));
+            if (entry == null) {
+                corrupted = !isEmpty(positionOf(size));
+                return;
+            }
+            if (entry.getSequence() != baseSequence + size) {
+                corrupted = true;
+                return;
+            }
+            index(entry, size);
+            size++;
+        }
+    }
+
+    /**
+     * Append an entry. Its sequence must be the next sequence of the segment.
+     *
+     * @param entry the entry
+     */
+    public void append(LedgerEntry entry) {
+        if (isFull()) {
+            throw new IllegalStateException("The ledger segment " + path + " is full");
+        }
+        if (entry.getSequence() != getNextSequence()) {
+            throw new IllegalArgumentException("Expected the sequence " + getNextSequence() + ", got " + entry.getSequence());
+        }
+        entry.write(buffer, positionOf(size));
+        index(entry, size);
+        size++;
+    }
+
+    /**
+     * Flush the appended records to the storage device.
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    /**
+     * Erase the records after the last valid one, left by an interrupted write.
+     */
+    public void truncateTail() {
+        int from = positionOf(size);
+        int to = positionOf(capacity);
+        // mapped pages are not written back in order, records after the torn one may have reached the disk
+        for (int position = from; position < to; position += LedgerEntry.SIZE) {
+            if (!isEmpty(position)) {
+                for (int i = 0; i < LedgerEntry.SIZE; i += 8) {
+                    buffer.putLong(position + i, 0L);
+                }
+            }
+        }
+        corrupted = false;
+        buffer.force();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getBaseSequence() {
+        return baseSequence;
+    }
+
+    public long getNextSequence() {
+        return baseSequence + size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * Check whether the scan stopped on a record which is neither valid nor empty.
+     *
+     * @return true if a corrupted record follows the last valid one
+     */
+    public boolean isCorrupted() {
+        return corrupted;
+    }
+
+    public void forEach(Consumer<LedgerEntry> action) {
+        for (int slot = 0; slot < size; slot++) {
+            action.accept(LedgerEntry.read(buffer, positionOf(slot)));
+        }
+    }
+
+    public List<LedgerEntry> findByUser(long userId) {
+        return read(slotsByUser.get(userId));
+    }
+
+    public List<LedgerEntry> findByJob(long jobId) {
+        return read(slotsByJob.get(jobId));
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private List<LedgerEntry> read(Slots slots) {
+        List<LedgerEntry> entries = new ArrayList<>();
+        if (slots != null) {
+            for (int i = 0; i < slots.size; i++) {
+                entries.add(LedgerEntry.read(buffer, positionOf(slots.slots[i])));
+            }
+        }
+        return entries;
+    }
+
+    private void index(LedgerEntry entry, int slot) {
+        if (entry.getUserId() != LedgerEntry.NONE) {
+            slotsByUser.computeIfAbsent(entry.getUserId(), id -> new Slots()).add(slot);
+        }
+        if (entry.getJobId() != LedgerEntry.NONE) {
+            slotsByJob.computeIfAbsent(entry.getJobId(), id -> new Slots()).add(slot);
+        }
+    }
+
+    private boolean isEmpty(int position) {
+        for (int i = 0; i < LedgerEntry.SIZE; i += 8) {
+            if (buffer.getLong(position + i) != 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int positionOf(int slot) {
+        return HEADER_SIZE + slot * LedgerEntry.SIZE;
+    }
+
+    /**
+     * A growable list of record slots, in append order.
+     */
+    private static final class Slots {
+
+        private int[] slots = new int[4];
+
+        private int size;
+
+        private void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package org.crowdware.service.ledger;
+
+import org.crowdware.config.Constants;
+import org.crowdware.config.CrowdwareProperties;
+import org.crowdware.domain.Payment;
+import org.crowdware.repository.PaymentRepository;
+import org.crowdware.service.PaymentSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContextException;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Records every Payment write in the append-only {@link PaymentLedger}.
+ * <p>
+ * The ledger is the immutable history of the payments, the payment table is its projection: the current state of
+ * each payment. A new payment appends an entry, a changed payment appends the reversal of its previous entry and a
+ * new entry, and a deleted payment appends a reversal. The reversals are written from the previous state of the
+ * payments, read and locked in the transaction of the write, see {@link org.crowdware.service.PaymentService}.
+ * <p>
+ * Entries are appended and flushed just before the transaction which writes the table commits: a write whose entries
+ * cannot be appended fails and is rolled back, so the table never holds a state which is not in the ledger. A write
+ * which rolls back before that leaves no trace in the ledger. If the commit itself fails after the append, the
+ * entries are cancelled by appending their reversals. A new ledger is opened with the payments written before it
+ * existed. Once the application is ready, the ledger is checked against the table, and the payments whose state
+ * differs are reported: the table never rewrites the history.
+ * <p>
+ * Each node appends the writes it makes to its own ledger. The entries are complete on their own, as the reversals
+ * come from the table, and the history of the payments is the union of the ledgers of the nodes: the check at startup
+ * compares the table with the ledger of the node only, and reports the payments last written by another node.
+ * <p>
+ * The ledger directory must be an absolute path in production, see {@code crowdware.ledger.directory}.
+ */
+@Service
+public class LedgerService implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final Logger log = LoggerFactory.getLogger(LedgerService.class);
+
+    private final Map<Long, LedgerEntry> currentByPayment = new ConcurrentHashMap<>();
+
+    private PaymentLedger ledger;
+
+    @Inject
+    private PaymentRepository paymentRepository;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
+
+    @Inject
+    private Environment env;
+
+    @PostConstruct
+    public void init() throws IOException {
+        CrowdwareProperties.Ledger properties = crowdwareProperties.getLedger();
+        Path directory;
+        if (env.acceptsProfiles(Constants.SPRING_PROFILE_PRODUCTION)
+            && (properties.getDirectory() == null || !Paths.get(properties.getDirectory()).isAbsolute())) {
+            log.error("The payment ledger needs an absolute crowdware.ledger.directory in production, got '{}'", properties.getDirectory());
+            throw new ApplicationContextException("The payment ledger directory is not configured correctly");
+        }
+        if (properties.getDirectory() == null || properties.getDirectory().isEmpty()) {
+            directory = Files.createTempDirectory("crowdware-ledger");
+            log.warn("No crowdware.ledger.directory is configured, the payment ledger is kept in the temporary directory {}", directory);
+        } else {
+            directory = Paths.get(properties.getDirectory());
+        }
+        ledger = new PaymentLedger(directory, properties.getSegmentCapacity());
+        ledger.forEach(this::apply);
+    }
+
+    @PreDestroy
+    public void destroy() throws IOException {
+        ledger.close();
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        verify();
+    }
+
+    /**
+     * Record the current state of persisted payments, just before the current transaction commits. Payments whose
+     * state did not change are skipped.
+     *
+     * @param previous the state of the updated payments before the write, read in the current transaction
+     * @param payments the persisted payments
+     * @throws UncheckedIOException if there is no transaction and the entries cannot be appended
+     */
+    public void record(List<PaymentSnapshot> previous, List<Payment> payments) {
+        Map<Long, PaymentSnapshot> previousById = new HashMap<>();
+        previous.forEach(snapshot -> previousById.put(snapshot.getPaymentId(), snapshot));
+        List<LedgerEntry> entries = new ArrayList<>();
+        for (Payment payment : payments) {
+            LedgerEntry entry = toEntry(LedgerEntry.Kind.PAYMENT, payment);
+            PaymentSnapshot before = previousById.get(payment.getId());
+            if (before != null) {
+                if (sameState(entryOf(before), entry)) {
+                    continue;
+                }
+                entries.add(reversalOf(before));
+            }
+            entries.add(entry);
+        }
+        appendBeforeCommit(entries);
+    }
+
+    /**
+     * Record the deletion of payments, just before the current transaction commits.
+     *
+     * @param previous the state of the deleted payments, read in the current transaction
+     * @throws UncheckedIOException if there is no transaction and the entries cannot be appended
+     */
+    public void reverse(List<PaymentSnapshot> previous) {
+        appendBeforeCommit(previous.stream().map(LedgerService::reversalOf).collect(Collectors.toList()));
+    }
+
+    /**
+     * Get the history of the payments of a user.
+     *
+     * @param userId the id of the user
+     * @return the entries crediting the user, in sequence order
+     */
+    public List<LedgerEntry> findByUser(Long userId) {
+        return ledger.findByUser(userId);
+    }
+
+    /**
+     * Get the history of the payments of a job.
+     *
+     * @param jobId the id of the job
+     * @return the entries debiting the job, in sequence order
+     */
+    public List<LedgerEntry> findByJob(Long jobId) {
+        return ledger.findByJob(jobId);
+    }
+
+    /**
+     * Open a new ledger with the payments of the table, or report the payments whose state in the table differs from
+     * their current entry in the ledger.
+     *
+     * @return the number of payments whose state differs
+     */
+    public synchronized int verify() {
+        List<Payment> payments = paymentRepository.findAll();
+        if (ledger.getNextSequence() == 1L) {
+            append(payments.stream().map(payment -> toEntry(LedgerEntry.Kind.OPENING, payment)).collect(Collectors.toList()));
+            log.debug("Opened the payment ledger with {} Payments", payments.size());
+            return 0;
+        }
+        Map<Long, LedgerEntry> unmatched = new HashMap<>(currentByPayment);
+        int diverged = 0;
+        for (Payment payment : payments) {
+            LedgerEntry current = unmatched.remove(payment.getId());
+            if (current == null || !sameState(current, toEntry(LedgerEntry.Kind.PAYMENT, payment))) {
+                diverged++;
+            }
+        }
+        diverged += unmatched.size();
+        if (diverged > 0) {
+            log.warn("{} of {} Payments differ from their current entry in the payment ledger", diverged, payments.size());
+        } else {
+            log.debug("Verified the payment ledger against {} Payments", payments.size());
+        }
+        return diverged;
+    }
+
+    /**
+     * Append the entries of a write once everything else in its transaction is done, so that a failure to append
+     * fails the write. The entries are cancelled if the commit fails after them.
+     */
+    private void appendBeforeCommit(List<LedgerEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            append(entries);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            private boolean appended;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                append(entries);
+                appended = true;
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (!appended || status == STATUS_COMMITTED) {
+                    return;
+                }
+                if (status == STATUS_UNKNOWN) {
+                    log.error("The commit of {} Payment changes recorded in the payment ledger has an unknown outcome", entries.size());
+                    return;
+                }
+                cancel(entries);
+            }
+        });
+    }
+
+    /**
+     * Cancel the entries of a write which did not commit, by appending their reversals in the reverse order. A failure
+     * is only reported, and the payments show up in the next {@link #verify()}.
+     */
+    private void cancel(List<LedgerEntry> entries) {
+        List<LedgerEntry> reversals = new ArrayList<>(entries.size());
+        for (LedgerEntry entry : entries) {
+            reversals.add(cancellationOf(entry));
+        }
+        Collections.reverse(reversals);
+        try {
+            append(reversals);
+        } catch (UncheckedIOException e) {
+            log.error("Could not cancel {} rolled back Payment changes in the payment ledger", entries.size(), e);
+        }
+    }
+
+    private synchronized void append(List<LedgerEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        try {
+            ledger.append(entries).forEach(this::apply);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append " + entries.size() + " entries to the payment ledger", e);
+        }
+    }
+
+    private void apply(LedgerEntry entry) {
+        if (entry.getKind() == LedgerEntry.Kind.REVERSAL) {
+            currentByPayment.remove(entry.getPaymentId());
+        } else {
+            currentByPayment.put(entry.getPaymentId(), entry);
+        }
+    }
+
+    private static LedgerEntry toEntry(LedgerEntry.Kind kind, Payment payment) {
+        long jobId = payment.getJob() != null && payment.getJob().getId() != null ? payment.getJob().getId() : LedgerEntry.NONE;
+        long userId = payment.getUser() != null && payment.getUser().getId() != null ? payment.getUser().getId() : LedgerEntry.NONE;
+        return new LedgerEntry(0L, System.currentTimeMillis(), kind, payment.getId(), jobId, userId,
+            LedgerEntry.toCents(payment.getAmount()), LedgerEntry.toEpochDay(payment.getTime()));
+    }
+
+    private static LedgerEntry entryOf(PaymentSnapshot snapshot) {
+        long jobId = snapshot.getJobId() != null ? snapshot.getJobId() : LedgerEntry.NONE;
+        long userId = snapshot.getUserId() != null ? snapshot.getUserId() : LedgerEntry.NONE;
+        return new LedgerEntry(0L, System.currentTimeMillis(), LedgerEntry.Kind.PAYMENT, snapshot.getPaymentId(),
+            jobId, userId, snapshot.getAmountInCents(), LedgerEntry.toEpochDay(snapshot.getTime()));
+    }
+
+    private static LedgerEntry reversalOf(PaymentSnapshot snapshot) {
+        return cancellationOf(entryOf(snapshot));
+    }
+
+    /**
+     * @return the entry which undoes an entry: the reversal of a payment, or the payment of a reversal
+     */
+    private static LedgerEntry cancellationOf(LedgerEntry entry) {
+        LedgerEntry.Kind kind = entry.getKind() == LedgerEntry.Kind.REVERSAL ? LedgerEntry.Kind.PAYMENT : LedgerEntry.Kind.REVERSAL;
+        return new LedgerEntry(0L, System.currentTimeMillis(), kind, entry.getPaymentId(),
+            entry.getJobId(), entry.getUserId(), -entry.getAmountInCents(), entry.getEpochDay());
+    }
+
+    private static boolean sameState(LedgerEntry a, LedgerEntry b) {
+        return a.getJobId() == b.getJobId()
+            && a.getUserId() == b.getUserId()
+            && a.getAmountInCents() == b.getAmountInCents()
+            && a.getEpochDay() == b.getEpochDay();
+    }
+}
@@ -0,0 +1,207 @@
+package org.crowdware.service.ledger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * The append-only payment ledger: a directory of {@link LedgerSegment} files, each named after the sequence of its
+ * first entry. Entries get consecutive sequences, and a new segment is started when the last one is full.
+ * <p>
+ * A torn record at the end of the last segment, left by a crash during a write, is erased when the ledger is opened.
+ * A corrupted record anywhere else fails the opening: the history is never silently rewritten.
+ * <p>
+ * Appends are serialized, reads share a lock with each other.
+ */
+public class PaymentLedger implements Closeable {
+
+    private static final String SUFFIX = ".ledger";
+
+    private final Logger log = LoggerFactory.getLogger(PaymentLedger.class);
+
+    private final Path directory;
+
+    private final int segmentCapacity;
+
+    private final List<LedgerSegment> segments = new ArrayList<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Open the ledger stored in a directory, creating it if needed.
+     *
+     * @param directory the directory of the segment files
+     * @param segmentCapacity the number of entries of a new segment
+     * @throws IOException if a segment cannot be read, or if the ledger is corrupted
+     */
+    public PaymentLedger(Path directory, int segmentCapacity) throws IOException {
+        if (segmentCapacity < 1 || segmentCapacity > (Integer.MAX_VALUE - LedgerSegment.HEADER_SIZE) / LedgerEntry.SIZE) {
+            throw new IllegalArgumentException("Invalid ledger segment capacity: " + segmentCapacity);
+        }
+        this.directory = directory;
+        this.segmentCapacity = segmentCapacity;
+        Files.createDirectories(directory);
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            stream.forEach(paths::add);
+        }
+        paths.sort(null);
+        try {
+            for (Path path : paths) {
+                openSegment(path, path == paths.get(paths.size() - 1));
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+        log.debug("Opened the payment ledger in {}: {} segments, next sequence {}", directory, segments.size(), getNextSequence());
+    }
+
+    private void openSegment(Path path, boolean last) throws IOException {
+        LedgerSegment segment = LedgerSegment.open(path);
+        segments.add(segment);
+        long expected = segments.size() == 1 ? 1L : segments.get(segments.size() - 2).getNextSequence();
+        if (segment.getBaseSequence() != expected) {
+            throw new IOException("The ledger segment " + path + " starts at " + segment.getBaseSequence() + " instead of " + expected);
+        }
+        if (!last && (segment.isCorrupted() || !segment.isFull())) {
+            throw new IOException("The ledger segment " + path + " is corrupted after " + segment.size() + " entries");
+        }
+        if (segment.isCorrupted()) {
+            log.warn("Erasing the torn records of the ledger segment {} after {} entries", path, segment.size());
+            segment.truncateTail();
+        }
+    }
+
+    /**
+     * Append entries, and flush them to the storage device.
+     *
+     * @param entries the entries to append, whose sequence is ignored
+     * @return the appended entries, with their sequence
+     * @throws IOException if a new segment cannot be created
+     */
+    public List<LedgerEntry> append(List<LedgerEntry> entries) throws IOException {
+        List<LedgerEntry> appended = new ArrayList<>(entries.size());
+        lock.writeLock().lock();
+        try {
+            LedgerSegment touched = null;
+            for (LedgerEntry entry : entries) {
+                LedgerSegment segment = writableSegment();
+                if (touched != null && touched != segment) {
+                    touched.force();
+                }
+                touched = segment;
+                LedgerEntry sequenced = new LedgerEntry(segment.getNextSequence(), entry.getTimestamp(), entry.getKind(),
+                    entry.getPaymentId(), entry.getJobId(), entry.getUserId(), entry.getAmountInCents(), entry.getEpochDay());
+                segment.append(sequenced);
+                appended.add(sequenced);
+            }
+            if (touched != null) {
+                touched.force();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return appended;
+    }
+
+    public long getNextSequence() {
+        lock.readLock().lock();
+        try {
+            return segments.isEmpty() ? 1L : segments.get(segments.size() - 1).getNextSequence();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getSegmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Visit every entry, in sequence order.
+     *
+     * @param action the visitor
+     */
+    public void forEach(Consumer<LedgerEntry> action) {
+        lock.readLock().lock();
+        try {
+            segments.forEach(segment -> segment.forEach(action));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the entries crediting a user, in sequence order.
+     *
+     * @param userId the id of the user
+     * @return the entries
+     */
+    public List<LedgerEntry> findByUser(long userId) {
+        lock.readLock().lock();
+        try {
+            List<LedgerEntry> entries = new ArrayList<>();
+            segments.forEach(segment -> entries.addAll(segment.findByUser(userId)));
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the entries debiting a job, in sequence order.
+     *
+     * @param jobId the id of the job
+     * @return the entries
+     */
+    public List<LedgerEntry> findByJob(long jobId) {
+        lock.readLock().lock();
+        try {
+            List<LedgerEntry> entries = new ArrayList<>();
+            segments.forEach(segment -> entries.addAll(segment.findByJob(jobId)));
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (LedgerSegment segment : segments) {
+                segment.close();
+            }
+            segments.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private LedgerSegment writableSegment() throws IOException {
+        LedgerSegment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (last != null && !last.isFull()) {
+            return last;
+        }
+        long base = last == null ? 1L : last.getNextSequence();
+        LedgerSegment segment = LedgerSegment.create(directory.resolve(String.format("%020d%s", base, SUFFIX)), base, segmentCapacity);
+        segments.add(segment);
+        return segment;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Append-only payment ledger.
+ */
+package org.crowdware.service.ledger;
@@ -0,0 +1,132 @@
+package org.crowdware.service.reconciliation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Payment records spilled to one file per partition, the partition of a record being a hash of its payment id.
+ * <p>
+ * Both sides of a payment always land in the same partition, whatever their job and user, so a payment whose job or
+ * user differs between the database and the settlement file is compared as a counterpart mismatch, and a payment id
+ * settled twice is found even if its lines name different users.
+ * <p>
+ * A record is 4 longs: the payment id, the job id, the user id and the amount in cents, {@link #NONE} standing for a
+ * missing value. Records are appended to their partition in the order they are written.
+ * <p>
+ * This class is not thread-safe: records are written by a single reader of a source, and each partition is then read
+ * by a single task.
+ */
+class PartitionFiles implements Closeable {
+
+    static final long NONE = Long.MIN_VALUE;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final Path[] paths;
+
+    private final DataOutputStream[] outputs;
+
+    private final long[] counts;
+
+    PartitionFiles(Path directory, String prefix, int partitions) throws IOException {
+        paths = new Path[partitions];
+        outputs = new DataOutputStream[partitions];
+        counts = new long[partitions];
+        try {
+            for (int i = 0; i < partitions; i++) {
+                paths[i] = directory.resolve(prefix + "-" + i + ".bin");
+                outputs[i] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(paths[i]), BUFFER_SIZE));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the partition of a payment.
+     *
+     * @param id the payment id
+     * @param partitions the number of partitions
+     * @return the partition, between 0 inclusive and {@code partitions} exclusive
+     */
+    static int partition(long id, int partitions) {
+        // ids are sequential, mix them so that every partition gets its share of any range of ids
+        long hash = id * 0x9e3779b97f4a7c15L;
+        hash ^= hash >>> 32;
+        hash *= 0xc2b2ae3d27d4eb4fL;
+        return (int) Long.remainderUnsigned(hash ^ (hash >>> 29), partitions);
+    }
+
+    void write(long id, long jobId, long userId, long amountInCents) throws IOException {
+        int partition = partition(id, paths.length);
+        DataOutputStream output = outputs[partition];
+        output.writeLong(id);
+        output.writeLong(jobId);
+        output.writeLong(userId);
+        output.writeLong(amountInCents);
+        counts[partition]++;
+    }
+
+    int getPartitions() {
+        return paths.length;
+    }
+
+    long getCount(int partition) {
+        return counts[partition];
+    }
+
+    long getTotalCount() {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Open a partition for reading, once every record is written and this is closed.
+     *
+     * @param partition the partition
+     * @return the stream of its records, 4 longs each
+     * @throws IOException if the file cannot be opened
+     */
+    DataInputStream open(int partition) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(paths[partition]), BUFFER_SIZE));
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (DataOutputStream output : outputs) {
+            if (output == null) {
+                continue;
+            }
+            try {
+                output.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Delete the partition files.
+     */
+    void delete() throws IOException {
+        for (Path path : paths) {
+            if (path != null) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.crowdware.service.reconciliation;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import org.crowdware.config.CrowdwareProperties;
+import org.crowdware.domain.Money;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Reconciles the payments of the database with an external settlement file.
+ * <p>
+ * The settlement file has the CSV format of the payment export, see {@link org.crowdware.service.PaymentExportService}:
+ * a header, then one line per payment with the columns id, amount, time, jobId and userId, in any order.
+ * <p>
+ * Both sources are streamed once, the database through a forward-only cursor and the file through a CSV parser, and
+ * their payments are spilled to {@code crowdware.reconciliation.partitions} files each, by hash of their payment id.
+ * The matching partitions are then compared in parallel on a {@link ForkJoinPool}, see
+ * {@link ReconciliationTask}, and the mismatches are gathered in a CSV report. Memory is bounded by the largest
+ * settlement partitions being compared at the same time, whatever the number of payments.
+ */
+@Service
+public class PaymentReconciliationService {
+
+    private static final String REPORT_HEADER = "paymentId,mismatch,jobId,userId,amount,settlementJobId,settlementUserId,settlementAmount\n";
+
+    private static final DateTimeFormatter RUN_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Logger log = LoggerFactory.getLogger(PaymentReconciliationService.class);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
+
+    /**
+     * Reconcile the payments with the configured settlement file, if any.
+     * <p>
+     * This is scheduled to run every night, at the time of {@code crowdware.reconciliation.cron}.
+     */
+    @Scheduled(cron = "${crowdware.reconciliation.cron:0 30 2 * * ?}")
+    @Transactional(readOnly = true)
+    public void reconcileNightly() {
+        String settlementFile = crowdwareProperties.getReconciliation().getSettlementFile();
+        if (settlementFile == null || settlementFile.isEmpty()) {
+            log.debug("No crowdware.reconciliation.settlementFile is configured, skipping the payment reconciliation");
+            return;
+        }
+        try {
+            ReconciliationReport report = reconcile(Paths.get(settlementFile));
+            log.info("Reconciled the payments with {}: {}", settlementFile, report);
+        } catch (IOException e) {
+            log.error("Could not reconcile the payments with {}: {}", settlementFile, e.getMessage());
+        }
+    }
+
+    /**
+     * Reconcile the payments with a settlement file.
+     *
+     * @param settlementFile the settlement file
+     * @return the report, whose mismatches are listed in {@link ReconciliationReport#getReportFile()}
+     * @throws IOException if a file cannot be read or written
+     */
+    @Transactional(readOnly = true)
+    public ReconciliationReport reconcile(Path settlementFile) throws IOException {
+        log.debug("Request to reconcile the Payments with {}", settlementFile);
+        long start = System.currentTimeMillis();
+        CrowdwareProperties.Reconciliation properties = crowdwareProperties.getReconciliation();
+        int partitions = properties.getPartitions();
+        if (partitions < 1) {
+            throw new IllegalArgumentException("crowdware.reconciliation.partitions must be positive");
+        }
+        Path directory = getDirectory(properties).resolve(LocalDateTime.now().format(RUN_FORMAT));
+        Files.createDirectories(directory);
+
+        PartitionFiles database = new PartitionFiles(directory, "database", partitions);
+        PartitionFiles settlement = null;
+        try {
+            try {
+                spillDatabase(database);
+            } finally {
+                database.close();
+            }
+            settlement = new PartitionFiles(directory, "settlement", partitions);
+            try {
+                spillSettlementFile(settlementFile, settlement);
+            } finally {
+                settlement.close();
+            }
+
+            int parallelism = properties.getParallelism() > 0 ? properties.getParallelism() : Runtime.getRuntime().availableProcessors();
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            ReconciliationReport report;
+            try {
+                report = pool.invoke(new ReconciliationTask(database, settlement, directory, 0, partitions));
+            } finally {
+                pool.shutdown();
+            }
+
+            Path reportFile = directory.resolve("report.csv");
+            gatherReport(directory, partitions, reportFile);
+            report.setDatabasePayments(database.getTotalCount());
+            report.setSettlementPayments(settlement.getTotalCount());
+            report.setReportFile(reportFile.toString());
+            report.setDurationInMillis(System.currentTimeMillis() - start);
+            log.debug("Reconciled the Payments: {}", report);
+            return report;
+        } finally {
+            database.delete();
+            if (settlement != null) {
+                settlement.delete();
+            }
+        }
+    }
+
+    private void spillDatabase(PartitionFiles database) throws IOException {
+        ScrollableResults results = entityManager.unwrap(Session.class)
+            .createQuery("select payment.id, payment.amount, job.id, user.id " +
+                "from Payment payment left join payment.job job left join payment.user user")
+            .setFetchSize(crowdwareProperties.getExport().getFetchSize())
+            .setReadOnly(true)
+            .scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            while (results.next()) {
+                Object[] row = results.get();
+                database.write((Long) row[0], orNone((Long) row[2]), orNone((Long) row[3]), toCents((Money) row[1]));
+            }
+        } finally {
+            results.close();
+        }
+    }
+
+    private static void spillSettlementFile(Path settlementFile, PartitionFiles settlement) throws IOException {
+        CsvMapper mapper = new CsvMapper();
+        try (MappingIterator<SettlementLine> lines = mapper.readerFor(SettlementLine.class)
+            .with(CsvSchema.emptySchema().withHeader())
+            .readValues(settlementFile.toFile())) {
+            while (lines.hasNextValue()) {
+                SettlementLine line = lines.nextValue();
+                if (line.id == null) {
+                    throw new IOException("Payment without id in " + settlementFile + " at " + lines.getCurrentLocation());
+                }
+                settlement.write(line.id, orNone(line.jobId), orNone(line.userId), toCents(line.amount));
+            }
+        }
+    }
+
+    /**
+     * Concatenate the report parts of the partitions, in the order of the partitions, and delete them.
+     */
+    private static void gatherReport(Path directory, int partitions, Path reportFile) throws IOException {
+        try (OutputStream output = Files.newOutputStream(reportFile)) {
+            output.write(REPORT_HEADER.getBytes(StandardCharsets.UTF_8));
+            for (int partition = 0; partition < partitions; partition++) {
+                Path part = ReconciliationTask.reportPart(directory, partition);
+                if (Files.exists(part)) {
+                    Files.copy(part, output);
+                    Files.delete(part);
+                }
+            }
+        }
+    }
+
+    private Path getDirectory(CrowdwareProperties.Reconciliation properties) throws IOException {
+        if (properties.getDirectory() == null || properties.getDirectory().isEmpty()) {
+            Path directory = Files.createTempDirectory("crowdware-reconciliation");
+            log.warn("No crowdware.reconciliation.directory is configured, the reconciliation reports are kept in the temporary directory {}", directory);
+            return directory;
+        }
+        return Paths.get(properties.getDirectory());
+    }
+
+    private static long toCents(Money amount) {
+        return amount != null ? amount.getMinorUnits() : PartitionFiles.NONE;
+    }
+
+    private static long orNone(Long id) {
+        return id != null ? id : PartitionFiles.NONE;
+    }
+
+    /**
+     * A line of the settlement file.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class SettlementLine {
+
+        public Long id;
+
+        public Money amount;
+
+        public Long jobId;
+
+        public Long userId;
+    }
+}
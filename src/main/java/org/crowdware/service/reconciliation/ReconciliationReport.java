@@ -0,0 +1,125 @@
+package org.crowdware.service.reconciliation;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The outcome of a payment reconciliation: how many payments matched, and how many of each kind of mismatch were
+ * written to the mismatch report.
+ */
+public class ReconciliationReport {
+
+    /**
+     * How a payment differs between the database and the settlement file.
+     */
+    public enum Mismatch {
+        /**
+         * The payment is only in the settlement file.
+         */
+        MISSING_IN_DATABASE,
+        /**
+         * The payment is only in the database.
+         */
+        MISSING_IN_SETTLEMENT,
+        /**
+         * The payment is in both, with different amounts.
+         */
+        AMOUNT,
+        /**
+         * The payment is in both, with a different job or user. Payments are partitioned by job and user, so such a
+         * payment is usually reported as missing on each side instead.
+         */
+        COUNTERPART,
+        /**
+         * The payment is more than once in the settlement file.
+         */
+        DUPLICATE_IN_SETTLEMENT
+    }
+
+    private long databasePayments;
+
+    private long settlementPayments;
+
+    private long matched;
+
+    private final Map<Mismatch, Long> mismatches = new EnumMap<>(Mismatch.class);
+
+    private String reportFile;
+
+    private long durationInMillis;
+
+    public long getDatabasePayments() {
+        return databasePayments;
+    }
+
+    public void setDatabasePayments(long databasePayments) {
+        this.databasePayments = databasePayments;
+    }
+
+    public long getSettlementPayments() {
+        return settlementPayments;
+    }
+
+    public void setSettlementPayments(long settlementPayments) {
+        this.settlementPayments = settlementPayments;
+    }
+
+    public long getMatched() {
+        return matched;
+    }
+
+    public Map<Mismatch, Long> getMismatches() {
+        return mismatches;
+    }
+
+    public long getMismatchCount(Mismatch mismatch) {
+        return mismatches.getOrDefault(mismatch, 0L);
+    }
+
+    /**
+     * @return the path of the CSV file listing every mismatch
+     */
+    public String getReportFile() {
+        return reportFile;
+    }
+
+    public void setReportFile(String reportFile) {
+        this.reportFile = reportFile;
+    }
+
+    public long getDurationInMillis() {
+        return durationInMillis;
+    }
+
+    public void setDurationInMillis(long durationInMillis) {
+        this.durationInMillis = durationInMillis;
+    }
+
+    void addMatched() {
+        matched++;
+    }
+
+    void addMismatch(Mismatch mismatch) {
+        mismatches.merge(mismatch, 1L, Long::sum);
+    }
+
+    /**
+     * Add the counts of the report of another partition.
+     */
+    void merge(ReconciliationReport other) {
+        matched += other.matched;
+        other.mismatches.forEach((mismatch, count) -> mismatches.merge(mismatch, count, Long::sum));
+    }
+
+    @Override
+    public String toString() {
+        return "ReconciliationReport{" +
+            "databasePayments=" + databasePayments +
+            ", settlementPayments=" + settlementPayments +
+            ", matched=" + matched +
+            ", mismatches=" + mismatches +
+            ", reportFile='" + reportFile + "'" +
+            ", durationInMillis=" + durationInMillis +
+            '}';
+    }
+}
@@ -0,0 +1,153 @@
+package org.crowdware.service.reconciliation;
+
+import org.crowdware.domain.Money;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Compares a range of partitions of the database and of the settlement file, splitting the range in halves until a
+ * task has a single partition, so the partitions are compared in parallel by a {@link java.util.concurrent.ForkJoinPool}.
+ * <p>
+ * The settlement records of a partition are loaded in a map by payment id, then the database records of the same
+ * partition are streamed against it, so the memory of a task is bounded by the size of a settlement partition. The
+ * mismatches of a partition are written to its own part of the report, see {@link #reportPart(Path, int)}.
+ */
+class ReconciliationTask extends RecursiveTask<ReconciliationReport> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final PartitionFiles database;
+
+    private final PartitionFiles settlement;
+
+    private final Path directory;
+
+    private final int from;
+
+    private final int to;
+
+    ReconciliationTask(PartitionFiles database, PartitionFiles settlement, Path directory, int from, int to) {
+        this.database = database;
+        this.settlement = settlement;
+        this.directory = directory;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * @return the path of the report part of a partition, which only exists if the partition has mismatches
+     */
+    static Path reportPart(Path directory, int partition) {
+        return directory.resolve("report-" + partition + ".csv");
+    }
+
+    @Override
+    protected ReconciliationReport compute() {
+        if (to - from == 1) {
+            try {
+                return reconcile(from);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        int middle = (from + to) >>> 1;
+        ReconciliationTask left = new ReconciliationTask(database, settlement, directory, from, middle);
+        ReconciliationTask right = new ReconciliationTask(database, settlement, directory, middle, to);
+        left.fork();
+        ReconciliationReport report = right.compute();
+        report.merge(left.join());
+        return report;
+    }
+
+    private ReconciliationReport reconcile(int partition) throws IOException {
+        ReconciliationReport report = new ReconciliationReport();
+        long settled = settlement.getCount(partition);
+        Map<Long, long[]> settledById = new HashMap<>((int) Math.min(Integer.MAX_VALUE / 2, settled * 4 / 3 + 1));
+        try (PartWriter writer = new PartWriter(reportPart(directory, partition))) {
+            try (DataInputStream input = settlement.open(partition)) {
+                for (long i = 0; i < settled; i++) {
+                    long id = input.readLong();
+                    long[] record = {input.readLong(), input.readLong(), input.readLong()};
+                    if (settledById.put(id, record) != null) {
+                        writer.write(report, ReconciliationReport.Mismatch.DUPLICATE_IN_SETTLEMENT, id, record, null);
+                    }
+                }
+            }
+            long stored = database.getCount(partition);
+            try (DataInputStream input = database.open(partition)) {
+                for (long i = 0; i < stored; i++) {
+                    long id = input.readLong();
+                    long[] record = {input.readLong(), input.readLong(), input.readLong()};
+                    long[] settledRecord = settledById.remove(id);
+                    if (settledRecord == null) {
+                        writer.write(report, ReconciliationReport.Mismatch.MISSING_IN_SETTLEMENT, id, record, null);
+                    } else if (record[0] != settledRecord[0] || record[1] != settledRecord[1]) {
+                        writer.write(report, ReconciliationReport.Mismatch.COUNTERPART, id, record, settledRecord);
+                    } else if (record[2] != settledRecord[2]) {
+                        writer.write(report, ReconciliationReport.Mismatch.AMOUNT, id, record, settledRecord);
+                    } else {
+                        report.addMatched();
+                    }
+                }
+            }
+            for (Map.Entry<Long, long[]> entry : settledById.entrySet()) {
+                writer.write(report, ReconciliationReport.Mismatch.MISSING_IN_DATABASE, entry.getKey(), null, entry.getValue());
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Writes the mismatches of a partition, creating its file on the first one.
+     */
+    private static final class PartWriter implements AutoCloseable {
+
+        private final Path path;
+
+        private Writer writer;
+
+        private PartWriter(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * Count a mismatch and write its line: id, kind, then the job id, user id and amount of each side.
+         */
+        private void write(ReconciliationReport report, ReconciliationReport.Mismatch mismatch, long id,
+                           long[] stored, long[] settled) throws IOException {
+            report.addMismatch(mismatch);
+            if (writer == null) {
+                writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+            }
+            writer.append(Long.toString(id)).append(',').append(mismatch.name());
+            appendRecord(stored);
+            appendRecord(settled);
+            writer.append('\n');
+        }
+
+        private void appendRecord(long[] record) throws IOException {
+            for (int i = 0; i < 3; i++) {
+                writer.append(',');
+                if (record != null && record[i] != PartitionFiles.NONE) {
+                    writer.append(i == 2 ? Money.ofMinorUnits(record[i]).toString() : Long.toString(record[i]));
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.crowdware.service.search;
+
+import java.util.List;
+
+/**
+ * A slice of the results of a search, with the cursor of the next one.
+ */
+public class CursorPage<T> {
+
+    private final List<T> content;
+
+    private final int size;
+
+    private final SearchCursor next;
+
+    public CursorPage(List<T> content, int size, SearchCursor next) {
+        this.content = content;
+        this.size = size;
+        this.next = next;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    /**
+     * @return the maximum number of results of the slice
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the cursor of the next slice, or null if this one is the last
+     */
+    public SearchCursor getNext() {
+        return next;
+    }
+}
@@ -0,0 +1,108 @@
+package org.crowdware.service.search;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.crowdware.config.CrowdwareProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Service Implementation reading the results of a search with cursors.
+ * <p>
+ * A cursor holds the id of the last entity returned, and the next slice is the entities matching the query after that
+ * id, sorted by id, see {@link SearchBackend#searchAfter(Class, String, Long, int)}. Unlike pages read with an offset,
+ * a slice costs the same at any depth, and entities written between two slices are neither skipped nor repeated
+ * unless their id is before the cursor.
+ * <p>
+ * Exports write all the results as newline-delimited JSON while they are read, one slice of
+ * {@code crowdware.search.cursor.exportBatchSize} entities at a time, so their memory does not depend on the number of
+ * results.
+ */
+@Service
+public class CursorSearchService {
+
+    private final Logger log = LoggerFactory.getLogger(CursorSearchService.class);
+
+    @Inject
+    private SearchBackend searchBackend;
+
+    @Inject
+    private EntityManagerFactory entityManagerFactory;
+
+    @Inject
+    private ObjectMapper objectMapper;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
+
+    /**
+     * Get the slice of the entities matching a query after a cursor.
+     *
+     * @param entityClass the indexed entity class
+     * @param query the query
+     * @param cursor the cursor of the slice
+     * @param size the maximum number of entities, {@code crowdware.search.cursor.pageSize} if null, and at most
+     * {@code crowdware.search.cursor.maxPageSize}
+     * @return the slice, by ascending id
+     */
+    public <T> CursorPage<T> search(Class<T> entityClass, String query, SearchCursor cursor, Integer size) {
+        log.debug("Request to search {}s for query {} after {}", entityClass.getSimpleName(), query, cursor.getAfterId());
+        CrowdwareProperties.Search.Cursor properties = crowdwareProperties.getSearch().getCursor();
+        int pageSize = size == null ? properties.getPageSize() : Math.max(1, Math.min(size, properties.getMaxPageSize()));
+        List<T> entities = searchBackend.searchAfter(entityClass, query, cursor.getAfterId(), pageSize);
+        SearchCursor next = entities.size() < pageSize ? null : SearchCursor.after(getId(entities.get(entities.size() - 1)));
+        return new CursorPage<>(entities, pageSize, next);
+    }
+
+    /**
+     * Write all the entities matching a query as newline-delimited JSON, by ascending id.
+     *
+     * @param entityClass the indexed entity class
+     * @param query the query
+     * @param out the output, flushed but left open
+     * @return the number of exported entities
+     * @throws IOException if the output cannot be written
+     */
+    public long export(Class<?> entityClass, String query, OutputStream out) throws IOException {
+        log.debug("Request to export the {}s for query {}", entityClass.getSimpleName(), query);
+        int batchSize = crowdwareProperties.getSearch().getCursor().getExportBatchSize();
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        // each entity ends with its own newline instead of being separated by a space
+        generator.setRootValueSeparator(null);
+        // the output belongs to the caller
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        long count = 0;
+        try {
+            Long afterId = null;
+            List<?> entities;
+            do {
+                entities = searchBackend.searchAfter(entityClass, query, afterId, batchSize);
+                for (Object entity : entities) {
+                    generator.writeObject(entity);
+                    generator.writeRaw('\n');
+                }
+                count += entities.size();
+                if (!entities.isEmpty()) {
+                    afterId = getId(entities.get(entities.size() - 1));
+                    generator.flush();
+                }
+            } while (entities.size() == batchSize);
+        } finally {
+            generator.close();
+        }
+        log.debug("Exported {} {}s", count, entityClass.getSimpleName());
+        return count;
+    }
+
+    private long getId(Object entity) {
+        return (Long) entityManagerFactory.getPersistenceUnitUtil().getIdentifier(entity);
+    }
+}
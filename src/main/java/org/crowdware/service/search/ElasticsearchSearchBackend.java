@@ -0,0 +1,409 @@
+package org.crowdware.service.search;
+
+import org.crowdware.config.CrowdwareProperties;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequestBuilder;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequestBuilder;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.indices.IndexAlreadyExistsException;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.ElasticsearchException;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.data.elasticsearch.core.query.SearchQuery;
+import org.springframework.stereotype.Service;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.elasticsearch.index.query.FilterBuilders.rangeFilter;
+import static org.elasticsearch.index.query.QueryBuilders.filteredQuery;
+import static org.elasticsearch.index.query.QueryBuilders.queryStringQuery;
+
+/**
+ * The search backend of a remote Elasticsearch cluster, the default one.
+ * <p>
+ * The documents of an entity type are read and written through an alias, named after its {@code @Document} index
+ * with a {@value #ALIAS_SUFFIX} suffix. The alias is added to the existing index, created if needed, the first time
+ * the type is used: it never takes the place of an index, so moving it is always a single atomic request. A new index
+ * has the mappings of the current one, no replica and no refresh while it is filled; publishing it restores them,
+ * then atomically moves the alias to it and deletes the previous index, so searches never see a partial index.
+ * <p>
+ * A new index also gets a second alias with a {@value #REBUILD_SUFFIX} suffix until it is published or discarded.
+ * Every node looks this alias up when it writes, so the documents indexed or deleted by any node during the rebuild
+ * are written to the new index too. The new index is filled with create-only requests, so such a document is never
+ * overwritten; a document whose entity was deleted while it was copied is removed by {@link IndexBuilder#remove}.
+ * The documents rejected by a saturated cluster are sent again with a growing delay, up to
+ * {@code crowdware.search.reindex.maxRetries} times.
+ */
+@Service
+@ConditionalOnProperty(prefix = "crowdware.search", name = "backend", havingValue = "elasticsearch", matchIfMissing = true)
+public class ElasticsearchSearchBackend implements SearchBackend {
+
+    private static final DateTimeFormatter INDEX_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMddHHmmssSSS");
+
+    private static final String ALIAS_SUFFIX = "_live";
+
+    private static final String REBUILD_SUFFIX = "_rebuild";
+
+    private final Logger log = LoggerFactory.getLogger(ElasticsearchSearchBackend.class);
+
+    private final Map<Class<?>, String> aliases = new ConcurrentHashMap<>();
+
+    @Inject
+    private Client client;
+
+    @Inject
+    private ElasticsearchTemplate elasticsearchTemplate;
+
+    @Inject
+    private EntityMapper entityMapper;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
+
+    @Override
+    public <T> Map<Long, String> index(Class<T> entityClass, Map<Long, T> entities) {
+        Map<Long, String> errors = new HashMap<>();
+        String alias = getAlias(entityClass);
+        String documentType = getDocumentType(entityClass);
+        List<String> rebuilt = getRebuiltIndices(entityClass);
+        List<IndexQuery> queries = new ArrayList<>(entities.size());
+        entities.forEach((id, entity) -> {
+            queries.add(new IndexQueryBuilder().withIndexName(alias).withType(documentType)
+                .withId(id.toString()).withObject(entity).build());
+            for (String index : rebuilt) {
+                queries.add(new IndexQueryBuilder().withIndexName(index).withType(documentType)
+                    .withId(id.toString()).withObject(entity).build());
+            }
+        });
+        try {
+            elasticsearchTemplate.bulkIndex(queries);
+        } catch (ElasticsearchException e) {
+            e.getFailedDocuments().forEach((id, message) -> errors.put(Long.valueOf(id), message));
+        }
+        return errors;
+    }
+
+    @Override
+    public Map<Long, String> delete(Class<?> entityClass, Collection<Long> ids) {
+        String alias = getAlias(entityClass);
+        String documentType = getDocumentType(entityClass);
+        List<String> rebuilt = getRebuiltIndices(entityClass);
+        BulkRequestBuilder bulk = client.prepareBulk();
+        for (Long id : ids) {
+            bulk.add(client.prepareDelete(alias, documentType, id.toString()));
+            for (String index : rebuilt) {
+                bulk.add(client.prepareDelete(index, documentType, id.toString()));
+            }
+        }
+        Map<Long, String> errors = new HashMap<>();
+        for (BulkItemResponse item : bulk.get().getItems()) {
+            if (item.isFailed()) {
+                errors.put(Long.valueOf(item.getId()), item.getFailureMessage());
+            }
+        }
+        return errors;
+    }
+
+    @Override
+    public <T> Page<T> search(Class<T> entityClass, String query, Pageable pageable) {
+        SearchQuery searchQuery = new NativeSearchQueryBuilder()
+            .withIndices(getAlias(entityClass))
+            .withTypes(getDocumentType(entityClass))
+            .withQuery(queryStringQuery(query))
+            .withPageable(pageable)
+            .build();
+        return elasticsearchTemplate.queryForPage(searchQuery, entityClass);
+    }
+
+    @Override
+    public <T> List<T> searchAfter(Class<T> entityClass, String query, Long afterId, int size) {
+        QueryBuilder queryBuilder = queryStringQuery(query);
+        if (afterId != null) {
+            queryBuilder = filteredQuery(queryBuilder, rangeFilter("id").gt(afterId));
+        }
+        SearchQuery searchQuery = new NativeSearchQueryBuilder()
+            .withIndices(getAlias(entityClass))
+            .withTypes(getDocumentType(entityClass))
+            .withQuery(queryBuilder)
+            .withSort(SortBuilders.fieldSort("id").order(SortOrder.ASC))
+            .withPageable(new PageRequest(0, size))
+            .build();
+        return elasticsearchTemplate.queryForList(searchQuery, entityClass);
+    }
+
+    @Override
+    public void refresh(Class<?> entityClass) {
+        client.admin().indices().prepareRefresh(getAlias(entityClass)).get();
+    }
+
+    @Override
+    public IndexBuilder rebuild(Class<?> entityClass) {
+        String alias = getAlias(entityClass);
+        List<String> rebuilt = getRebuiltIndices(entityClass);
+        if (!rebuilt.isEmpty()) {
+            throw new IllegalStateException("The " + entityClass.getSimpleName() + " documents are already being copied to " +
+                rebuilt + ", delete it if that rebuild was interrupted");
+        }
+        String index = getIndexName(entityClass) + "_" + LocalDateTime.now().format(INDEX_SUFFIX);
+        Settings restored = createIndex(alias, index);
+        client.admin().indices().prepareAliases().addAlias(index, getRebuildAlias(entityClass)).get();
+        return new Builder(entityClass, alias, index, restored);
+    }
+
+    /**
+     * @return the alias the documents of the entity class are read and written through
+     */
+    private String getAlias(Class<?> entityClass) {
+        return aliases.computeIfAbsent(entityClass, this::createAlias);
+    }
+
+    /**
+     * Add the alias of an entity class to its {@code @Document} index, creating the index if there is none, unless
+     * the alias already exists.
+     */
+    private String createAlias(Class<?> entityClass) {
+        String name = getIndexName(entityClass);
+        String alias = name + ALIAS_SUFFIX;
+        IndicesAdminClient indices = client.admin().indices();
+        if (!indices.prepareAliasesExist(alias).get().isExists()) {
+            if (!elasticsearchTemplate.indexExists(entityClass)) {
+                try {
+                    elasticsearchTemplate.createIndex(entityClass);
+                    elasticsearchTemplate.putMapping(entityClass);
+                } catch (IndexAlreadyExistsException e) {
+                    log.debug("The {} index was created by another node", name);
+                }
+            }
+            indices.prepareAliases().addAlias(name, alias).get();
+            log.info("Added the {} alias to the {} index", alias, name);
+        }
+        return alias;
+    }
+
+    private String getRebuildAlias(Class<?> entityClass) {
+        return getIndexName(entityClass) + REBUILD_SUFFIX;
+    }
+
+    /**
+     * Read the indices being rebuilt from the cluster on every write, not from a cache, so that no node misses a
+     * rebuild started by another one.
+     *
+     * @return the new index of the entity class if one is being filled, else an empty list
+     */
+    private List<String> getRebuiltIndices(Class<?> entityClass) {
+        List<String> indices = new ArrayList<>();
+        client.admin().indices().prepareGetAliases(getRebuildAlias(entityClass)).get().getAliases().keysIt()
+            .forEachRemaining(indices::add);
+        return indices;
+    }
+
+    /**
+     * @return the {@code @Document} index of the entity class, which its alias is first added to
+     */
+    private String getIndexName(Class<?> entityClass) {
+        return elasticsearchTemplate.getPersistentEntityFor(entityClass).getIndexName();
+    }
+
+    private String getDocumentType(Class<?> entityClass) {
+        return elasticsearchTemplate.getPersistentEntityFor(entityClass).getIndexType();
+    }
+
+    /**
+     * Create a new index with the mappings of the current one, tuned for bulk loading.
+     *
+     * @return the number of replicas and the refresh interval of the current index, to restore once the new index is
+     * filled
+     */
+    private Settings createIndex(String alias, String index) {
+        IndicesAdminClient indices = client.admin().indices();
+        CreateIndexRequestBuilder request = indices.prepareCreate(index);
+        String replicas = "1";
+        String refreshInterval = "1s";
+        if (indices.prepareAliasesExist(alias).get().isExists()) {
+            ImmutableOpenMap<String, ImmutableOpenMap<String, MappingMetaData>> mappings = indices.prepareGetMappings(alias).get().getMappings();
+            Iterator<ImmutableOpenMap<String, MappingMetaData>> currentMappings = mappings.valuesIt();
+            if (currentMappings.hasNext()) {
+                for (Iterator<MappingMetaData> iterator = currentMappings.next().valuesIt(); iterator.hasNext(); ) {
+                    MappingMetaData mapping = iterator.next();
+                    try {
+                        request.addMapping(mapping.type(), mapping.getSourceAsMap());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+            Iterator<Settings> currentSettings = indices.prepareGetSettings(alias).get().getIndexToSettings().valuesIt();
+            if (currentSettings.hasNext()) {
+                Settings settings = currentSettings.next();
+                replicas = settings.get("index.number_of_replicas", replicas);
+                refreshInterval = settings.get("index.refresh_interval", refreshInterval);
+            }
+        }
+        request.setSettings(ImmutableSettings.settingsBuilder()
+            .put("index.refresh_interval", "-1")
+            .put("index.number_of_replicas", 0))
+            .get();
+        return ImmutableSettings.settingsBuilder()
+            .put("index.refresh_interval", refreshInterval)
+            .put("index.number_of_replicas", replicas)
+            .build();
+    }
+
+    /**
+     * Move the alias to the new index and remove its rebuild alias in a single request, then delete the indices the
+     * alias was on.
+     */
+    private void swapAlias(String alias, String rebuildAlias, String index) {
+        IndicesAdminClient indices = client.admin().indices();
+        List<String> previous = new ArrayList<>();
+        indices.prepareGetAliases(alias).get().getAliases().keysIt().forEachRemaining(previous::add);
+        IndicesAliasesRequestBuilder request = indices.prepareAliases()
+            .addAlias(index, alias)
+            .removeAlias(index, rebuildAlias);
+        previous.forEach(old -> request.removeAlias(old, alias));
+        request.get();
+        previous.forEach(old -> indices.prepareDelete(old).get());
+        log.debug("Moved the {} alias to {}, deleted {}", alias, index, previous);
+    }
+
+    /**
+     * A new Elasticsearch index, published by moving the alias of the entity type to it.
+     */
+    private final class Builder implements IndexBuilder {
+
+        private final Class<?> entityClass;
+
+        private final String alias;
+
+        private final String index;
+
+        /**
+         * The settings of the current index which the new one is loaded without.
+         */
+        private final Settings restored;
+
+        private final String documentType;
+
+        private Builder(Class<?> entityClass, String alias, String index, Settings restored) {
+            this.entityClass = entityClass;
+            this.alias = alias;
+            this.index = index;
+            this.restored = restored;
+            this.documentType = getDocumentType(entityClass);
+        }
+
+        @Override
+        public String getName() {
+            return index;
+        }
+
+        @Override
+        public void add(Map<Long, ?> entities) {
+            Map<String, String> sources = new LinkedHashMap<>();
+            try {
+                for (Map.Entry<Long, ?> entity : entities.entrySet()) {
+                    sources.put(entity.getKey().toString(), entityMapper.mapToString(entity.getValue()));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            int maxRetries = crowdwareProperties.getSearch().getReindex().getMaxRetries();
+            for (int attempt = 0; !sources.isEmpty(); attempt++) {
+                BulkRequestBuilder bulk = client.prepareBulk();
+                for (Map.Entry<String, String> source : sources.entrySet()) {
+                    bulk.add(client.prepareIndex(index, documentType, source.getKey())
+                        .setSource(source.getValue())
+                        .setOpType(IndexRequest.OpType.CREATE));
+                }
+                Map<String, String> rejected = new LinkedHashMap<>();
+                for (BulkItemResponse item : bulk.get().getItems()) {
+                    // a conflict means a newer state of the document was already written
+                    if (item.isFailed() && item.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS) {
+                        rejected.put(item.getId(), sources.get(item.getId()));
+                    } else if (item.isFailed() && item.getFailure().getStatus() != RestStatus.CONFLICT) {
+                        throw new IllegalStateException("Could not index " + entityClass.getSimpleName() + " " +
+                            item.getId() + ": " + item.getFailureMessage());
+                    }
+                }
+                if (rejected.isEmpty()) {
+                    break;
+                }
+                if (attempt >= maxRetries) {
+                    throw new IllegalStateException("Elasticsearch rejected " + rejected.size() + " " +
+                        entityClass.getSimpleName() + " documents " + (attempt + 1) + " times");
+                }
+                sources = rejected;
+                try {
+                    Thread.sleep(100L << attempt);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while copying " + entityClass.getSimpleName() + " documents", e);
+                }
+            }
+        }
+
+        @Override
+        public void remove(Collection<Long> ids) {
+            BulkRequestBuilder bulk = client.prepareBulk();
+            for (Long id : ids) {
+                bulk.add(client.prepareDelete(index, documentType, id.toString()));
+            }
+            for (BulkItemResponse item : bulk.get().getItems()) {
+                if (item.isFailed()) {
+                    throw new IllegalStateException("Could not delete " + entityClass.getSimpleName() + " " +
+                        item.getId() + " from " + index + ": " + item.getFailureMessage());
+                }
+            }
+        }
+
+        @Override
+        public void publish() {
+            IndicesAdminClient indices = client.admin().indices();
+            indices.prepareUpdateSettings(index).setSettings(restored).get();
+            indices.prepareRefresh(index).get();
+            swapAlias(alias, getRebuildAlias(entityClass), index);
+        }
+
+        @Override
+        public void discard() {
+            // deleting the index also removes its rebuild alias
+            try {
+                client.admin().indices().prepareDelete(index).get();
+            } catch (RuntimeException e) {
+                log.warn("Could not delete the incomplete index {}: {}", index, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,593 @@
+package org.crowdware.service.search;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * An embedded Lucene index of the JSON documents of an entity type, kept in a directory of the local disk.
+ * <p>
+ * A document holds its id, also as a number to sort and filter the documents by id, its JSON source, stored to be
+ * returned by searches, and a text field per value of the source, named after its path such as {@code job.name}.
+ * Every value is also in the {@value #ALL} field, which queries search by default like Elasticsearch does.
+ * <p>
+ * Writes go through a single {@link IndexWriter}, whose segments are merged in the background by a
+ * {@link ConcurrentMergeScheduler} with a {@link TieredMergePolicy}, and are committed before {@link #update(Map)} or
+ * {@link #delete(Collection)} returns, so they survive a restart. Searches use near-real-time readers of the writer,
+ * which see the writes once {@link #refresh()} has reopened them, without waiting for a commit.
+ * <p>
+ * The index lives in a generation directory, named in the {@value #CURRENT} file. A rebuild fills a new generation,
+ * see {@link #rebuild()}; publishing it switches the writes and searches to it and deletes the previous one.
+ * <p>
+ * This class is thread-safe, but the writes of the same document must not run concurrently.
+ */
+public class LuceneIndex implements Closeable {
+
+    static final String ID = "_id";
+
+    static final String SORT_ID = "_sort_id";
+
+    static final String SOURCE = "_source";
+
+    static final String ALL = "_all";
+
+    static final String CURRENT = "current";
+
+    private static final Version VERSION = Version.LUCENE_4_10_0;
+
+    private static final DateTimeFormatter GENERATION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmssSSS");
+
+    private final Logger log = LoggerFactory.getLogger(LuceneIndex.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Analyzer analyzer = new StandardAnalyzer(VERSION);
+
+    private final File directory;
+
+    private final double ramBufferSizeMb;
+
+    /**
+     * Writes and searches take the read lock; switching generations takes the write lock.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * The documents written to the new generation since the rebuild started, which the rebuild must not overwrite.
+     */
+    private final ConcurrentMap<Long, Boolean> writtenWhileBuilding = new ConcurrentHashMap<>();
+
+    private final boolean created;
+
+    private Generation current;
+
+    private Generation building;
+
+    /**
+     * Open the index of a directory, creating it if it does not exist.
+     *
+     * @param directory the directory of the index
+     * @param ramBufferSizeMb the memory used to buffer documents before they are flushed to a new segment
+     * @throws IOException if the index cannot be opened
+     */
+    public LuceneIndex(File directory, double ramBufferSizeMb) throws IOException {
+        this.directory = directory;
+        this.ramBufferSizeMb = ramBufferSizeMb;
+        Files.createDirectories(directory.toPath());
+        Path marker = directory.toPath().resolve(CURRENT);
+        created = !Files.exists(marker);
+        if (!created) {
+            current = open(new String(Files.readAllBytes(marker), StandardCharsets.UTF_8).trim());
+        } else {
+            current = open(LocalDateTime.now().format(GENERATION_FORMAT));
+            current.writer.commit();
+            writeMarker(current.name);
+        }
+        // generations left by a rebuild which did not complete, or which could not be deleted
+        File[] generations = directory.listFiles(File::isDirectory);
+        if (generations != null) {
+            for (File generation : generations) {
+                if (!generation.getName().equals(current.name)) {
+                    deleteGeneration(generation);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the index did not exist and was created empty, false if it was opened
+     */
+    public boolean isCreated() {
+        return created;
+    }
+
+    /**
+     * Add or replace documents.
+     *
+     * @param sources the JSON source of the documents, by id
+     * @throws IOException if the documents cannot be written
+     */
+    public void update(Map<Long, String> sources) throws IOException {
+        Map<Long, Document> documents = new LinkedHashMap<>();
+        for (Map.Entry<Long, String> source : sources.entrySet()) {
+            documents.put(source.getKey(), toDocument(source.getKey(), source.getValue()));
+        }
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<Long, Document> document : documents.entrySet()) {
+                Term id = idTerm(document.getKey());
+                current.writer.updateDocument(id, document.getValue());
+                if (building != null) {
+                    writeWhileBuilding(building, document.getKey(), writer -> writer.updateDocument(id, document.getValue()));
+                }
+            }
+            current.writer.commit();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Delete documents, if they exist.
+     *
+     * @param ids the ids of the documents
+     * @throws IOException if the documents cannot be deleted
+     */
+    public void delete(Collection<Long> ids) throws IOException {
+        lock.readLock().lock();
+        try {
+            for (Long id : ids) {
+                current.writer.deleteDocuments(idTerm(id));
+                if (building != null) {
+                    writeWhileBuilding(building, id, writer -> writer.deleteDocuments(idTerm(id)));
+                }
+            }
+            current.writer.commit();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reopen the readers of the searches if documents were written since, without waiting.
+     *
+     * @throws IOException if the readers cannot be reopened
+     */
+    public void refresh() throws IOException {
+        lock.readLock().lock();
+        try {
+            current.searcherManager.maybeRefresh();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Search documents with the Lucene query syntax.
+     *
+     * @param query the query, on the {@value #ALL} field unless fields are named
+     * @param offset the number of matching documents to skip
+     * @param size the maximum number of documents to return
+     * @param sort the order of the documents, null for the most relevant first, see {@link #byId(boolean)}
+     * @return the matching documents
+     * @throws IOException if the index cannot be read
+     * @throws IllegalArgumentException if the query is invalid
+     */
+    public Hits search(String query, int offset, int size, Sort sort) throws IOException {
+        return search(parse(query), offset, size, sort);
+    }
+
+    /**
+     * Search the documents with the Lucene query syntax which come after an id, by ascending id.
+     *
+     * @param query the query, on the {@value #ALL} field unless fields are named
+     * @param afterId the id the documents start after, or null to start from the first one
+     * @param size the maximum number of documents to return
+     * @return the matching documents
+     * @throws IOException if the index cannot be read
+     * @throws IllegalArgumentException if the query is invalid
+     */
+    public Hits searchAfter(String query, Long afterId, int size) throws IOException {
+        Query parsed = parse(query);
+        if (afterId != null) {
+            BooleanQuery after = new BooleanQuery();
+            after.add(parsed, BooleanClause.Occur.MUST);
+            after.add(NumericRangeQuery.newLongRange(SORT_ID, afterId, null, false, true), BooleanClause.Occur.MUST);
+            parsed = after;
+        }
+        return search(parsed, 0, size, byId(false));
+    }
+
+    private Hits search(Query parsed, int offset, int size, Sort sort) throws IOException {
+        int limit = (int) Math.min(Integer.MAX_VALUE, (long) offset + size);
+        lock.readLock().lock();
+        try {
+            SearcherManager searcherManager = current.searcherManager;
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                // Lucene needs at least one hit to count the matching documents
+                int hits = Math.max(1, limit);
+                TopDocs top = sort != null ? searcher.search(parsed, hits, sort) : searcher.search(parsed, hits);
+                List<String> sources = new ArrayList<>();
+                for (int i = offset; i < Math.min(top.scoreDocs.length, limit); i++) {
+                    sources.add(searcher.doc(top.scoreDocs[i].doc).get(SOURCE));
+                }
+                return new Hits(top.totalHits, sources);
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param reverse true for the highest ids first
+     * @return the order of the documents by id
+     */
+    public static Sort byId(boolean reverse) {
+        return new Sort(new SortField(SORT_ID, SortField.Type.LONG, reverse));
+    }
+
+    /**
+     * Start a new generation of the index, filled by the caller while the current one is still searched. Until it is
+     * published or discarded, the documents written by {@link #update(Map)} and {@link #delete(Collection)} are
+     * written to both generations.
+     *
+     * @return the builder of the new generation
+     * @throws IOException if the new generation cannot be created
+     * @throws IllegalStateException if a rebuild is already running
+     */
+    public Builder rebuild() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (building != null) {
+                throw new IllegalStateException("The index " + directory + " is already being rebuilt");
+            }
+            writtenWhileBuilding.clear();
+            building = open(LocalDateTime.now().format(GENERATION_FORMAT));
+            return new Builder(building);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (building != null) {
+                discard(building);
+            }
+            current.close();
+            analyzer.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Generation open(String name) throws IOException {
+        File path = new File(directory, name);
+        Directory generationDirectory = FSDirectory.open(path);
+        IndexWriterConfig config = new IndexWriterConfig(VERSION, analyzer)
+            .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND)
+            .setRAMBufferSizeMB(ramBufferSizeMb)
+            .setMergePolicy(new TieredMergePolicy())
+            .setMergeScheduler(new ConcurrentMergeScheduler());
+        IndexWriter writer = new IndexWriter(generationDirectory, config);
+        return new Generation(name, path, generationDirectory, writer, new SearcherManager(writer, true, null));
+    }
+
+    private void publish(Generation generation) throws IOException {
+        Generation previous;
+        lock.writeLock().lock();
+        try {
+            if (building != generation) {
+                throw new IllegalStateException("The generation " + generation.name + " of " + directory + " is not being built");
+            }
+            generation.writer.commit();
+            generation.searcherManager.maybeRefreshBlocking();
+            writeMarker(generation.name);
+            previous = current;
+            current = generation;
+            building = null;
+            writtenWhileBuilding.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // searches and writes hold the read lock, so none of them still uses the previous generation
+        try {
+            previous.close();
+        } finally {
+            deleteGeneration(previous.path);
+        }
+        log.debug("Published the generation {} of the index {}", generation.name, directory);
+    }
+
+    private void discard(Generation generation) {
+        lock.writeLock().lock();
+        try {
+            if (building == generation) {
+                building = null;
+                writtenWhileBuilding.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            generation.writer.rollback();
+            generation.searcherManager.close();
+            generation.directory.close();
+        } catch (IOException e) {
+            log.warn("Could not close the incomplete generation {} of the index {}: {}", generation.name, directory, e.getMessage());
+        }
+        deleteGeneration(generation.path);
+    }
+
+    /**
+     * Write a document to the new generation, marking it as written so the rebuild does not overwrite it. The map
+     * serializes the writes of the same document with {@link Builder#add(Map)}.
+     */
+    private void writeWhileBuilding(Generation generation, Long id, WriterOperation operation) throws IOException {
+        try {
+            writtenWhileBuilding.compute(id, (key, written) -> {
+                apply(generation.writer, operation);
+                return Boolean.TRUE;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void apply(IndexWriter writer, WriterOperation operation) {
+        try {
+            operation.apply(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Query parse(String query) {
+        QueryParser parser = new QueryParser(VERSION, ALL, analyzer);
+        parser.setAllowLeadingWildcard(true);
+        try {
+            return parser.parse(query);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Invalid query " + query + ": " + e.getMessage(), e);
+        }
+    }
+
+    private Document toDocument(Long id, String source) throws IOException {
+        Document document = new Document();
+        document.add(new StringField(ID, id.toString(), Field.Store.NO));
+        document.add(new LongField(SORT_ID, id, Field.Store.NO));
+        document.add(new NumericDocValuesField(SORT_ID, id));
+        document.add(new StoredField(SOURCE, source));
+        StringBuilder all = new StringBuilder();
+        addFields(document, "", objectMapper.readTree(source), all);
+        document.add(new TextField(ALL, all.toString(), Field.Store.NO));
+        return document;
+    }
+
+    private static void addFields(Document document, String path, JsonNode node, StringBuilder all) {
+        if (node.isObject()) {
+            node.fields().forEachRemaining(field ->
+                addFields(document, path.isEmpty() ? field.getKey() : path + "." + field.getKey(), field.getValue(), all));
+        } else if (node.isArray()) {
+            node.forEach(element -> addFields(document, path, element, all));
+        } else if (!node.isNull() && !path.isEmpty()) {
+            String value = node.asText();
+            document.add(new TextField(path, value, Field.Store.NO));
+            all.append(value).append(' ');
+        }
+    }
+
+    private static Term idTerm(Long id) {
+        return new Term(ID, id.toString());
+    }
+
+    private void writeMarker(String name) throws IOException {
+        Path marker = directory.toPath().resolve(CURRENT);
+        Path next = directory.toPath().resolve(CURRENT + ".tmp");
+        Files.write(next, name.getBytes(StandardCharsets.UTF_8));
+        Files.move(next, marker, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void deleteGeneration(File path) {
+        try (Stream<Path> files = Files.walk(path.toPath())) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            log.warn("Could not delete the generation {} of the index {}: {}", path.getName(), directory, e.getMessage());
+        }
+    }
+
+    /**
+     * The documents matching a search.
+     */
+    public static final class Hits {
+
+        private final int total;
+
+        private final List<String> sources;
+
+        private Hits(int total, List<String> sources) {
+            this.total = total;
+            this.sources = sources;
+        }
+
+        /**
+         * @return the number of matching documents
+         */
+        public int getTotal() {
+            return total;
+        }
+
+        /**
+         * @return the JSON source of the returned documents
+         */
+        public List<String> getSources() {
+            return sources;
+        }
+    }
+
+    /**
+     * A new generation being filled, see {@link #rebuild()}.
+     */
+    public final class Builder {
+
+        private final Generation generation;
+
+        private Builder(Generation generation) {
+            this.generation = generation;
+        }
+
+        public String getName() {
+            return generation.name;
+        }
+
+        /**
+         * Add documents, except those written by {@link #update(Map)} or {@link #delete(Collection)} since the rebuild
+         * started, which are newer.
+         *
+         * @param sources the JSON source of the documents, by id
+         * @throws IOException if the documents cannot be written
+         */
+        public void add(Map<Long, String> sources) throws IOException {
+            for (Map.Entry<Long, String> source : sources.entrySet()) {
+                Document document = toDocument(source.getKey(), source.getValue());
+                try {
+                    // absent documents are added without being kept in the map, so a later write replaces them
+                    writtenWhileBuilding.computeIfAbsent(source.getKey(), id -> {
+                        apply(generation.writer, writer -> writer.updateDocument(idTerm(id), document));
+                        return null;
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+
+        /**
+         * Delete added documents, unless {@link #update(Map)} wrote them since the rebuild started.
+         *
+         * @param ids the ids of the documents
+         * @throws IOException if the documents cannot be deleted
+         */
+        public void remove(Collection<Long> ids) throws IOException {
+            for (Long id : ids) {
+                try {
+                    writtenWhileBuilding.computeIfAbsent(id, key -> {
+                        apply(generation.writer, writer -> writer.deleteDocuments(idTerm(key)));
+                        return null;
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+
+        /**
+         * Commit the new generation and switch to it, then delete the previous one.
+         *
+         * @throws IOException if the new generation cannot be committed
+         */
+        public void publish() throws IOException {
+            LuceneIndex.this.publish(generation);
+        }
+
+        /**
+         * Drop the new generation, leaving the current one in place.
+         */
+        public void discard() {
+            LuceneIndex.this.discard(generation);
+        }
+    }
+
+    @FunctionalInterface
+    private interface WriterOperation {
+
+        void apply(IndexWriter writer) throws IOException;
+    }
+
+    /**
+     * A directory of the index, with its writer and the near-real-time readers of the writer.
+     */
+    private static final class Generation implements Closeable {
+
+        private final String name;
+
+        private final File path;
+
+        private final Directory directory;
+
+        private final IndexWriter writer;
+
+        private final SearcherManager searcherManager;
+
+        private Generation(String name, File path, Directory directory, IndexWriter writer, SearcherManager searcherManager) {
+            this.name = name;
+            this.path = path;
+            this.directory = directory;
+            this.writer = writer;
+            this.searcherManager = searcherManager;
+        }
+
+        @Override
+        public void close() throws IOException {
+            searcherManager.close();
+            writer.close();
+            directory.close();
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package org.crowdware.service.search;
+
+import org.apache.lucene.search.Sort;
+import org.crowdware.config.Constants;
+import org.crowdware.config.CrowdwareProperties;
+import org.crowdware.domain.enumeration.SearchEntityType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContextException;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The search backend of embedded Lucene indices, for single-node deployments without an Elasticsearch cluster. It is
+ * selected with {@code crowdware.search.backend: lucene}.
+ * <p>
+ * Each entity type has its own {@link LuceneIndex} in a directory of {@code crowdware.search.lucene.directory} named
+ * after its {@code @Document} index. Documents are the same JSON as in Elasticsearch, so the same queries work on both
+ * backends. Searches see the writes within {@code crowdware.search.lucene.refreshInterval} milliseconds, like the
+ * refresh interval of Elasticsearch. Pages are sorted by relevance, or by id if they ask for it; other sorts are
+ * ignored.
+ * <p>
+ * The indices only live on the node, so the directory must be on persistent storage in production. The indices
+ * created empty, like all of them in a temporary directory, are rebuilt from the database once the application is
+ * ready, unless {@code crowdware.search.lucene.reindexOnStartup} is false.
+ */
+@Service
+@ConditionalOnProperty(prefix = "crowdware.search", name = "backend", havingValue = "lucene")
+public class LuceneSearchBackend implements SearchBackend, ApplicationListener<ApplicationReadyEvent> {
+
+    private final Logger log = LoggerFactory.getLogger(LuceneSearchBackend.class);
+
+    private final Map<Class<?>, LuceneIndex> indices = new HashMap<>();
+
+    @Inject
+    private EntityMapper entityMapper;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
+
+    @Inject
+    private Environment env;
+
+    @PostConstruct
+    public void init() throws IOException {
+        CrowdwareProperties.Search.Lucene properties = crowdwareProperties.getSearch().getLucene();
+        File directory = getDirectory(properties);
+        for (SearchEntityType entityType : SearchEntityType.values()) {
+            Class<?> entityClass = entityType.getEntityClass();
+            indices.put(entityClass, new LuceneIndex(new File(directory, getIndexName(entityClass)), properties.getRamBufferSizeMb()));
+        }
+        log.info("Opened the Lucene search indices in {}", directory);
+    }
+
+    /**
+     * Rebuild the indices which were created empty, in the background.
+     * <p>
+     * The reindexer is looked up here rather than injected, as it depends on this backend.
+     */
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (!crowdwareProperties.getSearch().getLucene().isReindexOnStartup()) {
+            return;
+        }
+        List<SearchEntityType> created = new ArrayList<>();
+        for (SearchEntityType entityType : SearchEntityType.values()) {
+            if (getIndex(entityType.getEntityClass()).isCreated()) {
+                created.add(entityType);
+            }
+        }
+        if (!created.isEmpty()) {
+            log.info("Rebuilding the new Lucene search indices of {}", created);
+            event.getApplicationContext().getBean(SearchReindexer.class).start(created);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        indices.forEach((entityClass, index) -> {
+            try {
+                index.close();
+            } catch (IOException e) {
+                log.warn("Could not close the Lucene index of {}: {}", entityClass.getSimpleName(), e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Make the documents written since the previous refresh visible to searches.
+     * <p>
+     * This is scheduled to run every {@code crowdware.search.lucene.refreshInterval} milliseconds.
+     */
+    @Scheduled(fixedDelayString = "${crowdware.search.lucene.refreshInterval:1000}")
+    public void refresh() {
+        indices.forEach((entityClass, index) -> {
+            try {
+                index.refresh();
+            } catch (IOException e) {
+                log.warn("Could not refresh the Lucene index of {}: {}", entityClass.getSimpleName(), e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public <T> Map<Long, String> index(Class<T> entityClass, Map<Long, T> entities) {
+        Map<Long, String> errors = new HashMap<>();
+        try {
+            getIndex(entityClass).update(toSources(entities));
+        } catch (IOException | UncheckedIOException e) {
+            entities.keySet().forEach(id -> errors.put(id, String.valueOf(e.getMessage())));
+        }
+        return errors;
+    }
+
+    @Override
+    public Map<Long, String> delete(Class<?> entityClass, Collection<Long> ids) {
+        Map<Long, String> errors = new HashMap<>();
+        try {
+            getIndex(entityClass).delete(ids);
+        } catch (IOException e) {
+            ids.forEach(id -> errors.put(id, String.valueOf(e.getMessage())));
+        }
+        return errors;
+    }
+
+    @Override
+    public <T> Page<T> search(Class<T> entityClass, String query, Pageable pageable) {
+        LuceneIndex.Hits hits = search(entityClass, query, pageable.getOffset(), pageable.getPageSize(), getSort(pageable));
+        return new PageImpl<>(toEntities(hits, entityClass), pageable, hits.getTotal());
+    }
+
+    @Override
+    public <T> List<T> searchAfter(Class<T> entityClass, String query, Long afterId, int size) {
+        try {
+            return toEntities(getIndex(entityClass).searchAfter(query, afterId, size), entityClass);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void refresh(Class<?> entityClass) {
+        try {
+            getIndex(entityClass).refresh();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public IndexBuilder rebuild(Class<?> entityClass) {
+        LuceneIndex.Builder builder;
+        try {
+            builder = getIndex(entityClass).rebuild();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new IndexBuilder() {
+
+            @Override
+            public String getName() {
+                return getIndexName(entityClass) + "_" + builder.getName();
+            }
+
+            @Override
+            public void add(Map<Long, ?> entities) {
+                try {
+                    builder.add(toSources(entities));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public void remove(Collection<Long> ids) {
+                try {
+                    builder.remove(ids);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public void publish() {
+                try {
+                    builder.publish();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public void discard() {
+                builder.discard();
+            }
+        };
+    }
+
+    private LuceneIndex.Hits search(Class<?> entityClass, String query, int offset, int size, Sort sort) {
+        try {
+            return getIndex(entityClass).search(query, offset, size, sort);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the order by id if the page is sorted by id, else null for the most relevant first
+     */
+    private static Sort getSort(Pageable pageable) {
+        if (pageable.getSort() == null) {
+            return null;
+        }
+        org.springframework.data.domain.Sort.Order order = pageable.getSort().getOrderFor("id");
+        return order != null ? LuceneIndex.byId(!order.isAscending()) : null;
+    }
+
+    private LuceneIndex getIndex(Class<?> entityClass) {
+        LuceneIndex index = indices.get(entityClass);
+        if (index == null) {
+            throw new IllegalArgumentException(entityClass.getSimpleName() + " is not indexed");
+        }
+        return index;
+    }
+
+    private Map<Long, String> toSources(Map<Long, ?> entities) {
+        Map<Long, String> sources = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<Long, ?> entity : entities.entrySet()) {
+                sources.put(entity.getKey(), entityMapper.mapToString(entity.getValue()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sources;
+    }
+
+    private <T> List<T> toEntities(LuceneIndex.Hits hits, Class<T> entityClass) {
+        List<T> entities = new ArrayList<>(hits.getSources().size());
+        try {
+            for (String source : hits.getSources()) {
+                entities.add(entityMapper.mapToObject(source, entityClass));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return entities;
+    }
+
+    private static String getIndexName(Class<?> entityClass) {
+        return entityClass.getAnnotation(Document.class).indexName();
+    }
+
+    private File getDirectory(CrowdwareProperties.Search.Lucene properties) throws IOException {
+        if (env.acceptsProfiles(Constants.SPRING_PROFILE_PRODUCTION)
+            && (properties.getDirectory() == null || !Paths.get(properties.getDirectory()).isAbsolute())) {
+            log.error("The Lucene search indices need an absolute crowdware.search.lucene.directory in production, got '{}'", properties.getDirectory());
+            throw new ApplicationContextException("The Lucene search directory is not configured correctly");
+        }
+        if (properties.getDirectory() == null || properties.getDirectory().isEmpty()) {
+            File directory = Files.createTempDirectory("crowdware-search").toFile();
+            log.warn("No crowdware.search.lucene.directory is configured, the search indices are kept in the temporary directory {}", directory);
+            return directory;
+        }
+        return new File(properties.getDirectory());
+    }
+}
@@ -0,0 +1,148 @@
+package org.crowdware.service.search;
+
+import org.crowdware.domain.enumeration.SearchEntityType;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The progress of a rebuild of the search indices, see {@link SearchReindexer}.
+ */
+public class ReindexStatus {
+
+    private final List<SearchEntityType> entityTypes;
+
+    private final ZonedDateTime startTime = ZonedDateTime.now();
+
+    private final AtomicLong documents = new AtomicLong();
+
+    private final Map<String, String> indices = new LinkedHashMap<>();
+
+    private volatile long totalDocuments;
+
+    private volatile SearchEntityType currentEntityType;
+
+    private volatile ZonedDateTime endTime;
+
+    private volatile String error;
+
+    ReindexStatus(List<SearchEntityType> entityTypes) {
+        this.entityTypes = new ArrayList<>(entityTypes);
+    }
+
+    public List<SearchEntityType> getEntityTypes() {
+        return entityTypes;
+    }
+
+    public ZonedDateTime getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return the end of the rebuild, or null while it is running
+     */
+    public ZonedDateTime getEndTime() {
+        return endTime;
+    }
+
+    public boolean isRunning() {
+        return endTime == null;
+    }
+
+    /**
+     * @return the entity type being copied, or null once the rebuild is over
+     */
+    public SearchEntityType getCurrentEntityType() {
+        return currentEntityType;
+    }
+
+    /**
+     * @return the number of rows of all the entity types, counted when the rebuild starts
+     */
+    public long getTotalDocuments() {
+        return totalDocuments;
+    }
+
+    /**
+     * @return the number of documents copied so far
+     */
+    public long getDocuments() {
+        return documents.get();
+    }
+
+    /**
+     * @return the documents copied per second since the start
+     */
+    public double getRate() {
+        long millis = Duration.between(startTime, endTime != null ? endTime : ZonedDateTime.now()).toMillis();
+        return millis > 0 ? documents.get() * 1000.0 / millis : 0;
+    }
+
+    /**
+     * @return the estimated number of seconds left at the current rate, or null if unknown
+     */
+    public Long getEtaInSeconds() {
+        if (!isRunning()) {
+            return 0L;
+        }
+        double rate = getRate();
+        if (rate <= 0) {
+            return null;
+        }
+        return (long) Math.ceil(Math.max(0, totalDocuments - documents.get()) / rate);
+    }
+
+    /**
+     * @return the new index of each rebuilt entity type, by the name of its {@code @Document} index
+     */
+    public synchronized Map<String, String> getIndices() {
+        return new LinkedHashMap<>(indices);
+    }
+
+    /**
+     * @return the error which stopped the rebuild, if any
+     */
+    public String getError() {
+        return error;
+    }
+
+    void setTotalDocuments(long totalDocuments) {
+        this.totalDocuments = totalDocuments;
+    }
+
+    void setCurrentEntityType(SearchEntityType currentEntityType) {
+        this.currentEntityType = currentEntityType;
+    }
+
+    void addDocuments(long count) {
+        documents.addAndGet(count);
+    }
+
+    synchronized void addIndex(String name, String index) {
+        indices.put(name, index);
+    }
+
+    void finish(String error) {
+        this.error = error;
+        this.currentEntityType = null;
+        this.endTime = ZonedDateTime.now();
+    }
+
+    @Override
+    public String toString() {
+        return "ReindexStatus{" +
+            "entityTypes=" + entityTypes +
+            ", startTime=" + startTime +
+            ", endTime=" + endTime +
+            ", documents=" + documents +
+            ", totalDocuments=" + totalDocuments +
+            ", indices=" + getIndices() +
+            ", error='" + error + "'" +
+            '}';
+    }
+}
@@ -0,0 +1,39 @@
+package org.crowdware.service.search;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Copies a range of ids of an entity type to a new index, splitting the range in halves until a task has at most
+ * {@code rangeSize} ids, so the ranges are read and indexed in parallel by a {@link java.util.concurrent.ForkJoinPool}.
+ */
+class ReindexTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final SearchReindexer.Copy copy;
+
+    private final long from;
+
+    private final long to;
+
+    /**
+     * @param copy the copy of the entity type
+     * @param from the first id, inclusive
+     * @param to the last id, exclusive
+     */
+    ReindexTask(SearchReindexer.Copy copy, long from, long to) {
+        this.copy = copy;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= copy.getRangeSize()) {
+            copy.copyRange(from, to);
+            return;
+        }
+        long middle = from + (to - from) / 2;
+        invokeAll(new ReindexTask(copy, from, middle), new ReindexTask(copy, middle, to));
+    }
+}
@@ -0,0 +1,118 @@
+package org.crowdware.service.search;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The engine holding the search indices of the entities, selected with {@code crowdware.search.backend}: a remote
+ * Elasticsearch cluster, see {@link ElasticsearchSearchBackend}, or an embedded Lucene index, see
+ * {@link LuceneSearchBackend}.
+ * <p>
+ * Documents are only written by the {@link SearchIndexer} and the {@link SearchReindexer}. Queries use the Lucene
+ * query syntax, on all the fields of the documents by default.
+ */
+public interface SearchBackend {
+
+    /**
+     * Index or re-index entities.
+     *
+     * @param entityClass the indexed entity class
+     * @param entities the entities, by id
+     * @return the error message of each entity which could not be indexed, by id
+     */
+    <T> Map<Long, String> index(Class<T> entityClass, Map<Long, T> entities);
+
+    /**
+     * Delete the documents of entities, if they exist.
+     *
+     * @param entityClass the indexed entity class
+     * @param ids the ids of the entities
+     * @return the error message of each document which could not be deleted, by id
+     */
+    Map<Long, String> delete(Class<?> entityClass, Collection<Long> ids);
+
+    /**
+     * Get a page of the entities matching a query.
+     *
+     * @param entityClass the indexed entity class
+     * @param query the query
+     * @param pageable the pagination information
+     * @return the page of entities, most relevant first unless sorted by id
+     */
+    <T> Page<T> search(Class<T> entityClass, String query, Pageable pageable);
+
+    /**
+     * Get the entities matching a query which come after an id, in the order of their ids, like the search_after of
+     * later Elasticsearch versions. Unlike {@link #search(Class, String, Pageable)}, the cost does not grow with the
+     * number of entities before the slice.
+     *
+     * @param entityClass the indexed entity class
+     * @param query the query
+     * @param afterId the id the slice starts after, or null to start from the first entity
+     * @param size the maximum number of entities
+     * @return the entities, by ascending id
+     */
+    <T> List<T> searchAfter(Class<T> entityClass, String query, Long afterId, int size);
+
+    /**
+     * Make the documents written so far visible to searches, without waiting for the next periodic refresh. Searches
+     * see the writes within about a second anyway, this is for callers which read their own writes, like tests.
+     *
+     * @param entityClass the indexed entity class
+     */
+    void refresh(Class<?> entityClass);
+
+    /**
+     * Start a new index for an entity class, filled by the caller while the current one is still searched.
+     * <p>
+     * Until the new index is published or discarded, the documents written through {@link #index(Class, Map)} and
+     * {@link #delete(Class, Collection)} are written to both, and those documents are not overwritten by
+     * {@link IndexBuilder#add(Map)}.
+     *
+     * @param entityClass the indexed entity class
+     * @return the builder of the new index
+     */
+    IndexBuilder rebuild(Class<?> entityClass);
+
+    /**
+     * A new index being filled, see {@link SearchBackend#rebuild(Class)}. It is thread-safe.
+     */
+    interface IndexBuilder {
+
+        /**
+         * @return the name of the new index
+         */
+        String getName();
+
+        /**
+         * Add entities read from the database, unless a newer state of them has been written since the rebuild
+         * started.
+         *
+         * @param entities the entities, by id
+         */
+        void add(Map<Long, ?> entities);
+
+        /**
+         * Remove entities which were added but have been deleted from the database since they were read, if they
+         * exist. The documents deleted through {@link SearchBackend#delete(Class, Collection)} after this call are
+         * deleted from the new index anyway.
+         *
+         * @param ids the ids of the entities
+         */
+        void remove(Collection<Long> ids);
+
+        /**
+         * Replace the current index by the new one.
+         */
+        void publish();
+
+        /**
+         * Drop the new index, leaving the current one in place.
+         */
+        void discard();
+    }
+}
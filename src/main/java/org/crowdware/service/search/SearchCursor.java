@@ -0,0 +1,65 @@
+package org.crowdware.service.search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * The position of a cursor in the results of a search: the id of the last entity returned, as the results of a
+ * cursor are sorted by id, see {@link SearchBackend#searchAfter(Class, String, Long, int)}.
+ * <p>
+ * Clients only see the opaque, URL-safe form of {@link #toString()}, so the position can change without breaking
+ * them.
+ */
+public final class SearchCursor {
+
+    private static final String PREFIX = "after:";
+
+    private static final SearchCursor START = new SearchCursor(null);
+
+    private final Long afterId;
+
+    private SearchCursor(Long afterId) {
+        this.afterId = afterId;
+    }
+
+    /**
+     * @param afterId the id of the last entity returned
+     * @return the cursor of the entities after it
+     */
+    public static SearchCursor after(long afterId) {
+        return new SearchCursor(afterId);
+    }
+
+    /**
+     * Read a cursor sent by a client.
+     *
+     * @param value the opaque form of the cursor, or null or empty to start from the first entity
+     * @return the cursor
+     * @throws IllegalArgumentException if the value is not a cursor
+     */
+    public static SearchCursor parse(String value) {
+        if (value == null || value.isEmpty()) {
+            return START;
+        }
+        String decoded = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+        if (!decoded.startsWith(PREFIX)) {
+            throw new IllegalArgumentException("Invalid search cursor " + value);
+        }
+        return new SearchCursor(Long.valueOf(decoded.substring(PREFIX.length())));
+    }
+
+    /**
+     * @return the id the results start after, or null to start from the first entity
+     */
+    public Long getAfterId() {
+        return afterId;
+    }
+
+    @Override
+    public String toString() {
+        if (afterId == null) {
+            return "";
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((PREFIX + afterId).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,302 @@
+package org.crowdware.service.search;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.crowdware.config.CrowdwareProperties;
+import org.crowdware.domain.App;
+import org.crowdware.domain.ClusterLock;
+import org.crowdware.domain.CrowdApp;
+import org.crowdware.domain.Job;
+import org.crowdware.domain.JobAttribute;
+import org.crowdware.domain.Payment;
+import org.crowdware.domain.SearchOutboxEvent;
+import org.crowdware.domain.Task;
+import org.crowdware.domain.User;
+import org.crowdware.domain.enumeration.SearchEntityType;
+import org.crowdware.repository.AppRepository;
+import org.crowdware.repository.ClusterLockRepository;
+import org.crowdware.repository.CrowdAppRepository;
+import org.crowdware.repository.JobAttributeRepository;
+import org.crowdware.repository.JobRepository;
+import org.crowdware.repository.PaymentRepository;
+import org.crowdware.repository.SearchOutboxEventRepository;
+import org.crowdware.repository.TaskRepository;
+import org.crowdware.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Indexes the events of the search outbox in the {@link SearchBackend}, see {@link SearchOutboxService}.
+ * <p>
+ * A batch is read in the order of the events, and its events are grouped by entity: each entity is indexed once,
+ * from its state in the database at that time, or deleted from the index if it no longer exists. As the document is
+ * never built from the event itself, an older write cannot overwrite a newer one, whatever the order in which the
+ * events of an entity are indexed or retried. The entities of a type are written with a single bulk write.
+ * <p>
+ * The events of the entities which could not be indexed are retried after {@code crowdware.search.retryDelay}
+ * milliseconds, doubled at each attempt, and are kept in the outbox as dead letters after
+ * {@code crowdware.search.maxAttempts} attempts. The delay between the write of an entity and its indexing is
+ * recorded by the {@code lag} histogram.
+ * <p>
+ * Several nodes drain the outbox at the same time: each batch first claims its events in a short transaction,
+ * leasing them for {@code crowdware.search.leaseDuration} milliseconds, and only indexes the events it claimed. The
+ * events of a node which dies are claimed again by any node once their lease expires. Claims are made per entity,
+ * one node at a time under the {@link ClusterLock#SEARCH_OUTBOX} lock: a batch takes all the due events of its
+ * entities, and skips the entities with events leased to a batch which may still be indexing them, so that an older
+ * state of an entity never overwrites a newer one in the index.
+ */
+@Service
+public class SearchIndexer {
+
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    private final Logger log = LoggerFactory.getLogger(SearchIndexer.class);
+
+    private final Map<SearchEntityType, Indexed<?>> indexed = new EnumMap<>(SearchEntityType.class);
+
+    @Inject
+    private SearchOutboxEventRepository searchOutboxEventRepository;
+
+    @Inject
+    private ClusterLockRepository clusterLockRepository;
+
+    @Inject
+    private AppRepository appRepository;
+
+    @Inject
+    private CrowdAppRepository crowdAppRepository;
+
+    @Inject
+    private JobRepository jobRepository;
+
+    @Inject
+    private JobAttributeRepository jobAttributeRepository;
+
+    @Inject
+    private PaymentRepository paymentRepository;
+
+    @Inject
+    private TaskRepository taskRepository;
+
+    @Inject
+    private UserRepository userRepository;
+
+    @Inject
+    private SearchBackend searchBackend;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    @Inject
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    private Meter indexedDocuments;
+
+    private Meter deletedDocuments;
+
+    private Meter failures;
+
+    private Meter deadLetters;
+
+    private Timer bulks;
+
+    private Histogram lag;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        indexed.put(SearchEntityType.APP, new Indexed<>(App.class, appRepository, App::getId));
+        indexed.put(SearchEntityType.CROWD_APP, new Indexed<>(CrowdApp.class, crowdAppRepository, CrowdApp::getId));
+        indexed.put(SearchEntityType.JOB, new Indexed<>(Job.class, jobRepository, Job::getId));
+        indexed.put(SearchEntityType.JOB_ATTRIBUTE, new Indexed<>(JobAttribute.class, jobAttributeRepository, JobAttribute::getId));
+        indexed.put(SearchEntityType.PAYMENT, new Indexed<>(Payment.class, paymentRepository, Payment::getId));
+        indexed.put(SearchEntityType.TASK, new Indexed<>(Task.class, taskRepository, Task::getId));
+        indexed.put(SearchEntityType.USER, new Indexed<>(User.class, userRepository, User::getId));
+
+        indexedDocuments = metricRegistry.meter(MetricRegistry.name(SearchIndexer.class, "indexed"));
+        deletedDocuments = metricRegistry.meter(MetricRegistry.name(SearchIndexer.class, "deleted"));
+        failures = metricRegistry.meter(MetricRegistry.name(SearchIndexer.class, "failures"));
+        deadLetters = metricRegistry.meter(MetricRegistry.name(SearchIndexer.class, "dead-letters"));
+        bulks = metricRegistry.timer(MetricRegistry.name(SearchIndexer.class, "bulks"));
+        lag = metricRegistry.histogram(MetricRegistry.name(SearchIndexer.class, "lag"));
+    }
+
+    /**
+     * Claim the next due events of the outbox, index their entities, and delete the events of the indexed ones.
+     * <p>
+     * The claim is committed before the indexing, unless a transaction is already active: events written in the
+     * current transaction are then included, so tests can index their writes before they roll back.
+     *
+     * @return the number of events claimed, at most {@code crowdware.search.batchSize}
+     */
+    public int indexBatch() {
+        CrowdwareProperties.Search properties = crowdwareProperties.getSearch();
+        ZonedDateTime now = ZonedDateTime.now();
+        List<SearchOutboxEvent> events = transactionTemplate.execute(status -> claim(properties, now));
+        if (events.isEmpty()) {
+            return 0;
+        }
+        transactionTemplate.execute(status -> {
+            index(events, now, properties);
+            return null;
+        });
+        return events.size();
+    }
+
+    private List<SearchOutboxEvent> claim(CrowdwareProperties.Search properties, ZonedDateTime now) {
+        List<SearchOutboxEvent> due = searchOutboxEventRepository.findDue(properties.getMaxAttempts(), now,
+            new PageRequest(0, properties.getBatchSize()));
+        if (due.isEmpty()) {
+            return new ArrayList<>();
+        }
+        clusterLockRepository.findOneForUpdate(ClusterLock.SEARCH_OUTBOX);
+        Map<SearchEntityType, Set<Long>> entityIds = new EnumMap<>(SearchEntityType.class);
+        for (SearchOutboxEvent event : due) {
+            entityIds.computeIfAbsent(event.getEntityType(), type -> new LinkedHashSet<>()).add(event.getEntityId());
+        }
+        String claimId = UUID.randomUUID().toString();
+        ZonedDateTime leaseEnd = now.plus(Duration.ofMillis(properties.getLeaseDuration()));
+        int claimed = 0;
+        int skipped = 0;
+        for (Map.Entry<SearchEntityType, Set<Long>> entry : entityIds.entrySet()) {
+            Set<Long> ids = entry.getValue();
+            List<Long> leased = searchOutboxEventRepository.findLeasedEntityIds(entry.getKey(), ids, now);
+            ids.removeAll(leased);
+            skipped += leased.size();
+            if (!ids.isEmpty()) {
+                claimed += searchOutboxEventRepository.claim(entry.getKey(), ids, claimId, now, leaseEnd, properties.getMaxAttempts());
+            }
+        }
+        if (skipped > 0) {
+            log.debug("{} entities of the due search outbox events are being indexed by another batch", skipped);
+        }
+        return claimed > 0 ? searchOutboxEventRepository.findAllByClaimId(claimId) : new ArrayList<>();
+    }
+
+    private void index(List<SearchOutboxEvent> events, ZonedDateTime now, CrowdwareProperties.Search properties) {
+        Map<SearchEntityType, Map<Long, List<SearchOutboxEvent>>> eventsByEntity = new EnumMap<>(SearchEntityType.class);
+        for (SearchOutboxEvent event : events) {
+            eventsByEntity.computeIfAbsent(event.getEntityType(), type -> new LinkedHashMap<>())
+                .computeIfAbsent(event.getEntityId(), id -> new ArrayList<>())
+                .add(event);
+        }
+        List<SearchOutboxEvent> done = new ArrayList<>(events.size());
+        List<SearchOutboxEvent> failed = new ArrayList<>();
+        eventsByEntity.forEach((type, eventsById) -> {
+            Map<Long, String> errors = index(indexed.get(type), eventsById.keySet());
+            eventsById.forEach((id, entityEvents) -> {
+                String error = errors.get(id);
+                if (error == null) {
+                    done.addAll(entityEvents);
+                } else {
+                    entityEvents.forEach(event -> retry(event, error, now, properties));
+                    failed.addAll(entityEvents);
+                }
+            });
+        });
+        searchOutboxEventRepository.deleteInBatch(done);
+        // the events were claimed in another transaction, their retry must be written back
+        searchOutboxEventRepository.save(failed);
+        for (SearchOutboxEvent event : done) {
+            lag.update(Duration.between(event.getCreatedDate(), now).toMillis());
+        }
+        log.debug("Indexed {} search outbox events, {} failed", done.size(), failed.size());
+    }
+
+    /**
+     * Index the entities which exist, and delete the documents of the others.
+     *
+     * @return the error message of each entity which could not be indexed, by id
+     */
+    private <T> Map<Long, String> index(Indexed<T> entities, Set<Long> ids) {
+        Map<Long, String> errors = new HashMap<>();
+        Timer.Context context = bulks.time();
+        try {
+            Map<Long, T> found = new LinkedHashMap<>();
+            for (T entity : entities.repository.findAll(ids)) {
+                found.put(entities.id.apply(entity), entity);
+            }
+            Set<Long> missing = new LinkedHashSet<>(ids);
+            missing.removeAll(found.keySet());
+            if (!found.isEmpty()) {
+                Map<Long, String> indexErrors = searchBackend.index(entities.type, found);
+                errors.putAll(indexErrors);
+                indexedDocuments.mark(found.size() - indexErrors.size());
+            }
+            if (!missing.isEmpty()) {
+                Map<Long, String> deleteErrors = searchBackend.delete(entities.type, missing);
+                errors.putAll(deleteErrors);
+                deletedDocuments.mark(missing.size() - deleteErrors.size());
+            }
+        } catch (RuntimeException e) {
+            ids.forEach(id -> errors.putIfAbsent(id, String.valueOf(e.getMessage())));
+        } finally {
+            context.stop();
+        }
+        if (!errors.isEmpty()) {
+            failures.mark(errors.size());
+            log.warn("Could not index {} of {} {} documents: {}", errors.size(), ids.size(),
+                entities.type.getSimpleName(), errors.values().iterator().next());
+        }
+        return errors;
+    }
+
+    private void retry(SearchOutboxEvent event, String error, ZonedDateTime now, CrowdwareProperties.Search properties) {
+        int attempts = event.getAttempts() + 1;
+        long delay = Math.min(properties.getMaxRetryDelay(), properties.getRetryDelay() << Math.min(attempts - 1, 30));
+        event.setAttempts(attempts);
+        event.setNextAttempt(now.plus(Duration.ofMillis(delay)));
+        // the entity is no longer being indexed, its later events must not wait for this retry
+        event.setClaimId(null);
+        event.setLastError(error != null && error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+        if (attempts >= properties.getMaxAttempts()) {
+            deadLetters.mark();
+            log.error("Giving up indexing {} {} after {} attempts: {}", event.getEntityType(), event.getEntityId(), attempts, error);
+        }
+    }
+
+    /**
+     * How to load the entities of a type.
+     */
+    private static final class Indexed<T> {
+
+        private final Class<T> type;
+
+        private final JpaRepository<T, Long> repository;
+
+        private final Function<T, Long> id;
+
+        private Indexed(Class<T> type, JpaRepository<T, Long> repository, Function<T, Long> id) {
+            this.type = type;
+            this.repository = repository;
+            this.id = id;
+        }
+    }
+}
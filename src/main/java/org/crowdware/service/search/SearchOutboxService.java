@@ -0,0 +1,104 @@
+package org.crowdware.service.search;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.crowdware.config.CrowdwareProperties;
+import org.crowdware.domain.SearchOutboxEvent;
+import org.crowdware.domain.enumeration.SearchEntityType;
+import org.crowdware.repository.SearchOutboxEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The outbox of the search indexing.
+ * <p>
+ * Write paths do not call the {@link SearchBackend}: they {@link #enqueue(SearchEntityType, Collection)} the ids of the entities
+ * they wrote, which inserts rows in the search_outbox_event table in their own transaction, so the outbox holds
+ * exactly the committed writes and their latency does not depend on the search backend. The outbox is drained every
+ * {@code crowdware.search.pollInterval} milliseconds by the {@link SearchIndexer} of each node, one batch after the
+ * other, each node indexing the events it claimed.
+ */
+@Service
+public class SearchOutboxService {
+
+    private final Logger log = LoggerFactory.getLogger(SearchOutboxService.class);
+
+    private volatile long pending;
+
+    @Inject
+    private SearchOutboxEventRepository searchOutboxEventRepository;
+
+    @Inject
+    private SearchIndexer searchIndexer;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    @PostConstruct
+    public void init() {
+        metricRegistry.register(MetricRegistry.name(SearchOutboxService.class, "pending"), (Gauge<Long>) () -> pending);
+    }
+
+    /**
+     * Queue an entity for indexing, in the current transaction.
+     *
+     * @param type the type of the entity
+     * @param id the id of the entity, created, updated or deleted
+     */
+    @Transactional
+    public void enqueue(SearchEntityType type, Long id) {
+        enqueue(type, Collections.singletonList(id));
+    }
+
+    /**
+     * Queue entities for indexing, in the current transaction.
+     *
+     * @param type the type of the entities
+     * @param ids the ids of the entities, created, updated or deleted
+     */
+    @Transactional
+    public void enqueue(SearchEntityType type, Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        ZonedDateTime now = ZonedDateTime.now();
+        List<SearchOutboxEvent> events = new LinkedHashSet<>(ids).stream()
+            .map(id -> new SearchOutboxEvent(type, id, now))
+            .collect(Collectors.toList());
+        searchOutboxEventRepository.save(events);
+    }
+
+    /**
+     * Index the due events of the outbox, until a batch comes back smaller than {@code crowdware.search.batchSize}.
+     * <p>
+     * This is scheduled to run every {@code crowdware.search.pollInterval} milliseconds.
+     */
+    @Scheduled(fixedDelayString = "${crowdware.search.pollInterval:500}")
+    public void indexPending() {
+        CrowdwareProperties.Search properties = crowdwareProperties.getSearch();
+        try {
+            int indexed;
+            do {
+                indexed = searchIndexer.indexBatch();
+            } while (indexed >= properties.getBatchSize());
+            pending = searchOutboxEventRepository.countPending(properties.getMaxAttempts());
+        } catch (RuntimeException e) {
+            log.warn("Could not drain the search outbox: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package org.crowdware.service.search;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.crowdware.config.CrowdwareProperties;
+import org.crowdware.domain.enumeration.SearchEntityType;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Rebuilds the search indices of the entities from the database.
+ * <p>
+ * A rebuild copies the table of an entity type into a new index of the {@link SearchBackend}, then replaces the
+ * current index by the new one, so searches never see a partial index. The ids of the table are split into ranges of
+ * {@code crowdware.search.reindex.rangeSize}, which are read with their own read-only persistence context and written
+ * in bulk requests of {@code crowdware.search.reindex.bulkSize} documents by the threads of a {@link ForkJoinPool}.
+ * <p>
+ * Writes are not stopped during a rebuild: the backend also writes the documents indexed by the {@link SearchIndexer}
+ * to the new index, and the copy never overwrites them, as they are newer. Each copied batch is checked again against
+ * the database once written, and the entities deleted meanwhile are removed from the new index; a delete committed
+ * after that check reaches the new index through the {@link SearchIndexer}.
+ * <p>
+ * Progress is published as the {@code documents} meter and the {@code progress} and {@code eta} gauges, and by
+ * {@link #getStatus()}.
+ */
+@Service
+public class SearchReindexer {
+
+    private final Logger log = LoggerFactory.getLogger(SearchReindexer.class);
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile ReindexStatus status;
+
+    @Inject
+    private EntityManagerFactory entityManagerFactory;
+
+    @Inject
+    private SearchBackend searchBackend;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    @Inject
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    private Meter documents;
+
+    @PostConstruct
+    public void init() {
+        documents = metricRegistry.meter(MetricRegistry.name(SearchReindexer.class, "documents"));
+        metricRegistry.register(MetricRegistry.name(SearchReindexer.class, "progress"), (Gauge<Double>) () -> {
+            ReindexStatus current = status;
+            if (current == null || current.getTotalDocuments() == 0) {
+                return current != null && !current.isRunning() ? 1.0 : 0.0;
+            }
+            return Math.min(1.0, (double) current.getDocuments() / current.getTotalDocuments());
+        });
+        metricRegistry.register(MetricRegistry.name(SearchReindexer.class, "eta"), (Gauge<Long>) () -> {
+            ReindexStatus current = status;
+            return current != null ? current.getEtaInSeconds() : null;
+        });
+    }
+
+    /**
+     * @return the status of the running or last rebuild, or null if there was none
+     */
+    public ReindexStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Start a rebuild of the indices of some entity types in the background.
+     *
+     * @param entityTypes the entity types to rebuild
+     * @return the status of the rebuild, or null if a rebuild is already running
+     */
+    public ReindexStatus start(List<SearchEntityType> entityTypes) {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+        ReindexStatus next = new ReindexStatus(entityTypes);
+        status = next;
+        try {
+            taskExecutor.execute(() -> run(next));
+        } catch (RuntimeException e) {
+            next.finish(e.getMessage());
+            running.set(false);
+            throw e;
+        }
+        return next;
+    }
+
+    /**
+     * Rebuild the indices of some entity types.
+     *
+     * @param entityTypes the entity types to rebuild
+     * @return the status of the finished rebuild, with its error if it failed
+     * @throws IllegalStateException if a rebuild is already running
+     */
+    public ReindexStatus reindex(List<SearchEntityType> entityTypes) {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A rebuild of the search indices is already running");
+        }
+        ReindexStatus next = new ReindexStatus(entityTypes);
+        status = next;
+        run(next);
+        return next;
+    }
+
+    private void run(ReindexStatus run) {
+        log.info("Rebuilding the search indices of {}", run.getEntityTypes());
+        CrowdwareProperties.Search.Reindex properties = crowdwareProperties.getSearch().getReindex();
+        int parallelism = properties.getParallelism() > 0 ? properties.getParallelism() : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            long total = 0;
+            for (SearchEntityType entityType : run.getEntityTypes()) {
+                total += count(entityType.getEntityClass());
+            }
+            run.setTotalDocuments(total);
+            for (SearchEntityType entityType : run.getEntityTypes()) {
+                run.setCurrentEntityType(entityType);
+                rebuild(entityType.getEntityClass(), pool, run);
+            }
+            run.finish(null);
+            log.info("Rebuilt the search indices: {}", run);
+        } catch (RuntimeException e) {
+            log.error("Could not rebuild the search indices of {}", run.getEntityTypes(), e);
+            run.finish(String.valueOf(e.getMessage()));
+        } finally {
+            pool.shutdown();
+            running.set(false);
+        }
+    }
+
+    private void rebuild(Class<?> entityClass, ForkJoinPool pool, ReindexStatus run) {
+        SearchBackend.IndexBuilder builder = searchBackend.rebuild(entityClass);
+        try {
+            long[] ids = findIdRange(entityClass);
+            if (ids != null) {
+                CrowdwareProperties.Search.Reindex properties = crowdwareProperties.getSearch().getReindex();
+                pool.invoke(new ReindexTask(new Copy(entityClass, builder, run, properties), ids[0], ids[1] + 1));
+            }
+            builder.publish();
+            run.addIndex(entityClass.getAnnotation(Document.class).indexName(), builder.getName());
+        } catch (RuntimeException e) {
+            builder.discard();
+            throw e;
+        }
+    }
+
+    private long count(Class<?> entityClass) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            return (Long) entityManager.createQuery("select count(entity) from " + entityClass.getSimpleName() + " entity")
+                .getSingleResult();
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * @return the lowest and the highest id of the entity class, or null if its table is empty
+     */
+    private long[] findIdRange(Class<?> entityClass) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            Object[] row = (Object[]) entityManager
+                .createQuery("select min(entity.id), max(entity.id) from " + entityClass.getSimpleName() + " entity")
+                .getSingleResult();
+            return row[0] != null ? new long[]{(Long) row[0], (Long) row[1]} : null;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * The copy of the table of an entity class to a new index, shared by the tasks of its ranges.
+     */
+    final class Copy {
+
+        private final Class<?> entityClass;
+
+        private final SearchBackend.IndexBuilder builder;
+
+        private final ReindexStatus run;
+
+        private final CrowdwareProperties.Search.Reindex properties;
+
+        private Copy(Class<?> entityClass, SearchBackend.IndexBuilder builder, ReindexStatus run,
+                     CrowdwareProperties.Search.Reindex properties) {
+            this.entityClass = entityClass;
+            this.builder = builder;
+            this.run = run;
+            this.properties = properties;
+        }
+
+        int getRangeSize() {
+            return properties.getRangeSize();
+        }
+
+        /**
+         * Copy the entities of a range of ids, in bulk requests.
+         *
+         * @param from the first id, inclusive
+         * @param to the last id, exclusive
+         */
+        void copyRange(long from, long to) {
+            EntityManager entityManager = entityManagerFactory.createEntityManager();
+            try {
+                Session session = entityManager.unwrap(Session.class);
+                session.setDefaultReadOnly(true);
+                session.setCacheMode(CacheMode.IGNORE);
+                List<?> entities = entityManager
+                    .createQuery("select entity from " + entityClass.getSimpleName() + " entity " +
+                        "where entity.id >= :from and entity.id < :to")
+                    .setParameter("from", from)
+                    .setParameter("to", to)
+                    .getResultList();
+                for (int start = 0; start < entities.size(); start += properties.getBulkSize()) {
+                    send(entities.subList(start, Math.min(entities.size(), start + properties.getBulkSize())));
+                }
+            } finally {
+                entityManager.close();
+            }
+        }
+
+        private void send(List<?> entities) {
+            Map<Long, Object> entitiesById = new LinkedHashMap<>();
+            for (Object entity : entities) {
+                entitiesById.put((Long) entityManagerFactory.getPersistenceUnitUtil().getIdentifier(entity), entity);
+            }
+            builder.add(entitiesById);
+            Set<Long> deleted = new HashSet<>(entitiesById.keySet());
+            deleted.removeAll(findExistingIds(entitiesById.keySet()));
+            if (!deleted.isEmpty()) {
+                builder.remove(deleted);
+            }
+            run.addDocuments(entitiesById.size());
+            documents.mark(entitiesById.size());
+        }
+
+        /**
+         * @return the ids which still exist in the database, read with a new persistence context
+         */
+        @SuppressWarnings("unchecked")
+        private List<Long> findExistingIds(Collection<Long> ids) {
+            EntityManager entityManager = entityManagerFactory.createEntityManager();
+            try {
+                return entityManager
+                    .createQuery("select entity.id from " + entityClass.getSimpleName() + " entity where entity.id in :ids")
+                    .setParameter("ids", ids)
+                    .getResultList();
+            } finally {
+                entityManager.close();
+            }
+        }
+    }
+}
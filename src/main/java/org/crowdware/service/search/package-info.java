@@ -0,0 +1,4 @@
+/**
+ * Search indexing of the entities, through a transactional outbox, in Elasticsearch or in embedded Lucene indices.
+ */
+package org.crowdware.service.search;
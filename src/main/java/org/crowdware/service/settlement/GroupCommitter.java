@@ -0,0 +1,172 @@
+package org.crowdware.service.settlement;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Coalesces items submitted by many threads into group commits.
+ * <p>
+ * Items wait in a bounded queue, drained by a single committer thread. A group starts with the first waiting item
+ * and is committed when it holds {@code maxBatchSize} items, or {@code maxDelay} milliseconds after it started,
+ * whichever comes first, so the cost of a commit is shared by every item of the group. Each submitter gets a future,
+ * completed with its own result once its group is committed. When the queue is full, submissions are rejected
+ * instead of blocking the caller.
+ * <p>
+ * If a group fails, its items are committed again one at a time, so that one bad item only fails itself. The commit
+ * must therefore be atomic: a failed commit leaves no side effect behind, and the side effects outside of its
+ * transaction are applied once it succeeded, and cannot fail it anymore.
+ *
+ * @param <T> the type of the items
+ * @param <R> the type of the results
+ */
+public class GroupCommitter<T, R> {
+
+    private static final long IDLE_POLL_MILLIS = 100L;
+
+    private final Logger log = LoggerFactory.getLogger(GroupCommitter.class);
+
+    private final BlockingQueue<Pending<T, R>> queue;
+
+    private final int maxBatchSize;
+
+    private final long maxDelayNanos;
+
+    private final Function<List<T>, List<R>> commit;
+
+    private final Thread thread;
+
+    private volatile boolean running;
+
+    /**
+     * Create a stopped committer.
+     *
+     * @param name the name of the committer thread
+     * @param capacity the maximum number of waiting items
+     * @param maxBatchSize the maximum number of items of a group
+     * @param maxDelay the maximum time a group waits for more items, in milliseconds
+     * @param commit the commit of a group, returning the result of each item in the order of the items
+     */
+    public GroupCommitter(String name, int capacity, int maxBatchSize, long maxDelay, Function<List<T>, List<R>> commit) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelay);
+        this.commit = commit;
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Commit the waiting items, then stop the committer thread. Later submissions are rejected.
+     *
+     * @throws InterruptedException if interrupted while waiting for the committer thread
+     */
+    public void stop() throws InterruptedException {
+        running = false;
+        thread.join();
+        List<Pending<T, R>> left = new ArrayList<>();
+        queue.drainTo(left);
+        left.forEach(pending -> pending.future.completeExceptionally(new RejectedExecutionException("The committer is stopped")));
+    }
+
+    /**
+     * Submit an item to the next group commit.
+     *
+     * @param item the item
+     * @return the future result of the item, failed with a {@link RejectedExecutionException} if the queue is full
+     */
+    public CompletableFuture<R> submit(T item) {
+        Pending<T, R> pending = new Pending<>(item);
+        if (!running || !queue.offer(pending)) {
+            pending.future.completeExceptionally(new RejectedExecutionException("The commit queue is full"));
+        } else if (!running && queue.remove(pending)) {
+            // stopped between the check and the offer, the committer may already be gone
+            pending.future.completeExceptionally(new RejectedExecutionException("The committer is stopped"));
+        }
+        return pending.future;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending<T, R> first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    commit(collect(first));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Group commit failed", e);
+            }
+        }
+    }
+
+    private List<Pending<T, R>> collect(Pending<T, R> first) throws InterruptedException {
+        List<Pending<T, R>> group = new ArrayList<>(maxBatchSize);
+        group.add(first);
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (group.size() < maxBatchSize) {
+            queue.drainTo(group, maxBatchSize - group.size());
+            long remaining = deadline - System.nanoTime();
+            if (group.size() >= maxBatchSize || remaining <= 0) {
+                break;
+            }
+            Pending<T, R> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            group.add(next);
+        }
+        return group;
+    }
+
+    private void commit(List<Pending<T, R>> group) {
+        List<T> items = new ArrayList<>(group.size());
+        group.forEach(pending -> items.add(pending.item));
+        try {
+            List<R> results = commit.apply(items);
+            for (int i = 0; i < group.size(); i++) {
+                group.get(i).future.complete(results.get(i));
+            }
+        } catch (RuntimeException e) {
+            if (group.size() == 1) {
+                group.get(0).future.completeExceptionally(e);
+                return;
+            }
+            log.warn("Group commit of {} items failed, committing them one at a time: {}", group.size(), e.getMessage());
+            for (Pending<T, R> pending : group) {
+                commit(Collections.singletonList(pending));
+            }
+        }
+    }
+
+    private static final class Pending<T, R> {
+
+        private final T item;
+
+        private final CompletableFuture<R> future = new CompletableFuture<>();
+
+        private Pending(T item) {
+            this.item = item;
+        }
+    }
+}
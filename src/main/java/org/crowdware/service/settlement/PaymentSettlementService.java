@@ -0,0 +1,156 @@
+package org.crowdware.service.settlement;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.crowdware.config.CrowdwareProperties;
+import org.crowdware.domain.Payment;
+import org.crowdware.service.PaymentService;
+import org.crowdware.service.idempotency.IdempotencyService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Settles new Payments through a {@link GroupCommitter}: concurrent payment intents are written together, in one
+ * transaction with batched inserts and one ledger append per group, instead of one transaction each. The size and
+ * the maximum delay of a group are configured with {@code crowdware.settlement}.
+ * <p>
+ * A group is one transaction of {@link PaymentService#saveAll(List)}, whose ledger append and leaderboard updates
+ * only run once it commits, so a failed group leaves nothing to undo before its payments are committed one at a time.
+ * The claims and the responses of the idempotent requests of the group are written in that same transaction, see
+ * {@link IdempotencyService}: a retried request which is already in the group fails it, and is answered once its
+ * first execution is committed alone.
+ */
+@Service
+public class PaymentSettlementService {
+
+    private final Logger log = LoggerFactory.getLogger(PaymentSettlementService.class);
+
+    private GroupCommitter<Settlement, Payment> committer;
+
+    private TransactionTemplate transactionTemplate;
+
+    @Inject
+    private PaymentService paymentService;
+
+    @Inject
+    private IdempotencyService idempotencyService;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
+
+    @Inject
+    private PlatformTransactionManager transactionManager;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private Timer commits;
+
+    private Histogram groupSizes;
+
+    private Meter rejections;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        commits = metricRegistry.timer(MetricRegistry.name(PaymentSettlementService.class, "commits"));
+        groupSizes = metricRegistry.histogram(MetricRegistry.name(PaymentSettlementService.class, "group-size"));
+        rejections = metricRegistry.meter(MetricRegistry.name(PaymentSettlementService.class, "rejections"));
+        CrowdwareProperties.Settlement settlement = crowdwareProperties.getSettlement();
+        committer = new GroupCommitter<>("crowdware-settlement", settlement.getQueueCapacity(),
+            settlement.getMaxBatchSize(), settlement.getMaxDelay(), this::commit);
+        metricRegistry.register(MetricRegistry.name(PaymentSettlementService.class, "queue-depth"),
+            (Gauge<Integer>) committer::getQueueDepth);
+        committer.start();
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        committer.stop();
+    }
+
+    /**
+     * Submit a new payment to the next group commit.
+     *
+     * @param payment the payment intent, without id
+     * @return the future persisted payment, failed with a
+     * {@link java.util.concurrent.RejectedExecutionException} if the pipeline is saturated
+     */
+    public CompletableFuture<Payment> submit(Payment payment) {
+        return submit(payment, null);
+    }
+
+    /**
+     * Submit a new payment to the next group commit, with the claim of its idempotent request.
+     *
+     * @param payment the payment intent, without id
+     * @param claim the claim of the request, or null if it has no Idempotency-Key
+     * @return the future persisted payment
+     * @see #submit(Payment)
+     */
+    public CompletableFuture<Payment> submit(Payment payment, IdempotencyService.Claim claim) {
+        log.debug("Request to settle Payment : {}", payment);
+        CompletableFuture<Payment> result = committer.submit(new Settlement(payment, claim));
+        if (result.isCompletedExceptionally()) {
+            rejections.mark();
+        }
+        return result;
+    }
+
+    private List<Payment> commit(List<Settlement> settlements) {
+        List<Payment> payments = new ArrayList<>(settlements.size());
+        // a failed group is retried item by item, drop the ids its rolled back transaction assigned
+        settlements.forEach(settlement -> {
+            settlement.payment.setId(null);
+            payments.add(settlement.payment);
+        });
+        groupSizes.update(payments.size());
+        Timer.Context context = commits.time();
+        try {
+            return transactionTemplate.execute(status -> {
+                settlements.stream()
+                    .filter(settlement -> settlement.claim != null)
+                    .forEach(settlement -> idempotencyService.claim(settlement.claim));
+                List<Payment> result = paymentService.saveAll(payments);
+                for (int i = 0; i < settlements.size(); i++) {
+                    IdempotencyService.Claim claim = settlements.get(i).claim;
+                    if (claim != null) {
+                        Payment payment = result.get(i);
+                        idempotencyService.complete(claim, HttpStatus.CREATED,
+                            URI.create("/api/payments/" + payment.getId()), payment);
+                    }
+                }
+                return result;
+            });
+        } finally {
+            context.stop();
+        }
+    }
+
+    private static final class Settlement {
+
+        private final Payment payment;
+
+        private final IdempotencyService.Claim claim;
+
+        private Settlement(Payment payment, IdempotencyService.Claim claim) {
+            this.payment = payment;
+            this.claim = claim;
+        }
+    }
+}
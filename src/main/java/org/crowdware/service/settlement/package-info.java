@@ -0,0 +1,4 @@
+/**
+ * Batched payment settlement with group commits.
+ */
+package org.crowdware.service.settlement;
@@ -0,0 +1,35 @@
+package org.crowdware.service.util;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Utility class for following the outcome of the current transaction.
+ */
+public final class TransactionUtil {
+
+    private TransactionUtil() {
+    }
+
+    /**
+     * Run an action once the current transaction commits, or right away if there is no transaction. The action is
+     * dropped if the transaction rolls back.
+     * <p>
+     * This is how the in-memory state derived from the database, like indices and queues, follows the writes: it
+     * must never see a write which is rolled back.
+     *
+     * @param action the action
+     */
+    public static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
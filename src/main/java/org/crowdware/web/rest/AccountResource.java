@@ -8,9 +8,11 @@ import org.crowdware.repository.PersistentTokenRepository;
 import org.crowdware.repository.UserRepository;
 import org.crowdware.security.SecurityUtils;
 import org.crowdware.service.MailService;
+import org.crowdware.service.PaymentTotalsService;
 import org.crowdware.service.UserService;
 import org.crowdware.web.rest.dto.KeyAndPasswordDTO;
 import org.crowdware.web.rest.dto.ManagedUserDTO;
+import org.crowdware.web.rest.dto.PaymentTotalDTO;
 import org.crowdware.web.rest.dto.UserDTO;
 import org.crowdware.web.rest.util.HeaderUtil;
 
@@ -51,6 +53,9 @@ public class AccountResource {
     @Inject
     private MailService mailService;
 
+    @Inject
+    private PaymentTotalsService paymentTotalsService;
+
     /**
      * POST  /register : register the user.
      *
@@ -195,6 +200,24 @@ public class AccountResource {
             .orElse(new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR));
     }
 
+    /**
+     * GET  /account/earnings : get the totals of the payments received by the current user.
+     *
+     * @return the ResponseEntity with status 200 (OK) and the totals in body,
+     *  or status 500 (Internal Server Error) if the current user couldn't be retrieved
+     */
+    @RequestMapping(value = "/account/earnings",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<PaymentTotalDTO> getEarnings() {
+        return userRepository.findOneByLogin(SecurityUtils.getCurrentUserLogin())
+            .map(user -> new ResponseEntity<>(
+                new PaymentTotalDTO(paymentTotalsService.getUserEarnings(user.getId())),
+                HttpStatus.OK))
+            .orElse(new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR));
+    }
+
     /**
      * DELETE  /account/sessions?series={series} : invalidate an existing session.
      *
@@ -3,12 +3,17 @@ package org.crowdware.web.rest;
 import com.codahale.metrics.annotation.Timed;
 import org.crowdware.domain.App;
 import org.crowdware.service.AppService;
+import org.crowdware.service.index.TaskIntervalIndex;
+import org.crowdware.service.search.CursorPage;
+import org.crowdware.service.search.SearchCursor;
+import org.crowdware.web.rest.dto.ConcurrencyPointDTO;
 import org.crowdware.web.rest.util.HeaderUtil;
 import org.crowdware.web.rest.util.PaginationUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -19,6 +24,10 @@ import javax.inject.Inject;
 import javax.validation.Valid;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -33,10 +42,17 @@ import static org.elasticsearch.index.query.QueryBuilders.*;
 @RequestMapping("/api")
 public class AppResource {
 
+    private static final int MAX_CONCURRENCY_POINTS = 10000;
+
+    private static final int DEFAULT_CONCURRENCY_POINTS = 100;
+
     private final Logger log = LoggerFactory.getLogger(AppResource.class);
         
     @Inject
     private AppService appService;
+
+    @Inject
+    private TaskIntervalIndex taskIntervalIndex;
     
     /**
      * POST  /apps : Create a new app.
@@ -123,6 +139,57 @@ public class AppResource {
             .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
 
+    /**
+     * GET  /apps/:id/concurrency?from=:from&amp;to=:to&amp;step=:step : get the peak number of tasks the "id" app
+     * runs concurrently, for each step of the [from, to) window.
+     *
+     * @param id the id of the app
+     * @param from the inclusive start of the window
+     * @param to the exclusive end of the window
+     * @param step the ISO-8601 duration of a step, by default the window is cut in 100 steps
+     * @return the ResponseEntity with status 200 (OK) and with body the peak concurrency of each step,
+     * or with status 400 (Bad Request) if the window or the step is invalid,
+     * or with status 404 (Not Found) if the app does not exist
+     */
+    @RequestMapping(value = "/apps/{id}/concurrency",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<List<ConcurrencyPointDTO>> getAppConcurrency(@PathVariable Long id,
+                                                                       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime from,
+                                                                       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime to,
+                                                                       @RequestParam(required = false) String step) {
+        log.debug("REST request to get the concurrency of App {} over [{}, {}) by {}", id, from, to, step);
+        if (!to.isAfter(from)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("app", "invalidwindow", "The window must end after it starts")).body(null);
+        }
+        Duration window = Duration.between(from, to);
+        Duration stepDuration;
+        try {
+            stepDuration = step != null ? Duration.parse(step) : window.dividedBy(DEFAULT_CONCURRENCY_POINTS);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("app", "invalidstep", "The step must be an ISO-8601 duration")).body(null);
+        }
+        if (stepDuration.toMillis() < 1) {
+            if (step != null) {
+                return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("app", "invalidstep", "The step must be at least one millisecond")).body(null);
+            }
+            stepDuration = Duration.ofMillis(1);
+        }
+        if (window.toMillis() / stepDuration.toMillis() >= MAX_CONCURRENCY_POINTS) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("app", "toomanypoints", "The step is too small for the window")).body(null);
+        }
+        if (appService.findOne(id) == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        long[] peaks = taskIntervalIndex.findPeakConcurrency(id, from, to, stepDuration);
+        List<ConcurrencyPointDTO> points = new ArrayList<>(peaks.length);
+        for (int i = 0; i < peaks.length; i++) {
+            points.add(new ConcurrencyPointDTO(from.plus(stepDuration.multipliedBy(i)), peaks[i]));
+        }
+        return new ResponseEntity<>(points, HttpStatus.OK);
+    }
+
     /**
      * DELETE  /apps/:id : delete the "id" app.
      *
@@ -142,16 +209,39 @@ public class AppResource {
     /**
      * SEARCH  /_search/apps?query=:query : search for the app corresponding
      * to the query.
+     * <p>
+     * With a cursor, the results are read in slices of the page size by ascending id instead of pages, so deep results
+     * cost the same as the first ones: the next slice is at the Link of the response, or at the same query with the
+     * cursor of the X-Next-Cursor header. The first slice is at the empty cursor.
      *
      * @param query the query of the app search
-     * @return the result of the search
+     * @param cursor the cursor of the slice, or absent to read pages
+     * @param pageable the pagination information
+     * @return the ResponseEntity with status 200 (OK) and the apps in body,
+     * or with status 400 (Bad Request) if the cursor is not valid
+     * @throws URISyntaxException if there is an error to generate the pagination HTTP headers
      */
     @RequestMapping(value = "/_search/apps",
         method = RequestMethod.GET,
         produces = MediaType.APPLICATION_JSON_VALUE)
     @Timed
-    public ResponseEntity<List<App>> searchApps(@RequestParam String query, Pageable pageable)
+    public ResponseEntity<List<App>> searchApps(@RequestParam String query,
+                                                @RequestParam(required = false) String cursor, Pageable pageable)
         throws URISyntaxException {
+        if (cursor != null) {
+            log.debug("REST request to search for a slice of Apps for query {}", query);
+            SearchCursor searchCursor;
+            try {
+                searchCursor = SearchCursor.parse(cursor);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest()
+                    .headers(HeaderUtil.createFailureAlert("app", "invalidcursor", "The search cursor is not valid"))
+                    .body(null);
+            }
+            CursorPage<App> slice = appService.search(query, searchCursor, pageable.getPageSize());
+            HttpHeaders headers = PaginationUtil.generateCursorPaginationHttpHeaders(query, slice, "/api/_search/apps");
+            return new ResponseEntity<>(slice.getContent(), headers, HttpStatus.OK);
+        }
         log.debug("REST request to search for a page of Apps for query {}", query);
         Page<App> page = appService.search(query, pageable);
         HttpHeaders headers = PaginationUtil.generateSearchPaginationHttpHeaders(query, page, "/api/_search/apps");
@@ -3,6 +3,8 @@ package org.crowdware.web.rest;
 import com.codahale.metrics.annotation.Timed;
 import org.crowdware.domain.CrowdApp;
 import org.crowdware.service.CrowdAppService;
+import org.crowdware.service.search.CursorPage;
+import org.crowdware.service.search.SearchCursor;
 import org.crowdware.web.rest.util.HeaderUtil;
 import org.crowdware.web.rest.util.PaginationUtil;
 import org.slf4j.Logger;
@@ -142,16 +144,39 @@ public class CrowdAppResource {
     /**
      * SEARCH  /_search/crowd-apps?query=:query : search for the crowdApp corresponding
      * to the query.
+     * <p>
+     * With a cursor, the results are read in slices of the page size by ascending id instead of pages, so deep results
+     * cost the same as the first ones: the next slice is at the Link of the response, or at the same query with the
+     * cursor of the X-Next-Cursor header. The first slice is at the empty cursor.
      *
      * @param query the query of the crowdApp search
-     * @return the result of the search
+     * @param cursor the cursor of the slice, or absent to read pages
+     * @param pageable the pagination information
+     * @return the ResponseEntity with status 200 (OK) and the crowdApps in body,
+     * or with status 400 (Bad Request) if the cursor is not valid
+     * @throws URISyntaxException if there is an error to generate the pagination HTTP headers
      */
     @RequestMapping(value = "/_search/crowd-apps",
         method = RequestMethod.GET,
         produces = MediaType.APPLICATION_JSON_VALUE)
     @Timed
-    public ResponseEntity<List<CrowdApp>> searchCrowdApps(@RequestParam String query, Pageable pageable)
+    public ResponseEntity<List<CrowdApp>> searchCrowdApps(@RequestParam String query,
+                                                          @RequestParam(required = false) String cursor, Pageable pageable)
         throws URISyntaxException {
+        if (cursor != null) {
+            log.debug("REST request to search for a slice of CrowdApps for query {}", query);
+            SearchCursor searchCursor;
+            try {
+                searchCursor = SearchCursor.parse(cursor);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest()
+                    .headers(HeaderUtil.createFailureAlert("crowdApp", "invalidcursor", "The search cursor is not valid"))
+                    .body(null);
+            }
+            CursorPage<CrowdApp> slice = crowdAppService.search(query, searchCursor, pageable.getPageSize());
+            HttpHeaders headers = PaginationUtil.generateCursorPaginationHttpHeaders(query, slice, "/api/_search/crowd-apps");
+            return new ResponseEntity<>(slice.getContent(), headers, HttpStatus.OK);
+        }
         log.debug("REST request to search for a page of CrowdApps for query {}", query);
         Page<CrowdApp> page = crowdAppService.search(query, pageable);
         HttpHeaders headers = PaginationUtil.generateSearchPaginationHttpHeaders(query, page, "/api/_search/crowd-apps");
@@ -0,0 +1,81 @@
+package org.crowdware.web.rest;
+
+import com.codahale.metrics.annotation.Timed;
+import org.crowdware.domain.App;
+import org.crowdware.repository.AppRepository;
+import org.crowdware.service.AppService;
+import org.crowdware.service.dispatch.JobDispatcher;
+import org.crowdware.web.rest.dto.DispatchStatsDTO;
+import org.crowdware.web.rest.util.HeaderUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.inject.Inject;
+
+/**
+ * REST controller for the Job dispatcher.
+ */
+@RestController
+@RequestMapping("/api")
+public class DispatchResource {
+
+    private final Logger log = LoggerFactory.getLogger(DispatchResource.class);
+
+    @Inject
+    private JobDispatcher jobDispatcher;
+
+    @Inject
+    private AppRepository appRepository;
+
+    @Inject
+    private AppService appService;
+
+    /**
+     * POST  /dispatch/apps/:id/availability?slots=:slots : announce that the "id" app can take more tasks.
+     *
+     * @param id the id of the available app
+     * @param slots the number of tasks the app can take
+     * @return the ResponseEntity with status 200 (OK), or with status 400 (Bad Request) if slots is not positive,
+     * or with status 403 (Forbidden) if the app is not one of the current user,
+     * or with status 404 (Not Found) if the app does not exist
+     */
+    @RequestMapping(value = "/dispatch/apps/{id}/availability",
+        method = RequestMethod.POST,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<Void> addAvailability(@PathVariable Long id, @RequestParam(defaultValue = "1") int slots) {
+        log.debug("REST request to add {} dispatch slots to App : {}", slots, id);
+        if (slots < 1) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("app", "invalidslots", "At least one slot must be announced")).build();
+        }
+        App app = appRepository.findOne(id);
+        if (app == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        if (!appService.isManagedByCurrentUser(app)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).headers(HeaderUtil.createFailureAlert("app", "notyourapp", "Only the owner of an app can announce its slots")).build();
+        }
+        jobDispatcher.addAvailability(app, slots);
+        return ResponseEntity.ok().build();
+    }
+
+    /**
+     * GET  /dispatch/stats : get the queue depth and throughput of the dispatcher.
+     *
+     * @return the ResponseEntity with status 200 (OK) and the dispatcher statistics in body
+     */
+    @RequestMapping(value = "/dispatch/stats",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<DispatchStatsDTO> getStats() {
+        log.debug("REST request to get dispatch statistics");
+        DispatchStatsDTO stats = new DispatchStatsDTO(jobDispatcher.getQueueDepth(), jobDispatcher.getAvailableSlots(),
+            jobDispatcher.getAssignmentCount(), jobDispatcher.getAssignmentRate());
+        return new ResponseEntity<>(stats, HttpStatus.OK);
+    }
+}
@@ -2,15 +2,22 @@ package org.crowdware.web.rest;
 
 import com.codahale.metrics.annotation.Timed;
 import org.crowdware.domain.JobAttribute;
+import org.crowdware.domain.enumeration.SearchEntityType;
 import org.crowdware.repository.JobAttributeRepository;
-import org.crowdware.repository.search.JobAttributeSearchRepository;
+import org.crowdware.service.index.JobAttributeIndex;
+import org.crowdware.service.search.CursorPage;
+import org.crowdware.service.search.CursorSearchService;
+import org.crowdware.service.search.SearchCursor;
+import org.crowdware.service.search.SearchOutboxService;
 import org.crowdware.web.rest.util.HeaderUtil;
+import org.crowdware.web.rest.util.PaginationUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import javax.inject.Inject;
@@ -19,10 +26,8 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
-import static org.elasticsearch.index.query.QueryBuilders.*;
+import static org.crowdware.service.util.TransactionUtil.afterCommit;
 
 /**
  * REST controller for managing JobAttribute.
@@ -37,7 +42,13 @@ public class JobAttributeResource {
     private JobAttributeRepository jobAttributeRepository;
     
     @Inject
-    private JobAttributeSearchRepository jobAttributeSearchRepository;
+    private CursorSearchService cursorSearchService;
+
+    @Inject
+    private JobAttributeIndex jobAttributeIndex;
+
+    @Inject
+    private SearchOutboxService searchOutboxService;
     
     /**
      * POST  /job-attributes : Create a new jobAttribute.
@@ -50,13 +61,15 @@ public class JobAttributeResource {
         method = RequestMethod.POST,
         produces = MediaType.APPLICATION_JSON_VALUE)
     @Timed
+    @Transactional
     public ResponseEntity<JobAttribute> createJobAttribute(@Valid @RequestBody JobAttribute jobAttribute) throws URISyntaxException {
         log.debug("REST request to save JobAttribute : {}", jobAttribute);
         if (jobAttribute.getId() != null) {
             return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("jobAttribute", "idexists", "A new jobAttribute cannot already have an ID")).body(null);
         }
         JobAttribute result = jobAttributeRepository.save(jobAttribute);
-        jobAttributeSearchRepository.save(result);
+        searchOutboxService.enqueue(SearchEntityType.JOB_ATTRIBUTE, result.getId());
+        afterCommit(() -> jobAttributeIndex.put(result));
         return ResponseEntity.created(new URI("/api/job-attributes/" + result.getId()))
             .headers(HeaderUtil.createEntityCreationAlert("jobAttribute", result.getId().toString()))
             .body(result);
@@ -75,13 +88,15 @@ public class JobAttributeResource {
         method = RequestMethod.PUT,
         produces = MediaType.APPLICATION_JSON_VALUE)
     @Timed
+    @Transactional
     public ResponseEntity<JobAttribute> updateJobAttribute(@Valid @RequestBody JobAttribute jobAttribute) throws URISyntaxException {
         log.debug("REST request to update JobAttribute : {}", jobAttribute);
         if (jobAttribute.getId() == null) {
             return createJobAttribute(jobAttribute);
         }
         JobAttribute result = jobAttributeRepository.save(jobAttribute);
-        jobAttributeSearchRepository.save(result);
+        searchOutboxService.enqueue(SearchEntityType.JOB_ATTRIBUTE, result.getId());
+        afterCommit(() -> jobAttributeIndex.put(result));
         return ResponseEntity.ok()
             .headers(HeaderUtil.createEntityUpdateAlert("jobAttribute", jobAttribute.getId().toString()))
             .body(result);
@@ -132,29 +147,49 @@ public class JobAttributeResource {
         method = RequestMethod.DELETE,
         produces = MediaType.APPLICATION_JSON_VALUE)
     @Timed
+    @Transactional
     public ResponseEntity<Void> deleteJobAttribute(@PathVariable Long id) {
         log.debug("REST request to delete JobAttribute : {}", id);
         jobAttributeRepository.delete(id);
-        jobAttributeSearchRepository.delete(id);
+        searchOutboxService.enqueue(SearchEntityType.JOB_ATTRIBUTE, id);
+        afterCommit(() -> jobAttributeIndex.remove(id));
         return ResponseEntity.ok().headers(HeaderUtil.createEntityDeletionAlert("jobAttribute", id.toString())).build();
     }
 
     /**
      * SEARCH  /_search/job-attributes?query=:query : search for the jobAttribute corresponding
      * to the query.
+     * <p>
+     * The results are read in slices by ascending id: the next slice is at the Link of the response, or at the same
+     * query with the cursor of the X-Next-Cursor header. There is no such header after the last slice.
      *
      * @param query the query of the jobAttribute search
-     * @return the result of the search
+     * @param cursor the cursor of the slice, the first slice if absent
+     * @param size the maximum number of jobAttributes of the slice
+     * @return the ResponseEntity with status 200 (OK) and the slice of jobAttributes in body,
+     * or with status 400 (Bad Request) if the cursor is not valid
+     * @throws URISyntaxException if there is an error to generate the pagination HTTP headers
      */
     @RequestMapping(value = "/_search/job-attributes",
         method = RequestMethod.GET,
         produces = MediaType.APPLICATION_JSON_VALUE)
     @Timed
-    public List<JobAttribute> searchJobAttributes(@RequestParam String query) {
-        log.debug("REST request to search JobAttributes for query {}", query);
-        return StreamSupport
-            .stream(jobAttributeSearchRepository.search(queryStringQuery(query)).spliterator(), false)
-            .collect(Collectors.toList());
+    public ResponseEntity<List<JobAttribute>> searchJobAttributes(@RequestParam String query,
+                                                                  @RequestParam(required = false) String cursor,
+                                                                  @RequestParam(required = false) Integer size)
+        throws URISyntaxException {
+        log.debug("REST request to search for a slice of JobAttributes for query {}", query);
+        SearchCursor searchCursor;
+        try {
+            searchCursor = SearchCursor.parse(cursor);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                .headers(HeaderUtil.createFailureAlert("jobAttribute", "invalidcursor", "The search cursor is not valid"))
+                .body(null);
+        }
+        CursorPage<JobAttribute> page = cursorSearchService.search(JobAttribute.class, query, searchCursor, size);
+        HttpHeaders headers = PaginationUtil.generateCursorPaginationHttpHeaders(query, page, "/api/_search/job-attributes");
+        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
 
 }
@@ -1,13 +1,32 @@
 package org.crowdware.web.rest;
 
 import com.codahale.metrics.annotation.Timed;
+import org.crowdware.config.CrowdwareProperties;
+import org.crowdware.domain.App;
 import org.crowdware.domain.Job;
+import org.crowdware.domain.Money;
+import org.crowdware.service.AppService;
 import org.crowdware.service.JobService;
+import org.crowdware.service.PaymentTotalsService;
+import org.crowdware.service.auction.AuctionHouse;
+import org.crowdware.service.auction.BidBook;
+import org.crowdware.service.idempotency.IdempotencyService;
+import org.crowdware.service.index.IdBitmap;
+import org.crowdware.service.index.JobAttributeIndex;
+import org.crowdware.service.index.JobOfferBook;
+import org.crowdware.service.index.MinHashIndex;
+import org.crowdware.service.search.CursorPage;
+import org.crowdware.service.search.SearchCursor;
+import org.crowdware.web.rest.dto.AuctionDTO;
+import org.crowdware.web.rest.dto.BidDTO;
+import org.crowdware.web.rest.dto.PaymentTotalDTO;
+import org.crowdware.web.rest.dto.SimilarJobDTO;
 import org.crowdware.web.rest.util.HeaderUtil;
 import org.crowdware.web.rest.util.PaginationUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -16,10 +35,20 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.inject.Inject;
+import javax.validation.Valid;
 import java.net.URI;
+import java.math.BigDecimal;
 import java.net.URISyntaxException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -36,27 +65,56 @@ public class JobResource {
         
     @Inject
     private JobService jobService;
+
+    @Inject
+    private JobOfferBook jobOfferBook;
+
+    @Inject
+    private JobAttributeIndex jobAttributeIndex;
+
+    @Inject
+    private AuctionHouse auctionHouse;
+
+    @Inject
+    private AppService appService;
+
+    @Inject
+    private PaymentTotalsService paymentTotalsService;
+
+    @Inject
+    private IdempotencyService idempotencyService;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
     
     /**
      * POST  /jobs : Create a new job.
+     * <p>
+     * A request retried with the same Idempotency-Key header gets the response of the first one, see
+     * {@link IdempotencyService}.
      *
      * @param job the job to create
-     * @return the ResponseEntity with status 201 (Created) and with body the new job, or with status 400 (Bad Request) if the job has already an ID
-     * @throws URISyntaxException if the Location URI syntax is incorrect
+     * @param idempotencyKey the optional key of the request
+     * @return the ResponseEntity with status 201 (Created) and with body the new job, or with status 400 (Bad Request) if the job has already an ID,
+     * or with status 409 (Conflict) if a request with the same key is still in progress after the lock timeout,
+     * or with status 422 (Unprocessable Entity) if the key was used for a different job
      */
     @RequestMapping(value = "/jobs",
         method = RequestMethod.POST,
         produces = MediaType.APPLICATION_JSON_VALUE)
     @Timed
-    public ResponseEntity<Job> createJob(@RequestBody Job job) throws URISyntaxException {
+    public ResponseEntity<Job> createJob(@RequestBody Job job,
+                                         @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
         log.debug("REST request to save Job : {}", job);
         if (job.getId() != null) {
             return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("job", "idexists", "A new job cannot already have an ID")).body(null);
         }
-        Job result = jobService.save(job);
-        return ResponseEntity.created(new URI("/api/jobs/" + result.getId()))
-            .headers(HeaderUtil.createEntityCreationAlert("job", result.getId().toString()))
-            .body(result);
+        return idempotencyService.execute("job", "POST /api/jobs", idempotencyKey, job, Job.class, () -> {
+            Job result = jobService.save(job);
+            return ResponseEntity.created(URI.create("/api/jobs/" + result.getId()))
+                .headers(HeaderUtil.createEntityCreationAlert("job", result.getId().toString()))
+                .body(result);
+        });
     }
 
     /**
@@ -75,7 +133,7 @@ public class JobResource {
     public ResponseEntity<Job> updateJob(@RequestBody Job job) throws URISyntaxException {
         log.debug("REST request to update Job : {}", job);
         if (job.getId() == null) {
-            return createJob(job);
+            return createJob(job, null);
         }
         Job result = jobService.save(job);
         return ResponseEntity.ok()
@@ -102,6 +160,172 @@ public class JobResource {
         return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
 
+    /**
+     * GET  /jobs/top?limit=:limit : get the best paying open jobs.
+     *
+     * @param limit the maximum number of jobs to return
+     * @return the ResponseEntity with status 200 (OK) and the list of jobs in body, highest offer first,
+     * or with status 400 (Bad Request) if the limit is not valid
+     */
+    @RequestMapping(value = "/jobs/top",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<List<Job>> getTopJobs(@RequestParam(defaultValue = "20") int limit) {
+        log.debug("REST request to get the {} best paying Jobs", limit);
+        int maxLimit = crowdwareProperties.getOffers().getMaxLimit();
+        if (limit < 1 || limit > maxLimit) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("job", "invalidlimit", "The limit must be between 1 and " + maxLimit)).body(null);
+        }
+        return new ResponseEntity<>(jobService.findAll(jobOfferBook.top(limit)), HttpStatus.OK);
+    }
+
+    /**
+     * GET  /jobs/offers?min=:min&amp;max=:max&amp;limit=:limit : get the open jobs with an offer between two bounds.
+     *
+     * @param min the lowest offer, inclusive, or none for no lower bound
+     * @param max the highest offer, inclusive, or none for no upper bound
+     * @param limit the maximum number of jobs to return
+     * @return the ResponseEntity with status 200 (OK) and the list of jobs in body, highest offer first,
+     * or with status 400 (Bad Request) if the limit is not valid
+     */
+    @RequestMapping(value = "/jobs/offers",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<List<Job>> getJobsByOffer(@RequestParam(required = false) BigDecimal min,
+                                                    @RequestParam(required = false) BigDecimal max,
+                                                    @RequestParam(defaultValue = "20") int limit) {
+        log.debug("REST request to get Jobs with an offer between {} and {}", min, max);
+        int maxLimit = crowdwareProperties.getOffers().getMaxLimit();
+        if (limit < 1 || limit > maxLimit) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("job", "invalidlimit", "The limit must be between 1 and " + maxLimit)).body(null);
+        }
+        return new ResponseEntity<>(jobService.findAll(jobOfferBook.range(min, max, limit)), HttpStatus.OK);
+    }
+
+    /**
+     * GET  /jobs/offers/count?above=:above : count the open jobs offering more than a price.
+     *
+     * @param above the price, exclusive
+     * @return the ResponseEntity with status 200 (OK) and the number of jobs in body
+     */
+    @RequestMapping(value = "/jobs/offers/count",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public Long countJobsAbove(@RequestParam BigDecimal above) {
+        log.debug("REST request to count Jobs offering more than {}", above);
+        return jobOfferBook.countAbove(above);
+    }
+
+    /**
+     * GET  /jobs/filter?all=:term&amp;any=:term&amp;none=:term : get the jobs matching a combination of attributes.
+     * <p>
+     * Every term is written as name:value. A job matches if it carries all the "all" terms, at least one of the
+     * "any" terms when there are some, and none of the "none" terms.
+     *
+     * @param all the terms a job must all carry
+     * @param any the terms a job must carry at least one of
+     * @param none the terms a job must not carry
+     * @param pageable the pagination information
+     * @return the ResponseEntity with status 200 (OK) and the list of jobs in body, ordered by id,
+     * or with status 400 (Bad Request) if there is no term or a term is malformed
+     * @throws URISyntaxException if there is an error to generate the pagination HTTP headers
+     */
+    @RequestMapping(value = "/jobs/filter",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<List<Job>> filterJobs(@RequestParam(required = false) List<String> all,
+                                                @RequestParam(required = false) List<String> any,
+                                                @RequestParam(required = false) List<String> none,
+                                                Pageable pageable) throws URISyntaxException {
+        log.debug("REST request to filter Jobs with all {}, any {} and none {}", all, any, none);
+        List<JobAttributeIndex.Term> allTerms;
+        List<JobAttributeIndex.Term> anyTerms;
+        List<JobAttributeIndex.Term> noneTerms;
+        try {
+            allTerms = parseTerms(all);
+            anyTerms = parseTerms(any);
+            noneTerms = parseTerms(none);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("job", "invalidterm", e.getMessage())).body(null);
+        }
+        if (allTerms.isEmpty() && anyTerms.isEmpty() && noneTerms.isEmpty()) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("job", "noterm", "At least one attribute term is required")).body(null);
+        }
+        IdBitmap matches = jobAttributeIndex.filter(allTerms, anyTerms, noneTerms);
+        List<Job> jobs = jobService.findAll(matches.toList(pageable.getOffset(), pageable.getPageSize()));
+        Page<Job> page = new PageImpl<>(jobs, pageable, matches.cardinality());
+        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, "/api/jobs/filter");
+        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
+    }
+
+    /**
+     * GET  /jobs/similar?terms=:term&amp;limit=:limit : get the jobs whose attributes best match a set of terms,
+     * such as the skills of a worker.
+     *
+     * @param terms the terms, written as name:value
+     * @param limit the maximum number of jobs to return
+     * @return the ResponseEntity with status 200 (OK) and the list of jobs in body, most similar first,
+     * or with status 400 (Bad Request) if a term is malformed
+     */
+    @RequestMapping(value = "/jobs/similar",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<List<SimilarJobDTO>> getJobsForTerms(@RequestParam List<String> terms,
+                                                              @RequestParam(defaultValue = "20") int limit) {
+        log.debug("REST request to get the Jobs similar to {}", terms);
+        List<JobAttributeIndex.Term> parsed;
+        try {
+            parsed = parseTerms(terms);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("job", "invalidterm", e.getMessage())).body(null);
+        }
+        return new ResponseEntity<>(toSimilarJobDTOs(jobAttributeIndex.findSimilar(parsed, limit)), HttpStatus.OK);
+    }
+
+    /**
+     * GET  /jobs/:id/similar?limit=:limit : get the jobs whose attributes are the most similar to those of the "id" job.
+     *
+     * @param id the id of the job
+     * @param limit the maximum number of jobs to return
+     * @return the ResponseEntity with status 200 (OK) and the list of jobs in body, most similar first,
+     * or with status 404 (Not Found)
+     */
+    @RequestMapping(value = "/jobs/{id}/similar",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<List<SimilarJobDTO>> getSimilarJobs(@PathVariable Long id,
+                                                              @RequestParam(defaultValue = "20") int limit) {
+        log.debug("REST request to get the Jobs similar to Job : {}", id);
+        if (jobService.findOne(id) == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(toSimilarJobDTOs(jobAttributeIndex.findSimilar(id, limit)), HttpStatus.OK);
+    }
+
+    /**
+     * GET  /jobs/:id/payout-summary : get the totals of the payments made for the "id" job.
+     *
+     * @param id the id of the job
+     * @return the ResponseEntity with status 200 (OK) and the totals in body, or with status 404 (Not Found)
+     */
+    @RequestMapping(value = "/jobs/{id}/payout-summary",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<PaymentTotalDTO> getJobPayoutSummary(@PathVariable Long id) {
+        log.debug("REST request to get the payout summary of Job : {}", id);
+        if (jobService.findOne(id) == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(new PaymentTotalDTO(paymentTotalsService.getJobPayout(id)), HttpStatus.OK);
+    }
+
     /**
      * GET  /jobs/:id : get the "id" job.
      *
@@ -122,6 +346,104 @@ public class JobResource {
             .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
 
+    /**
+     * POST  /jobs/:id/auction?duration=:duration : put the "id" job up for a sealed-bid auction.
+     * <p>
+     * The job leaves the dispatch queue until the auction is settled. It goes back to the queue if nobody bids.
+     *
+     * @param id the id of the job
+     * @param duration how long bids are accepted, as an ISO-8601 duration, or none for the configured default
+     * @return the ResponseEntity with status 201 (Created) and with body the auction,
+     * or with status 400 (Bad Request) if the duration is invalid or the job is not waiting for an App,
+     * or with status 404 (Not Found)
+     * @throws URISyntaxException if the Location URI syntax is incorrect
+     */
+    @RequestMapping(value = "/jobs/{id}/auction",
+        method = RequestMethod.POST,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<AuctionDTO> openAuction(@PathVariable Long id,
+                                                  @RequestParam(required = false) String duration) throws URISyntaxException {
+        log.debug("REST request to open the auction of Job : {}", id);
+        Duration bidding;
+        try {
+            bidding = duration == null
+                ? Duration.ofSeconds(crowdwareProperties.getAuction().getDurationInSeconds())
+                : Duration.parse(duration);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("job", "invalidduration", "The duration is not an ISO-8601 duration")).body(null);
+        }
+        if (bidding.isNegative() || bidding.isZero()) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("job", "invalidduration", "The duration must be positive")).body(null);
+        }
+        Job job = jobService.findOne(id);
+        if (job == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        BidBook book = auctionHouse.open(job, bidding);
+        if (book == null) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("job", "notopen", "Only a job waiting for an App can be auctioned")).body(null);
+        }
+        return ResponseEntity.created(new URI("/api/jobs/" + id + "/auction"))
+            .body(toAuctionDTO(book));
+    }
+
+    /**
+     * GET  /jobs/:id/auction : get the running auction of the "id" job.
+     *
+     * @param id the id of the job
+     * @return the ResponseEntity with status 200 (OK) and with body the auction, or with status 404 (Not Found)
+     */
+    @RequestMapping(value = "/jobs/{id}/auction",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<AuctionDTO> getAuction(@PathVariable Long id) {
+        log.debug("REST request to get the auction of Job : {}", id);
+        return Optional.ofNullable(auctionHouse.getBook(id))
+            .map(book -> new ResponseEntity<>(
+                toAuctionDTO(book),
+                HttpStatus.OK))
+            .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    /**
+     * POST  /jobs/:id/bids : submit or replace the sealed bid of an App on the auctioned "id" job.
+     * <p>
+     * The bid is only recorded, the winner is chosen when the auction is settled.
+     *
+     * @param id the id of the job
+     * @param bid the bid
+     * @return the ResponseEntity with status 202 (Accepted),
+     * or with status 400 (Bad Request) if the app does not exist, the bidding ended or the bid is above the offer,
+     * or with status 403 (Forbidden) if the app is not one of the current user,
+     * or with status 404 (Not Found) if the job is not auctioned
+     */
+    @RequestMapping(value = "/jobs/{id}/bids",
+        method = RequestMethod.POST,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<Void> bidOnJob(@PathVariable Long id, @Valid @RequestBody BidDTO bid) {
+        log.debug("REST request to bid on Job {} : {}", id, bid);
+        App app = appService.findOne(bid.getAppId());
+        if (app == null) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("job", "noapp", "The bidding app does not exist")).build();
+        }
+        if (!appService.isManagedByCurrentUser(app)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).headers(HeaderUtil.createFailureAlert("job", "notyourapp", "Only the owner of an app can bid for it")).build();
+        }
+        switch (auctionHouse.bid(id, app, Money.of(bid.getAmount()))) {
+            case ACCEPTED:
+                return ResponseEntity.accepted().build();
+            case NO_AUCTION:
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            case ABOVE_RESERVE:
+                return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("job", "abovereserve", "A bid cannot be above the offer of the job")).build();
+            default:
+                return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("job", "auctionclosed", "The bidding of this auction ended")).build();
+        }
+    }
+
     /**
      * DELETE  /jobs/:id : delete the "id" job.
      *
@@ -141,20 +463,66 @@ public class JobResource {
     /**
      * SEARCH  /_search/jobs?query=:query : search for the job corresponding
      * to the query.
+     * <p>
+     * With a cursor, the results are read in slices of the page size by ascending id instead of pages, so deep results
+     * cost the same as the first ones: the next slice is at the Link of the response, or at the same query with the
+     * cursor of the X-Next-Cursor header. The first slice is at the empty cursor.
      *
      * @param query the query of the job search
-     * @return the result of the search
+     * @param cursor the cursor of the slice, or absent to read pages
+     * @param pageable the pagination information
+     * @return the ResponseEntity with status 200 (OK) and the jobs in body,
+     * or with status 400 (Bad Request) if the cursor is not valid
+     * @throws URISyntaxException if there is an error to generate the pagination HTTP headers
      */
     @RequestMapping(value = "/_search/jobs",
         method = RequestMethod.GET,
         produces = MediaType.APPLICATION_JSON_VALUE)
     @Timed
-    public ResponseEntity<List<Job>> searchJobs(@RequestParam String query, Pageable pageable)
+    public ResponseEntity<List<Job>> searchJobs(@RequestParam String query,
+                                                @RequestParam(required = false) String cursor, Pageable pageable)
         throws URISyntaxException {
+        if (cursor != null) {
+            log.debug("REST request to search for a slice of Jobs for query {}", query);
+            SearchCursor searchCursor;
+            try {
+                searchCursor = SearchCursor.parse(cursor);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest()
+                    .headers(HeaderUtil.createFailureAlert("job", "invalidcursor", "The search cursor is not valid"))
+                    .body(null);
+            }
+            CursorPage<Job> slice = jobService.search(query, searchCursor, pageable.getPageSize());
+            HttpHeaders headers = PaginationUtil.generateCursorPaginationHttpHeaders(query, slice, "/api/_search/jobs");
+            return new ResponseEntity<>(slice.getContent(), headers, HttpStatus.OK);
+        }
         log.debug("REST request to search for a page of Jobs for query {}", query);
         Page<Job> page = jobService.search(query, pageable);
         HttpHeaders headers = PaginationUtil.generateSearchPaginationHttpHeaders(query, page, "/api/_search/jobs");
         return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
 
+    private List<SimilarJobDTO> toSimilarJobDTOs(List<MinHashIndex.Match> matches) {
+        List<Long> ids = matches.stream().map(MinHashIndex.Match::getId).collect(Collectors.toList());
+        Map<Long, Job> jobsById = jobService.findAll(ids).stream()
+            .collect(Collectors.toMap(Job::getId, Function.identity()));
+        return matches.stream()
+            .filter(match -> jobsById.containsKey(match.getId()))
+            .map(match -> new SimilarJobDTO(jobsById.get(match.getId()), match.getSimilarity()))
+            .collect(Collectors.toList());
+    }
+
+    private static AuctionDTO toAuctionDTO(BidBook book) {
+        ZonedDateTime closesAt = ZonedDateTime.ofInstant(Instant.ofEpochMilli(book.getClosesAt()), ZoneId.systemDefault());
+        return new AuctionDTO(book.getJob().getId(), closesAt, book.size());
+    }
+
+    private static List<JobAttributeIndex.Term> parseTerms(List<String> terms) {
+        List<JobAttributeIndex.Term> result = new ArrayList<>();
+        if (terms != null) {
+            terms.forEach(term -> result.add(JobAttributeIndex.Term.parse(term)));
+        }
+        return result;
+    }
+
 }
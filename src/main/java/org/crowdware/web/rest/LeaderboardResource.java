@@ -0,0 +1,60 @@
+package org.crowdware.web.rest;
+
+import com.codahale.metrics.annotation.Timed;
+import org.crowdware.config.CrowdwareProperties;
+import org.crowdware.service.leaderboard.LeaderboardService;
+import org.crowdware.service.leaderboard.LeaderboardStanding;
+import org.crowdware.web.rest.util.HeaderUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.inject.Inject;
+import java.util.List;
+
+/**
+ * REST controller for the leaderboards of the users by payments.
+ */
+@RestController
+@RequestMapping("/api")
+public class LeaderboardResource {
+
+    private final Logger log = LoggerFactory.getLogger(LeaderboardResource.class);
+
+    @Inject
+    private LeaderboardService leaderboardService;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
+
+    /**
+     * GET  /leaderboard?window=:window&limit=:limit : get the users with the highest payment totals.
+     * <p>
+     * The board is read from memory, and its later changes are pushed on {@value LeaderboardService#TOPIC}.
+     *
+     * @param window the board: all for all time, or a configured window such as 30d
+     * @param limit the maximum number of users
+     * @return the ResponseEntity with status 200 (OK) and the standings in body, highest score first,
+     * or with status 400 (Bad Request) if the window is unknown or the limit is not valid
+     */
+    @RequestMapping(value = "/leaderboard",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<List<LeaderboardStanding>> getLeaderboard(@RequestParam(defaultValue = LeaderboardService.ALL_TIME) String window,
+                                                                    @RequestParam(defaultValue = "10") int limit) {
+        log.debug("REST request to get the top {} of the {} leaderboard", limit, window);
+        int maxLimit = crowdwareProperties.getLeaderboard().getMaxLimit();
+        if (limit < 1 || limit > maxLimit) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("leaderboard", "invalidlimit", "The limit must be between 1 and " + maxLimit)).body(null);
+        }
+        List<LeaderboardStanding> standings = leaderboardService.getTop(window, limit);
+        if (standings == null) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("leaderboard", "invalidwindow", "The window must be one of " + leaderboardService.getWindows())).body(null);
+        }
+        return new ResponseEntity<>(standings, HttpStatus.OK);
+    }
+}
@@ -2,26 +2,43 @@ package org.crowdware.web.rest;
 
 import com.codahale.metrics.annotation.Timed;
 import org.crowdware.domain.Payment;
-import org.crowdware.repository.PaymentRepository;
-import org.crowdware.repository.search.PaymentSearchRepository;
+import org.crowdware.domain.enumeration.RollupGranularity;
+import org.crowdware.service.PaymentExportService;
+import org.crowdware.service.PaymentRollupService;
+import org.crowdware.service.PaymentService;
+import org.crowdware.service.fraud.PaymentFraudService;
+import org.crowdware.service.idempotency.IdempotencyService;
+import org.crowdware.service.search.CursorPage;
+import org.crowdware.service.search.SearchCursor;
+import org.crowdware.service.settlement.PaymentSettlementService;
+import org.crowdware.web.rest.dto.PaymentRollupDTO;
 import org.crowdware.web.rest.util.HeaderUtil;
+import org.crowdware.web.rest.util.PaginationUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.inject.Inject;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
-
-import static org.elasticsearch.index.query.QueryBuilders.*;
 
 /**
  * REST controller for managing Payment.
@@ -30,43 +47,77 @@ import static org.elasticsearch.index.query.QueryBuilders.*;
 @RequestMapping("/api")
 public class PaymentResource {
 
+    private static final List<String> DIMENSIONS = Arrays.asList("user", "job");
+
+    private static final List<String> NO_DIMENSION = Collections.singletonList("none");
+
     private final Logger log = LoggerFactory.getLogger(PaymentResource.class);
         
     @Inject
-    private PaymentRepository paymentRepository;
-    
+    private PaymentService paymentService;
+
+    @Inject
+    private PaymentSettlementService paymentSettlementService;
+
+    @Inject
+    private PaymentRollupService paymentRollupService;
+
+    @Inject
+    private PaymentExportService paymentExportService;
+
     @Inject
-    private PaymentSearchRepository paymentSearchRepository;
+    private PaymentFraudService paymentFraudService;
+
+    @Inject
+    private IdempotencyService idempotencyService;
     
     /**
      * POST  /payments : Create a new payment.
+     * <p>
+     * The payment is written with the other payments of its group commit, see {@link PaymentSettlementService}.
+     * A request retried with the same Idempotency-Key header gets the response of the first one, see
+     * {@link IdempotencyService}. New payments are checked for duplicates and bursts, see {@link PaymentFraudService}.
      *
      * @param payment the payment to create
-     * @return the ResponseEntity with status 201 (Created) and with body the new payment, or with status 400 (Bad Request) if the payment has already an ID
-     * @throws URISyntaxException if the Location URI syntax is incorrect
+     * @param idempotencyKey the optional key of the request
+     * @return the ResponseEntity with status 201 (Created) and with body the new payment, or with status 400 (Bad Request) if the payment has already an ID,
+     * or with status 409 (Conflict) if a request with the same key is still in progress after the lock timeout,
+     * or with status 422 (Unprocessable Entity) if the key was used for a different payment,
+     * or with status 503 (Service Unavailable) if too many payments are waiting to be written
      */
     @RequestMapping(value = "/payments",
         method = RequestMethod.POST,
         produces = MediaType.APPLICATION_JSON_VALUE)
     @Timed
-    public ResponseEntity<Payment> createPayment(@RequestBody Payment payment) throws URISyntaxException {
+    public DeferredResult<ResponseEntity<Payment>> createPayment(@RequestBody Payment payment,
+                                                                 @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
         log.debug("REST request to save Payment : {}", payment);
+        DeferredResult<ResponseEntity<Payment>> response = new DeferredResult<>();
         if (payment.getId() != null) {
-            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("payment", "idexists", "A new payment cannot already have an ID")).body(null);
+            response.setResult(ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("payment", "idexists", "A new payment cannot already have an ID")).body(null));
+            return response;
         }
-        Payment result = paymentRepository.save(payment);
-        paymentSearchRepository.save(result);
-        return ResponseEntity.created(new URI("/api/payments/" + result.getId()))
-            .headers(HeaderUtil.createEntityCreationAlert("payment", result.getId().toString()))
-            .body(result);
+        idempotencyService.executeAsync("payment", "POST /api/payments", idempotencyKey, payment, Payment.class,
+            claim -> settle(payment, claim))
+            .whenComplete((result, error) -> {
+                if (error == null) {
+                    response.setResult(result);
+                } else {
+                    response.setErrorResult(error instanceof CompletionException ? error.getCause() : error);
+                }
+            });
+        return response;
     }
 
     /**
      * PUT  /payments : Updates an existing payment.
+     * <p>
+     * The previous state of the payment is kept in the payment ledger. A new payment cannot be created here, only with
+     * POST /payments, which checks it for fraud and settles it once.
      *
      * @param payment the payment to update
      * @return the ResponseEntity with status 200 (OK) and with body the updated payment,
-     * or with status 400 (Bad Request) if the payment is not valid,
+     * or with status 400 (Bad Request) if the payment is not valid or has no ID,
      * or with status 500 (Internal Server Error) if the payment couldnt be updated
      * @throws URISyntaxException if the Location URI syntax is incorrect
      */
@@ -77,10 +128,9 @@ public class PaymentResource {
     public ResponseEntity<Payment> updatePayment(@RequestBody Payment payment) throws URISyntaxException {
         log.debug("REST request to update Payment : {}", payment);
         if (payment.getId() == null) {
-            return createPayment(payment);
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("payment", "idnull", "A payment must be created with POST /payments")).body(null);
         }
-        Payment result = paymentRepository.save(payment);
-        paymentSearchRepository.save(result);
+        Payment result = paymentService.save(payment);
         return ResponseEntity.ok()
             .headers(HeaderUtil.createEntityUpdateAlert("payment", payment.getId().toString()))
             .body(result);
@@ -97,8 +147,7 @@ public class PaymentResource {
     @Timed
     public List<Payment> getAllPayments() {
         log.debug("REST request to get all Payments");
-        List<Payment> payments = paymentRepository.findAll();
-        return payments;
+        return paymentService.findAll();
     }
 
     /**
@@ -113,7 +162,7 @@ public class PaymentResource {
     @Timed
     public ResponseEntity<Payment> getPayment(@PathVariable Long id) {
         log.debug("REST request to get Payment : {}", id);
-        Payment payment = paymentRepository.findOne(id);
+        Payment payment = paymentService.findOne(id);
         return Optional.ofNullable(payment)
             .map(result -> new ResponseEntity<>(
                 result,
@@ -125,7 +174,7 @@ public class PaymentResource {
      * DELETE  /payments/:id : delete the "id" payment.
      *
      * @param id the id of the payment to delete
-     * @return the ResponseEntity with status 200 (OK)
+     * @return the ResponseEntity with status 200 (OK), or with status 404 (Not Found)
      */
     @RequestMapping(value = "/payments/{id}",
         method = RequestMethod.DELETE,
@@ -133,27 +182,149 @@ public class PaymentResource {
     @Timed
     public ResponseEntity<Void> deletePayment(@PathVariable Long id) {
         log.debug("REST request to delete Payment : {}", id);
-        paymentRepository.delete(id);
-        paymentSearchRepository.delete(id);
+        if (!paymentService.delete(id)) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
         return ResponseEntity.ok().headers(HeaderUtil.createEntityDeletionAlert("payment", id.toString())).build();
     }
 
+    /**
+     * GET  /payments/rollup : get the payments per day, week or month, read from the payment rollups.
+     *
+     * @param granularity the length of the periods: day, week or month
+     * @param from the first day of the report, rolled back to the start of its week or month
+     * @param to the last day of the report
+     * @param groupBy the dimensions kept apart in each period: user, job or both, none or absent to sum them
+     * @return the ResponseEntity with status 200 (OK) and the list of rollups in body, in the order of their periods,
+     * or with status 400 (Bad Request) if a parameter is not valid
+     */
+    @RequestMapping(value = "/payments/rollup",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<List<PaymentRollupDTO>> getPaymentRollup(
+        @RequestParam(defaultValue = "day") String granularity,
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+        @RequestParam(required = false) List<String> groupBy) {
+        log.debug("REST request to get the {} Payment rollup from {} to {} by {}", granularity, from, to, groupBy);
+        RollupGranularity rollupGranularity;
+        try {
+            rollupGranularity = RollupGranularity.valueOf(granularity.toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("payment", "invalidgranularity", "The granularity must be day, week or month")).body(null);
+        }
+        if (from.isAfter(to)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("payment", "invalidperiod", "The report must start before it ends")).body(null);
+        }
+        List<String> dimensions = groupBy != null && !groupBy.equals(NO_DIMENSION) ? groupBy : Collections.emptyList();
+        if (!DIMENSIONS.containsAll(dimensions)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("payment", "invalidgroupby", "Payments can only be grouped by user and job, or by none")).body(null);
+        }
+        boolean byUser = dimensions.contains("user");
+        boolean byJob = dimensions.contains("job");
+        List<PaymentRollupDTO> result = paymentRollupService.findRollups(rollupGranularity, from, to, byUser, byJob)
+            .stream()
+            .map(rollup -> new PaymentRollupDTO(rollup, byUser, byJob))
+            .collect(Collectors.toList());
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
+    /**
+     * GET  /payments/export : export the payments, in the order of their ids.
+     * <p>
+     * The payments are streamed to the response while they are read from the database, see
+     * {@link PaymentExportService}.
+     *
+     * @param format the format of the export: csv or ndjson
+     * @param from the first day of the export, or none for the first payment
+     * @param to the last day of the export, or none for the last payment
+     * @param response the response the payments are written to, with status 200 (OK),
+     * or with status 400 (Bad Request) if a parameter is not valid
+     * @throws IOException if the response cannot be written
+     */
+    @RequestMapping(value = "/payments/export",
+        method = RequestMethod.GET)
+    @Timed
+    public void exportPayments(@RequestParam(defaultValue = "csv") String format,
+                               @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                               @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                               HttpServletResponse response) throws IOException {
+        log.debug("REST request to export the Payments from {} to {} as {}", from, to, format);
+        PaymentExportService.Format exportFormat;
+        try {
+            exportFormat = PaymentExportService.Format.valueOf(format.toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            rejectExport(response, "invalidexportformat", "The format must be csv or ndjson");
+            return;
+        }
+        if (from != null && to != null && from.isAfter(to)) {
+            rejectExport(response, "invalidperiod", "The export must start before it ends");
+            return;
+        }
+        response.setContentType(exportFormat.getContentType());
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"payments." + exportFormat.getExtension() + "\"");
+        paymentExportService.export(exportFormat, from, to, response.getOutputStream());
+    }
+
     /**
      * SEARCH  /_search/payments?query=:query : search for the payment corresponding
      * to the query.
+     * <p>
+     * The results are read in slices by ascending id: the next slice is at the Link of the response, or at the same
+     * query with the cursor of the X-Next-Cursor header. There is no such header after the last slice.
      *
      * @param query the query of the payment search
-     * @return the result of the search
+     * @param cursor the cursor of the slice, the first slice if absent
+     * @param size the maximum number of payments of the slice
+     * @return the ResponseEntity with status 200 (OK) and the slice of payments in body,
+     * or with status 400 (Bad Request) if the cursor is not valid
+     * @throws URISyntaxException if there is an error to generate the pagination HTTP headers
      */
     @RequestMapping(value = "/_search/payments",
         method = RequestMethod.GET,
         produces = MediaType.APPLICATION_JSON_VALUE)
     @Timed
-    public List<Payment> searchPayments(@RequestParam String query) {
-        log.debug("REST request to search Payments for query {}", query);
-        return StreamSupport
-            .stream(paymentSearchRepository.search(queryStringQuery(query)).spliterator(), false)
-            .collect(Collectors.toList());
+    public ResponseEntity<List<Payment>> searchPayments(@RequestParam String query,
+                                                        @RequestParam(required = false) String cursor,
+                                                        @RequestParam(required = false) Integer size)
+        throws URISyntaxException {
+        log.debug("REST request to search for a slice of Payments for query {}", query);
+        SearchCursor searchCursor;
+        try {
+            searchCursor = SearchCursor.parse(cursor);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                .headers(HeaderUtil.createFailureAlert("payment", "invalidcursor", "The search cursor is not valid"))
+                .body(null);
+        }
+        CursorPage<Payment> page = paymentService.search(query, searchCursor, size);
+        HttpHeaders headers = PaginationUtil.generateCursorPaginationHttpHeaders(query, page, "/api/_search/payments");
+        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
 
+    private static void rejectExport(HttpServletResponse response, String errorKey, String defaultMessage) {
+        response.setStatus(HttpStatus.BAD_REQUEST.value());
+        HeaderUtil.createFailureAlert("payment", errorKey, defaultMessage)
+            .forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+    }
+
+    private CompletableFuture<ResponseEntity<Payment>> settle(Payment payment, IdempotencyService.Claim claim) {
+        return paymentSettlementService.submit(payment, claim).handle((result, error) -> {
+            if (error == null) {
+                paymentFraudService.check(result);
+                return ResponseEntity.created(URI.create("/api/payments/" + result.getId()))
+                    .headers(HeaderUtil.createEntityCreationAlert("payment", result.getId().toString()))
+                    .body(result);
+            }
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof RejectedExecutionException) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .headers(HeaderUtil.createFailureAlert("payment", "overloaded", "Too many payments are waiting, try again later"))
+                    .body(null);
+            }
+            throw new CompletionException(cause);
+        });
+    }
 }
@@ -0,0 +1,56 @@
+package org.crowdware.web.rest;
+
+import com.codahale.metrics.annotation.Timed;
+import org.crowdware.domain.enumeration.SearchEntityType;
+import org.crowdware.security.AuthoritiesConstants;
+import org.crowdware.service.search.CursorSearchService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.access.annotation.Secured;
+import org.springframework.web.bind.annotation.*;
+
+import javax.inject.Inject;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * REST controller for exporting all the results of a search.
+ */
+@RestController
+@RequestMapping("/api")
+public class SearchExportResource {
+
+    private final Logger log = LoggerFactory.getLogger(SearchExportResource.class);
+
+    @Inject
+    private CursorSearchService cursorSearchService;
+
+    /**
+     * GET  /_search/export?entityType=:entityType&query=:query : export the entities matching the query, in the order
+     * of their ids.
+     * <p>
+     * The entities are streamed to the response as newline-delimited JSON while they are read from the index, see
+     * {@link CursorSearchService#export(Class, String, java.io.OutputStream)}.
+     *
+     * @param entityType the type of the exported entities
+     * @param query the query of the search, all the entities if absent
+     * @param response the response the entities are written to, with status 200 (OK)
+     * @throws IOException if the response cannot be written
+     */
+    @RequestMapping(value = "/_search/export",
+        method = RequestMethod.GET)
+    @Timed
+    @Secured(AuthoritiesConstants.ADMIN)
+    public void exportSearch(@RequestParam SearchEntityType entityType,
+                             @RequestParam(defaultValue = "*") String query,
+                             HttpServletResponse response) throws IOException {
+        log.debug("REST request to export the {} search results for query {}", entityType, query);
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+            "attachment; filename=\"" + entityType.name().toLowerCase(Locale.ENGLISH) + ".ndjson\"");
+        cursorSearchService.export(entityType.getEntityClass(), query, response.getOutputStream());
+    }
+}
@@ -0,0 +1,76 @@
+package org.crowdware.web.rest;
+
+import com.codahale.metrics.annotation.Timed;
+import org.crowdware.domain.enumeration.SearchEntityType;
+import org.crowdware.security.AuthoritiesConstants;
+import org.crowdware.service.search.ReindexStatus;
+import org.crowdware.service.search.SearchReindexer;
+import org.crowdware.web.rest.util.HeaderUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.annotation.Secured;
+import org.springframework.web.bind.annotation.*;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * REST controller for rebuilding the search indices.
+ */
+@RestController
+@RequestMapping("/api")
+public class SearchReindexResource {
+
+    private final Logger log = LoggerFactory.getLogger(SearchReindexResource.class);
+
+    @Inject
+    private SearchReindexer searchReindexer;
+
+    /**
+     * POST  /_reindex?entityTypes=:entityTypes : start a rebuild of the indices from the database.
+     *
+     * @param entityTypes the entity types to rebuild, all of them if empty
+     * @return the ResponseEntity with status 202 (Accepted) and with body the status of the rebuild,
+     * or with status 409 (Conflict) if a rebuild is already running
+     */
+    @RequestMapping(value = "/_reindex",
+        method = RequestMethod.POST,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    @Secured(AuthoritiesConstants.ADMIN)
+    public ResponseEntity<ReindexStatus> reindex(@RequestParam(required = false) List<SearchEntityType> entityTypes) {
+        log.debug("REST request to rebuild the search indices of {}", entityTypes);
+        ReindexStatus status = searchReindexer.start(entityTypes == null || entityTypes.isEmpty()
+            ? Arrays.asList(SearchEntityType.values()) : entityTypes);
+        if (status == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .headers(HeaderUtil.createFailureAlert("reindex", "running", "A rebuild of the search indices is already running"))
+                .body(searchReindexer.getStatus());
+        }
+        return new ResponseEntity<>(status, HttpStatus.ACCEPTED);
+    }
+
+    /**
+     * GET  /_reindex : get the progress of the running or last rebuild of the indices.
+     *
+     * @return the ResponseEntity with status 200 (OK) and with body the status of the rebuild,
+     * or with status 404 (Not Found) if there was none
+     */
+    @RequestMapping(value = "/_reindex",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    @Secured(AuthoritiesConstants.ADMIN)
+    public ResponseEntity<ReindexStatus> getReindexStatus() {
+        log.debug("REST request to get the status of the search indices rebuild");
+        ReindexStatus status = searchReindexer.getStatus();
+        if (status == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(status, HttpStatus.OK);
+    }
+}
@@ -0,0 +1,54 @@
+package org.crowdware.web.rest;
+
+import com.codahale.metrics.annotation.Timed;
+import org.crowdware.config.CrowdwareProperties;
+import org.crowdware.service.index.AppNameIndex;
+import org.crowdware.web.rest.dto.AppSuggestionDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import javax.inject.Inject;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * REST controller for completing names as they are typed.
+ */
+@RestController
+@RequestMapping("/api")
+public class SuggestResource {
+
+    private final Logger log = LoggerFactory.getLogger(SuggestResource.class);
+
+    @Inject
+    private AppNameIndex appNameIndex;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
+
+    /**
+     * GET  /_suggest/apps?prefix=:prefix : complete a prefix with the most popular App and CrowdApp names.
+     * <p>
+     * The completions are read from memory, see {@link AppNameIndex}, so a new name is suggested within
+     * {@code crowdware.suggest.refreshInterval} milliseconds.
+     *
+     * @param prefix the typed prefix, case-insensitive
+     * @param limit the maximum number of completions, at most {@code crowdware.suggest.maxLimit}
+     * @return the completions, most popular first
+     */
+    @RequestMapping(value = "/_suggest/apps",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public List<AppSuggestionDTO> suggestApps(@RequestParam String prefix,
+                                              @RequestParam(required = false) Integer limit) {
+        log.debug("REST request to complete the App names starting with {}", prefix);
+        CrowdwareProperties.Suggest properties = crowdwareProperties.getSuggest();
+        int maxCompletions = limit == null ? properties.getLimit() : Math.max(0, Math.min(limit, properties.getMaxLimit()));
+        return appNameIndex.suggest(prefix, maxCompletions).stream()
+            .map(completion -> new AppSuggestionDTO(completion.getText(), completion.getWeight()))
+            .collect(Collectors.toList());
+    }
+}
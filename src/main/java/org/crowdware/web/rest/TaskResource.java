@@ -1,28 +1,55 @@
 package org.crowdware.web.rest;
 
 import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.crowdware.config.CrowdwareProperties;
 import org.crowdware.domain.Task;
+import org.crowdware.domain.enumeration.SearchEntityType;
 import org.crowdware.repository.TaskRepository;
-import org.crowdware.repository.search.TaskSearchRepository;
+import org.crowdware.service.JobService;
+import org.crowdware.service.TaskService;
+import org.crowdware.service.dispatch.TaskLeaseService;
+import org.crowdware.service.index.TaskIntervalIndex;
+import org.crowdware.service.search.CursorPage;
+import org.crowdware.service.search.CursorSearchService;
+import org.crowdware.service.search.SearchCursor;
+import org.crowdware.service.search.SearchOutboxService;
+import org.crowdware.web.rest.dto.BulkItemResultDTO;
 import org.crowdware.web.rest.util.HeaderUtil;
+import org.crowdware.web.rest.util.PaginationUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import javax.inject.Inject;
+import javax.servlet.http.HttpServletRequest;
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validator;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.Set;
 
-import static org.elasticsearch.index.query.QueryBuilders.*;
+import static org.crowdware.service.util.TransactionUtil.afterCommit;
 
 /**
  * REST controller for managing Task.
@@ -32,12 +59,36 @@ import static org.elasticsearch.index.query.QueryBuilders.*;
 public class TaskResource {
 
     private final Logger log = LoggerFactory.getLogger(TaskResource.class);
-        
+
     @Inject
     private TaskRepository taskRepository;
     
     @Inject
-    private TaskSearchRepository taskSearchRepository;
+    private CursorSearchService cursorSearchService;
+
+    @Inject
+    private TaskIntervalIndex taskIntervalIndex;
+
+    @Inject
+    private TaskLeaseService taskLeaseService;
+
+    @Inject
+    private TaskService taskService;
+
+    @Inject
+    private JobService jobService;
+
+    @Inject
+    private SearchOutboxService searchOutboxService;
+
+    @Inject
+    private ObjectMapper objectMapper;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
+
+    @Inject
+    private Validator validator;
     
     /**
      * POST  /tasks : Create a new task.
@@ -50,18 +101,92 @@ public class TaskResource {
         method = RequestMethod.POST,
         produces = MediaType.APPLICATION_JSON_VALUE)
     @Timed
+    @Transactional
     public ResponseEntity<Task> createTask(@Valid @RequestBody Task task) throws URISyntaxException {
         log.debug("REST request to save Task : {}", task);
         if (task.getId() != null) {
             return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("task", "idexists", "A new task cannot already have an ID")).body(null);
         }
         Task result = taskRepository.save(task);
-        taskSearchRepository.save(result);
+        searchOutboxService.enqueue(SearchEntityType.TASK, result.getId());
+        jobService.assign(result.getJob());
+        afterCommit(() -> taskIntervalIndex.index(result));
         return ResponseEntity.created(new URI("/api/tasks/" + result.getId()))
             .headers(HeaderUtil.createEntityCreationAlert("task", result.getId().toString()))
             .body(result);
     }
 
+    /**
+     * POST  /tasks/bulk : Create new tasks from a JSON array.
+     * <p>
+     * The array is read as a stream, and the tasks are persisted in chunks: each chunk is saved in one transaction
+     * with batched inserts, and queued for indexing in the same transaction. An item which is not a task, such as a
+     * number or an object with a field of the wrong type, is reported with status 400 and the next ones are still
+     * read. The chunks are written while the array is read, so malformed JSON does not undo the items before it: they
+     * are saved, and the malformed item is reported with status 400 as the last result.
+     *
+     * @param request the request, with a JSON array of tasks in body
+     * @return the ResponseEntity with status 200 (OK) and with body the result of each item read, in request order,
+     * or with status 400 (Bad Request) if the body is not a JSON array
+     * @throws IOException if the request body cannot be read
+     */
+    @RequestMapping(value = "/tasks/bulk",
+        method = RequestMethod.POST,
+        consumes = MediaType.APPLICATION_JSON_VALUE,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<List<BulkItemResultDTO>> createTasks(HttpServletRequest request) throws IOException {
+        log.debug("REST request to save Tasks in bulk");
+        int chunkSize = crowdwareProperties.getBulk().getChunkSize();
+        List<BulkItemResultDTO> results = new ArrayList<>();
+        List<Task> chunk = new ArrayList<>(chunkSize);
+        List<Integer> positions = new ArrayList<>(chunkSize);
+        int index = 0;
+        try (JsonParser parser = objectMapper.getFactory().createParser(request.getInputStream())) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("task", "notanarray", "The tasks must be sent as a JSON array")).body(null);
+            }
+            for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                if (token == null) {
+                    throw new JsonParseException("Unexpected end of input, the array is not closed", parser.getCurrentLocation());
+                }
+                // each item is read as a tree first, so an item which does not map to a task leaves the parser after it
+                JsonNode node = objectMapper.readTree(parser);
+                Task task = null;
+                String error;
+                if (node == null || !node.isObject()) {
+                    error = "A task must be a JSON object";
+                } else {
+                    try {
+                        task = objectMapper.treeToValue(node, Task.class);
+                        error = validate(task);
+                    } catch (JsonProcessingException e) {
+                        error = "Invalid task: " + e.getOriginalMessage();
+                    }
+                }
+                if (error != null) {
+                    results.add(new BulkItemResultDTO(index, null, HttpStatus.BAD_REQUEST.value(), error));
+                } else {
+                    chunk.add(task);
+                    positions.add(index);
+                    if (chunk.size() == chunkSize) {
+                        saveChunk(chunk, positions, results);
+                    }
+                }
+                index++;
+            }
+        } catch (JsonProcessingException e) {
+            log.debug("Invalid bulk request at item {}: {}", index, e.getMessage());
+            saveChunk(chunk, positions, results);
+            results.add(new BulkItemResultDTO(index, null, HttpStatus.BAD_REQUEST.value(), "Invalid JSON, the items from this one on were not read"));
+            results.sort(Comparator.comparingInt(BulkItemResultDTO::getIndex));
+            return ResponseEntity.ok().headers(HeaderUtil.createFailureAlert("task", "invalidjson", "Invalid JSON at item " + index)).body(results);
+        }
+        saveChunk(chunk, positions, results);
+        results.sort(Comparator.comparingInt(BulkItemResultDTO::getIndex));
+        return new ResponseEntity<>(results, HttpStatus.OK);
+    }
+
     /**
      * PUT  /tasks : Updates an existing task.
      *
@@ -75,13 +200,24 @@ public class TaskResource {
         method = RequestMethod.PUT,
         produces = MediaType.APPLICATION_JSON_VALUE)
     @Timed
+    @Transactional
     public ResponseEntity<Task> updateTask(@Valid @RequestBody Task task) throws URISyntaxException {
         log.debug("REST request to update Task : {}", task);
         if (task.getId() == null) {
             return createTask(task);
         }
+        Task previous = taskRepository.findOne(task.getId());
+        Long previousJob = previous == null ? null : previous.getJob();
         Task result = taskRepository.save(task);
-        taskSearchRepository.save(result);
+        searchOutboxService.enqueue(SearchEntityType.TASK, result.getId());
+        jobService.assign(result.getJob());
+        if (previousJob != null && !previousJob.equals(result.getJob())) {
+            jobService.reopen(previousJob);
+        }
+        afterCommit(() -> {
+            taskIntervalIndex.index(result);
+            taskLeaseService.update(result);
+        });
         return ResponseEntity.ok()
             .headers(HeaderUtil.createEntityUpdateAlert("task", task.getId().toString()))
             .body(result);
@@ -102,6 +238,42 @@ public class TaskResource {
         return tasks;
     }
 
+    /**
+     * GET  /tasks/active?at=:at : get the tasks running at the given time.
+     *
+     * @param at the point in time, a task is active if its start is before or at it and its end after it
+     * @return the ResponseEntity with status 200 (OK) and the list of active tasks in body
+     */
+    @RequestMapping(value = "/tasks/active",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public List<Task> getActiveTasks(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime at) {
+        log.debug("REST request to get Tasks active at {}", at);
+        return findTasks(taskIntervalIndex.findActiveAt(at));
+    }
+
+    /**
+     * GET  /tasks/overlapping?from=:from&amp;to=:to : get the tasks running at some point of the [from, to) window.
+     *
+     * @param from the inclusive start of the window
+     * @param to the exclusive end of the window
+     * @return the ResponseEntity with status 200 (OK) and the list of overlapping tasks in body,
+     * or with status 400 (Bad Request) if the window ends before it starts
+     */
+    @RequestMapping(value = "/tasks/overlapping",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<List<Task>> getOverlappingTasks(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime from,
+                                                          @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime to) {
+        log.debug("REST request to get Tasks overlapping [{}, {})", from, to);
+        if (to.isBefore(from)) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("task", "invalidwindow", "The window cannot end before it starts")).body(null);
+        }
+        return new ResponseEntity<>(findTasks(taskIntervalIndex.findOverlapping(from, to)), HttpStatus.OK);
+    }
+
     /**
      * GET  /tasks/:id : get the "id" task.
      *
@@ -122,6 +294,23 @@ public class TaskResource {
             .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
 
+    /**
+     * PUT  /tasks/:id/heartbeat : renew the lease of the "id" task.
+     *
+     * @param id the id of the leased task
+     * @return the ResponseEntity with status 200 (OK), or with status 404 (Not Found) if the task has no live lease
+     */
+    @RequestMapping(value = "/tasks/{id}/heartbeat",
+        method = RequestMethod.PUT,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<Void> heartbeatTask(@PathVariable Long id) {
+        if (!taskLeaseService.heartbeat(id)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).headers(HeaderUtil.createFailureAlert("task", "nolease", "The task has no live lease")).build();
+        }
+        return ResponseEntity.ok().build();
+    }
+
     /**
      * DELETE  /tasks/:id : delete the "id" task.
      *
@@ -132,29 +321,106 @@ public class TaskResource {
         method = RequestMethod.DELETE,
         produces = MediaType.APPLICATION_JSON_VALUE)
     @Timed
+    @Transactional
     public ResponseEntity<Void> deleteTask(@PathVariable Long id) {
         log.debug("REST request to delete Task : {}", id);
+        Task task = taskRepository.findOne(id);
         taskRepository.delete(id);
-        taskSearchRepository.delete(id);
+        searchOutboxService.enqueue(SearchEntityType.TASK, id);
+        if (task != null) {
+            jobService.reopen(task.getJob());
+        }
+        afterCommit(() -> {
+            taskIntervalIndex.remove(id);
+            taskLeaseService.release(id);
+        });
         return ResponseEntity.ok().headers(HeaderUtil.createEntityDeletionAlert("task", id.toString())).build();
     }
 
     /**
      * SEARCH  /_search/tasks?query=:query : search for the task corresponding
      * to the query.
+     * <p>
+     * The results are read in slices by ascending id: the next slice is at the Link of the response, or at the same
+     * query with the cursor of the X-Next-Cursor header. There is no such header after the last slice.
      *
      * @param query the query of the task search
-     * @return the result of the search
+     * @param cursor the cursor of the slice, the first slice if absent
+     * @param size the maximum number of tasks of the slice
+     * @return the ResponseEntity with status 200 (OK) and the slice of tasks in body,
+     * or with status 400 (Bad Request) if the cursor is not valid
+     * @throws URISyntaxException if there is an error to generate the pagination HTTP headers
      */
     @RequestMapping(value = "/_search/tasks",
         method = RequestMethod.GET,
         produces = MediaType.APPLICATION_JSON_VALUE)
     @Timed
-    public List<Task> searchTasks(@RequestParam String query) {
-        log.debug("REST request to search Tasks for query {}", query);
-        return StreamSupport
-            .stream(taskSearchRepository.search(queryStringQuery(query)).spliterator(), false)
-            .collect(Collectors.toList());
+    public ResponseEntity<List<Task>> searchTasks(@RequestParam String query,
+                                                  @RequestParam(required = false) String cursor,
+                                                  @RequestParam(required = false) Integer size)
+        throws URISyntaxException {
+        log.debug("REST request to search for a slice of Tasks for query {}", query);
+        SearchCursor searchCursor;
+        try {
+            searchCursor = SearchCursor.parse(cursor);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                .headers(HeaderUtil.createFailureAlert("task", "invalidcursor", "The search cursor is not valid"))
+                .body(null);
+        }
+        CursorPage<Task> page = cursorSearchService.search(Task.class, query, searchCursor, size);
+        HttpHeaders headers = PaginationUtil.generateCursorPaginationHttpHeaders(query, page, "/api/_search/tasks");
+        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
+    }
+
+    private String validate(Task task) {
+        if (task.getId() != null) {
+            return "A new task cannot already have an ID";
+        }
+        Set<ConstraintViolation<Task>> violations = validator.validate(task);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        ConstraintViolation<Task> violation = violations.iterator().next();
+        return violation.getPropertyPath() + " " + violation.getMessage();
+    }
+
+    private void saveChunk(List<Task> chunk, List<Integer> positions, List<BulkItemResultDTO> results) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            List<Task> saved = taskService.saveAll(chunk);
+            for (int i = 0; i < saved.size(); i++) {
+                Task task = saved.get(i);
+                taskIntervalIndex.index(task);
+                jobService.assign(task.getJob());
+                results.add(new BulkItemResultDTO(positions.get(i), task.getId(), HttpStatus.CREATED.value(), null));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not save a chunk of {} Tasks: {}", chunk.size(), e.getMessage());
+            for (Integer position : positions) {
+                results.add(new BulkItemResultDTO(position, null, HttpStatus.INTERNAL_SERVER_ERROR.value(), "Could not save the chunk of this task"));
+            }
+        }
+        chunk.clear();
+        positions.clear();
+    }
+
+    /**
+     * @return the tasks of the ids, in the order of the ids: findAll returns them in the order of the database
+     */
+    private List<Task> findTasks(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Integer> positions = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            positions.put(ids.get(i), i);
+        }
+        List<Task> tasks = taskRepository.findAll(ids);
+        tasks.sort(Comparator.comparingInt(task -> positions.get(task.getId())));
+        return tasks;
     }
 
 }
@@ -5,10 +5,12 @@ import org.crowdware.domain.Authority;
 import org.crowdware.domain.User;
 import org.crowdware.repository.AuthorityRepository;
 import org.crowdware.repository.UserRepository;
-import org.crowdware.repository.search.UserSearchRepository;
 import org.crowdware.security.AuthoritiesConstants;
 import org.crowdware.service.MailService;
 import org.crowdware.service.UserService;
+import org.crowdware.service.search.CursorPage;
+import org.crowdware.service.search.CursorSearchService;
+import org.crowdware.service.search.SearchCursor;
 import org.crowdware.web.rest.dto.ManagedUserDTO;
 import org.crowdware.web.rest.dto.UserDTO;
 import org.crowdware.web.rest.util.HeaderUtil;
@@ -24,16 +26,15 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.util.UriUtils;
 
 import javax.inject.Inject;
+import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import javax.servlet.http.HttpServletRequest;
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
-
-import static org.elasticsearch.index.query.QueryBuilders.*;
 
 /**
  * REST controller for managing users.
@@ -79,7 +80,7 @@ public class UserResource {
     private UserService userService;
 
     @Inject
-    private UserSearchRepository userSearchRepository;
+    private CursorSearchService cursorSearchService;
 
     /**
      * POST  /users  : Creates a new user.
@@ -230,17 +231,38 @@ public class UserResource {
     /**
      * SEARCH  /_search/users/:query : search for the User corresponding
      * to the query.
+     * <p>
+     * The results are read in slices by ascending id: the next slice is at the Link of the response, or at the same
+     * query with the cursor of the X-Next-Cursor header. There is no such header after the last slice.
      *
      * @param query the query to search
-     * @return the result of the search
+     * @param cursor the cursor of the slice, the first slice if absent
+     * @param size the maximum number of users of the slice
+     * @return the ResponseEntity with status 200 (OK) and the slice of users in body,
+     * or with status 400 (Bad Request) if the cursor is not valid
+     * @throws URISyntaxException if there is an error to generate the pagination HTTP headers
+     * @throws UnsupportedEncodingException if the query cannot be encoded in the Link header
      */
     @RequestMapping(value = "/_search/users/{query}",
         method = RequestMethod.GET,
         produces = MediaType.APPLICATION_JSON_VALUE)
     @Timed
-    public List<User> search(@PathVariable String query) {
-        return StreamSupport
-            .stream(userSearchRepository.search(queryStringQuery(query)).spliterator(), false)
-            .collect(Collectors.toList());
+    public ResponseEntity<List<User>> search(@PathVariable String query,
+                                             @RequestParam(required = false) String cursor,
+                                             @RequestParam(required = false) Integer size)
+        throws URISyntaxException, UnsupportedEncodingException {
+        log.debug("REST request to search for a slice of Users for query {}", query);
+        SearchCursor searchCursor;
+        try {
+            searchCursor = SearchCursor.parse(cursor);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                .headers(HeaderUtil.createFailureAlert("userManagement", "invalidcursor", "The search cursor is not valid"))
+                .body(null);
+        }
+        CursorPage<User> page = cursorSearchService.search(User.class, query, searchCursor, size);
+        HttpHeaders headers = PaginationUtil.generateCursorPaginationHttpHeaders(null, page,
+            "/api/_search/users/" + UriUtils.encodePathSegment(query, "UTF-8"));
+        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
 }
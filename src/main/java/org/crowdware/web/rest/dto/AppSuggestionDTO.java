@@ -0,0 +1,43 @@
+package org.crowdware.web.rest.dto;
+
+/**
+ * A DTO representing the completion of an App or CrowdApp name, with its popularity.
+ */
+public class AppSuggestionDTO {
+
+    private String name;
+
+    private long popularity;
+
+    public AppSuggestionDTO() {
+    }
+
+    public AppSuggestionDTO(String name, long popularity) {
+        this.name = name;
+        this.popularity = popularity;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getPopularity() {
+        return popularity;
+    }
+
+    public void setPopularity(long popularity) {
+        this.popularity = popularity;
+    }
+
+    @Override
+    public String toString() {
+        return "AppSuggestionDTO{" +
+            "name='" + name + "'" +
+            ", popularity=" + popularity +
+            '}';
+    }
+}
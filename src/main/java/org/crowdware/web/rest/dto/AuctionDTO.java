@@ -0,0 +1,57 @@
+package org.crowdware.web.rest.dto;
+
+import java.time.ZonedDateTime;
+
+/**
+ * A DTO representing the running auction of a Job. Bids are sealed, only their number is exposed.
+ */
+public class AuctionDTO {
+
+    private Long jobId;
+
+    private ZonedDateTime closesAt;
+
+    private int bids;
+
+    public AuctionDTO() {
+    }
+
+    public AuctionDTO(Long jobId, ZonedDateTime closesAt, int bids) {
+        this.jobId = jobId;
+        this.closesAt = closesAt;
+        this.bids = bids;
+    }
+
+    public Long getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(Long jobId) {
+        this.jobId = jobId;
+    }
+
+    public ZonedDateTime getClosesAt() {
+        return closesAt;
+    }
+
+    public void setClosesAt(ZonedDateTime closesAt) {
+        this.closesAt = closesAt;
+    }
+
+    public int getBids() {
+        return bids;
+    }
+
+    public void setBids(int bids) {
+        this.bids = bids;
+    }
+
+    @Override
+    public String toString() {
+        return "AuctionDTO{" +
+            "jobId=" + jobId +
+            ", closesAt=" + closesAt +
+            ", bids=" + bids +
+            '}';
+    }
+}
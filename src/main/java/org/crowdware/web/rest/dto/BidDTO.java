@@ -0,0 +1,52 @@
+package org.crowdware.web.rest.dto;
+
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Digits;
+import javax.validation.constraints.NotNull;
+import java.math.BigDecimal;
+
+/**
+ * A DTO representing the sealed bid of an App on an auctioned Job.
+ */
+public class BidDTO {
+
+    @NotNull
+    private Long appId;
+
+    @NotNull
+    @DecimalMin(value = "0", inclusive = false)
+    @Digits(integer = 8, fraction = 2)
+    private BigDecimal amount;
+
+    public BidDTO() {
+    }
+
+    public BidDTO(Long appId, BigDecimal amount) {
+        this.appId = appId;
+        this.amount = amount;
+    }
+
+    public Long getAppId() {
+        return appId;
+    }
+
+    public void setAppId(Long appId) {
+        this.appId = appId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    @Override
+    public String toString() {
+        return "BidDTO{" +
+            "appId=" + appId +
+            ", amount=" + amount +
+            '}';
+    }
+}
@@ -0,0 +1,67 @@
+package org.crowdware.web.rest.dto;
+
+/**
+ * A DTO representing the outcome of one item of a bulk request.
+ */
+public class BulkItemResultDTO {
+
+    private int index;
+
+    private Long id;
+
+    private int status;
+
+    private String error;
+
+    public BulkItemResultDTO() {
+    }
+
+    public BulkItemResultDTO(int index, Long id, int status, String error) {
+        this.index = index;
+        this.id = id;
+        this.status = status;
+        this.error = error;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkItemResultDTO{" +
+            "index=" + index +
+            ", id=" + id +
+            ", status=" + status +
+            ", error='" + error + "'" +
+            '}';
+    }
+}
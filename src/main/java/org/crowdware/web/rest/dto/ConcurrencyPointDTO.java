@@ -0,0 +1,45 @@
+package org.crowdware.web.rest.dto;
+
+import java.time.ZonedDateTime;
+
+/**
+ * A DTO representing the peak concurrency of an App over one step of a timeline.
+ */
+public class ConcurrencyPointDTO {
+
+    private ZonedDateTime time;
+
+    private long peak;
+
+    public ConcurrencyPointDTO() {
+    }
+
+    public ConcurrencyPointDTO(ZonedDateTime time, long peak) {
+        this.time = time;
+        this.peak = peak;
+    }
+
+    public ZonedDateTime getTime() {
+        return time;
+    }
+
+    public void setTime(ZonedDateTime time) {
+        this.time = time;
+    }
+
+    public long getPeak() {
+        return peak;
+    }
+
+    public void setPeak(long peak) {
+        this.peak = peak;
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrencyPointDTO{" +
+            "time=" + time +
+            ", peak=" + peak +
+            '}';
+    }
+}
@@ -0,0 +1,67 @@
+package org.crowdware.web.rest.dto;
+
+/**
+ * A DTO representing the state of the Job dispatcher.
+ */
+public class DispatchStatsDTO {
+
+    private int queueDepth;
+
+    private int availableSlots;
+
+    private long assignmentCount;
+
+    private double assignmentRate;
+
+    public DispatchStatsDTO() {
+    }
+
+    public DispatchStatsDTO(int queueDepth, int availableSlots, long assignmentCount, double assignmentRate) {
+        this.queueDepth = queueDepth;
+        this.availableSlots = availableSlots;
+        this.assignmentCount = assignmentCount;
+        this.assignmentRate = assignmentRate;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public void setQueueDepth(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    public int getAvailableSlots() {
+        return availableSlots;
+    }
+
+    public void setAvailableSlots(int availableSlots) {
+        this.availableSlots = availableSlots;
+    }
+
+    public long getAssignmentCount() {
+        return assignmentCount;
+    }
+
+    public void setAssignmentCount(long assignmentCount) {
+        this.assignmentCount = assignmentCount;
+    }
+
+    public double getAssignmentRate() {
+        return assignmentRate;
+    }
+
+    public void setAssignmentRate(double assignmentRate) {
+        this.assignmentRate = assignmentRate;
+    }
+
+    @Override
+    public String toString() {
+        return "DispatchStatsDTO{" +
+            "queueDepth=" + queueDepth +
+            ", availableSlots=" + availableSlots +
+            ", assignmentCount=" + assignmentCount +
+            ", assignmentRate=" + assignmentRate +
+            '}';
+    }
+}
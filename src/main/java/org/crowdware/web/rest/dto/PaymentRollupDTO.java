@@ -0,0 +1,84 @@
+package org.crowdware.web.rest.dto;
+
+import org.crowdware.domain.PaymentRollup;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * A DTO representing the payments of a period, of a user and a job when the rollup is grouped by them.
+ */
+public class PaymentRollupDTO {
+
+    private LocalDate period;
+
+    private Long userId;
+
+    private Long jobId;
+
+    private BigDecimal total;
+
+    private long payments;
+
+    public PaymentRollupDTO() {
+    }
+
+    public PaymentRollupDTO(PaymentRollup rollup, boolean byUser, boolean byJob) {
+        this.period = rollup.getPeriodStart();
+        this.userId = byUser && rollup.getUserId() != PaymentRollup.NONE ? rollup.getUserId() : null;
+        this.jobId = byJob && rollup.getJobId() != PaymentRollup.NONE ? rollup.getJobId() : null;
+        this.total = rollup.getTotal();
+        this.payments = rollup.getPayments();
+    }
+
+    public LocalDate getPeriod() {
+        return period;
+    }
+
+    public void setPeriod(LocalDate period) {
+        this.period = period;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(Long jobId) {
+        this.jobId = jobId;
+    }
+
+    public BigDecimal getTotal() {
+        return total;
+    }
+
+    public void setTotal(BigDecimal total) {
+        this.total = total;
+    }
+
+    public long getPayments() {
+        return payments;
+    }
+
+    public void setPayments(long payments) {
+        this.payments = payments;
+    }
+
+    @Override
+    public String toString() {
+        return "PaymentRollupDTO{" +
+            "period=" + period +
+            ", userId=" + userId +
+            ", jobId=" + jobId +
+            ", total=" + total +
+            ", payments=" + payments +
+            '}';
+    }
+}
@@ -0,0 +1,64 @@
+package org.crowdware.web.rest.dto;
+
+import org.crowdware.domain.AbstractPaymentTotal;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * A DTO representing the running totals of the payments of a User or of a Job.
+ */
+public class PaymentTotalDTO {
+
+    private BigDecimal total;
+
+    private long payments;
+
+    private LocalDate lastPayment;
+
+    public PaymentTotalDTO() {
+    }
+
+    public PaymentTotalDTO(AbstractPaymentTotal paymentTotal) {
+        this(paymentTotal.getTotal(), paymentTotal.getPayments(), paymentTotal.getLastPayment());
+    }
+
+    public PaymentTotalDTO(BigDecimal total, long payments, LocalDate lastPayment) {
+        this.total = total;
+        this.payments = payments;
+        this.lastPayment = lastPayment;
+    }
+
+    public BigDecimal getTotal() {
+        return total;
+    }
+
+    public void setTotal(BigDecimal total) {
+        this.total = total;
+    }
+
+    public long getPayments() {
+        return payments;
+    }
+
+    public void setPayments(long payments) {
+        this.payments = payments;
+    }
+
+    public LocalDate getLastPayment() {
+        return lastPayment;
+    }
+
+    public void setLastPayment(LocalDate lastPayment) {
+        this.lastPayment = lastPayment;
+    }
+
+    @Override
+    public String toString() {
+        return "PaymentTotalDTO{" +
+            "total=" + total +
+            ", payments=" + payments +
+            ", lastPayment=" + lastPayment +
+            '}';
+    }
+}
@@ -0,0 +1,45 @@
+package org.crowdware.web.rest.dto;
+
+import org.crowdware.domain.Job;
+
+/**
+ * A DTO representing a recommended Job, with the estimated Jaccard similarity of its attributes to the query.
+ */
+public class SimilarJobDTO {
+
+    private Job job;
+
+    private double similarity;
+
+    public SimilarJobDTO() {
+    }
+
+    public SimilarJobDTO(Job job, double similarity) {
+        this.job = job;
+        this.similarity = similarity;
+    }
+
+    public Job getJob() {
+        return job;
+    }
+
+    public void setJob(Job job) {
+        this.job = job;
+    }
+
+    public double getSimilarity() {
+        return similarity;
+    }
+
+    public void setSimilarity(double similarity) {
+        this.similarity = similarity;
+    }
+
+    @Override
+    public String toString() {
+        return "SimilarJobDTO{" +
+            "job=" + job +
+            ", similarity=" + similarity +
+            '}';
+    }
+}
@@ -1,10 +1,13 @@
 package org.crowdware.web.rest.util;
 
+import org.crowdware.service.search.CursorPage;
 import org.springframework.data.domain.Page;
 import org.springframework.http.HttpHeaders;
 
+import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URLEncoder;
 
 /**
  * Utility class for handling pagination.
@@ -62,4 +65,25 @@ public class PaginationUtil {
         headers.add(HttpHeaders.LINK, link);
         return headers;
     }
+
+    public static HttpHeaders generateCursorPaginationHttpHeaders(String query, CursorPage<?> page, String baseUrl)
+        throws URISyntaxException {
+
+        HttpHeaders headers = new HttpHeaders();
+        if (page.getNext() != null) {
+            String next = page.getNext().toString();
+            headers.add("X-Next-Cursor", next);
+            String parameters = (query != null ? "query=" + encode(query) + "&" : "") + "cursor=" + next + "&size=" + page.getSize();
+            headers.add(HttpHeaders.LINK, "<" + (new URI(baseUrl + "?" + parameters)).toString() + ">; rel=\"next\"");
+        }
+        return headers;
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
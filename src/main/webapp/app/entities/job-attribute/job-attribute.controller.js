@@ -11,6 +11,8 @@
         var vm = this;
         vm.jobAttributes = [];
         vm.loadAll = function() {
+            vm.currentSearch = null;
+            vm.nextCursor = null;
             JobAttribute.query(function(result) {
                 vm.jobAttributes = result;
             });
@@ -20,10 +22,45 @@
             if (!vm.searchQuery) {
                 return vm.loadAll();
             }
-            JobAttributeSearch.query({query: vm.searchQuery}, function(result) {
-                vm.jobAttributes = result;
-            });
+            vm.currentSearch = vm.searchQuery;
+            vm.jobAttributes = [];
+            vm.nextCursor = null;
+            loadSearchPage();
+        };
+
+        vm.loadPage = function () {
+            if (vm.currentSearch && vm.nextCursor && !vm.loading) {
+                loadSearchPage();
+            }
         };
+
+        vm.clear = function () {
+            vm.searchQuery = null;
+            vm.loadAll();
+        };
+
+        // The search returns one slice of matches at a time, the X-Next-Cursor header asks for the next one
+        function loadSearchPage () {
+            var query = vm.currentSearch;
+            var params = {query: query};
+            if (vm.nextCursor) {
+                params.cursor = vm.nextCursor;
+            }
+            vm.loading = true;
+            JobAttributeSearch.query(params, function(result, headers) {
+                if (query !== vm.currentSearch) {
+                    return;
+                }
+                vm.loading = false;
+                vm.nextCursor = headers('X-Next-Cursor');
+                for (var i = 0; i < result.length; i++) {
+                    vm.jobAttributes.push(result[i]);
+                }
+            }, function() {
+                vm.loading = false;
+            });
+        }
+
         vm.loadAll();
         
     }
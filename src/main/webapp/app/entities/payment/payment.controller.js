@@ -11,6 +11,8 @@
         var vm = this;
         vm.payments = [];
         vm.loadAll = function() {
+            vm.currentSearch = null;
+            vm.nextCursor = null;
             Payment.query(function(result) {
                 vm.payments = result;
             });
@@ -20,10 +22,45 @@
             if (!vm.searchQuery) {
                 return vm.loadAll();
             }
-            PaymentSearch.query({query: vm.searchQuery}, function(result) {
-                vm.payments = result;
-            });
+            vm.currentSearch = vm.searchQuery;
+            vm.payments = [];
+            vm.nextCursor = null;
+            loadSearchPage();
+        };
+
+        vm.loadPage = function () {
+            if (vm.currentSearch && vm.nextCursor && !vm.loading) {
+                loadSearchPage();
+            }
         };
+
+        vm.clear = function () {
+            vm.searchQuery = null;
+            vm.loadAll();
+        };
+
+        // The search returns one slice of matches at a time, the X-Next-Cursor header asks for the next one
+        function loadSearchPage () {
+            var query = vm.currentSearch;
+            var params = {query: query};
+            if (vm.nextCursor) {
+                params.cursor = vm.nextCursor;
+            }
+            vm.loading = true;
+            PaymentSearch.query(params, function(result, headers) {
+                if (query !== vm.currentSearch) {
+                    return;
+                }
+                vm.loading = false;
+                vm.nextCursor = headers('X-Next-Cursor');
+                for (var i = 0; i < result.length; i++) {
+                    vm.payments.push(result[i]);
+                }
+            }, function() {
+                vm.loading = false;
+            });
+        }
+
         vm.loadAll();
         
     }
@@ -7,10 +7,12 @@ import javax.inject.Inject;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
 import org.springframework.stereotype.Component;
 
 @Component
+@ConditionalOnProperty(prefix = "crowdware.search", name = "backend", havingValue = "elasticsearch", matchIfMissing = true)
 public class IndexReinitializer {
 
     private Logger logger = LoggerFactory.getLogger(getClass());
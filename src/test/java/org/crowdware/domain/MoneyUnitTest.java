@@ -0,0 +1,98 @@
+package org.crowdware.domain;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the Money amounts.
+ *
+ * @see Money
+ */
+public class MoneyUnitTest {
+
+    @Test
+    public void testParse() {
+        assertThat(Money.parse("12").getMinorUnits()).isEqualTo(1200L);
+        assertThat(Money.parse("12.5").getMinorUnits()).isEqualTo(1250L);
+        assertThat(Money.parse("-0.05").getMinorUnits()).isEqualTo(-5L);
+        assertThat(Money.parse("+.5").getMinorUnits()).isEqualTo(50L);
+        assertThat(Money.parse("10.000").getMinorUnits()).isEqualTo(1000L);
+        assertThat(Money.parse("1.5E+2").getMinorUnits()).isEqualTo(15000L);
+        assertThat(Money.parse("99999999.99")).isEqualTo(Money.of(new BigDecimal("99999999.99")));
+    }
+
+    @Test
+    public void testParseRejectsInvalidAmounts() {
+        assertThat(rejects("1.005")).isTrue();
+        assertThat(rejects("")).isTrue();
+        assertThat(rejects("-")).isTrue();
+        assertThat(rejects("1.2.3")).isTrue();
+        assertThat(rejects("12a")).isTrue();
+        assertThat(rejects("92233720368547758.08")).isTrue();
+    }
+
+    @Test
+    public void testToString() {
+        assertThat(Money.ZERO.toString()).isEqualTo("0.00");
+        assertThat(Money.ofMinorUnits(5L).toString()).isEqualTo("0.05");
+        assertThat(Money.ofMinorUnits(-1250L).toString()).isEqualTo("-12.50");
+        assertThat(Money.ofMinorUnits(Long.MIN_VALUE).toString()).isEqualTo("-92233720368547758.08");
+        assertThat(Money.parse(Money.ofMinorUnits(Long.MAX_VALUE).toString()).getMinorUnits()).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testBigDecimalConversions() {
+        assertThat(Money.of(new BigDecimal("10.0"))).isEqualTo(Money.parse("10.00"));
+        assertThat(Money.of(new BigDecimal("9.995"), RoundingMode.FLOOR).getMinorUnits()).isEqualTo(999L);
+        assertThat(Money.of(new BigDecimal("9.995"), RoundingMode.CEILING).getMinorUnits()).isEqualTo(1000L);
+        assertThat(Money.ofMinorUnits(1250L).toBigDecimal()).isEqualTo(new BigDecimal("12.50"));
+        boolean inexact = false;
+        try {
+            Money.of(new BigDecimal("9.995"));
+        } catch (ArithmeticException e) {
+            inexact = true;
+        }
+        assertThat(inexact).isTrue();
+    }
+
+    @Test
+    public void testArithmetic() {
+        Money amount = Money.parse("10.25");
+        assertThat(amount.plus(Money.parse("0.75"))).isEqualTo(Money.parse("11"));
+        assertThat(amount.minus(Money.parse("20"))).isEqualTo(Money.parse("-9.75"));
+        assertThat(amount.negate().signum()).isEqualTo(-1);
+        assertThat(amount.compareTo(Money.parse("10.3")) < 0).isTrue();
+        boolean overflow = false;
+        try {
+            Money.ofMinorUnits(Long.MAX_VALUE).plus(Money.ofMinorUnits(1L));
+        } catch (ArithmeticException e) {
+            overflow = true;
+        }
+        assertThat(overflow).isTrue();
+    }
+
+    @Test
+    public void testJson() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        assertThat(mapper.writeValueAsString(Money.parse("12.5"))).isEqualTo("12.50");
+        assertThat(mapper.readValue("12.5", Money.class)).isEqualTo(Money.parse("12.50"));
+        assertThat(mapper.readValue("0.1", Money.class).getMinorUnits()).isEqualTo(10L);
+        assertThat(mapper.readValue("12", Money.class).getMinorUnits()).isEqualTo(1200L);
+        assertThat(mapper.readValue("\"-3.20\"", Money.class).getMinorUnits()).isEqualTo(-320L);
+        assertThat(mapper.readValue("null", Money.class)).isNull();
+    }
+
+    private static boolean rejects(String amount) {
+        try {
+            Money.parse(amount);
+            return false;
+        } catch (ArithmeticException | NumberFormatException e) {
+            return true;
+        }
+    }
+}
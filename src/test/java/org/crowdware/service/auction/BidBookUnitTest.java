@@ -0,0 +1,112 @@
+package org.crowdware.service.auction;
+
+import org.crowdware.domain.App;
+import org.crowdware.domain.Job;
+import org.crowdware.domain.Money;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the BidBook.
+ *
+ * @see BidBook
+ */
+public class BidBookUnitTest {
+
+    private static final long CLOSES_AT = 1000L;
+
+    @Test
+    public void testLowestBidWinsAndEarliestOnTie() {
+        BidBook book = new BidBook(job("50"), CLOSES_AT);
+        assertThat(book.submit(app(1L), Money.parse("30"), 0L)).isEqualTo(BidBook.Outcome.ACCEPTED);
+        assertThat(book.submit(app(2L), Money.parse("20"), 0L)).isEqualTo(BidBook.Outcome.ACCEPTED);
+        assertThat(book.submit(app(3L), Money.parse("20.00"), 0L)).isEqualTo(BidBook.Outcome.ACCEPTED);
+
+        BidBook.Bid winner = book.close();
+        assertThat(winner.getApp().getId()).isEqualTo(2L);
+        assertThat(winner.getAmount()).isEqualTo(Money.parse("20"));
+        assertThat(book.close()).isSameAs(winner);
+    }
+
+    @Test
+    public void testNewBidReplacesThePreviousOne() {
+        BidBook book = new BidBook(job("50"), CLOSES_AT);
+        book.submit(app(1L), Money.parse("10"), 0L);
+        book.submit(app(2L), Money.parse("20"), 0L);
+        book.submit(app(1L), Money.parse("40"), 0L);
+
+        assertThat(book.size()).isEqualTo(2);
+        assertThat(book.close().getApp().getId()).isEqualTo(2L);
+    }
+
+    @Test
+    public void testRejectedBids() {
+        BidBook book = new BidBook(job("50"), CLOSES_AT);
+        assertThat(book.submit(app(1L), Money.parse("50.01"), 0L)).isEqualTo(BidBook.Outcome.ABOVE_RESERVE);
+        assertThat(book.submit(app(1L), Money.parse("10"), CLOSES_AT)).isEqualTo(BidBook.Outcome.CLOSED);
+        assertThat(book.close()).isNull();
+        assertThat(book.submit(app(1L), Money.parse("10"), 0L)).isEqualTo(BidBook.Outcome.CLOSED);
+        assertThat(book.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testJobWithoutOfferHasNoReserve() {
+        BidBook book = new BidBook(job(null), CLOSES_AT);
+        assertThat(book.submit(app(1L), Money.parse("1000000"), 0L)).isEqualTo(BidBook.Outcome.ACCEPTED);
+    }
+
+    @Test
+    public void testNoAcceptedBidIsLostWhenClosingUnderContention() throws Exception {
+        BidBook book = new BidBook(job(null), Long.MAX_VALUE);
+        int threads = 8;
+        int bidsPerThread = 5000;
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            long base = (long) t * bidsPerThread;
+            new Thread(() -> {
+                try {
+                    start.await();
+                    for (long i = 1; i <= bidsPerThread; i++) {
+                        if (book.submit(app(base + i), Money.ofMinorUnits((base + i) * 100), 0L) == BidBook.Outcome.ACCEPTED) {
+                            accepted.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        start.countDown();
+        Thread.sleep(5);
+        BidBook.Bid winner = book.close();
+        int atClose = book.size();
+        done.await();
+
+        assertThat(accepted.get()).isEqualTo(atClose);
+        assertThat(book.size()).isEqualTo(atClose);
+        if (atClose > 0) {
+            assertThat(winner).isNotNull();
+        }
+    }
+
+    private static Job job(String offer) {
+        Job job = new Job();
+        job.setId(1L);
+        job.setOffer(offer == null ? null : Money.parse(offer));
+        return job;
+    }
+
+    private static App app(long id) {
+        App app = new App();
+        app.setId(id);
+        return app;
+    }
+}
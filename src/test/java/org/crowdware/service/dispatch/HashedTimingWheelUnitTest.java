@@ -0,0 +1,106 @@
+package org.crowdware.service.dispatch;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the HashedTimingWheel.
+ *
+ * @see HashedTimingWheel
+ */
+public class HashedTimingWheelUnitTest {
+
+    private HashedTimingWheel<Long> wheel;
+
+    @Before
+    public void init() {
+        wheel = new HashedTimingWheel<>(10L, 8, 0L);
+    }
+
+    @Test
+    public void testExpireAfterDeadlineTick() {
+        wheel.schedule(1L, 25L);
+        wheel.schedule(2L, 45L);
+        assertThat(wheel.expire(29L, 100)).isEmpty();
+        assertThat(wheel.expire(30L, 100)).containsExactly(1L);
+        assertThat(wheel.expire(49L, 100)).isEmpty();
+        assertThat(wheel.expire(50L, 100)).containsExactly(2L);
+        assertThat(wheel.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testDeadlinesBeyondOneRound() {
+        wheel.schedule(1L, 15L);
+        wheel.schedule(2L, 15L + 8 * 10L);
+        assertThat(wheel.expire(20L, 100)).containsExactly(1L);
+        assertThat(wheel.expire(90L, 100)).isEmpty();
+        assertThat(wheel.expire(100L, 100)).containsExactly(2L);
+    }
+
+    @Test
+    public void testExtendAndCancel() {
+        HashedTimingWheel.Timeout<Long> extended = wheel.schedule(1L, 15L);
+        HashedTimingWheel.Timeout<Long> cancelled = wheel.schedule(2L, 15L);
+        assertThat(extended.extend(55L)).isTrue();
+        assertThat(extended.extend(30L)).isTrue();
+        assertThat(extended.getDeadline()).isEqualTo(55L);
+        assertThat(cancelled.cancel()).isTrue();
+
+        assertThat(wheel.expire(50L, 100)).isEmpty();
+        assertThat(wheel.expire(60L, 100)).containsExactly(1L);
+        assertThat(extended.isAlive()).isFalse();
+        assertThat(extended.extend(100L)).isFalse();
+        assertThat(cancelled.cancel()).isFalse();
+        assertThat(wheel.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testExpireInBatches() {
+        for (long id = 0; id < 5; id++) {
+            wheel.schedule(id, 5L);
+        }
+        wheel.schedule(5L, 15L);
+        assertThat(wheel.expire(100L, 2)).containsExactly(0L, 1L);
+        assertThat(wheel.expire(100L, 2)).containsExactly(2L, 3L);
+        assertThat(wheel.expire(100L, 2)).containsExactly(4L, 5L);
+        assertThat(wheel.expire(100L, 2)).isEmpty();
+    }
+
+    @Test
+    public void testAgainstLinearScan() {
+        Random random = new Random(42L);
+        Map<Long, HashedTimingWheel.Timeout<Long>> timeouts = new HashMap<>();
+        Map<Long, Long> deadlines = new HashMap<>();
+        long now = 0;
+        for (long id = 0; id < 20000; id++) {
+            now += random.nextInt(3);
+            if (random.nextInt(4) == 0 && !deadlines.isEmpty()) {
+                Long extended = new ArrayList<>(deadlines.keySet()).get(random.nextInt(deadlines.size()));
+                long deadline = now + random.nextInt(500);
+                if (timeouts.get(extended).extend(deadline)) {
+                    deadlines.put(extended, Math.max(deadline, deadlines.get(extended)));
+                }
+            }
+            long deadline = now + random.nextInt(500);
+            timeouts.put(id, wheel.schedule(id, deadline));
+            deadlines.put(id, deadline);
+
+            List<Long> expired = wheel.expire(now, Integer.MAX_VALUE);
+            for (Long expiredId : expired) {
+                assertThat(deadlines.get(expiredId)).isLessThan(now);
+                deadlines.remove(expiredId);
+            }
+            for (Long deadlineOf : deadlines.values()) {
+                assertThat(deadlineOf / 10L).isGreaterThanOrEqualTo(now / 10L);
+            }
+        }
+    }
+}
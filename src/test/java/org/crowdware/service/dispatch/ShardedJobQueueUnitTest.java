@@ -0,0 +1,196 @@
+package org.crowdware.service.dispatch;
+
+import org.crowdware.domain.App;
+import org.crowdware.domain.Job;
+import org.crowdware.domain.Money;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the ShardedJobQueue.
+ *
+ * @see ShardedJobQueue
+ */
+public class ShardedJobQueueUnitTest {
+
+    private ShardedJobQueue queue;
+
+    @Before
+    public void init() {
+        queue = new ShardedJobQueue(4, JobPartitioner.Strategy.APP);
+    }
+
+    @Test
+    public void testPollMatchesBestOffersFirst() {
+        ShardedJobQueue single = new ShardedJobQueue(1, JobPartitioner.Strategy.APP);
+        single.submit(job(1L, "10"));
+        single.submit(job(2L, "30"));
+        single.submit(job(3L, "20"));
+        single.submit(job(4L, "30"));
+        single.addSlots(app(1L), 3);
+
+        assertThat(jobIds(single.poll(0, 10))).containsExactly(2L, 4L, 3L);
+        assertThat(single.getDepth()).isEqualTo(1);
+        assertThat(single.getSlots()).isEqualTo(0);
+        assertThat(single.isQueued(1L)).isTrue();
+        assertThat(single.isQueued(2L)).isFalse();
+    }
+
+    @Test
+    public void testSubmitUpdatesInPlaceAndCancel() {
+        ShardedJobQueue single = new ShardedJobQueue(1, JobPartitioner.Strategy.APP);
+        single.submit(job(1L, "10"));
+        single.submit(job(2L, "20"));
+        single.submit(job(1L, "50"));
+        assertThat(single.getDepth()).isEqualTo(2);
+        assertThat(single.cancel(2L)).isTrue();
+        assertThat(single.cancel(2L)).isFalse();
+
+        single.addSlots(app(1L), 5);
+        assertThat(jobIds(single.poll(0, 10))).containsExactly(1L);
+        assertThat(single.getSlots()).isEqualTo(4);
+    }
+
+    @Test
+    public void testIdleShardStealsHalfOfTheDeepestShard() {
+        for (long id = 1; id <= 40; id++) {
+            queue.submit(job(id, "10"));
+        }
+        int deepest = 0;
+        for (int i = 1; i < queue.getShardCount(); i++) {
+            if (queue.getDepth(i) > queue.getDepth(deepest)) {
+                deepest = i;
+            }
+        }
+        int victimDepth = queue.getDepth(deepest);
+        int thief = queue.addSlots(app(1L), 100);
+        List<ShardedJobQueue.Match> matches = queue.poll(thief, 100);
+
+        if (thief == deepest) {
+            assertThat(matches).hasSize(victimDepth);
+            assertThat(queue.getSteals(thief)).isEqualTo(0L);
+        } else {
+            int local = matches.size() - (int) queue.getSteals(thief);
+            assertThat(queue.getSteals(thief)).isEqualTo((victimDepth + 1) / 2);
+            assertThat(queue.getDepth(deepest)).isEqualTo(victimDepth / 2);
+            assertThat(local).isGreaterThanOrEqualTo(0);
+        }
+        assertThat(queue.getDepth() + matches.size()).isEqualTo(40);
+    }
+
+    @Test
+    public void testRequeue() {
+        ShardedJobQueue single = new ShardedJobQueue(1, JobPartitioner.Strategy.APP);
+        single.submit(job(1L, "10"));
+        single.addSlots(app(1L), 1);
+        List<ShardedJobQueue.Match> matches = single.poll(0, 10);
+        single.requeue(0, matches);
+        assertThat(single.isQueued(1L)).isTrue();
+        assertThat(single.getSlots()).isEqualTo(1);
+        assertThat(jobIds(single.poll(0, 10))).containsExactly(1L);
+    }
+
+    @Test
+    public void testCancelWhileDispatched() {
+        ShardedJobQueue single = new ShardedJobQueue(1, JobPartitioner.Strategy.APP);
+        single.submit(job(1L, "10"));
+        single.submit(job(2L, "20"));
+        single.addSlots(app(1L), 2);
+        List<ShardedJobQueue.Match> matches = single.poll(0, 10);
+
+        assertThat(single.cancel(1L)).isTrue();
+        assertThat(single.cancel(1L)).isFalse();
+        assertThat(jobIds(single.complete(0, matches))).containsExactly(1L);
+        assertThat(single.getSlots()).isEqualTo(1);
+        assertThat(single.cancel(2L)).isFalse();
+    }
+
+    @Test
+    public void testCancelledJobIsNotRequeued() {
+        ShardedJobQueue single = new ShardedJobQueue(1, JobPartitioner.Strategy.APP);
+        single.submit(job(1L, "10"));
+        single.addSlots(app(1L), 1);
+        List<ShardedJobQueue.Match> matches = single.poll(0, 10);
+
+        assertThat(single.cancel(1L)).isTrue();
+        single.requeue(0, matches);
+        assertThat(single.isQueued(1L)).isFalse();
+        assertThat(single.getSlots()).isEqualTo(1);
+    }
+
+    @Test
+    public void testCancelStolenJob() {
+        for (long id = 1; id <= 40; id++) {
+            queue.submit(job(id, "10"));
+        }
+        int thief = queue.addSlots(app(1L), 100);
+        List<ShardedJobQueue.Match> matches = queue.poll(thief, 100);
+        assertThat(matches).isNotEmpty();
+
+        for (ShardedJobQueue.Match match : matches) {
+            assertThat(queue.cancel(match.getJobId())).isTrue();
+        }
+        assertThat(queue.complete(thief, matches)).hasSameSizeAs(matches);
+    }
+
+    @Test
+    public void testConcurrentWorkersMatchEveryJobOnce() throws Exception {
+        int jobs = 20000;
+        for (long id = 1; id <= jobs; id++) {
+            queue.submit(job(id, String.valueOf(id % 100)));
+        }
+        for (long appId = 1; appId <= 8; appId++) {
+            queue.addSlots(app(appId), jobs / 8);
+        }
+        Set<Long> matched = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(queue.getShardCount());
+        for (int i = 0; i < queue.getShardCount(); i++) {
+            int shard = i;
+            new Thread(() -> {
+                List<ShardedJobQueue.Match> batch;
+                do {
+                    batch = queue.poll(shard, 100);
+                    for (ShardedJobQueue.Match match : batch) {
+                        if (!matched.add(match.getJobId())) {
+                            duplicates.incrementAndGet();
+                        }
+                    }
+                } while (!batch.isEmpty() || queue.getSlots(shard) > 0 && queue.getDepth() > 0);
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        assertThat(duplicates.get()).isEqualTo(0);
+        assertThat(matched.size() + queue.getDepth()).isEqualTo(jobs);
+        assertThat(matched.size() + queue.getSlots()).isEqualTo(jobs);
+    }
+
+    private static Job job(long id, String offer) {
+        Job job = new Job();
+        job.setId(id);
+        job.setOffer(Money.parse(offer));
+        return job;
+    }
+
+    private static App app(long id) {
+        App app = new App();
+        app.setId(id);
+        return app;
+    }
+
+    private static List<Long> jobIds(List<ShardedJobQueue.Match> matches) {
+        List<Long> ids = new ArrayList<>();
+        matches.forEach(match -> ids.add(match.getJobId()));
+        return ids;
+    }
+}
@@ -0,0 +1,44 @@
+package org.crowdware.service.fraud;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the SlidingWindowCounter.
+ *
+ * @see SlidingWindowCounter
+ */
+public class SlidingWindowCounterUnitTest {
+
+    @Test
+    public void testEventsAreCountedInTheirWindow() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(1000, 10);
+        assertThat(counter.increment(0)).isEqualTo(1);
+        assertThat(counter.increment(50)).isEqualTo(2);
+        assertThat(counter.increment(950)).isEqualTo(3);
+        // the bucket of the first two events has left the window
+        assertThat(counter.increment(1000)).isEqualTo(2);
+        assertThat(counter.count(1950)).isEqualTo(1);
+        assertThat(counter.count(2000)).isEqualTo(0);
+    }
+
+    @Test
+    public void testReusedBucketsAreReset() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(1000, 10);
+        for (int i = 0; i < 5; i++) {
+            counter.increment(20);
+        }
+        // same slot of the ring, one window later
+        assertThat(counter.increment(1020)).isEqualTo(1);
+    }
+
+    @Test
+    public void testIdleness() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(1000, 10);
+        assertThat(counter.isIdle(0)).isTrue();
+        counter.increment(100);
+        assertThat(counter.isIdle(1099)).isFalse();
+        assertThat(counter.isIdle(1100)).isTrue();
+    }
+}
@@ -0,0 +1,53 @@
+package org.crowdware.service.index;
+
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the BloomFilter.
+ *
+ * @see BloomFilter
+ */
+public class BloomFilterUnitTest {
+
+    @Test
+    public void testAddedHashesAreFound() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        SplittableRandom random = new SplittableRandom(42);
+        long[] hashes = new long[1000];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = random.nextLong();
+            filter.put(hashes[i]);
+        }
+        for (long hash : hashes) {
+            assertThat(filter.mightContain(hash)).isTrue();
+        }
+    }
+
+    @Test
+    public void testFalsePositiveProbabilityIsBounded() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (long i = 0; i < 10000; i++) {
+            filter.put(i);
+        }
+        int falsePositives = 0;
+        for (long i = 10000; i < 110000; i++) {
+            if (filter.mightContain(i)) {
+                falsePositives++;
+            }
+        }
+        // 1% expected, of 100000 lookups
+        assertThat(falsePositives).isLessThan(1500);
+    }
+
+    @Test
+    public void testSizing() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        // about 9.6 bits and 7 hash functions per hash for 1%
+        assertThat(filter.getBits()).isGreaterThanOrEqualTo(9586L);
+        assertThat(filter.getHashFunctions()).isEqualTo(7);
+    }
+}
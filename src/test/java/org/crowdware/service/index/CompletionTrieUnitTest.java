@@ -0,0 +1,114 @@
+package org.crowdware.service.index;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the CompletionTrie.
+ *
+ * @see CompletionTrie
+ */
+public class CompletionTrieUnitTest {
+
+    @Test
+    public void testHeaviestCompletionsFirst() {
+        CompletionTrie trie = new CompletionTrie.Builder()
+            .add("spotify", "Spotify", 5)
+            .add("spot", "Spot", 1)
+            .add("spotlight", "Spotlight", 9)
+            .add("sound", "Sound", 3)
+            .add("deezer", "Deezer", 7)
+            .build();
+
+        assertThat(texts(trie.complete("sp", 10))).containsExactly("Spotlight", "Spotify", "Spot");
+        assertThat(texts(trie.complete("spot", 2))).containsExactly("Spotlight", "Spotify");
+        assertThat(texts(trie.complete("", 3))).containsExactly("Spotlight", "Deezer", "Spotify");
+        assertThat(texts(trie.complete("spotif", 10))).containsExactly("Spotify");
+        assertThat(texts(trie.complete("spotify", 10))).containsExactly("Spotify");
+    }
+
+    @Test
+    public void testNoCompletion() {
+        CompletionTrie trie = new CompletionTrie.Builder().add("spotify", "Spotify", 1).build();
+
+        assertThat(trie.complete("spotx", 10)).isEmpty();
+        assertThat(trie.complete("spotify music", 10)).isEmpty();
+        assertThat(trie.complete("d", 10)).isEmpty();
+        assertThat(trie.complete("s", 0)).isEmpty();
+        assertThat(CompletionTrie.empty().complete("", 10)).isEmpty();
+    }
+
+    @Test
+    public void testDuplicateKeysAreMerged() {
+        CompletionTrie trie = new CompletionTrie.Builder()
+            .add("spotify", "spotify", 2)
+            .add("spotify", "Spotify", 3)
+            .build();
+
+        List<CompletionTrie.Completion> completions = trie.complete("spo", 10);
+        assertThat(trie.size()).isEqualTo(1);
+        assertThat(texts(completions)).containsExactly("Spotify");
+        assertThat(completions.get(0).getWeight()).isEqualTo(5);
+    }
+
+    @Test
+    public void testTiesInKeyOrder() {
+        CompletionTrie trie = new CompletionTrie.Builder()
+            .add("b", "B", 1)
+            .add("ab", "AB", 1)
+            .add("a", "A", 1)
+            .build();
+
+        assertThat(texts(trie.complete("", 10))).containsExactly("A", "AB", "B");
+    }
+
+    @Test
+    public void testSameAsFullScan() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            CompletionTrie.Builder builder = new CompletionTrie.Builder();
+            Map<String, Long> weights = new HashMap<>();
+            for (int i = random.nextInt(50); i > 0; i--) {
+                String key = randomKey(random, 6);
+                long weight = random.nextInt(10);
+                builder.add(key, key, weight);
+                weights.merge(key, weight, Long::sum);
+            }
+            CompletionTrie trie = builder.build();
+            String prefix = randomKey(random, 3);
+            int limit = 1 + random.nextInt(8);
+
+            List<String> expected = weights.entrySet().stream()
+                .filter(entry -> entry.getKey().startsWith(prefix))
+                .sorted(Comparator.comparing((Map.Entry<String, Long> entry) -> -entry.getValue())
+                    .thenComparing(Map.Entry::getKey))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+            assertThat(texts(trie.complete(prefix, limit))).as("prefix %s of %s", prefix, weights).isEqualTo(expected);
+        }
+    }
+
+    private static String randomKey(Random random, int maxLength) {
+        StringBuilder key = new StringBuilder();
+        for (int i = random.nextInt(maxLength); i > 0; i--) {
+            key.append((char) ('a' + random.nextInt(3)));
+        }
+        return key.toString();
+    }
+
+    private static List<String> texts(List<CompletionTrie.Completion> completions) {
+        List<String> texts = new ArrayList<>();
+        completions.forEach(completion -> texts.add(completion.getText()));
+        return texts;
+    }
+}
@@ -0,0 +1,89 @@
+package org.crowdware.service.index;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the IdBitmap.
+ *
+ * @see IdBitmap
+ */
+public class IdBitmapUnitTest {
+
+    @Test
+    public void testAddRemoveContains() {
+        IdBitmap bitmap = new IdBitmap();
+        bitmap.add(1L);
+        bitmap.add(70000L);
+        bitmap.add(1L);
+        assertThat(bitmap.cardinality()).isEqualTo(2);
+        assertThat(bitmap.contains(70000L)).isTrue();
+        assertThat(bitmap.contains(2L)).isFalse();
+
+        bitmap.remove(70000L);
+        assertThat(bitmap.toList(0, 10)).containsExactly(1L);
+        bitmap.remove(1L);
+        assertThat(bitmap.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testDenseContainers() {
+        IdBitmap bitmap = new IdBitmap();
+        for (long id = 0; id < 100000; id++) {
+            bitmap.add(id);
+        }
+        for (long id = 0; id < 100000; id += 2) {
+            bitmap.remove(id);
+        }
+        assertThat(bitmap.cardinality()).isEqualTo(50000);
+        assertThat(bitmap.contains(99999L)).isTrue();
+        assertThat(bitmap.contains(99998L)).isFalse();
+        assertThat(bitmap.toList(1000, 3)).containsExactly(2001L, 2003L, 2005L);
+    }
+
+    @Test
+    public void testSetOperationsAgainstTreeSet() {
+        Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            int range = round % 2 == 0 ? 70000 : 5000000;
+            TreeSet<Long> a = new TreeSet<>();
+            TreeSet<Long> b = new TreeSet<>();
+            for (int i = 0; i < 10000; i++) {
+                a.add((long) random.nextInt(range));
+                b.add((long) random.nextInt(range));
+            }
+            IdBitmap bitmapA = toBitmap(a);
+            IdBitmap bitmapB = toBitmap(b);
+
+            TreeSet<Long> and = new TreeSet<>(a);
+            and.retainAll(b);
+            assertThat(toList(IdBitmap.and(bitmapA, bitmapB))).isEqualTo(new ArrayList<>(and));
+
+            TreeSet<Long> or = new TreeSet<>(a);
+            or.addAll(b);
+            assertThat(toList(IdBitmap.or(bitmapA, bitmapB))).isEqualTo(new ArrayList<>(or));
+
+            TreeSet<Long> andNot = new TreeSet<>(a);
+            andNot.removeAll(b);
+            assertThat(toList(IdBitmap.andNot(bitmapA, bitmapB))).isEqualTo(new ArrayList<>(andNot));
+
+            assertThat(toList(bitmapA)).isEqualTo(new ArrayList<>(a));
+        }
+    }
+
+    private static IdBitmap toBitmap(TreeSet<Long> ids) {
+        IdBitmap bitmap = new IdBitmap();
+        ids.forEach(bitmap::add);
+        return bitmap;
+    }
+
+    private static List<Long> toList(IdBitmap bitmap) {
+        return bitmap.toList(0, Integer.MAX_VALUE);
+    }
+}
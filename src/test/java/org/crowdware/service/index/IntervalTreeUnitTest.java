@@ -0,0 +1,84 @@
+package org.crowdware.service.index;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the IntervalTree.
+ *
+ * @see IntervalTree
+ */
+public class IntervalTreeUnitTest {
+
+    private IntervalTree tree;
+
+    @Before
+    public void init() {
+        tree = new IntervalTree();
+    }
+
+    @Test
+    public void testFindContainingIsHalfOpen() {
+        tree.put(1L, 10L, 20L);
+        assertThat(tree.findContaining(9L)).isEmpty();
+        assertThat(tree.findContaining(10L)).containsExactly(1L);
+        assertThat(tree.findContaining(19L)).containsExactly(1L);
+        assertThat(tree.findContaining(20L)).isEmpty();
+    }
+
+    @Test
+    public void testFindOverlapping() {
+        tree.put(1L, 0L, 10L);
+        tree.put(2L, 5L, 15L);
+        tree.put(3L, 20L, 30L);
+        assertThat(tree.findOverlapping(10L, 20L)).containsExactly(2L);
+        assertThat(tree.findOverlapping(0L, 100L)).containsExactly(1L, 2L, 3L);
+        assertThat(tree.findOverlapping(15L, 20L)).isEmpty();
+        assertThat(tree.findOverlapping(20L, 10L)).isEmpty();
+    }
+
+    @Test
+    public void testPutReplacesAndRemove() {
+        tree.put(1L, 0L, 10L);
+        tree.put(1L, 50L, 60L);
+        assertThat(tree.size()).isEqualTo(1);
+        assertThat(tree.findContaining(5L)).isEmpty();
+        assertThat(tree.findContaining(55L)).containsExactly(1L);
+
+        assertThat(tree.remove(1L)).isTrue();
+        assertThat(tree.remove(1L)).isFalse();
+        assertThat(tree.findContaining(55L)).isEmpty();
+    }
+
+    @Test
+    public void testAgainstLinearScan() {
+        Random random = new Random(42);
+        long[][] intervals = new long[2000][];
+        for (int i = 0; i < intervals.length; i++) {
+            long start = random.nextInt(100000);
+            intervals[i] = new long[]{start, start + random.nextInt(5000)};
+            tree.put(i, intervals[i][0], intervals[i][1]);
+        }
+        for (int i = 0; i < intervals.length; i += 3) {
+            tree.remove(i);
+            intervals[i] = null;
+        }
+        for (int q = 0; q < 200; q++) {
+            long from = random.nextInt(105000);
+            long to = from + 1 + random.nextInt(2000);
+            List<Long> expected = new ArrayList<>();
+            for (int i = 0; i < intervals.length; i++) {
+                if (intervals[i] != null && intervals[i][0] < to && intervals[i][1] > from) {
+                    expected.add((long) i);
+                }
+            }
+            assertThat(tree.findOverlapping(from, to)).containsOnlyElementsOf(expected).hasSameSizeAs(expected);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.crowdware.service.index;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the MinHashIndex.
+ *
+ * @see MinHashIndex
+ */
+public class MinHashIndexUnitTest {
+
+    private MinHashIndex index;
+
+    @Before
+    public void init() {
+        index = new MinHashIndex(16, 4);
+    }
+
+    @Test
+    public void testIdenticalSetsAreFullySimilar() {
+        index.put(1L, Arrays.asList("skill:java", "level:senior", "lang:en"));
+        index.put(2L, Arrays.asList("lang:en", "skill:java", "level:senior"));
+
+        List<MinHashIndex.Match> matches = index.similar(1L, 10, 100);
+        assertThat(ids(matches)).containsExactly(2L);
+        assertThat(matches.get(0).getSimilarity()).isEqualTo(1.0);
+    }
+
+    @Test
+    public void testDisjointSetsAreNotCandidates() {
+        index.put(1L, Arrays.asList("a", "b", "c", "d"));
+        index.put(2L, Arrays.asList("e", "f", "g", "h"));
+
+        assertThat(index.similar(1L, 10, 100)).isEmpty();
+    }
+
+    @Test
+    public void testMostSimilarFirst() {
+        List<String> base = features("f", 0, 20);
+        index.put(1L, base);
+        List<String> close = new ArrayList<>(base.subList(0, 18));
+        close.addAll(features("g", 0, 2));
+        index.put(2L, close);
+        List<String> far = new ArrayList<>(base.subList(0, 12));
+        far.addAll(features("h", 0, 8));
+        index.put(3L, far);
+
+        List<MinHashIndex.Match> matches = index.similar(1L, 10, 100);
+        assertThat(ids(matches).get(0)).isEqualTo(2L);
+        // the exact Jaccard similarity of the close set is 18 / 22
+        assertThat(Math.abs(matches.get(0).getSimilarity() - 18.0 / 22.0) < 0.2).isTrue();
+
+        assertThat(ids(index.similar(close, 1, 100))).containsExactly(2L);
+    }
+
+    @Test
+    public void testPutReplacesAndRemove() {
+        index.put(1L, Arrays.asList("a", "b"));
+        index.put(2L, Arrays.asList("a", "b"));
+        index.put(2L, Arrays.asList("x", "y"));
+        assertThat(index.similar(1L, 10, 100)).isEmpty();
+
+        index.put(3L, Arrays.asList("a", "b"));
+        index.remove(3L);
+        index.put(2L, Collections.emptyList());
+        assertThat(index.similar(1L, 10, 100)).isEmpty();
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testCandidatesAreCapped() {
+        for (long id = 1; id <= 50; id++) {
+            index.put(id, Arrays.asList("a", "b"));
+        }
+        assertThat(index.similar(1L, 100, 10).size()).isLessThan(12);
+        assertThat(index.similar(1L, 5, 100)).hasSize(5);
+    }
+
+    private static List<String> features(String prefix, int from, int to) {
+        List<String> features = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            features.add(prefix + i);
+        }
+        return features;
+    }
+
+    private static List<Long> ids(List<MinHashIndex.Match> matches) {
+        List<Long> ids = new ArrayList<>();
+        matches.forEach(match -> ids.add(match.getId()));
+        return ids;
+    }
+}
@@ -0,0 +1,60 @@
+package org.crowdware.service.index;
+
+import org.crowdware.domain.Money;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the PriceLevelBook.
+ *
+ * @see PriceLevelBook
+ */
+public class PriceLevelBookUnitTest {
+
+    private PriceLevelBook book;
+
+    @Before
+    public void init() {
+        book = new PriceLevelBook();
+        book.put(1L, Money.parse("10.00"));
+        book.put(2L, Money.parse("20.00"));
+        book.put(3L, Money.parse("10.0"));
+        book.put(4L, Money.parse("5.00"));
+    }
+
+    @Test
+    public void testTopIsHighestPriceThenFirstInFirstOut() {
+        assertThat(book.top(10)).containsExactly(2L, 1L, 3L, 4L);
+        assertThat(book.top(2)).containsExactly(2L, 1L);
+    }
+
+    @Test
+    public void testRangeIsInclusive() {
+        assertThat(book.range(Money.parse("10"), Money.parse("20"), 10)).containsExactly(2L, 1L, 3L);
+        assertThat(book.range(null, Money.parse("10"), 10)).containsExactly(1L, 3L, 4L);
+        assertThat(book.range(Money.parse("6"), null, 10)).containsExactly(2L, 1L, 3L);
+        assertThat(book.range(Money.parse("20"), Money.parse("10"), 10)).isEmpty();
+    }
+
+    @Test
+    public void testCountAboveIsExclusive() {
+        assertThat(book.countAbove(Money.parse("10"))).isEqualTo(1);
+        assertThat(book.countAbove(Money.parse("9.99"))).isEqualTo(3);
+        assertThat(book.countAbove(Money.ZERO)).isEqualTo(4);
+    }
+
+    @Test
+    public void testRepriceAndRemove() {
+        book.put(1L, Money.parse("30"));
+        assertThat(book.top(1)).containsExactly(1L);
+        book.put(3L, Money.parse("10.000"));
+        assertThat(book.range(Money.parse("10"), Money.parse("10"), 10)).containsExactly(3L);
+
+        assertThat(book.remove(1L)).isTrue();
+        assertThat(book.remove(1L)).isFalse();
+        assertThat(book.size()).isEqualTo(3);
+        assertThat(book.top(1)).containsExactly(2L);
+    }
+}
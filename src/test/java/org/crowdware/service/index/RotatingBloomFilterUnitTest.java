@@ -0,0 +1,41 @@
+package org.crowdware.service.index;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the RotatingBloomFilter.
+ *
+ * @see RotatingBloomFilter
+ */
+public class RotatingBloomFilterUnitTest {
+
+    @Test
+    public void testCheckAndPut() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(1000, 0.001, 1000, 0);
+        assertThat(filter.checkAndPut(1L, 0)).isFalse();
+        assertThat(filter.checkAndPut(1L, 10)).isTrue();
+        assertThat(filter.mightContain(2L, 10)).isFalse();
+    }
+
+    @Test
+    public void testHashesAreKeptBetweenOneAndTwoPeriods() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(1000, 0.001, 1000, 0);
+        filter.put(1L, 500);
+        filter.put(2L, 1500);
+        // the first generation is now the previous one, the second one started at 1500
+        assertThat(filter.mightContain(1L, 2499)).isTrue();
+        assertThat(filter.mightContain(2L, 2499)).isTrue();
+        // the first generation is dropped, the second one is now the previous one
+        assertThat(filter.mightContain(1L, 2500)).isFalse();
+        assertThat(filter.mightContain(2L, 2500)).isTrue();
+    }
+
+    @Test
+    public void testIdleFilterForgetsEverything() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(1000, 0.001, 1000, 0);
+        filter.put(1L, 0);
+        assertThat(filter.mightContain(1L, 5000)).isFalse();
+    }
+}
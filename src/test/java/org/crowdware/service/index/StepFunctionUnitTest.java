@@ -0,0 +1,91 @@
+package org.crowdware.service.index;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the StepFunction.
+ *
+ * @see StepFunction
+ */
+public class StepFunctionUnitTest {
+
+    private StepFunction function;
+
+    @Before
+    public void init() {
+        function = new StepFunction();
+    }
+
+    @Test
+    public void testValueAtIsHalfOpen() {
+        function.addInterval(10L, 20L);
+        function.addInterval(15L, 30L);
+        assertThat(function.valueAt(9L)).isEqualTo(0L);
+        assertThat(function.valueAt(10L)).isEqualTo(1L);
+        assertThat(function.valueAt(15L)).isEqualTo(2L);
+        assertThat(function.valueAt(20L)).isEqualTo(1L);
+        assertThat(function.valueAt(30L)).isEqualTo(0L);
+    }
+
+    @Test
+    public void testPeaks() {
+        function.addInterval(0L, 10L);
+        function.addInterval(5L, 15L);
+        function.addInterval(12L, 13L);
+        assertThat(function.peak(0L, 5L)).isEqualTo(1L);
+        assertThat(function.peak(0L, 6L)).isEqualTo(2L);
+        assertThat(function.peak(10L, 20L)).isEqualTo(2L);
+        assertThat(function.peaks(0L, 20L, 5L)).containsExactly(1L, 2L, 2L, 0L);
+        assertThat(function.peaks(0L, 7L, 5L)).containsExactly(1L, 2L);
+    }
+
+    @Test
+    public void testRemoveIntervalDropsChangePoints() {
+        function.addInterval(0L, 10L);
+        function.addInterval(10L, 20L);
+        // The end of the first interval and the start of the second one cancel out
+        assertThat(function.size()).isEqualTo(2);
+        assertThat(function.valueAt(10L)).isEqualTo(1L);
+        function.removeInterval(0L, 10L);
+        function.removeInterval(10L, 20L);
+        assertThat(function.isEmpty()).isTrue();
+        assertThat(function.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testAgainstLinearScan() {
+        Random random = new Random(42L);
+        List<long[]> intervals = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            if (!intervals.isEmpty() && random.nextInt(3) == 0) {
+                long[] removed = intervals.remove(random.nextInt(intervals.size()));
+                function.removeInterval(removed[0], removed[1]);
+            } else {
+                long start = random.nextInt(1000);
+                long[] interval = {start, start + 1 + random.nextInt(100)};
+                intervals.add(interval);
+                function.addInterval(interval[0], interval[1]);
+            }
+            long from = random.nextInt(1100);
+            long to = from + 1 + random.nextInt(200);
+            long peak = 0;
+            for (long t = from; t < to; t++) {
+                long value = 0;
+                for (long[] interval : intervals) {
+                    if (interval[0] <= t && t < interval[1]) {
+                        value++;
+                    }
+                }
+                peak = Math.max(peak, value);
+            }
+            assertThat(function.peak(from, to)).isEqualTo(peak);
+        }
+    }
+}
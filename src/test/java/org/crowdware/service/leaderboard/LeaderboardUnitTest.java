@@ -0,0 +1,66 @@
+package org.crowdware.service.leaderboard;
+
+import org.crowdware.domain.Money;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the Leaderboard.
+ *
+ * @see Leaderboard
+ */
+public class LeaderboardUnitTest {
+
+    @Test
+    public void testTopIsSortedByScoreThenUser() {
+        Leaderboard board = new Leaderboard();
+        board.add(1L, 500);
+        board.add(2L, 700);
+        board.add(3L, 500);
+        board.add(1L, 300);
+
+        List<LeaderboardStanding> top = board.top(10);
+        assertThat(top.stream().map(LeaderboardStanding::getUserId).collect(Collectors.toList())).containsExactly(1L, 2L, 3L);
+        assertThat(top.stream().map(LeaderboardStanding::getRank).collect(Collectors.toList())).containsExactly(1, 2, 3);
+        assertThat(top.get(0).getScore()).isEqualTo(Money.ofMinorUnits(800));
+        assertThat(board.top(2)).hasSize(2);
+    }
+
+    @Test
+    public void testUsersLeaveAtZero() {
+        Leaderboard board = new Leaderboard();
+        board.add(1L, 500);
+        assertThat(board.add(1L, -500)).isEqualTo(0L);
+        assertThat(board.size()).isEqualTo(0);
+        assertThat(board.top(10)).isEmpty();
+        assertThat(board.getScore(1L)).isEqualTo(0L);
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        Leaderboard board = new Leaderboard();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread < 4; thread++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    board.add(i % 10, 1);
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(board.size()).isEqualTo(10);
+        assertThat(board.top(20)).hasSize(10);
+        for (long userId = 0; userId < 10; userId++) {
+            assertThat(board.getScore(userId)).isEqualTo(4000L);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.crowdware.service.ledger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the PaymentLedger.
+ *
+ * @see PaymentLedger
+ */
+public class PaymentLedgerUnitTest {
+
+    private Path directory;
+
+    @Before
+    public void init() throws IOException {
+        directory = Files.createTempDirectory("ledger-test");
+    }
+
+    @After
+    public void cleanUp() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testAppendAndReopen() throws IOException {
+        try (PaymentLedger ledger = new PaymentLedger(directory, 4)) {
+            List<LedgerEntry> appended = ledger.append(Arrays.asList(
+                entry(LedgerEntry.Kind.PAYMENT, 1L, 10L, 100L, 150L),
+                entry(LedgerEntry.Kind.PAYMENT, 2L, 10L, 200L, 250L),
+                entry(LedgerEntry.Kind.REVERSAL, 1L, 10L, 100L, -150L)));
+            assertThat(sequences(appended)).containsExactly(1L, 2L, 3L);
+        }
+        try (PaymentLedger ledger = new PaymentLedger(directory, 4)) {
+            assertThat(ledger.getNextSequence()).isEqualTo(4L);
+            List<LedgerEntry> byUser = ledger.findByUser(100L);
+            assertThat(sequences(byUser)).containsExactly(1L, 3L);
+            assertThat(byUser.get(1).getKind()).isEqualTo(LedgerEntry.Kind.REVERSAL);
+            assertThat(byUser.get(1).getAmountInCents()).isEqualTo(-150L);
+            assertThat(sequences(ledger.findByJob(10L))).containsExactly(1L, 2L, 3L);
+            assertThat(ledger.findByJob(11L)).isEmpty();
+        }
+    }
+
+    @Test
+    public void testSegmentsRollOver() throws IOException {
+        try (PaymentLedger ledger = new PaymentLedger(directory, 2)) {
+            for (long i = 1; i <= 5; i++) {
+                ledger.append(Arrays.asList(entry(LedgerEntry.Kind.PAYMENT, i, 10L, 100L, i)));
+            }
+            assertThat(ledger.getSegmentCount()).isEqualTo(3);
+        }
+        try (PaymentLedger ledger = new PaymentLedger(directory, 2)) {
+            List<Long> seen = new ArrayList<>();
+            ledger.forEach(entry -> seen.add(entry.getSequence()));
+            assertThat(seen).containsExactly(1L, 2L, 3L, 4L, 5L);
+            assertThat(sequences(ledger.findByUser(100L))).containsExactly(1L, 2L, 3L, 4L, 5L);
+        }
+    }
+
+    @Test
+    public void testTornRecordIsErased() throws IOException {
+        try (PaymentLedger ledger = new PaymentLedger(directory, 4)) {
+            ledger.append(Arrays.asList(
+                entry(LedgerEntry.Kind.PAYMENT, 1L, 10L, 100L, 150L),
+                entry(LedgerEntry.Kind.PAYMENT, 2L, 10L, 100L, 250L)));
+        }
+        Path segment = directory.resolve(String.format("%020d.ledger", 1L));
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            // flip a byte of the amount of the second record
+            long position = LedgerSegment.HEADER_SIZE + LedgerEntry.SIZE + 40;
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xFF);
+        }
+        try (PaymentLedger ledger = new PaymentLedger(directory, 4)) {
+            assertThat(ledger.getNextSequence()).isEqualTo(2L);
+            List<LedgerEntry> appended = ledger.append(Arrays.asList(entry(LedgerEntry.Kind.PAYMENT, 3L, 10L, 100L, 350L)));
+            assertThat(sequences(appended)).containsExactly(2L);
+        }
+        try (PaymentLedger ledger = new PaymentLedger(directory, 4)) {
+            List<LedgerEntry> entries = ledger.findByUser(100L);
+            assertThat(sequences(entries)).containsExactly(1L, 2L);
+            assertThat(entries.get(1).getPaymentId()).isEqualTo(3L);
+        }
+    }
+
+    @Test
+    public void testCorruptedSealedSegmentFailsTheOpening() throws IOException {
+        try (PaymentLedger ledger = new PaymentLedger(directory, 1)) {
+            ledger.append(Arrays.asList(
+                entry(LedgerEntry.Kind.PAYMENT, 1L, 10L, 100L, 150L),
+                entry(LedgerEntry.Kind.PAYMENT, 2L, 10L, 100L, 250L)));
+        }
+        Path first = directory.resolve(String.format("%020d.ledger", 1L));
+        try (RandomAccessFile file = new RandomAccessFile(first.toFile(), "rw")) {
+            file.seek(LedgerSegment.HEADER_SIZE + 40);
+            file.write(0x7F);
+        }
+        boolean failed = false;
+        try {
+            new PaymentLedger(directory, 1).close();
+        } catch (IOException e) {
+            failed = true;
+        }
+        assertThat(failed).isTrue();
+    }
+
+    private static LedgerEntry entry(LedgerEntry.Kind kind, long paymentId, long jobId, long userId, long cents) {
+        return new LedgerEntry(0L, 0L, kind, paymentId, jobId, userId, cents, LedgerEntry.NO_DATE);
+    }
+
+    private static List<Long> sequences(List<LedgerEntry> entries) {
+        List<Long> sequences = new ArrayList<>();
+        entries.forEach(entry -> sequences.add(entry.getSequence()));
+        return sequences;
+    }
+}
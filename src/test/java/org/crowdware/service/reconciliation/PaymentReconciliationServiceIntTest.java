@@ -0,0 +1,144 @@
+package org.crowdware.service.reconciliation;
+
+import org.crowdware.CrowdwareApp;
+import org.crowdware.domain.Job;
+import org.crowdware.domain.Money;
+import org.crowdware.domain.Payment;
+import org.crowdware.domain.User;
+import org.crowdware.repository.JobRepository;
+import org.crowdware.repository.PaymentRepository;
+import org.crowdware.repository.UserRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.IntegrationTest;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.inject.Inject;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the PaymentReconciliationService.
+ *
+ * @see PaymentReconciliationService
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = CrowdwareApp.class)
+@WebAppConfiguration
+@IntegrationTest
+@Transactional
+public class PaymentReconciliationServiceIntTest {
+
+    private static final long UNKNOWN_PAYMENT_ID = 999999999L;
+
+    @Inject
+    private PaymentRepository paymentRepository;
+
+    @Inject
+    private JobRepository jobRepository;
+
+    @Inject
+    private UserRepository userRepository;
+
+    @Inject
+    private PaymentReconciliationService paymentReconciliationService;
+
+    @Test
+    public void testReconcile() throws Exception {
+        User user = userRepository.findOneByLogin("user").get();
+        Job job = new Job();
+        job.setOffer(Money.parse("10"));
+        jobRepository.saveAndFlush(job);
+        Payment matched = createPayment(job, user, "1.00");
+        Payment wrongAmount = createPayment(job, user, "2.00");
+        Payment unsettled = createPayment(job, user, "3.00");
+
+        Path settlementFile = Files.createTempFile("settlement", ".csv");
+        try {
+            // the columns of the payment export, in another order
+            Files.write(settlementFile, Arrays.asList(
+                "userId,jobId,id,time,amount",
+                user.getId() + "," + job.getId() + "," + matched.getId() + ",2016-03-01,1.00",
+                user.getId() + "," + job.getId() + "," + wrongAmount.getId() + ",2016-03-01,2.50",
+                user.getId() + "," + job.getId() + "," + UNKNOWN_PAYMENT_ID + ",2016-03-01,4.00"),
+                StandardCharsets.UTF_8);
+
+            ReconciliationReport report = paymentReconciliationService.reconcile(settlementFile);
+
+            assertThat(report.getSettlementPayments()).isEqualTo(3);
+            assertThat(report.getDatabasePayments()).isGreaterThanOrEqualTo(3);
+            assertThat(report.getMatched()).isEqualTo(1);
+            assertThat(report.getMismatchCount(ReconciliationReport.Mismatch.AMOUNT)).isEqualTo(1);
+            assertThat(report.getMismatchCount(ReconciliationReport.Mismatch.MISSING_IN_DATABASE)).isEqualTo(1);
+            assertThat(report.getMismatchCount(ReconciliationReport.Mismatch.MISSING_IN_SETTLEMENT)).isGreaterThanOrEqualTo(1);
+
+            List<String> lines = Files.readAllLines(Paths.get(report.getReportFile()), StandardCharsets.UTF_8);
+            assertThat(lines.get(0)).startsWith("paymentId,mismatch,");
+            assertThat(lines).contains(
+                wrongAmount.getId() + ",AMOUNT," + job.getId() + "," + user.getId() + ",2.00," + job.getId() + "," + user.getId() + ",2.50",
+                unsettled.getId() + ",MISSING_IN_SETTLEMENT," + job.getId() + "," + user.getId() + ",3.00,,,",
+                UNKNOWN_PAYMENT_ID + ",MISSING_IN_DATABASE,,,," + job.getId() + "," + user.getId() + ",4.00");
+            assertThat(lines.stream().noneMatch(line -> line.startsWith(matched.getId() + ","))).isTrue();
+        } finally {
+            Files.delete(settlementFile);
+        }
+    }
+
+    @Test
+    public void testReconcileAcrossUsers() throws Exception {
+        User user = userRepository.findOneByLogin("user").get();
+        User admin = userRepository.findOneByLogin("admin").get();
+        Job job = new Job();
+        job.setOffer(Money.parse("10"));
+        jobRepository.saveAndFlush(job);
+        Payment wrongUser = createPayment(job, user, "5.00");
+        Payment duplicated = createPayment(job, user, "6.00");
+
+        Path settlementFile = Files.createTempFile("settlement", ".csv");
+        try {
+            // the payment of another user, and a payment settled for two users
+            Files.write(settlementFile, Arrays.asList(
+                "id,amount,time,jobId,userId",
+                wrongUser.getId() + ",5.00,2016-03-01," + job.getId() + "," + admin.getId(),
+                duplicated.getId() + ",6.00,2016-03-01," + job.getId() + "," + admin.getId(),
+                duplicated.getId() + ",6.00,2016-03-01," + job.getId() + "," + user.getId()),
+                StandardCharsets.UTF_8);
+
+            ReconciliationReport report = paymentReconciliationService.reconcile(settlementFile);
+
+            assertThat(report.getSettlementPayments()).isEqualTo(3);
+            assertThat(report.getMatched()).isEqualTo(1);
+            assertThat(report.getMismatchCount(ReconciliationReport.Mismatch.COUNTERPART)).isEqualTo(1);
+            assertThat(report.getMismatchCount(ReconciliationReport.Mismatch.DUPLICATE_IN_SETTLEMENT)).isEqualTo(1);
+            assertThat(report.getMismatchCount(ReconciliationReport.Mismatch.MISSING_IN_DATABASE)).isEqualTo(0);
+
+            List<String> lines = Files.readAllLines(Paths.get(report.getReportFile()), StandardCharsets.UTF_8);
+            assertThat(lines).contains(
+                wrongUser.getId() + ",COUNTERPART," + job.getId() + "," + user.getId() + ",5.00," + job.getId() + "," + admin.getId() + ",5.00",
+                duplicated.getId() + ",DUPLICATE_IN_SETTLEMENT,,,," + job.getId() + "," + user.getId() + ",6.00");
+            assertThat(lines.stream().noneMatch(line -> line.startsWith(wrongUser.getId() + ",MISSING_"))).isTrue();
+            assertThat(lines.stream().noneMatch(line -> line.startsWith(duplicated.getId() + ",MISSING_"))).isTrue();
+        } finally {
+            Files.delete(settlementFile);
+        }
+    }
+
+    private Payment createPayment(Job job, User user, String amount) {
+        Payment payment = new Payment();
+        payment.setJob(job);
+        payment.setUser(user);
+        payment.setAmount(Money.parse(amount));
+        payment.setTime(LocalDate.parse("2016-03-01"));
+        return paymentRepository.saveAndFlush(payment);
+    }
+}
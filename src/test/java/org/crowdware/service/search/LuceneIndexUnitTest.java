@@ -0,0 +1,150 @@
+package org.crowdware.service.search;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the LuceneIndex.
+ *
+ * @see LuceneIndex
+ */
+public class LuceneIndexUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+
+    private LuceneIndex index;
+
+    @Before
+    public void setup() throws Exception {
+        directory = new File(folder.getRoot(), "app");
+        index = new LuceneIndex(directory, 16);
+    }
+
+    @After
+    public void close() throws Exception {
+        index.close();
+    }
+
+    @Test
+    public void testSearchAfterRefresh() throws Exception {
+        index.update(sources(1L, "Spotify Music", 2L, "Deezer Music"));
+        assertThat(index.search("spotify", 0, 10, null).getTotal()).isEqualTo(0);
+
+        index.refresh();
+        LuceneIndex.Hits hits = index.search("spotify", 0, 10, null);
+        assertThat(hits.getTotal()).isEqualTo(1);
+        assertThat(hits.getSources()).containsExactly(source(1L, "Spotify Music"));
+        assertThat(index.search("name:deezer", 0, 10, null).getSources()).containsExactly(source(2L, "Deezer Music"));
+        assertThat(index.search("music", 0, 10, null).getTotal()).isEqualTo(2);
+    }
+
+    @Test
+    public void testUpdateAndDelete() throws Exception {
+        index.update(sources(1L, "Spotify", 2L, "Deezer"));
+        index.update(sources(1L, "Tidal"));
+        index.delete(Collections.singletonList(2L));
+        index.refresh();
+
+        assertThat(index.search("spotify", 0, 10, null).getTotal()).isEqualTo(0);
+        assertThat(index.search("deezer", 0, 10, null).getTotal()).isEqualTo(0);
+        assertThat(index.search("*", 0, 10, null).getSources()).containsExactly(source(1L, "Tidal"));
+    }
+
+    @Test
+    public void testPagesSortedById() throws Exception {
+        index.update(sources(3L, "c", 1L, "a", 2L, "b"));
+        index.refresh();
+
+        LuceneIndex.Hits page = index.search("*", 1, 1, LuceneIndex.byId(false));
+        assertThat(page.getTotal()).isEqualTo(3);
+        assertThat(page.getSources()).containsExactly(source(2L, "b"));
+        assertThat(index.search("*", 0, 10, LuceneIndex.byId(true)).getSources())
+            .containsExactly(source(3L, "c"), source(2L, "b"), source(1L, "a"));
+        assertThat(index.search("*", 0, 0, null).getSources()).isEmpty();
+    }
+
+    @Test
+    public void testSearchAfter() throws Exception {
+        index.update(sources(3L, "Spotify Music", 1L, "Deezer Music", 2L, "Tidal", 4L, "Napster Music"));
+        index.refresh();
+
+        assertThat(index.searchAfter("music", null, 2).getSources())
+            .containsExactly(source(1L, "Deezer Music"), source(3L, "Spotify Music"));
+        assertThat(index.searchAfter("music", 1L, 2).getSources())
+            .containsExactly(source(3L, "Spotify Music"), source(4L, "Napster Music"));
+        assertThat(index.searchAfter("music", 4L, 2).getSources()).isEmpty();
+    }
+
+    @Test
+    public void testDocumentsSurviveReopening() throws Exception {
+        index.update(sources(1L, "Spotify"));
+        index.close();
+
+        index = new LuceneIndex(directory, 16);
+        assertThat(index.search("spotify", 0, 10, null).getSources()).containsExactly(source(1L, "Spotify"));
+    }
+
+    @Test
+    public void testRebuildKeepsNewerWrites() throws Exception {
+        index.update(sources(1L, "Spotify", 3L, "Deezer"));
+        LuceneIndex.Builder builder = index.rebuild();
+        index.update(sources(1L, "Tidal"));
+        index.delete(Collections.singletonList(3L));
+        builder.add(sources(1L, "Spotify", 2L, "Napster", 3L, "Deezer"));
+        index.refresh();
+        assertThat(index.search("napster", 0, 10, null).getTotal()).isEqualTo(0);
+
+        builder.publish();
+        assertThat(index.search("*", 0, 10, LuceneIndex.byId(false)).getSources())
+            .containsExactly(source(1L, "Tidal"), source(2L, "Napster"));
+        assertThat(directory.listFiles(File::isDirectory)).extracting(File::getName).containsExactly(builder.getName());
+
+        index.close();
+        index = new LuceneIndex(directory, 16);
+        assertThat(index.search("*", 0, 10, null).getTotal()).isEqualTo(2);
+    }
+
+    @Test
+    public void testDiscardedRebuild() throws Exception {
+        index.update(sources(1L, "Spotify"));
+        LuceneIndex.Builder builder = index.rebuild();
+        builder.add(sources(2L, "Napster"));
+        builder.discard();
+
+        index.update(sources(3L, "Deezer"));
+        index.refresh();
+        assertThat(index.search("*", 0, 10, LuceneIndex.byId(false)).getSources())
+            .containsExactly(source(1L, "Spotify"), source(3L, "Deezer"));
+        assertThat(directory.listFiles(File::isDirectory)).hasSize(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidQuery() throws Exception {
+        index.search("name:(spotify", 0, 10, null);
+    }
+
+    private static Map<Long, String> sources(Object... idsAndNames) {
+        Map<Long, String> sources = new LinkedHashMap<>();
+        for (int i = 0; i < idsAndNames.length; i += 2) {
+            sources.put((Long) idsAndNames[i], source((Long) idsAndNames[i], (String) idsAndNames[i + 1]));
+        }
+        return sources;
+    }
+
+    private static String source(Long id, String name) {
+        return "{\"id\":" + id + ",\"name\":\"" + name + "\"}";
+    }
+}
@@ -0,0 +1,15 @@
+package org.crowdware.service.search;
+
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Runs the tests of the SearchReindexer on the lucene search backend, in a context of its own which is closed afterwards.
+ * The indices start empty, like those of Elasticsearch in the tests.
+ *
+ * @see LuceneSearchBackend
+ */
+@TestPropertySource(properties = { "crowdware.search.backend=lucene", "crowdware.search.lucene.reindexOnStartup=false" })
+@DirtiesContext
+public class LuceneSearchReindexerIntTest extends SearchReindexerIntTest {
+}
@@ -0,0 +1,37 @@
+package org.crowdware.service.search;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the SearchCursor.
+ *
+ * @see SearchCursor
+ */
+public class SearchCursorUnitTest {
+
+    @Test
+    public void testRoundTrip() {
+        String value = SearchCursor.after(42L).toString();
+        assertThat(value).matches("[A-Za-z0-9_-]+");
+        assertThat(SearchCursor.parse(value).getAfterId()).isEqualTo(42L);
+    }
+
+    @Test
+    public void testStart() {
+        assertThat(SearchCursor.parse(null).getAfterId()).isNull();
+        assertThat(SearchCursor.parse("").getAfterId()).isNull();
+        assertThat(SearchCursor.parse("").toString()).isEmpty();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCursor() {
+        SearchCursor.parse("notacursor");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidId() {
+        SearchCursor.parse("YWZ0ZXI6eA");
+    }
+}
@@ -0,0 +1,146 @@
+package org.crowdware.service.search;
+
+import org.crowdware.CrowdwareApp;
+import org.crowdware.domain.App;
+import org.crowdware.domain.SearchOutboxEvent;
+import org.crowdware.domain.enumeration.SearchEntityType;
+import org.crowdware.repository.AppRepository;
+import org.crowdware.repository.SearchOutboxEventRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.IntegrationTest;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.inject.Inject;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the SearchOutboxService and the SearchIndexer.
+ *
+ * @see SearchIndexer
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = CrowdwareApp.class)
+@WebAppConfiguration
+@IntegrationTest
+@Transactional
+public class SearchIndexerIntTest {
+
+    @Inject
+    private AppRepository appRepository;
+
+    @Inject
+    private SearchBackend searchBackend;
+
+    @Inject
+    private SearchOutboxEventRepository searchOutboxEventRepository;
+
+    @Inject
+    private SearchOutboxService searchOutboxService;
+
+    @Inject
+    private SearchIndexer searchIndexer;
+
+    @Test
+    public void testIndexLatestState() {
+        App app = new App();
+        app.setName("AAA");
+        app.setSource("AAAAA");
+        app.setVersion(1);
+        appRepository.saveAndFlush(app);
+        searchOutboxService.enqueue(SearchEntityType.APP, app.getId());
+        app.setVersion(2);
+        appRepository.saveAndFlush(app);
+        searchOutboxService.enqueue(SearchEntityType.APP, Arrays.asList(app.getId(), app.getId()));
+
+        // Nothing is indexed before the outbox is drained
+        assertThat(findIndexed(app.getId())).isEmpty();
+        assertThat(findEvents(app.getId())).hasSize(2);
+
+        searchIndexer.indexBatch();
+
+        assertThat(findEvents(app.getId())).isEmpty();
+        assertThat(findIndexed(app.getId())).extracting("version").containsExactly(2);
+    }
+
+    @Test
+    public void testDeleteMissingEntity() {
+        App app = new App();
+        app.setName("AAA");
+        app.setSource("AAAAA");
+        app.setVersion(1);
+        appRepository.saveAndFlush(app);
+        searchBackend.index(App.class, Collections.singletonMap(app.getId(), app));
+
+        appRepository.delete(app.getId());
+        searchOutboxService.enqueue(SearchEntityType.APP, app.getId());
+        searchIndexer.indexBatch();
+
+        assertThat(findEvents(app.getId())).isEmpty();
+        assertThat(findIndexed(app.getId())).isEmpty();
+    }
+
+    @Test
+    public void testSkipEventsClaimedByAnotherNode() {
+        App app = new App();
+        app.setName("AAA");
+        app.setSource("AAAAA");
+        app.setVersion(1);
+        appRepository.saveAndFlush(app);
+        searchOutboxService.enqueue(SearchEntityType.APP, app.getId());
+
+        // Another node leased the event
+        SearchOutboxEvent event = findEvents(app.getId()).get(0);
+        event.setClaimId("another-node");
+        event.setNextAttempt(ZonedDateTime.now().plusMinutes(1));
+        searchOutboxEventRepository.saveAndFlush(event);
+        searchIndexer.indexBatch();
+
+        assertThat(findEvents(app.getId())).hasSize(1);
+        assertThat(findIndexed(app.getId())).isEmpty();
+    }
+
+    @Test
+    public void testSkipEntitiesLeasedToAnotherNode() {
+        App app = new App();
+        app.setName("AAA");
+        app.setSource("AAAAA");
+        app.setVersion(1);
+        appRepository.saveAndFlush(app);
+        searchOutboxService.enqueue(SearchEntityType.APP, app.getId());
+
+        // Another node leased the first event, and may still be indexing the first version
+        SearchOutboxEvent event = findEvents(app.getId()).get(0);
+        event.setClaimId("another-node");
+        event.setNextAttempt(ZonedDateTime.now().plusMinutes(1));
+        searchOutboxEventRepository.saveAndFlush(event);
+        app.setVersion(2);
+        appRepository.saveAndFlush(app);
+        searchOutboxService.enqueue(SearchEntityType.APP, app.getId());
+        searchIndexer.indexBatch();
+
+        // The later event waits for the lease of the entity to end
+        assertThat(findEvents(app.getId())).hasSize(2);
+        assertThat(findIndexed(app.getId())).isEmpty();
+    }
+
+    private List<App> findIndexed(Long id) {
+        searchBackend.refresh(App.class);
+        return searchBackend.searchAfter(App.class, "id:" + id, null, 10);
+    }
+
+    private List<SearchOutboxEvent> findEvents(Long appId) {
+        return searchOutboxEventRepository.findAll().stream()
+            .filter(event -> event.getEntityType() == SearchEntityType.APP && event.getEntityId().equals(appId))
+            .collect(Collectors.toList());
+    }
+}
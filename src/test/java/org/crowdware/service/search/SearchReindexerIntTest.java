@@ -0,0 +1,122 @@
+package org.crowdware.service.search;
+
+import org.crowdware.CrowdwareApp;
+import org.crowdware.domain.App;
+import org.crowdware.domain.enumeration.SearchEntityType;
+import org.crowdware.repository.AppRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.IntegrationTest;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import javax.inject.Inject;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the SearchReindexer.
+ * <p>
+ * The rebuild reads the committed rows with its own persistence contexts, so this test is not transactional and
+ * deletes its rows itself.
+ *
+ * @see SearchReindexer
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = CrowdwareApp.class)
+@WebAppConfiguration
+@IntegrationTest
+public class SearchReindexerIntTest {
+
+    @Inject
+    private AppRepository appRepository;
+
+    @Inject
+    private SearchBackend searchBackend;
+
+    @Inject
+    private SearchReindexer searchReindexer;
+
+    @Test
+    public void testReindex() {
+        App app = new App();
+        app.setName("AAA");
+        app.setSource("AAAAA");
+        app.setVersion(1);
+        appRepository.saveAndFlush(app);
+        try {
+            searchBackend.delete(App.class, Collections.singletonList(app.getId()));
+
+            ReindexStatus first = searchReindexer.reindex(Collections.singletonList(SearchEntityType.APP));
+            assertThat(first.getError()).isNull();
+            assertThat(first.isRunning()).isFalse();
+            assertThat(first.getDocuments()).isEqualTo(first.getTotalDocuments());
+            assertThat(first.getIndices().get("app")).startsWith("app_");
+            assertThat(findIndexed(app.getId())).extracting("name").containsExactly("AAA");
+
+            // A second rebuild moves the alias again
+            ReindexStatus second = searchReindexer.reindex(Collections.singletonList(SearchEntityType.APP));
+            assertThat(second.getError()).isNull();
+            assertThat(second.getIndices().get("app")).isNotEqualTo(first.getIndices().get("app"));
+            assertThat(findIndexed(app.getId())).extracting("name").containsExactly("AAA");
+        } finally {
+            appRepository.delete(app.getId());
+            searchBackend.delete(App.class, Collections.singletonList(app.getId()));
+        }
+    }
+
+    @Test
+    public void testDeleteDuringRebuild() {
+        App app = new App();
+        app.setName("AAA");
+        app.setSource("AAAAA");
+        app.setVersion(1);
+        appRepository.saveAndFlush(app);
+        appRepository.delete(app.getId());
+
+        // The rebuild copied the app, then the delete was indexed
+        SearchBackend.IndexBuilder builder = searchBackend.rebuild(App.class);
+        try {
+            builder.add(Collections.singletonMap(app.getId(), app));
+            searchBackend.delete(App.class, Collections.singletonList(app.getId()));
+            builder.publish();
+        } catch (RuntimeException e) {
+            builder.discard();
+            throw e;
+        }
+
+        assertThat(findIndexed(app.getId())).isEmpty();
+    }
+
+    @Test
+    public void testRemoveDeletedWhileCopied() {
+        App app = new App();
+        app.setName("AAA");
+        app.setSource("AAAAA");
+        app.setVersion(1);
+        appRepository.saveAndFlush(app);
+        appRepository.delete(app.getId());
+
+        // The rebuild read the app before it was deleted, and its check after the copy no longer finds it
+        SearchBackend.IndexBuilder builder = searchBackend.rebuild(App.class);
+        try {
+            searchBackend.delete(App.class, Collections.singletonList(app.getId()));
+            builder.add(Collections.singletonMap(app.getId(), app));
+            builder.remove(Collections.singletonList(app.getId()));
+            builder.publish();
+        } catch (RuntimeException e) {
+            builder.discard();
+            throw e;
+        }
+
+        assertThat(findIndexed(app.getId())).isEmpty();
+    }
+
+    private List<App> findIndexed(Long id) {
+        searchBackend.refresh(App.class);
+        return searchBackend.searchAfter(App.class, "id:" + id, null, 10);
+    }
+}
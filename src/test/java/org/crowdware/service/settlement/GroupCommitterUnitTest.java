@@ -0,0 +1,115 @@
+package org.crowdware.service.settlement;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the GroupCommitter.
+ *
+ * @see GroupCommitter
+ */
+public class GroupCommitterUnitTest {
+
+    @Test
+    public void testItemsAreCommittedInGroups() throws Exception {
+        List<Integer> groupSizes = Collections.synchronizedList(new ArrayList<>());
+        GroupCommitter<Integer, String> committer = new GroupCommitter<>("test-committer", 100, 4, 1000L, items -> {
+            groupSizes.add(items.size());
+            return items.stream().map(item -> "#" + item).collect(Collectors.toList());
+        });
+        committer.start();
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(committer.submit(i));
+        }
+        for (int i = 0; i < 10; i++) {
+            assertThat(futures.get(i).get(5, TimeUnit.SECONDS)).isEqualTo("#" + i);
+        }
+        committer.stop();
+        assertThat(groupSizes).containsExactly(4, 4, 2);
+    }
+
+    @Test
+    public void testFullQueueRejects() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        GroupCommitter<Integer, Integer> committer = new GroupCommitter<>("test-committer", 2, 1, 0L, items -> {
+            await(release);
+            return items;
+        });
+        committer.start();
+        CompletableFuture<Integer> first = committer.submit(1);
+        while (committer.getQueueDepth() > 0) {
+            Thread.sleep(1L);
+        }
+        committer.submit(2);
+        committer.submit(3);
+        CompletableFuture<Integer> rejected = committer.submit(4);
+        assertThat(rejected.isCompletedExceptionally()).isTrue();
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        committer.stop();
+        assertThat(committer.submit(5).isCompletedExceptionally()).isTrue();
+    }
+
+    @Test
+    public void testFailedGroupIsRetriedOneByOne() throws Exception {
+        List<Integer> groupSizes = Collections.synchronizedList(new ArrayList<>());
+        GroupCommitter<Integer, Integer> committer = new GroupCommitter<>("test-committer", 100, 10, 500L, items -> {
+            groupSizes.add(items.size());
+            if (items.contains(2)) {
+                throw new IllegalArgumentException("bad item");
+            }
+            return items;
+        });
+        committer.start();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            futures.add(committer.submit(i));
+        }
+        assertThat(futures.get(0).get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(futures.get(2).get(5, TimeUnit.SECONDS)).isEqualTo(3);
+        boolean failed = false;
+        try {
+            futures.get(1).get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            failed = e.getCause() instanceof IllegalArgumentException;
+        }
+        assertThat(failed).isTrue();
+        committer.stop();
+        assertThat(groupSizes).containsExactly(3, 1, 1, 1);
+    }
+
+    @Test
+    public void testStopRejectsLaterSubmissions() throws Exception {
+        GroupCommitter<Integer, Integer> committer = new GroupCommitter<>("test-committer", 10, 10, 0L, items -> items);
+        committer.start();
+        committer.stop();
+        CompletableFuture<Integer> future = committer.submit(1);
+        boolean rejected = false;
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            rejected = e.getCause() instanceof RejectedExecutionException;
+        }
+        assertThat(rejected).isTrue();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -7,6 +7,7 @@ import org.crowdware.repository.AuthorityRepository;
 import org.crowdware.repository.UserRepository;
 import org.crowdware.security.AuthoritiesConstants;
 import org.crowdware.service.MailService;
+import org.crowdware.service.PaymentTotalsService;
 import org.crowdware.service.UserService;
 import org.crowdware.web.rest.dto.ManagedUserDTO;
 import org.crowdware.web.rest.dto.UserDTO;
@@ -57,6 +58,9 @@ public class AccountResourceIntTest {
     @Inject
     private UserService userService;
 
+    @Inject
+    private PaymentTotalsService paymentTotalsService;
+
     @Mock
     private UserService mockUserService;
 
@@ -76,11 +80,13 @@ public class AccountResourceIntTest {
         ReflectionTestUtils.setField(accountResource, "userRepository", userRepository);
         ReflectionTestUtils.setField(accountResource, "userService", userService);
         ReflectionTestUtils.setField(accountResource, "mailService", mockMailService);
+        ReflectionTestUtils.setField(accountResource, "paymentTotalsService", paymentTotalsService);
 
         AccountResource accountUserMockResource = new AccountResource();
         ReflectionTestUtils.setField(accountUserMockResource, "userRepository", userRepository);
         ReflectionTestUtils.setField(accountUserMockResource, "userService", mockUserService);
         ReflectionTestUtils.setField(accountUserMockResource, "mailService", mockMailService);
+        ReflectionTestUtils.setField(accountUserMockResource, "paymentTotalsService", paymentTotalsService);
 
         this.restMvc = MockMvcBuilders.standaloneSetup(accountResource).build();
         this.restUserMockMvc = MockMvcBuilders.standaloneSetup(accountUserMockResource).build();
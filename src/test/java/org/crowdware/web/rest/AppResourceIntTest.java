@@ -2,9 +2,12 @@ package org.crowdware.web.rest;
 
 import org.crowdware.CrowdwareApp;
 import org.crowdware.domain.App;
+import org.crowdware.domain.Task;
 import org.crowdware.repository.AppRepository;
 import org.crowdware.service.AppService;
-import org.crowdware.repository.search.AppSearchRepository;
+import org.crowdware.service.search.SearchBackend;
+import org.crowdware.service.index.TaskIntervalIndex;
+import org.crowdware.service.search.SearchIndexer;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -25,6 +28,10 @@ import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -58,7 +65,13 @@ public class AppResourceIntTest {
     private AppService appService;
 
     @Inject
-    private AppSearchRepository appSearchRepository;
+    private SearchBackend searchBackend;
+
+    @Inject
+    private SearchIndexer searchIndexer;
+
+    @Inject
+    private TaskIntervalIndex taskIntervalIndex;
 
     @Inject
     private MappingJackson2HttpMessageConverter jacksonMessageConverter;
@@ -75,6 +88,7 @@ public class AppResourceIntTest {
         MockitoAnnotations.initMocks(this);
         AppResource appResource = new AppResource();
         ReflectionTestUtils.setField(appResource, "appService", appService);
+        ReflectionTestUtils.setField(appResource, "taskIntervalIndex", taskIntervalIndex);
         this.restAppMockMvc = MockMvcBuilders.standaloneSetup(appResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
             .setMessageConverters(jacksonMessageConverter).build();
@@ -82,7 +96,6 @@ public class AppResourceIntTest {
 
     @Before
     public void initTest() {
-        appSearchRepository.deleteAll();
         app = new App();
         app.setName(DEFAULT_NAME);
         app.setSource(DEFAULT_SOURCE);
@@ -110,7 +123,8 @@ public class AppResourceIntTest {
         assertThat(testApp.getVersion()).isEqualTo(DEFAULT_VERSION);
 
         // Validate the App in ElasticSearch
-        App appEs = appSearchRepository.findOne(testApp.getId());
+        searchIndexer.indexBatch();
+        App appEs = findIndexed(testApp.getId());
         assertThat(appEs).isEqualToComparingFieldByField(testApp);
     }
 
@@ -164,6 +178,45 @@ public class AppResourceIntTest {
             .andExpect(jsonPath("$.version").value(DEFAULT_VERSION));
     }
 
+    @Test
+    @Transactional
+    public void getAppConcurrency() throws Exception {
+        // Initialize the database, and index two overlapping tasks of the app
+        appRepository.saveAndFlush(app);
+        ZonedDateTime epoch = ZonedDateTime.ofInstant(Instant.ofEpochMilli(0L), ZoneId.systemDefault());
+        Task first = new Task();
+        first.setId(Long.MAX_VALUE - 1);
+        first.setApp_con(app);
+        first.setStart(epoch);
+        first.setEnd(epoch.plusHours(1));
+        Task second = new Task();
+        second.setId(Long.MAX_VALUE);
+        second.setApp_con(app);
+        second.setStart(epoch.plusMinutes(30));
+        second.setEnd(epoch.plusHours(2));
+        taskIntervalIndex.index(first);
+        taskIntervalIndex.index(second);
+
+        try {
+            restAppMockMvc.perform(get("/api/apps/{id}/concurrency?from=1970-01-01T00:00:00Z&to=1970-01-01T03:00:00Z&step=PT1H", app.getId()))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.[*].peak").value(Arrays.asList(2, 1, 0)));
+
+            restAppMockMvc.perform(get("/api/apps/{id}/concurrency?from=1970-01-01T00:00:00Z&to=1970-01-01T03:00:00Z&step=PT0.0001S", app.getId()))
+                .andExpect(status().isBadRequest());
+
+            restAppMockMvc.perform(get("/api/apps/{id}/concurrency?from=1970-01-01T03:00:00Z&to=1970-01-01T00:00:00Z", app.getId()))
+                .andExpect(status().isBadRequest());
+
+            restAppMockMvc.perform(get("/api/apps/{id}/concurrency?from=1970-01-01T00:00:00Z&to=1970-01-01T03:00:00Z", Long.MAX_VALUE))
+                .andExpect(status().isNotFound());
+        } finally {
+            taskIntervalIndex.remove(first.getId());
+            taskIntervalIndex.remove(second.getId());
+        }
+    }
+
     @Test
     @Transactional
     public void getNonExistingApp() throws Exception {
@@ -201,7 +254,8 @@ public class AppResourceIntTest {
         assertThat(testApp.getVersion()).isEqualTo(UPDATED_VERSION);
 
         // Validate the App in ElasticSearch
-        App appEs = appSearchRepository.findOne(testApp.getId());
+        searchIndexer.indexBatch();
+        App appEs = findIndexed(testApp.getId());
         assertThat(appEs).isEqualToComparingFieldByField(testApp);
     }
 
@@ -219,7 +273,8 @@ public class AppResourceIntTest {
                 .andExpect(status().isOk());
 
         // Validate ElasticSearch is empty
-        boolean appExistsInEs = appSearchRepository.exists(app.getId());
+        searchIndexer.indexBatch();
+        boolean appExistsInEs = findIndexed(app.getId()) != null;
         assertThat(appExistsInEs).isFalse();
 
         // Validate the database is empty
@@ -242,4 +297,10 @@ public class AppResourceIntTest {
             .andExpect(jsonPath("$.[*].source").value(hasItem(DEFAULT_SOURCE.toString())))
             .andExpect(jsonPath("$.[*].version").value(hasItem(DEFAULT_VERSION)));
     }
+
+    private App findIndexed(Long id) {
+        searchBackend.refresh(App.class);
+        List<App> apps = searchBackend.searchAfter(App.class, "id:" + id, null, 1);
+        return apps.isEmpty() ? null : apps.get(0);
+    }
 }
@@ -4,7 +4,8 @@ import org.crowdware.CrowdwareApp;
 import org.crowdware.domain.CrowdApp;
 import org.crowdware.repository.CrowdAppRepository;
 import org.crowdware.service.CrowdAppService;
-import org.crowdware.repository.search.CrowdAppSearchRepository;
+import org.crowdware.service.search.SearchBackend;
+import org.crowdware.service.search.SearchIndexer;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -60,7 +61,10 @@ public class CrowdAppResourceIntTest {
     private CrowdAppService crowdAppService;
 
     @Inject
-    private CrowdAppSearchRepository crowdAppSearchRepository;
+    private SearchBackend searchBackend;
+
+    @Inject
+    private SearchIndexer searchIndexer;
 
     @Inject
     private MappingJackson2HttpMessageConverter jacksonMessageConverter;
@@ -84,7 +88,6 @@ public class CrowdAppResourceIntTest {
 
     @Before
     public void initTest() {
-        crowdAppSearchRepository.deleteAll();
         crowdApp = new CrowdApp();
         crowdApp.setName(DEFAULT_NAME);
         crowdApp.setVersion(DEFAULT_VERSION);
@@ -112,7 +115,8 @@ public class CrowdAppResourceIntTest {
         assertThat(testCrowdApp.getSource()).isEqualTo(DEFAULT_SOURCE);
 
         // Validate the CrowdApp in ElasticSearch
-        CrowdApp crowdAppEs = crowdAppSearchRepository.findOne(testCrowdApp.getId());
+        searchIndexer.indexBatch();
+        CrowdApp crowdAppEs = findIndexed(testCrowdApp.getId());
         assertThat(crowdAppEs).isEqualToComparingFieldByField(testCrowdApp);
     }
 
@@ -203,7 +207,8 @@ public class CrowdAppResourceIntTest {
         assertThat(testCrowdApp.getSource()).isEqualTo(UPDATED_SOURCE);
 
         // Validate the CrowdApp in ElasticSearch
-        CrowdApp crowdAppEs = crowdAppSearchRepository.findOne(testCrowdApp.getId());
+        searchIndexer.indexBatch();
+        CrowdApp crowdAppEs = findIndexed(testCrowdApp.getId());
         assertThat(crowdAppEs).isEqualToComparingFieldByField(testCrowdApp);
     }
 
@@ -221,7 +226,8 @@ public class CrowdAppResourceIntTest {
                 .andExpect(status().isOk());
 
         // Validate ElasticSearch is empty
-        boolean crowdAppExistsInEs = crowdAppSearchRepository.exists(crowdApp.getId());
+        searchIndexer.indexBatch();
+        boolean crowdAppExistsInEs = findIndexed(crowdApp.getId()) != null;
         assertThat(crowdAppExistsInEs).isFalse();
 
         // Validate the database is empty
@@ -244,4 +250,10 @@ public class CrowdAppResourceIntTest {
             .andExpect(jsonPath("$.[*].version").value(hasItem(DEFAULT_VERSION)))
             .andExpect(jsonPath("$.[*].source").value(hasItem(DEFAULT_SOURCE.toString())));
     }
+
+    private CrowdApp findIndexed(Long id) {
+        searchBackend.refresh(CrowdApp.class);
+        List<CrowdApp> crowdApps = searchBackend.searchAfter(CrowdApp.class, "id:" + id, null, 1);
+        return crowdApps.isEmpty() ? null : crowdApps.get(0);
+    }
 }
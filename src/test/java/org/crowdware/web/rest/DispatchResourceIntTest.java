@@ -0,0 +1,99 @@
+package org.crowdware.web.rest;
+
+import org.crowdware.CrowdwareApp;
+import org.crowdware.domain.App;
+import org.crowdware.repository.AppRepository;
+import org.crowdware.service.AppService;
+import org.crowdware.service.dispatch.JobDispatcher;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.MockitoAnnotations;
+import org.springframework.boot.test.IntegrationTest;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+
+/**
+ * Test class for the DispatchResource REST controller.
+ *
+ * @see DispatchResource
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = CrowdwareApp.class)
+@WebAppConfiguration
+@IntegrationTest
+public class DispatchResourceIntTest {
+
+    @Inject
+    private JobDispatcher jobDispatcher;
+
+    @Inject
+    private AppRepository appRepository;
+
+    @Inject
+    private AppService appService;
+
+    @Inject
+    private MappingJackson2HttpMessageConverter jacksonMessageConverter;
+
+    private MockMvc restDispatchMockMvc;
+
+    @PostConstruct
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        DispatchResource dispatchResource = new DispatchResource();
+        ReflectionTestUtils.setField(dispatchResource, "jobDispatcher", jobDispatcher);
+        ReflectionTestUtils.setField(dispatchResource, "appRepository", appRepository);
+        ReflectionTestUtils.setField(dispatchResource, "appService", appService);
+        this.restDispatchMockMvc = MockMvcBuilders.standaloneSetup(dispatchResource)
+            .setMessageConverters(jacksonMessageConverter).build();
+    }
+
+    @Test
+    @Transactional
+    public void addAvailabilityToNonExistingApp() throws Exception {
+        restDispatchMockMvc.perform(post("/api/dispatch/apps/{id}/availability?slots=1", Long.MAX_VALUE))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @Transactional
+    public void addAvailabilityRequiresPositiveSlots() throws Exception {
+        restDispatchMockMvc.perform(post("/api/dispatch/apps/{id}/availability?slots=0", Long.MAX_VALUE))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void addAvailabilityToAnotherUsersApp() throws Exception {
+        App app = new App();
+        app.setName("AAA");
+        appRepository.saveAndFlush(app);
+
+        restDispatchMockMvc.perform(post("/api/dispatch/apps/{id}/availability?slots=1", app.getId()))
+            .andExpect(status().isForbidden());
+    }
+
+    @Test
+    public void getStats() throws Exception {
+        restDispatchMockMvc.perform(get("/api/dispatch/stats"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+            .andExpect(jsonPath("$.queueDepth").value(jobDispatcher.getQueueDepth()))
+            .andExpect(jsonPath("$.availableSlots").value(jobDispatcher.getAvailableSlots()));
+    }
+}
@@ -1,9 +1,16 @@
 package org.crowdware.web.rest;
 
 import org.crowdware.CrowdwareApp;
+import org.crowdware.domain.Job;
 import org.crowdware.domain.JobAttribute;
+import org.crowdware.domain.Money;
 import org.crowdware.repository.JobAttributeRepository;
-import org.crowdware.repository.search.JobAttributeSearchRepository;
+import org.crowdware.repository.JobRepository;
+import org.crowdware.service.search.SearchBackend;
+import org.crowdware.service.index.JobAttributeIndex;
+import org.crowdware.service.search.CursorSearchService;
+import org.crowdware.service.search.SearchIndexer;
+import org.crowdware.service.search.SearchOutboxService;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -16,6 +23,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.transaction.TestTransaction;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
@@ -24,6 +32,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import java.util.Collections;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -51,7 +60,22 @@ public class JobAttributeResourceIntTest {
     private JobAttributeRepository jobAttributeRepository;
 
     @Inject
-    private JobAttributeSearchRepository jobAttributeSearchRepository;
+    private JobRepository jobRepository;
+
+    @Inject
+    private SearchBackend searchBackend;
+
+    @Inject
+    private SearchOutboxService searchOutboxService;
+
+    @Inject
+    private CursorSearchService cursorSearchService;
+
+    @Inject
+    private SearchIndexer searchIndexer;
+
+    @Inject
+    private JobAttributeIndex jobAttributeIndex;
 
     @Inject
     private MappingJackson2HttpMessageConverter jacksonMessageConverter;
@@ -67,8 +91,10 @@ public class JobAttributeResourceIntTest {
     public void setup() {
         MockitoAnnotations.initMocks(this);
         JobAttributeResource jobAttributeResource = new JobAttributeResource();
-        ReflectionTestUtils.setField(jobAttributeResource, "jobAttributeSearchRepository", jobAttributeSearchRepository);
+        ReflectionTestUtils.setField(jobAttributeResource, "cursorSearchService", cursorSearchService);
+        ReflectionTestUtils.setField(jobAttributeResource, "searchOutboxService", searchOutboxService);
         ReflectionTestUtils.setField(jobAttributeResource, "jobAttributeRepository", jobAttributeRepository);
+        ReflectionTestUtils.setField(jobAttributeResource, "jobAttributeIndex", jobAttributeIndex);
         this.restJobAttributeMockMvc = MockMvcBuilders.standaloneSetup(jobAttributeResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
             .setMessageConverters(jacksonMessageConverter).build();
@@ -76,7 +102,6 @@ public class JobAttributeResourceIntTest {
 
     @Before
     public void initTest() {
-        jobAttributeSearchRepository.deleteAll();
         jobAttribute = new JobAttribute();
         jobAttribute.setName(DEFAULT_NAME);
         jobAttribute.setValue(DEFAULT_VALUE);
@@ -102,10 +127,31 @@ public class JobAttributeResourceIntTest {
         assertThat(testJobAttribute.getValue()).isEqualTo(DEFAULT_VALUE);
 
         // Validate the JobAttribute in ElasticSearch
-        JobAttribute jobAttributeEs = jobAttributeSearchRepository.findOne(testJobAttribute.getId());
+        searchIndexer.indexBatch();
+        JobAttribute jobAttributeEs = findIndexed(testJobAttribute.getId());
         assertThat(jobAttributeEs).isEqualToComparingFieldByField(testJobAttribute);
     }
 
+    @Test
+    @Transactional
+    public void rolledBackJobAttributeIsNotIndexed() throws Exception {
+        Job job = new Job();
+        job.setOffer(Money.parse("1.00"));
+        jobRepository.saveAndFlush(job);
+        jobAttribute.setJob(job);
+
+        restJobAttributeMockMvc.perform(post("/api/job-attributes")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(jobAttribute)))
+                .andExpect(status().isCreated());
+
+        // The attribute is only indexed once it commits
+        List<JobAttributeIndex.Term> terms = Collections.singletonList(new JobAttributeIndex.Term(DEFAULT_NAME, DEFAULT_VALUE));
+        assertThat(jobAttributeIndex.filter(terms, Collections.emptyList(), Collections.emptyList()).contains(job.getId())).isFalse();
+        TestTransaction.end();
+        assertThat(jobAttributeIndex.filter(terms, Collections.emptyList(), Collections.emptyList()).contains(job.getId())).isFalse();
+    }
+
     @Test
     @Transactional
     public void checkNameIsRequired() throws Exception {
@@ -167,7 +213,8 @@ public class JobAttributeResourceIntTest {
     public void updateJobAttribute() throws Exception {
         // Initialize the database
         jobAttributeRepository.saveAndFlush(jobAttribute);
-        jobAttributeSearchRepository.save(jobAttribute);
+        searchBackend.index(JobAttribute.class, Collections.singletonMap(jobAttribute.getId(), jobAttribute));
+        searchBackend.refresh(JobAttribute.class);
         int databaseSizeBeforeUpdate = jobAttributeRepository.findAll().size();
 
         // Update the jobAttribute
@@ -189,7 +236,8 @@ public class JobAttributeResourceIntTest {
         assertThat(testJobAttribute.getValue()).isEqualTo(UPDATED_VALUE);
 
         // Validate the JobAttribute in ElasticSearch
-        JobAttribute jobAttributeEs = jobAttributeSearchRepository.findOne(testJobAttribute.getId());
+        searchIndexer.indexBatch();
+        JobAttribute jobAttributeEs = findIndexed(testJobAttribute.getId());
         assertThat(jobAttributeEs).isEqualToComparingFieldByField(testJobAttribute);
     }
 
@@ -198,7 +246,8 @@ public class JobAttributeResourceIntTest {
     public void deleteJobAttribute() throws Exception {
         // Initialize the database
         jobAttributeRepository.saveAndFlush(jobAttribute);
-        jobAttributeSearchRepository.save(jobAttribute);
+        searchBackend.index(JobAttribute.class, Collections.singletonMap(jobAttribute.getId(), jobAttribute));
+        searchBackend.refresh(JobAttribute.class);
         int databaseSizeBeforeDelete = jobAttributeRepository.findAll().size();
 
         // Get the jobAttribute
@@ -207,7 +256,8 @@ public class JobAttributeResourceIntTest {
                 .andExpect(status().isOk());
 
         // Validate ElasticSearch is empty
-        boolean jobAttributeExistsInEs = jobAttributeSearchRepository.exists(jobAttribute.getId());
+        searchIndexer.indexBatch();
+        boolean jobAttributeExistsInEs = findIndexed(jobAttribute.getId()) != null;
         assertThat(jobAttributeExistsInEs).isFalse();
 
         // Validate the database is empty
@@ -220,7 +270,8 @@ public class JobAttributeResourceIntTest {
     public void searchJobAttribute() throws Exception {
         // Initialize the database
         jobAttributeRepository.saveAndFlush(jobAttribute);
-        jobAttributeSearchRepository.save(jobAttribute);
+        searchBackend.index(JobAttribute.class, Collections.singletonMap(jobAttribute.getId(), jobAttribute));
+        searchBackend.refresh(JobAttribute.class);
 
         // Search the jobAttribute
         restJobAttributeMockMvc.perform(get("/api/_search/job-attributes?query=id:" + jobAttribute.getId()))
@@ -230,4 +281,10 @@ public class JobAttributeResourceIntTest {
             .andExpect(jsonPath("$.[*].name").value(hasItem(DEFAULT_NAME.toString())))
             .andExpect(jsonPath("$.[*].value").value(hasItem(DEFAULT_VALUE.toString())));
     }
+
+    private JobAttribute findIndexed(Long id) {
+        searchBackend.refresh(JobAttribute.class);
+        List<JobAttribute> jobAttributes = searchBackend.searchAfter(JobAttribute.class, "id:" + id, null, 1);
+        return jobAttributes.isEmpty() ? null : jobAttributes.get(0);
+    }
 }
@@ -1,32 +1,65 @@
 package org.crowdware.web.rest;
 
 import org.crowdware.CrowdwareApp;
+import org.crowdware.config.CrowdwareProperties;
+import org.crowdware.domain.App;
 import org.crowdware.domain.Job;
+import org.crowdware.domain.JobAttribute;
+import org.crowdware.domain.Money;
+import org.crowdware.domain.Payment;
+import org.crowdware.domain.Task;
+import org.crowdware.repository.AppRepository;
+import org.crowdware.repository.JobAttributeRepository;
 import org.crowdware.repository.JobRepository;
+import org.crowdware.repository.PaymentRepository;
+import org.crowdware.repository.TaskRepository;
+import org.crowdware.repository.UserRepository;
+import org.crowdware.service.AppService;
 import org.crowdware.service.JobService;
-import org.crowdware.repository.search.JobSearchRepository;
-
+import org.crowdware.service.PaymentService;
+import org.crowdware.service.PaymentTotalsService;
+import org.crowdware.service.auction.AuctionHouse;
+import org.crowdware.service.idempotency.IdempotencyService;
+import org.crowdware.service.dispatch.JobDispatcher;
+import org.crowdware.service.dispatch.TaskLeaseService;
+import org.crowdware.service.index.TaskIntervalIndex;
+import org.crowdware.web.rest.dto.BidDTO;
+import org.crowdware.service.index.JobAttributeIndex;
+import org.crowdware.service.index.JobOfferBook;
+import org.crowdware.service.search.SearchBackend;
+import org.crowdware.service.search.SearchIndexer;
+
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
 import org.mockito.MockitoAnnotations;
 import org.springframework.boot.test.IntegrationTest;
 import org.springframework.boot.test.SpringApplicationConfiguration;
 import org.springframework.http.MediaType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -45,8 +78,9 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 public class JobResourceIntTest {
 
 
-    private static final BigDecimal DEFAULT_OFFER = new BigDecimal(1);
-    private static final BigDecimal UPDATED_OFFER = new BigDecimal(2);
+    private static final Money DEFAULT_OFFER = Money.parse("1");
+    private static final Money UPDATED_OFFER = Money.parse("2");
+    private static final Money TOP_OFFER = Money.parse("99999999.99");
 
     @Inject
     private JobRepository jobRepository;
@@ -55,7 +89,58 @@ public class JobResourceIntTest {
     private JobService jobService;
 
     @Inject
-    private JobSearchRepository jobSearchRepository;
+    private SearchBackend searchBackend;
+
+    @Inject
+    private SearchIndexer searchIndexer;
+
+    @Inject
+    private JobOfferBook jobOfferBook;
+
+    @Inject
+    private JobAttributeIndex jobAttributeIndex;
+
+    @Inject
+    private JobAttributeRepository jobAttributeRepository;
+
+    @Inject
+    private AuctionHouse auctionHouse;
+
+    @Inject
+    private JobDispatcher jobDispatcher;
+
+    @Inject
+    private AppService appService;
+
+    @Inject
+    private PaymentService paymentService;
+
+    @Inject
+    private PaymentTotalsService paymentTotalsService;
+
+    @Inject
+    private IdempotencyService idempotencyService;
+
+    @Inject
+    private AppRepository appRepository;
+
+    @Inject
+    private TaskRepository taskRepository;
+
+    @Inject
+    private UserRepository userRepository;
+
+    @Inject
+    private PaymentRepository paymentRepository;
+
+    @Inject
+    private TaskIntervalIndex taskIntervalIndex;
+
+    @Inject
+    private TaskLeaseService taskLeaseService;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
 
     @Inject
     private MappingJackson2HttpMessageConverter jacksonMessageConverter;
@@ -72,6 +157,13 @@ public class JobResourceIntTest {
         MockitoAnnotations.initMocks(this);
         JobResource jobResource = new JobResource();
         ReflectionTestUtils.setField(jobResource, "jobService", jobService);
+        ReflectionTestUtils.setField(jobResource, "jobOfferBook", jobOfferBook);
+        ReflectionTestUtils.setField(jobResource, "jobAttributeIndex", jobAttributeIndex);
+        ReflectionTestUtils.setField(jobResource, "auctionHouse", auctionHouse);
+        ReflectionTestUtils.setField(jobResource, "appService", appService);
+        ReflectionTestUtils.setField(jobResource, "paymentTotalsService", paymentTotalsService);
+        ReflectionTestUtils.setField(jobResource, "idempotencyService", idempotencyService);
+        ReflectionTestUtils.setField(jobResource, "crowdwareProperties", crowdwareProperties);
         this.restJobMockMvc = MockMvcBuilders.standaloneSetup(jobResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
             .setMessageConverters(jacksonMessageConverter).build();
@@ -79,11 +171,15 @@ public class JobResourceIntTest {
 
     @Before
     public void initTest() {
-        jobSearchRepository.deleteAll();
         job = new Job();
         job.setOffer(DEFAULT_OFFER);
     }
 
+    @After
+    public void clearSecurityContext() {
+        SecurityContextHolder.clearContext();
+    }
+
     @Test
     @Transactional
     public void createJob() throws Exception {
@@ -103,10 +199,61 @@ public class JobResourceIntTest {
         assertThat(testJob.getOffer()).isEqualTo(DEFAULT_OFFER);
 
         // Validate the Job in ElasticSearch
-        Job jobEs = jobSearchRepository.findOne(testJob.getId());
+        searchIndexer.indexBatch();
+        Job jobEs = findIndexed(testJob.getId());
         assertThat(jobEs).isEqualToComparingFieldByField(testJob);
     }
 
+    @Test
+    @Transactional
+    public void createJobIsIdempotent() throws Exception {
+        int databaseSizeBeforeCreate = jobRepository.findAll().size();
+        String idempotencyKey = UUID.randomUUID().toString();
+
+        // Create the Job, then retry the request
+        MvcResult first = restJobMockMvc.perform(post("/api/jobs")
+                .header(IdempotencyService.HEADER, idempotencyKey)
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(job)))
+                .andExpect(status().isCreated())
+                .andReturn();
+        MvcResult retry = restJobMockMvc.perform(post("/api/jobs")
+                .header(IdempotencyService.HEADER, idempotencyKey)
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(job)))
+                .andExpect(status().isCreated())
+                .andReturn();
+
+        // Validate the retry returned the first job instead of creating another one
+        assertThat(jobRepository.findAll()).hasSize(databaseSizeBeforeCreate + 1);
+        assertThat(retry.getResponse().getContentAsString()).isEqualTo(first.getResponse().getContentAsString());
+        assertThat(retry.getResponse().getHeader("Location")).isEqualTo(first.getResponse().getHeader("Location"));
+    }
+
+    @Test
+    @Transactional
+    public void createJobRejectsReusedIdempotencyKey() throws Exception {
+        int databaseSizeBeforeCreate = jobRepository.findAll().size();
+        String idempotencyKey = UUID.randomUUID().toString();
+
+        // Create the Job, then send another job with the same key
+        restJobMockMvc.perform(post("/api/jobs")
+                .header(IdempotencyService.HEADER, idempotencyKey)
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(job)))
+                .andExpect(status().isCreated());
+        Job other = new Job();
+        other.setOffer(UPDATED_OFFER);
+        restJobMockMvc.perform(post("/api/jobs")
+                .header(IdempotencyService.HEADER, idempotencyKey)
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(other)))
+                .andExpect(status().isUnprocessableEntity());
+
+        // Validate the second job was neither created nor answered with the first one
+        assertThat(jobRepository.findAll()).hasSize(databaseSizeBeforeCreate + 1);
+    }
+
     @Test
     @Transactional
     public void getAllJobs() throws Exception {
@@ -118,7 +265,209 @@ public class JobResourceIntTest {
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.[*].id").value(hasItem(job.getId().intValue())))
-                .andExpect(jsonPath("$.[*].offer").value(hasItem(DEFAULT_OFFER.intValue())));
+                .andExpect(jsonPath("$.[*].offer").value(hasItem(DEFAULT_OFFER.toBigDecimal().doubleValue())));
+    }
+
+    @Test
+    @Transactional
+    public void getTopJobs() throws Exception {
+        // Initialize the database and the offer book, which only follows the job once the transaction commits
+        job.setOffer(TOP_OFFER);
+        jobService.save(job);
+        jobOfferBook.put(job);
+
+        restJobMockMvc.perform(get("/api/jobs/top?limit=1"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+            .andExpect(jsonPath("$.[0].id").value(job.getId().intValue()));
+
+        restJobMockMvc.perform(get("/api/jobs/offers?min=" + TOP_OFFER))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(hasItem(job.getId().intValue())));
+
+        restJobMockMvc.perform(get("/api/jobs/offers/count?above=" + DEFAULT_OFFER))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$").value(greaterThanOrEqualTo(1)));
+    }
+
+    @Test
+    public void getTopJobsWithInvalidLimit() throws Exception {
+        int maxLimit = crowdwareProperties.getOffers().getMaxLimit();
+        restJobMockMvc.perform(get("/api/jobs/top?limit=0"))
+            .andExpect(status().isBadRequest());
+        restJobMockMvc.perform(get("/api/jobs/top?limit=" + (maxLimit + 1)))
+            .andExpect(status().isBadRequest());
+        restJobMockMvc.perform(get("/api/jobs/offers?limit=-1"))
+            .andExpect(status().isBadRequest());
+        restJobMockMvc.perform(get("/api/jobs/offers?limit=" + (maxLimit + 1)))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void filterJobs() throws Exception {
+        // Initialize the database and the attribute index with a java job
+        jobService.save(job);
+        JobAttribute skill = new JobAttribute();
+        skill.setName("skill");
+        skill.setValue("java");
+        skill.setJob(job);
+        jobAttributeRepository.saveAndFlush(skill);
+        jobAttributeIndex.put(skill);
+
+        restJobMockMvc.perform(get("/api/jobs/filter?all=skill:java&size=1000"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+            .andExpect(jsonPath("$.[*].id").value(hasItem(job.getId().intValue())));
+
+        restJobMockMvc.perform(get("/api/jobs/filter?any=skill:java&none=skill:java&size=1000"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(not(hasItem(job.getId().intValue()))));
+
+        restJobMockMvc.perform(get("/api/jobs/filter?all=skill"))
+            .andExpect(status().isBadRequest());
+
+        restJobMockMvc.perform(get("/api/jobs/filter"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void getSimilarJobs() throws Exception {
+        // Initialize the database and the attribute index with two jobs sharing their attributes
+        jobService.save(job);
+        Job twin = new Job();
+        twin.setOffer(DEFAULT_OFFER);
+        jobService.save(twin);
+        for (Job owner : new Job[] {job, twin}) {
+            for (String value : new String[] {"java", "sql"}) {
+                JobAttribute skill = new JobAttribute();
+                skill.setName("skill");
+                skill.setValue(value);
+                skill.setJob(owner);
+                jobAttributeRepository.saveAndFlush(skill);
+                jobAttributeIndex.put(skill);
+            }
+        }
+
+        restJobMockMvc.perform(get("/api/jobs/{id}/similar?limit=1000", job.getId()))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+            .andExpect(jsonPath("$.[*].job.id").value(hasItem(twin.getId().intValue())))
+            .andExpect(jsonPath("$.[*].job.id").value(not(hasItem(job.getId().intValue()))));
+
+        restJobMockMvc.perform(get("/api/jobs/similar?terms=skill:java&terms=skill:sql&limit=1000"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].job.id").value(hasItem(job.getId().intValue())));
+
+        restJobMockMvc.perform(get("/api/jobs/similar?terms=skill"))
+            .andExpect(status().isBadRequest());
+
+        restJobMockMvc.perform(get("/api/jobs/{id}/similar", Long.MAX_VALUE))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @Transactional
+    public void getJobPayoutSummary() throws Exception {
+        // Initialize the database with two payments for the job, then delete the latest one
+        jobService.save(job);
+        Payment first = new Payment();
+        first.setAmount(Money.parse("1.50"));
+        first.setTime(LocalDate.ofEpochDay(0L));
+        first.setJob(job);
+        paymentService.save(first);
+        Payment second = new Payment();
+        second.setAmount(Money.parse("2.25"));
+        second.setTime(LocalDate.ofEpochDay(4L));
+        second.setJob(job);
+        paymentService.save(second);
+
+        restJobMockMvc.perform(get("/api/jobs/{id}/payout-summary", job.getId()))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+            .andExpect(jsonPath("$.total").value(3.75))
+            .andExpect(jsonPath("$.payments").value(2))
+            .andExpect(jsonPath("$.lastPayment").value(LocalDate.ofEpochDay(4L).toString()));
+
+        paymentService.delete(second.getId());
+
+        restJobMockMvc.perform(get("/api/jobs/{id}/payout-summary", job.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.total").value(1.5))
+            .andExpect(jsonPath("$.payments").value(1))
+            .andExpect(jsonPath("$.lastPayment").value(LocalDate.ofEpochDay(0L).toString()));
+
+        restJobMockMvc.perform(get("/api/jobs/{id}/payout-summary", Long.MAX_VALUE))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @Transactional
+    public void auctionJob() throws Exception {
+        // Initialize the database with an open job and a bidding app of the current user, and queue the job as the
+        // commit would
+        jobService.save(job);
+        jobDispatcher.submit(job);
+        App app = new App();
+        app.setName("AAA");
+        app.setUser_app(userRepository.findOneByLogin("user").get());
+        appRepository.saveAndFlush(app);
+        App otherApp = new App();
+        otherApp.setName("BBB");
+        appRepository.saveAndFlush(otherApp);
+        SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+        securityContext.setAuthentication(new UsernamePasswordAuthenticationToken("user", "user"));
+        SecurityContextHolder.setContext(securityContext);
+        int paymentsBeforeSettlement = paymentRepository.findAll().size();
+
+        restJobMockMvc.perform(post("/api/jobs/{id}/auction?duration=PT1H", job.getId()))
+            .andExpect(status().isCreated())
+            .andExpect(jsonPath("$.jobId").value(job.getId().intValue()));
+
+        restJobMockMvc.perform(post("/api/jobs/{id}/auction", job.getId()))
+            .andExpect(status().isBadRequest());
+
+        restJobMockMvc.perform(post("/api/jobs/{id}/bids", job.getId())
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(new BidDTO(app.getId(), UPDATED_OFFER.toBigDecimal()))))
+            .andExpect(status().isBadRequest());
+
+        restJobMockMvc.perform(post("/api/jobs/{id}/bids", job.getId())
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(new BidDTO(app.getId(), new BigDecimal("0.5")))))
+            .andExpect(status().isAccepted());
+
+        restJobMockMvc.perform(post("/api/jobs/{id}/bids", job.getId())
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(new BidDTO(otherApp.getId(), new BigDecimal("0.25")))))
+            .andExpect(status().isForbidden());
+
+        restJobMockMvc.perform(post("/api/jobs/{id}/bids", Long.MAX_VALUE)
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(new BidDTO(app.getId(), new BigDecimal("0.5")))))
+            .andExpect(status().isNotFound());
+
+        restJobMockMvc.perform(get("/api/jobs/{id}/auction", job.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.bids").value(1));
+
+        // Settle the auction as if its bidding had ended
+        auctionHouse.settle(System.currentTimeMillis() + 2 * 3600 * 1000L);
+        List<Task> tasks = taskRepository.findAll().stream()
+            .filter(task -> job.getId().equals(task.getJob()))
+            .collect(Collectors.toList());
+        try {
+            assertThat(auctionHouse.getBook(job.getId())).isNull();
+            assertThat(tasks).hasSize(1);
+            assertThat(tasks.get(0).getApp()).isEqualTo(app.getId());
+            assertThat(paymentRepository.findAll()).hasSize(paymentsBeforeSettlement + 1);
+        } finally {
+            tasks.forEach(task -> {
+                taskIntervalIndex.remove(task.getId());
+                taskLeaseService.release(task.getId());
+            });
+        }
     }
 
     @Test
@@ -132,7 +481,7 @@ public class JobResourceIntTest {
             .andExpect(status().isOk())
             .andExpect(content().contentType(MediaType.APPLICATION_JSON))
             .andExpect(jsonPath("$.id").value(job.getId().intValue()))
-            .andExpect(jsonPath("$.offer").value(DEFAULT_OFFER.intValue()));
+            .andExpect(jsonPath("$.offer").value(DEFAULT_OFFER.toBigDecimal().doubleValue()));
     }
 
     @Test
@@ -168,7 +517,8 @@ public class JobResourceIntTest {
         assertThat(testJob.getOffer()).isEqualTo(UPDATED_OFFER);
 
         // Validate the Job in ElasticSearch
-        Job jobEs = jobSearchRepository.findOne(testJob.getId());
+        searchIndexer.indexBatch();
+        Job jobEs = findIndexed(testJob.getId());
         assertThat(jobEs).isEqualToComparingFieldByField(testJob);
     }
 
@@ -186,7 +536,8 @@ public class JobResourceIntTest {
                 .andExpect(status().isOk());
 
         // Validate ElasticSearch is empty
-        boolean jobExistsInEs = jobSearchRepository.exists(job.getId());
+        searchIndexer.indexBatch();
+        boolean jobExistsInEs = findIndexed(job.getId()) != null;
         assertThat(jobExistsInEs).isFalse();
 
         // Validate the database is empty
@@ -205,6 +556,12 @@ public class JobResourceIntTest {
             .andExpect(status().isOk())
             .andExpect(content().contentType(MediaType.APPLICATION_JSON))
             .andExpect(jsonPath("$.[*].id").value(hasItem(job.getId().intValue())))
-            .andExpect(jsonPath("$.[*].offer").value(hasItem(DEFAULT_OFFER.intValue())));
+            .andExpect(jsonPath("$.[*].offer").value(hasItem(DEFAULT_OFFER.toBigDecimal().doubleValue())));
+    }
+
+    private Job findIndexed(Long id) {
+        searchBackend.refresh(Job.class);
+        List<Job> jobs = searchBackend.searchAfter(Job.class, "id:" + id, null, 1);
+        return jobs.isEmpty() ? null : jobs.get(0);
     }
 }
@@ -0,0 +1,109 @@
+package org.crowdware.web.rest;
+
+import org.crowdware.CrowdwareApp;
+import org.crowdware.config.CrowdwareProperties;
+import org.crowdware.domain.Money;
+import org.crowdware.domain.Payment;
+import org.crowdware.domain.User;
+import org.crowdware.repository.UserRepository;
+import org.crowdware.service.PaymentSnapshot;
+import org.crowdware.service.leaderboard.LeaderboardService;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.MockitoAnnotations;
+import org.springframework.boot.test.IntegrationTest;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+
+/**
+ * Test class for the LeaderboardResource REST controller.
+ *
+ * @see LeaderboardResource
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = CrowdwareApp.class)
+@WebAppConfiguration
+@IntegrationTest
+public class LeaderboardResourceIntTest {
+
+    @Inject
+    private LeaderboardService leaderboardService;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
+
+    @Inject
+    private UserRepository userRepository;
+
+    @Inject
+    private MappingJackson2HttpMessageConverter jacksonMessageConverter;
+
+    private MockMvc restLeaderboardMockMvc;
+
+    @PostConstruct
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        LeaderboardResource leaderboardResource = new LeaderboardResource();
+        ReflectionTestUtils.setField(leaderboardResource, "leaderboardService", leaderboardService);
+        ReflectionTestUtils.setField(leaderboardResource, "crowdwareProperties", crowdwareProperties);
+        this.restLeaderboardMockMvc = MockMvcBuilders.standaloneSetup(leaderboardResource)
+            .setMessageConverters(jacksonMessageConverter).build();
+    }
+
+    @Test
+    public void getLeaderboard() throws Exception {
+        // A payment far above the others, applied directly as no transaction is active
+        User user = userRepository.findOneByLogin("user").get();
+        Payment payment = new Payment();
+        payment.setUser(user);
+        payment.setAmount(Money.parse("1000000"));
+        payment.setTime(LocalDate.now());
+        List<PaymentSnapshot> snapshots = Collections.singletonList(PaymentSnapshot.of(payment));
+        leaderboardService.update(Collections.emptyList(), snapshots);
+        try {
+            restLeaderboardMockMvc.perform(get("/api/leaderboard?window=30d&limit=1"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.[0].rank").value(1))
+                .andExpect(jsonPath("$.[0].userId").value(user.getId().intValue()))
+                .andExpect(jsonPath("$.[0].login").value("user"));
+
+            restLeaderboardMockMvc.perform(get("/api/leaderboard"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.[0].login").value("user"));
+        } finally {
+            leaderboardService.update(snapshots, Collections.emptyList());
+        }
+    }
+
+    @Test
+    public void getLeaderboardOfUnknownWindow() throws Exception {
+        restLeaderboardMockMvc.perform(get("/api/leaderboard?window=1y"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getLeaderboardWithInvalidLimit() throws Exception {
+        restLeaderboardMockMvc.perform(get("/api/leaderboard?limit=0"))
+            .andExpect(status().isBadRequest());
+        restLeaderboardMockMvc.perform(get("/api/leaderboard?limit=" + (crowdwareProperties.getLeaderboard().getMaxLimit() + 1)))
+            .andExpect(status().isBadRequest());
+    }
+}
@@ -1,14 +1,29 @@
 package org.crowdware.web.rest;
 
 import org.crowdware.CrowdwareApp;
+import org.crowdware.domain.Job;
+import org.crowdware.domain.Money;
 import org.crowdware.domain.Payment;
+import org.crowdware.repository.JobRepository;
 import org.crowdware.repository.PaymentRepository;
-import org.crowdware.repository.search.PaymentSearchRepository;
+import org.crowdware.service.search.SearchBackend;
+import org.crowdware.service.PaymentExportService;
+import org.crowdware.service.PaymentRollupService;
+import org.crowdware.service.PaymentService;
+import org.crowdware.service.fraud.PaymentFraudService;
+import org.crowdware.service.ledger.LedgerEntry;
+import org.crowdware.service.idempotency.IdempotencyService;
+import org.crowdware.service.ledger.LedgerService;
+import org.crowdware.service.settlement.PaymentSettlementService;
+import org.crowdware.service.search.SearchIndexer;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
 import org.mockito.MockitoAnnotations;
 import org.springframework.boot.test.IntegrationTest;
 import org.springframework.boot.test.SpringApplicationConfiguration;
@@ -16,9 +31,11 @@ import org.springframework.http.MediaType;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.transaction.TestTransaction;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -26,8 +43,10 @@ import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.time.LocalDate;
 import java.time.ZoneId;
-import java.math.BigDecimal;
+import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -46,8 +65,8 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 public class PaymentResourceIntTest {
 
 
-    private static final BigDecimal DEFAULT_AMOUNT = new BigDecimal(1);
-    private static final BigDecimal UPDATED_AMOUNT = new BigDecimal(2);
+    private static final Money DEFAULT_AMOUNT = Money.parse("1");
+    private static final Money UPDATED_AMOUNT = Money.parse("2");
 
     private static final LocalDate DEFAULT_TIME = LocalDate.ofEpochDay(0L);
     private static final LocalDate UPDATED_TIME = LocalDate.now(ZoneId.systemDefault());
@@ -56,7 +75,34 @@ public class PaymentResourceIntTest {
     private PaymentRepository paymentRepository;
 
     @Inject
-    private PaymentSearchRepository paymentSearchRepository;
+    private PaymentService paymentService;
+
+    @Inject
+    private SearchBackend searchBackend;
+
+    @Inject
+    private SearchIndexer searchIndexer;
+
+    @Inject
+    private LedgerService ledgerService;
+
+    @Inject
+    private PaymentSettlementService paymentSettlementService;
+
+    @Inject
+    private PaymentRollupService paymentRollupService;
+
+    @Inject
+    private PaymentExportService paymentExportService;
+
+    @Inject
+    private PaymentFraudService paymentFraudService;
+
+    @Inject
+    private IdempotencyService idempotencyService;
+
+    @Inject
+    private JobRepository jobRepository;
 
     @Inject
     private MappingJackson2HttpMessageConverter jacksonMessageConverter;
@@ -72,8 +118,12 @@ public class PaymentResourceIntTest {
     public void setup() {
         MockitoAnnotations.initMocks(this);
         PaymentResource paymentResource = new PaymentResource();
-        ReflectionTestUtils.setField(paymentResource, "paymentSearchRepository", paymentSearchRepository);
-        ReflectionTestUtils.setField(paymentResource, "paymentRepository", paymentRepository);
+        ReflectionTestUtils.setField(paymentResource, "paymentService", paymentService);
+        ReflectionTestUtils.setField(paymentResource, "paymentSettlementService", paymentSettlementService);
+        ReflectionTestUtils.setField(paymentResource, "paymentRollupService", paymentRollupService);
+        ReflectionTestUtils.setField(paymentResource, "paymentExportService", paymentExportService);
+        ReflectionTestUtils.setField(paymentResource, "paymentFraudService", paymentFraudService);
+        ReflectionTestUtils.setField(paymentResource, "idempotencyService", idempotencyService);
         this.restPaymentMockMvc = MockMvcBuilders.standaloneSetup(paymentResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
             .setMessageConverters(jacksonMessageConverter).build();
@@ -81,22 +131,23 @@ public class PaymentResourceIntTest {
 
     @Before
     public void initTest() {
-        paymentSearchRepository.deleteAll();
         payment = new Payment();
         payment.setAmount(DEFAULT_AMOUNT);
         payment.setTime(DEFAULT_TIME);
     }
 
     @Test
-    @Transactional
     public void createPayment() throws Exception {
         int databaseSizeBeforeCreate = paymentRepository.findAll().size();
 
-        // Create the Payment
+        // Create the Payment, it is committed by the settlement pipeline in its own transaction
 
-        restPaymentMockMvc.perform(post("/api/payments")
+        MvcResult mvcResult = restPaymentMockMvc.perform(post("/api/payments")
                 .contentType(TestUtil.APPLICATION_JSON_UTF8)
                 .content(TestUtil.convertObjectToJsonBytes(payment)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        restPaymentMockMvc.perform(asyncDispatch(mvcResult))
                 .andExpect(status().isCreated());
 
         // Validate the Payment in the database
@@ -107,8 +158,44 @@ public class PaymentResourceIntTest {
         assertThat(testPayment.getTime()).isEqualTo(DEFAULT_TIME);
 
         // Validate the Payment in ElasticSearch
-        Payment paymentEs = paymentSearchRepository.findOne(testPayment.getId());
+        searchIndexer.indexBatch();
+        Payment paymentEs = findIndexed(testPayment.getId());
         assertThat(paymentEs).isEqualToComparingFieldByField(testPayment);
+
+        paymentService.delete(testPayment.getId());
+    }
+
+    @Test
+    public void createPaymentIsIdempotent() throws Exception {
+        int databaseSizeBeforeCreate = paymentRepository.findAll().size();
+        String idempotencyKey = UUID.randomUUID().toString();
+
+        // Create the Payment, then retry the request
+        MvcResult first = restPaymentMockMvc.perform(post("/api/payments")
+                .header(IdempotencyService.HEADER, idempotencyKey)
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(payment)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        first = restPaymentMockMvc.perform(asyncDispatch(first))
+                .andExpect(status().isCreated())
+                .andReturn();
+        MvcResult retry = restPaymentMockMvc.perform(post("/api/payments")
+                .header(IdempotencyService.HEADER, idempotencyKey)
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(payment)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        retry = restPaymentMockMvc.perform(asyncDispatch(retry))
+                .andExpect(status().isCreated())
+                .andReturn();
+
+        // Validate the retry returned the first payment instead of creating another one
+        List<Payment> payments = paymentRepository.findAll();
+        assertThat(payments).hasSize(databaseSizeBeforeCreate + 1);
+        assertThat(retry.getResponse().getContentAsString()).isEqualTo(first.getResponse().getContentAsString());
+
+        paymentService.delete(payments.get(payments.size() - 1).getId());
     }
 
     @Test
@@ -122,7 +209,7 @@ public class PaymentResourceIntTest {
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.[*].id").value(hasItem(payment.getId().intValue())))
-                .andExpect(jsonPath("$.[*].amount").value(hasItem(DEFAULT_AMOUNT.intValue())))
+                .andExpect(jsonPath("$.[*].amount").value(hasItem(DEFAULT_AMOUNT.toBigDecimal().doubleValue())))
                 .andExpect(jsonPath("$.[*].time").value(hasItem(DEFAULT_TIME.toString())));
     }
 
@@ -137,7 +224,7 @@ public class PaymentResourceIntTest {
             .andExpect(status().isOk())
             .andExpect(content().contentType(MediaType.APPLICATION_JSON))
             .andExpect(jsonPath("$.id").value(payment.getId().intValue()))
-            .andExpect(jsonPath("$.amount").value(DEFAULT_AMOUNT.intValue()))
+            .andExpect(jsonPath("$.amount").value(DEFAULT_AMOUNT.toBigDecimal().doubleValue()))
             .andExpect(jsonPath("$.time").value(DEFAULT_TIME.toString()));
     }
 
@@ -154,7 +241,8 @@ public class PaymentResourceIntTest {
     public void updatePayment() throws Exception {
         // Initialize the database
         paymentRepository.saveAndFlush(payment);
-        paymentSearchRepository.save(payment);
+        searchBackend.index(Payment.class, Collections.singletonMap(payment.getId(), payment));
+        searchBackend.refresh(Payment.class);
         int databaseSizeBeforeUpdate = paymentRepository.findAll().size();
 
         // Update the payment
@@ -176,16 +264,157 @@ public class PaymentResourceIntTest {
         assertThat(testPayment.getTime()).isEqualTo(UPDATED_TIME);
 
         // Validate the Payment in ElasticSearch
-        Payment paymentEs = paymentSearchRepository.findOne(testPayment.getId());
+        searchIndexer.indexBatch();
+        Payment paymentEs = findIndexed(testPayment.getId());
         assertThat(paymentEs).isEqualToComparingFieldByField(testPayment);
     }
 
+    @Test
+    @Transactional
+    public void updatePaymentRequiresAnId() throws Exception {
+        int databaseSizeBeforeUpdate = paymentRepository.findAll().size();
+
+        // A payment without ID cannot be created through the update
+        restPaymentMockMvc.perform(put("/api/payments")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(payment)))
+                .andExpect(status().isBadRequest());
+
+        assertThat(paymentRepository.findAll()).hasSize(databaseSizeBeforeUpdate);
+    }
+
+    @Test
+    public void updatePaymentKeepsItsHistory() throws Exception {
+        // Not transactional: the ledger is only appended once each write commits
+        // Initialize the database with a job paying the payment
+        Job job = new Job();
+        job.setOffer(DEFAULT_AMOUNT);
+        jobRepository.saveAndFlush(job);
+        payment.setJob(job);
+        Payment created = paymentService.save(payment);
+
+        // Update then delete the payment
+        Payment updatedPayment = new Payment();
+        updatedPayment.setId(created.getId());
+        updatedPayment.setAmount(UPDATED_AMOUNT);
+        updatedPayment.setTime(UPDATED_TIME);
+        updatedPayment.setJob(job);
+
+        restPaymentMockMvc.perform(put("/api/payments")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(updatedPayment)))
+                .andExpect(status().isOk());
+
+        restPaymentMockMvc.perform(delete("/api/payments/{id}", created.getId())
+                .accept(TestUtil.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk());
+
+        // Validate the ledger kept every state of the payment
+        List<LedgerEntry> entries = ledgerService.findByJob(job.getId());
+        assertThat(entries.stream().map(LedgerEntry::getKind).collect(Collectors.toList())).containsExactly(
+            LedgerEntry.Kind.PAYMENT, LedgerEntry.Kind.REVERSAL, LedgerEntry.Kind.PAYMENT, LedgerEntry.Kind.REVERSAL);
+        assertThat(entries.stream().map(LedgerEntry::getAmountInCents).collect(Collectors.toList())).containsExactly(
+            100L, -100L, 200L, -200L);
+        jobRepository.delete(job.getId());
+    }
+
+    @Test
+    @Transactional
+    public void rolledBackPaymentIsNotInTheLedger() throws Exception {
+        Job job = new Job();
+        job.setOffer(DEFAULT_AMOUNT);
+        jobRepository.saveAndFlush(job);
+        payment.setJob(job);
+        paymentService.save(payment);
+
+        // The entries are only appended when the write commits
+        TestTransaction.end();
+        assertThat(ledgerService.findByJob(job.getId())).isEmpty();
+    }
+
+    @Test
+    @Transactional
+    public void getPaymentRollup() throws Exception {
+        // Initialize the database with payments over two days of a week and a day of the next month
+        Job job = new Job();
+        job.setOffer(DEFAULT_AMOUNT);
+        jobRepository.saveAndFlush(job);
+        for (String[] values : new String[][] {{"2016-03-01", "1.00"}, {"2016-03-02", "2.50"}, {"2016-04-04", "4.00"}}) {
+            Payment rolledUp = new Payment();
+            rolledUp.setTime(LocalDate.parse(values[0]));
+            rolledUp.setAmount(Money.parse(values[1]));
+            rolledUp.setJob(job);
+            paymentService.save(rolledUp);
+        }
+        paymentRollupService.compact();
+
+        restPaymentMockMvc.perform(get("/api/payments/rollup?granularity=month&from=2016-01-01&to=2016-12-31&groupBy=job"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+            .andExpect(jsonPath("$.[0].period").value("2016-03-01"))
+            .andExpect(jsonPath("$.[0].jobId").value(job.getId().intValue()))
+            .andExpect(jsonPath("$.[0].total").value(3.5))
+            .andExpect(jsonPath("$.[0].payments").value(2))
+            .andExpect(jsonPath("$.[1].period").value("2016-04-01"))
+            .andExpect(jsonPath("$.[1].total").value(4.0));
+
+        restPaymentMockMvc.perform(get("/api/payments/rollup?granularity=week&from=2016-03-02&to=2016-03-31"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[0].period").value("2016-02-29"))
+            .andExpect(jsonPath("$.[0].payments").value(2));
+
+        restPaymentMockMvc.perform(get("/api/payments/rollup?granularity=day&from=2016-03-02&to=2016-03-02"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[0].total").value(2.5));
+
+        restPaymentMockMvc.perform(get("/api/payments/rollup?granularity=day&from=2016-03-02&to=2016-03-02&groupBy=none"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[0].total").value(2.5));
+
+        restPaymentMockMvc.perform(get("/api/payments/rollup?granularity=year&from=2016-01-01&to=2016-12-31"))
+            .andExpect(status().isBadRequest());
+
+        restPaymentMockMvc.perform(get("/api/payments/rollup?from=2016-01-01&to=2016-12-31&groupBy=app"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void exportPayments() throws Exception {
+        // Initialize the database
+        paymentRepository.saveAndFlush(payment);
+
+        restPaymentMockMvc.perform(get("/api/payments/export?format=csv"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("text/csv;charset=UTF-8"))
+            .andExpect(header().string("Content-Disposition", "attachment; filename=\"payments.csv\""))
+            .andExpect(content().string(startsWith("id,amount,time,jobId,userId\n")))
+            .andExpect(content().string(containsString("\n" + payment.getId() + ",1.00,1970-01-01,,\n")));
+
+        restPaymentMockMvc.perform(get("/api/payments/export?format=ndjson&from=1970-01-01&to=1970-01-01"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("application/x-ndjson;charset=UTF-8"))
+            .andExpect(content().string(containsString(
+                "{\"id\":" + payment.getId() + ",\"amount\":1.00,\"time\":\"1970-01-01\",\"jobId\":null,\"userId\":null}\n")));
+
+        restPaymentMockMvc.perform(get("/api/payments/export?format=ndjson&from=1970-01-02"))
+            .andExpect(status().isOk())
+            .andExpect(content().string(not(containsString("\"id\":" + payment.getId() + ","))));
+
+        restPaymentMockMvc.perform(get("/api/payments/export?format=xml"))
+            .andExpect(status().isBadRequest());
+
+        restPaymentMockMvc.perform(get("/api/payments/export?from=2016-12-31&to=2016-01-01"))
+            .andExpect(status().isBadRequest());
+    }
+
     @Test
     @Transactional
     public void deletePayment() throws Exception {
         // Initialize the database
         paymentRepository.saveAndFlush(payment);
-        paymentSearchRepository.save(payment);
+        searchBackend.index(Payment.class, Collections.singletonMap(payment.getId(), payment));
+        searchBackend.refresh(Payment.class);
         int databaseSizeBeforeDelete = paymentRepository.findAll().size();
 
         // Get the payment
@@ -194,7 +423,8 @@ public class PaymentResourceIntTest {
                 .andExpect(status().isOk());
 
         // Validate ElasticSearch is empty
-        boolean paymentExistsInEs = paymentSearchRepository.exists(payment.getId());
+        searchIndexer.indexBatch();
+        boolean paymentExistsInEs = findIndexed(payment.getId()) != null;
         assertThat(paymentExistsInEs).isFalse();
 
         // Validate the database is empty
@@ -202,19 +432,34 @@ public class PaymentResourceIntTest {
         assertThat(payments).hasSize(databaseSizeBeforeDelete - 1);
     }
 
+    @Test
+    @Transactional
+    public void deleteNonExistingPayment() throws Exception {
+        restPaymentMockMvc.perform(delete("/api/payments/{id}", Long.MAX_VALUE)
+                .accept(TestUtil.APPLICATION_JSON_UTF8))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     @Transactional
     public void searchPayment() throws Exception {
         // Initialize the database
         paymentRepository.saveAndFlush(payment);
-        paymentSearchRepository.save(payment);
+        searchBackend.index(Payment.class, Collections.singletonMap(payment.getId(), payment));
+        searchBackend.refresh(Payment.class);
 
         // Search the payment
         restPaymentMockMvc.perform(get("/api/_search/payments?query=id:" + payment.getId()))
             .andExpect(status().isOk())
             .andExpect(content().contentType(MediaType.APPLICATION_JSON))
             .andExpect(jsonPath("$.[*].id").value(hasItem(payment.getId().intValue())))
-            .andExpect(jsonPath("$.[*].amount").value(hasItem(DEFAULT_AMOUNT.intValue())))
+            .andExpect(jsonPath("$.[*].amount").value(hasItem(DEFAULT_AMOUNT.toBigDecimal().doubleValue())))
             .andExpect(jsonPath("$.[*].time").value(hasItem(DEFAULT_TIME.toString())));
     }
+
+    private Payment findIndexed(Long id) {
+        searchBackend.refresh(Payment.class);
+        List<Payment> payments = searchBackend.searchAfter(Payment.class, "id:" + id, null, 1);
+        return payments.isEmpty() ? null : payments.get(0);
+    }
 }
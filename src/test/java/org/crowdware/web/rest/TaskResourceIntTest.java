@@ -1,14 +1,23 @@
 package org.crowdware.web.rest;
 
 import org.crowdware.CrowdwareApp;
+import org.crowdware.config.CrowdwareProperties;
 import org.crowdware.domain.Task;
 import org.crowdware.repository.TaskRepository;
-import org.crowdware.repository.search.TaskSearchRepository;
+import org.crowdware.service.search.SearchBackend;
+import org.crowdware.service.JobService;
+import org.crowdware.service.TaskService;
+import org.crowdware.service.dispatch.TaskLeaseService;
+import org.crowdware.service.index.TaskIntervalIndex;
+import org.crowdware.service.search.CursorSearchService;
+import org.crowdware.service.search.SearchIndexer;
+import org.crowdware.service.search.SearchOutboxService;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
 import org.mockito.MockitoAnnotations;
 import org.springframework.boot.test.IntegrationTest;
 import org.springframework.boot.test.SpringApplicationConfiguration;
@@ -16,18 +25,23 @@ import org.springframework.http.MediaType;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.transaction.TestTransaction;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import javax.validation.Validator;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -67,7 +81,34 @@ public class TaskResourceIntTest {
     private TaskRepository taskRepository;
 
     @Inject
-    private TaskSearchRepository taskSearchRepository;
+    private SearchBackend searchBackend;
+
+    @Inject
+    private SearchOutboxService searchOutboxService;
+
+    @Inject
+    private CursorSearchService cursorSearchService;
+
+    @Inject
+    private SearchIndexer searchIndexer;
+
+    @Inject
+    private TaskIntervalIndex taskIntervalIndex;
+
+    @Inject
+    private TaskLeaseService taskLeaseService;
+
+    @Inject
+    private TaskService taskService;
+
+    @Inject
+    private JobService jobService;
+
+    @Inject
+    private CrowdwareProperties crowdwareProperties;
+
+    @Inject
+    private Validator validator;
 
     @Inject
     private MappingJackson2HttpMessageConverter jacksonMessageConverter;
@@ -83,8 +124,16 @@ public class TaskResourceIntTest {
     public void setup() {
         MockitoAnnotations.initMocks(this);
         TaskResource taskResource = new TaskResource();
-        ReflectionTestUtils.setField(taskResource, "taskSearchRepository", taskSearchRepository);
+        ReflectionTestUtils.setField(taskResource, "cursorSearchService", cursorSearchService);
+        ReflectionTestUtils.setField(taskResource, "searchOutboxService", searchOutboxService);
         ReflectionTestUtils.setField(taskResource, "taskRepository", taskRepository);
+        ReflectionTestUtils.setField(taskResource, "taskIntervalIndex", taskIntervalIndex);
+        ReflectionTestUtils.setField(taskResource, "taskLeaseService", taskLeaseService);
+        ReflectionTestUtils.setField(taskResource, "taskService", taskService);
+        ReflectionTestUtils.setField(taskResource, "jobService", jobService);
+        ReflectionTestUtils.setField(taskResource, "objectMapper", jacksonMessageConverter.getObjectMapper());
+        ReflectionTestUtils.setField(taskResource, "crowdwareProperties", crowdwareProperties);
+        ReflectionTestUtils.setField(taskResource, "validator", validator);
         this.restTaskMockMvc = MockMvcBuilders.standaloneSetup(taskResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
             .setMessageConverters(jacksonMessageConverter).build();
@@ -92,7 +141,6 @@ public class TaskResourceIntTest {
 
     @Before
     public void initTest() {
-        taskSearchRepository.deleteAll();
         task = new Task();
         task.setApp(DEFAULT_APP);
         task.setJob(DEFAULT_JOB);
@@ -122,10 +170,84 @@ public class TaskResourceIntTest {
         assertThat(testTask.getEnd()).isEqualTo(DEFAULT_END);
 
         // Validate the Task in ElasticSearch
-        Task taskEs = taskSearchRepository.findOne(testTask.getId());
+        searchIndexer.indexBatch();
+        Task taskEs = findIndexed(testTask.getId());
         assertThat(taskEs).isEqualToComparingFieldByField(testTask);
     }
 
+    @Test
+    @Transactional
+    public void createTasksInBulk() throws Exception {
+        int databaseSizeBeforeCreate = taskRepository.findAll().size();
+
+        // The second task is invalid, as its job is required
+        Task invalidTask = new Task();
+        invalidTask.setStart(DEFAULT_START);
+        invalidTask.setEnd(DEFAULT_END);
+        Task otherTask = new Task();
+        otherTask.setApp(UPDATED_APP);
+        otherTask.setJob(UPDATED_JOB);
+        otherTask.setStart(DEFAULT_START);
+        otherTask.setEnd(DEFAULT_END);
+
+        restTaskMockMvc.perform(post("/api/tasks/bulk")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(Arrays.asList(task, invalidTask, otherTask))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.[*].index").value(Arrays.asList(0, 1, 2)))
+                .andExpect(jsonPath("$.[*].status").value(Arrays.asList(201, 400, 201)));
+
+        // Validate the Tasks in the database and in ElasticSearch
+        List<Task> tasks = taskRepository.findAll();
+        assertThat(tasks).hasSize(databaseSizeBeforeCreate + 2);
+        Task testTask = tasks.get(tasks.size() - 1);
+        assertThat(testTask.getJob()).isEqualTo(UPDATED_JOB);
+        searchIndexer.indexBatch();
+        assertThat(findIndexed(testTask.getId())).isEqualToComparingFieldByField(testTask);
+    }
+
+    @Test
+    @Transactional
+    public void createTasksInBulkReportsMalformedJson() throws Exception {
+        int databaseSizeBeforeCreate = taskRepository.findAll().size();
+        String content = "[" + new String(TestUtil.convertObjectToJsonBytes(task), "UTF-8") + ", {\"job\": ]";
+
+        restTaskMockMvc.perform(post("/api/tasks/bulk")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(content))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.[*].index").value(Arrays.asList(0, 1)))
+                .andExpect(jsonPath("$.[*].status").value(Arrays.asList(201, 400)));
+
+        assertThat(taskRepository.findAll()).hasSize(databaseSizeBeforeCreate + 1);
+    }
+
+    @Test
+    @Transactional
+    public void createTasksInBulkReportsEachInvalidItem() throws Exception {
+        int databaseSizeBeforeCreate = taskRepository.findAll().size();
+        String json = new String(TestUtil.convertObjectToJsonBytes(task), "UTF-8");
+        String content = "[" + json + ", 42, {\"job\": \"not a number\"}, null, " + json + "]";
+
+        restTaskMockMvc.perform(post("/api/tasks/bulk")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(content))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.[*].index").value(Arrays.asList(0, 1, 2, 3, 4)))
+                .andExpect(jsonPath("$.[*].status").value(Arrays.asList(201, 400, 400, 400, 201)));
+
+        assertThat(taskRepository.findAll()).hasSize(databaseSizeBeforeCreate + 2);
+    }
+
+    @Test
+    @Transactional
+    public void createTasksInBulkRequiresAnArray() throws Exception {
+        restTaskMockMvc.perform(post("/api/tasks/bulk")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(task)))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     @Transactional
     public void checkJobIsRequired() throws Exception {
@@ -197,6 +319,124 @@ public class TaskResourceIntTest {
                 .andExpect(jsonPath("$.[*].end").value(hasItem(DEFAULT_END_STR)));
     }
 
+    @Test
+    @Transactional
+    public void getActiveAndOverlappingTasks() throws Exception {
+        // Initialize the database with a task running for the first hour of the epoch
+        task.setEnd(DEFAULT_START.plusHours(1));
+        taskRepository.saveAndFlush(task);
+        taskIntervalIndex.index(task);
+
+        restTaskMockMvc.perform(get("/api/tasks/active?at=1970-01-01T00:30:00Z"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+            .andExpect(jsonPath("$.[*].id").value(hasItem(task.getId().intValue())));
+
+        restTaskMockMvc.perform(get("/api/tasks/active?at=1970-01-01T01:00:00Z"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(not(hasItem(task.getId().intValue()))));
+
+        restTaskMockMvc.perform(get("/api/tasks/overlapping?from=1969-12-31T23:00:00Z&to=1970-01-01T00:00:01Z"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(hasItem(task.getId().intValue())));
+
+        restTaskMockMvc.perform(get("/api/tasks/overlapping?from=1970-01-01T02:00:00Z&to=1970-01-01T01:00:00Z"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void getOverlappingTasksOrderedByStart() throws Exception {
+        // Initialize the database with a task created after another one but starting before it
+        ZonedDateTime start = ZonedDateTime.of(1950, 1, 1, 0, 0, 0, 0, ZoneId.of("Z"));
+        Task later = new Task();
+        later.setApp(DEFAULT_APP);
+        later.setJob(DEFAULT_JOB);
+        later.setStart(start.plusMinutes(10));
+        later.setEnd(start.plusHours(1));
+        taskRepository.saveAndFlush(later);
+        taskIntervalIndex.index(later);
+        task.setStart(start);
+        task.setEnd(start.plusHours(1));
+        taskRepository.saveAndFlush(task);
+        taskIntervalIndex.index(task);
+
+        restTaskMockMvc.perform(get("/api/tasks/overlapping?from=1950-01-01T00:00:00Z&to=1950-01-01T00:30:00Z"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[0].id").value(task.getId().intValue()))
+            .andExpect(jsonPath("$.[1].id").value(later.getId().intValue()));
+    }
+
+    @Test
+    @Transactional
+    public void heartbeatTask() throws Exception {
+        // Initialize the database with a running task
+        task.setEnd(ZonedDateTime.now().plusHours(1));
+        taskRepository.saveAndFlush(task);
+
+        // A task which was not dispatched has no lease
+        restTaskMockMvc.perform(put("/api/tasks/{id}/heartbeat", task.getId()))
+            .andExpect(status().isNotFound());
+
+        taskLeaseService.grant(task);
+        restTaskMockMvc.perform(put("/api/tasks/{id}/heartbeat", task.getId()))
+            .andExpect(status().isOk());
+
+        taskLeaseService.release(task.getId());
+        restTaskMockMvc.perform(put("/api/tasks/{id}/heartbeat", task.getId()))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @Transactional
+    public void endedTaskLosesItsLease() throws Exception {
+        // Initialize the database with a running task
+        task.setEnd(ZonedDateTime.now().plusHours(1));
+        taskRepository.saveAndFlush(task);
+        taskLeaseService.grant(task);
+
+        try {
+            // Complete the task, the lease is released once the update commits
+            task.setEnd(ZonedDateTime.now().minusSeconds(1));
+            restTaskMockMvc.perform(put("/api/tasks")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(task)))
+                .andExpect(status().isOk());
+            restTaskMockMvc.perform(put("/api/tasks/{id}/heartbeat", task.getId()))
+                .andExpect(status().isOk());
+            TestTransaction.flagForCommit();
+            TestTransaction.end();
+
+            restTaskMockMvc.perform(put("/api/tasks/{id}/heartbeat", task.getId()))
+                .andExpect(status().isNotFound());
+
+            // A task which already ended is not leased
+            taskLeaseService.grant(task);
+            restTaskMockMvc.perform(put("/api/tasks/{id}/heartbeat", task.getId()))
+                .andExpect(status().isNotFound());
+        } finally {
+            taskRepository.delete(task.getId());
+        }
+    }
+
+    @Test
+    @Transactional
+    public void rolledBackTaskIsNotIndexed() throws Exception {
+        task.setEnd(DEFAULT_START.plusHours(1));
+        MvcResult result = restTaskMockMvc.perform(post("/api/tasks")
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(task)))
+            .andExpect(status().isCreated())
+            .andReturn();
+        Long id = jacksonMessageConverter.getObjectMapper()
+            .readValue(result.getResponse().getContentAsString(), Task.class).getId();
+
+        // The interval is only indexed once the task commits
+        assertThat(taskIntervalIndex.findActiveAt(DEFAULT_START.plusMinutes(30))).doesNotContain(id);
+        TestTransaction.end();
+        assertThat(taskIntervalIndex.findActiveAt(DEFAULT_START.plusMinutes(30))).doesNotContain(id);
+    }
+
     @Test
     @Transactional
     public void getTask() throws Exception {
@@ -227,7 +467,8 @@ public class TaskResourceIntTest {
     public void updateTask() throws Exception {
         // Initialize the database
         taskRepository.saveAndFlush(task);
-        taskSearchRepository.save(task);
+        searchBackend.index(Task.class, Collections.singletonMap(task.getId(), task));
+        searchBackend.refresh(Task.class);
         int databaseSizeBeforeUpdate = taskRepository.findAll().size();
 
         // Update the task
@@ -253,7 +494,8 @@ public class TaskResourceIntTest {
         assertThat(testTask.getEnd()).isEqualTo(UPDATED_END);
 
         // Validate the Task in ElasticSearch
-        Task taskEs = taskSearchRepository.findOne(testTask.getId());
+        searchIndexer.indexBatch();
+        Task taskEs = findIndexed(testTask.getId());
         assertThat(taskEs).isEqualToComparingFieldByField(testTask);
     }
 
@@ -262,7 +504,8 @@ public class TaskResourceIntTest {
     public void deleteTask() throws Exception {
         // Initialize the database
         taskRepository.saveAndFlush(task);
-        taskSearchRepository.save(task);
+        searchBackend.index(Task.class, Collections.singletonMap(task.getId(), task));
+        searchBackend.refresh(Task.class);
         int databaseSizeBeforeDelete = taskRepository.findAll().size();
 
         // Get the task
@@ -271,7 +514,8 @@ public class TaskResourceIntTest {
                 .andExpect(status().isOk());
 
         // Validate ElasticSearch is empty
-        boolean taskExistsInEs = taskSearchRepository.exists(task.getId());
+        searchIndexer.indexBatch();
+        boolean taskExistsInEs = findIndexed(task.getId()) != null;
         assertThat(taskExistsInEs).isFalse();
 
         // Validate the database is empty
@@ -284,7 +528,8 @@ public class TaskResourceIntTest {
     public void searchTask() throws Exception {
         // Initialize the database
         taskRepository.saveAndFlush(task);
-        taskSearchRepository.save(task);
+        searchBackend.index(Task.class, Collections.singletonMap(task.getId(), task));
+        searchBackend.refresh(Task.class);
 
         // Search the task
         restTaskMockMvc.perform(get("/api/_search/tasks?query=id:" + task.getId()))
@@ -296,4 +541,17 @@ public class TaskResourceIntTest {
             .andExpect(jsonPath("$.[*].start").value(hasItem(DEFAULT_START_STR)))
             .andExpect(jsonPath("$.[*].end").value(hasItem(DEFAULT_END_STR)));
     }
+
+    @Test
+    @Transactional
+    public void searchTaskWithInvalidCursor() throws Exception {
+        restTaskMockMvc.perform(get("/api/_search/tasks?query=*&cursor=notacursor"))
+            .andExpect(status().isBadRequest());
+    }
+
+    private Task findIndexed(Long id) {
+        searchBackend.refresh(Task.class);
+        List<Task> tasks = searchBackend.searchAfter(Task.class, "id:" + id, null, 1);
+        return tasks.isEmpty() ? null : tasks.get(0);
+    }
 }
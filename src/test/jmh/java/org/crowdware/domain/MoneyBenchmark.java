@@ -0,0 +1,120 @@
+package org.crowdware.domain;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the amount operations of the payment hot paths on BigDecimal and on Money: summing the amounts of a
+ * batch of payments, finding the lowest one like the auctions do, and the JSON round-trip of an amount.
+ * <p>
+ * Run with {@code ./gradlew jmh -Pjmh.includes=MoneyBenchmark}; the gc profiler adds the bytes allocated per
+ * operation ({@code gc.alloc.rate.norm}) to the throughput.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyBenchmark {
+
+    @Param({"1000"})
+    private int payments;
+
+    private BigDecimal[] decimals;
+
+    private Money[] amounts;
+
+    private ObjectMapper mapper;
+
+    private String json;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        decimals = new BigDecimal[payments];
+        amounts = new Money[payments];
+        for (int i = 0; i < payments; i++) {
+            // amounts of a decimal(10,2) column, read back with their scale of 2
+            long cents = random.nextLong(1L, 10000000L);
+            decimals[i] = BigDecimal.valueOf(cents, 2);
+            amounts[i] = Money.ofMinorUnits(cents);
+        }
+        mapper = new ObjectMapper();
+        json = decimals[0].toString();
+    }
+
+    @Benchmark
+    public BigDecimal sumBigDecimal() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (BigDecimal amount : decimals) {
+            total = total.add(amount);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public Money sumMoney() {
+        Money total = Money.ZERO;
+        for (Money amount : amounts) {
+            total = total.plus(amount);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long sumMinorUnits() {
+        long total = 0L;
+        for (Money amount : amounts) {
+            total = Math.addExact(total, amount.getMinorUnits());
+        }
+        return total;
+    }
+
+    @Benchmark
+    public BigDecimal lowestBigDecimal() {
+        BigDecimal lowest = decimals[0];
+        for (BigDecimal amount : decimals) {
+            if (amount.compareTo(lowest) < 0) {
+                lowest = amount;
+            }
+        }
+        return lowest;
+    }
+
+    @Benchmark
+    public Money lowestMoney() {
+        Money lowest = amounts[0];
+        for (Money amount : amounts) {
+            if (amount.compareTo(lowest) < 0) {
+                lowest = amount;
+            }
+        }
+        return lowest;
+    }
+
+    @Benchmark
+    public BigDecimal jsonRoundTripBigDecimal() throws IOException {
+        return mapper.readValue(mapper.writeValueAsString(mapper.readValue(json, BigDecimal.class)), BigDecimal.class);
+    }
+
+    @Benchmark
+    public Money jsonRoundTripMoney() throws IOException {
+        return mapper.readValue(mapper.writeValueAsString(mapper.readValue(json, Money.class)), Money.class);
+    }
+}